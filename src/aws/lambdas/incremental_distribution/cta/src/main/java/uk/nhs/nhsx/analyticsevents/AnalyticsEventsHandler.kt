@@ -37,7 +37,7 @@ class AnalyticsEventsHandler @JvmOverloads constructor(
     authenticator: Authenticator = awsAuthentication(Mobile, events),
     signer: ResponseSigner = StandardSigningFactory(
         clock,
-        AwsSsmParameters(),
+        AwsSsmParameters.shared,
         AWSKMSClientBuilder.defaultClient()
     ).signResponseWithKeyGivenInSsm(environment, events),
     awsS3: AwsS3 = createAwsS3Client(events, environment),
@@ -0,0 +1,95 @@
+package uk.nhs.nhsx.analyticssubmission.model
+
+import com.fasterxml.jackson.core.JsonParser
+import com.fasterxml.jackson.databind.DeserializationContext
+import uk.nhs.nhsx.core.StreamingDeserializer
+import java.time.Instant
+
+/**
+ * Only the envelope is streamed, the metrics are a plain Java bean and keep the deserializer of the calling mapper
+ */
+class ClientAnalyticsSubmissionPayloadDeserializer :
+    StreamingDeserializer<ClientAnalyticsSubmissionPayload>(ClientAnalyticsSubmissionPayload::class.java) {
+
+    override fun deserialize(p: JsonParser, ctxt: DeserializationContext): ClientAnalyticsSubmissionPayload {
+        val windows = deserializerFor(ctxt, AnalyticsWindow::class.java)
+        val metadatas = deserializerFor(ctxt, AnalyticsMetadata::class.java)
+        val allMetrics = deserializerFor(ctxt, AnalyticsMetrics::class.java)
+
+        var analyticsWindow: AnalyticsWindow? = null
+        var metadata: AnalyticsMetadata? = null
+        var metrics: AnalyticsMetrics? = null
+        var includesMultipleApplicationVersions: Boolean? = null
+
+        p.forEachField(ctxt) {
+            when (it) {
+                "analyticsWindow" -> analyticsWindow = p.readWith(ctxt, windows, it)
+                "metadata" -> metadata = p.readWith(ctxt, metadatas, it)
+                "metrics" -> metrics = p.readWith(ctxt, allMetrics, it)
+                "includesMultipleApplicationVersions" -> includesMultipleApplicationVersions = p.readBoolean(ctxt, it)
+                else -> p.skipUnknown(ctxt, it)
+            }
+        }
+
+        return ClientAnalyticsSubmissionPayload(
+            analyticsWindow = required(p, ctxt, "analyticsWindow", analyticsWindow),
+            metadata = required(p, ctxt, "metadata", metadata),
+            metrics = required(p, ctxt, "metrics", metrics),
+            includesMultipleApplicationVersions = required(
+                p, ctxt, "includesMultipleApplicationVersions", includesMultipleApplicationVersions
+            )
+        )
+    }
+}
+
+class AnalyticsWindowDeserializer : StreamingDeserializer<AnalyticsWindow>(AnalyticsWindow::class.java) {
+
+    override fun deserialize(p: JsonParser, ctxt: DeserializationContext): AnalyticsWindow {
+        val instants = deserializerFor(ctxt, Instant::class.java)
+        var startDate: Instant? = null
+        var endDate: Instant? = null
+
+        p.forEachField(ctxt) {
+            when (it) {
+                "startDate" -> startDate = p.readWith(ctxt, instants, it)
+                "endDate" -> endDate = p.readWith(ctxt, instants, it)
+                else -> p.skipUnknown(ctxt, it)
+            }
+        }
+
+        return AnalyticsWindow(
+            startDate = required(p, ctxt, "startDate", startDate),
+            endDate = required(p, ctxt, "endDate", endDate)
+        )
+    }
+}
+
+class AnalyticsMetadataDeserializer : StreamingDeserializer<AnalyticsMetadata>(AnalyticsMetadata::class.java) {
+
+    override fun deserialize(p: JsonParser, ctxt: DeserializationContext): AnalyticsMetadata {
+        var postalDistrict: String? = null
+        var deviceModel: String? = null
+        var operatingSystemVersion: String? = null
+        var latestApplicationVersion: String? = null
+        var localAuthority: String? = null
+
+        p.forEachField(ctxt) {
+            when (it) {
+                "postalDistrict" -> postalDistrict = p.readString(ctxt, it)
+                "deviceModel" -> deviceModel = p.readString(ctxt, it)
+                "operatingSystemVersion" -> operatingSystemVersion = p.readString(ctxt, it)
+                "latestApplicationVersion" -> latestApplicationVersion = p.readString(ctxt, it)
+                "localAuthority" -> localAuthority = p.readString(ctxt, it, nullable = true)
+                else -> p.skipUnknown(ctxt, it)
+            }
+        }
+
+        return AnalyticsMetadata(
+            postalDistrict = required(p, ctxt, "postalDistrict", postalDistrict),
+            deviceModel = required(p, ctxt, "deviceModel", deviceModel),
+            operatingSystemVersion = required(p, ctxt, "operatingSystemVersion", operatingSystemVersion),
+            latestApplicationVersion = required(p, ctxt, "latestApplicationVersion", latestApplicationVersion),
+            localAuthority = localAuthority
+        )
+    }
+}
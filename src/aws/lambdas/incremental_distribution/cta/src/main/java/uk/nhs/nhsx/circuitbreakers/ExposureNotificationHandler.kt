@@ -12,6 +12,7 @@ import uk.nhs.nhsx.core.HttpResponses.unprocessableEntity
 import uk.nhs.nhsx.core.Json
 import uk.nhs.nhsx.core.StandardSigningFactory
 import uk.nhs.nhsx.core.SystemClock.CLOCK
+import uk.nhs.nhsx.core.WarmUps
 import uk.nhs.nhsx.core.auth.ApiName.Health
 import uk.nhs.nhsx.core.auth.ApiName.Mobile
 import uk.nhs.nhsx.core.auth.Authenticator
@@ -40,10 +41,10 @@ class ExposureNotificationHandler @JvmOverloads constructor(
     clock: Clock = CLOCK,
     events: Events = PrintingJsonEvents(clock),
     authenticator: Authenticator = awsAuthentication(Mobile, events),
-    parameters: Parameters = AwsSsmParameters(),
+    parameters: Parameters = AwsSsmParameters.shared,
     signer: ResponseSigner = StandardSigningFactory(
         clock,
-        AwsSsmParameters(),
+        AwsSsmParameters.shared,
         AWSKMSClientBuilder.defaultClient()
     ).signResponseWithKeyGivenInSsm(environment, events),
     circuitBreakerService: CircuitBreakerService = CircuitBreakerService(
@@ -91,6 +92,10 @@ class ExposureNotificationHandler @JvmOverloads constructor(
         )
     )
 
+    init {
+        prime(events, WarmUps.configuration(parameters), WarmUps.responseSigning(signer))
+    }
+
     override fun handler() = handler
 
     private fun CircuitBreakerResult.toResponse() = when (type) {
@@ -11,6 +11,7 @@ import uk.nhs.nhsx.core.HttpResponses.ok
 import uk.nhs.nhsx.core.HttpResponses.unprocessableEntity
 import uk.nhs.nhsx.core.StandardSigningFactory
 import uk.nhs.nhsx.core.SystemClock
+import uk.nhs.nhsx.core.WarmUps
 import uk.nhs.nhsx.core.auth.ApiName
 import uk.nhs.nhsx.core.auth.Authenticator
 import uk.nhs.nhsx.core.auth.ResponseSigner
@@ -36,7 +37,7 @@ class RiskyVenueHandler @JvmOverloads constructor(
     clock: Clock = SystemClock.CLOCK,
     events: Events = PrintingJsonEvents(clock),
     authenticator: Authenticator = awsAuthentication(ApiName.Mobile, events),
-    parameters: Parameters = AwsSsmParameters(),
+    parameters: Parameters = AwsSsmParameters.shared,
     signer: ResponseSigner = StandardSigningFactory(
         clock,
         parameters,
@@ -91,6 +92,10 @@ class RiskyVenueHandler @JvmOverloads constructor(
         else -> ok(responseBody)
     }
 
+    init {
+        prime(events, WarmUps.configuration(parameters), WarmUps.responseSigning(signer))
+    }
+
     override fun handler() = handler
 
     companion object {
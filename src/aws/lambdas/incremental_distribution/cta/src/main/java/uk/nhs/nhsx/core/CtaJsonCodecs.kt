@@ -0,0 +1,49 @@
+package uk.nhs.nhsx.core
+
+import com.fasterxml.jackson.databind.module.SimpleModule
+import uk.nhs.nhsx.analyticssubmission.model.AnalyticsMetadata
+import uk.nhs.nhsx.analyticssubmission.model.AnalyticsMetadataDeserializer
+import uk.nhs.nhsx.analyticssubmission.model.AnalyticsWindow
+import uk.nhs.nhsx.analyticssubmission.model.AnalyticsWindowDeserializer
+import uk.nhs.nhsx.analyticssubmission.model.ClientAnalyticsSubmissionPayload
+import uk.nhs.nhsx.analyticssubmission.model.ClientAnalyticsSubmissionPayloadDeserializer
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.ClientTemporaryExposureKey
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.ClientTemporaryExposureKeyDeserializer
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.ClientTemporaryExposureKeysPayload
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.ClientTemporaryExposureKeysPayloadDeserializer
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.StoredTemporaryExposureKey
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.StoredTemporaryExposureKeyDeserializer
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.StoredTemporaryExposureKeyPayload
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.StoredTemporaryExposureKeyPayloadDeserializer
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.StoredTemporaryExposureKeyPayloadSerializer
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.StoredTemporaryExposureKeySerializer
+import uk.nhs.nhsx.virology.CtaExchangeRequestV1Deserializer
+import uk.nhs.nhsx.virology.CtaExchangeRequestV2Deserializer
+import uk.nhs.nhsx.virology.VirologyLookupRequestV1Deserializer
+import uk.nhs.nhsx.virology.VirologyLookupRequestV2Deserializer
+import uk.nhs.nhsx.virology.exchange.CtaExchangeRequestV1
+import uk.nhs.nhsx.virology.exchange.CtaExchangeRequestV2
+import uk.nhs.nhsx.virology.lookup.VirologyLookupRequestV1
+import uk.nhs.nhsx.virology.lookup.VirologyLookupRequestV2
+
+/**
+ * Mobile request bodies (key submission, virology, analytics) and the stored submission format, registered through
+ * META-INF/services
+ */
+class CtaJsonCodecs : JsonCodecs {
+    override fun register(module: SimpleModule) {
+        module.addDeserializer(ClientTemporaryExposureKeysPayload::class.java, ClientTemporaryExposureKeysPayloadDeserializer())
+        module.addDeserializer(ClientTemporaryExposureKey::class.java, ClientTemporaryExposureKeyDeserializer())
+        module.addDeserializer(StoredTemporaryExposureKeyPayload::class.java, StoredTemporaryExposureKeyPayloadDeserializer())
+        module.addDeserializer(StoredTemporaryExposureKey::class.java, StoredTemporaryExposureKeyDeserializer())
+        module.addSerializer(StoredTemporaryExposureKeyPayload::class.java, StoredTemporaryExposureKeyPayloadSerializer())
+        module.addSerializer(StoredTemporaryExposureKey::class.java, StoredTemporaryExposureKeySerializer())
+        module.addDeserializer(VirologyLookupRequestV1::class.java, VirologyLookupRequestV1Deserializer())
+        module.addDeserializer(VirologyLookupRequestV2::class.java, VirologyLookupRequestV2Deserializer())
+        module.addDeserializer(CtaExchangeRequestV1::class.java, CtaExchangeRequestV1Deserializer())
+        module.addDeserializer(CtaExchangeRequestV2::class.java, CtaExchangeRequestV2Deserializer())
+        module.addDeserializer(ClientAnalyticsSubmissionPayload::class.java, ClientAnalyticsSubmissionPayloadDeserializer())
+        module.addDeserializer(AnalyticsWindow::class.java, AnalyticsWindowDeserializer())
+        module.addDeserializer(AnalyticsMetadata::class.java, AnalyticsMetadataDeserializer())
+    }
+}
@@ -0,0 +1,16 @@
+package uk.nhs.nhsx.core
+
+import kotlin.math.ceil
+
+/**
+ * Nearest rank percentiles of latency samples in milliseconds, zero when there are none
+ */
+class LatencyPercentiles(samples: Collection<Long>) {
+    private val sorted = samples.sorted()
+
+    val count get() = sorted.size
+
+    val maxMillis get() = sorted.lastOrNull() ?: 0L
+
+    fun percentile(p: Int) = sorted.getOrElse(maxOf(ceil(p / 100.0 * sorted.size).toInt() - 1, 0)) { 0L }
+}
@@ -1,5 +1,6 @@
 package uk.nhs.nhsx.core
 
+import uk.nhs.nhsx.core.aws.s3.ListingShard
 import uk.nhs.nhsx.core.aws.s3.ObjectKey
 import java.util.function.Predicate
 
@@ -23,6 +24,11 @@ object ObjectKeyFilters {
             .or(isMobileRapidResultKey)
             .or(isMobileRapidSelfReportedResultKey)
             .or(isWhitelistedFederatedKey(allowedPrefixes))
+
+        /**
+         * listing shards covering all keys accepted by [withPrefixes]
+         */
+        fun listingShards(allowedPrefixes: List<String>): List<ListingShard> = submissionListingShards(allowedPrefixes)
     }
 
     class FederatedObjectKeyFilters {
@@ -31,5 +37,18 @@ object ObjectKeyFilters {
             .or(isMobileRapidResultKey)
             .or(isMobileRapidSelfReportedResultKey)
             .or(isWhitelistedFederatedKey(allowedPrefixes))
+
+        /**
+         * listing shards covering all keys accepted by [withPrefixes]
+         */
+        fun listingShards(allowedPrefixes: List<String>): List<ListingShard> = submissionListingShards(allowedPrefixes)
     }
+
+    /**
+     * prefixes of the keys written by the submission lambda, one per test kit
+     */
+    val mobileTestKitPrefixes = listOf("mobile/LAB_RESULT/", "mobile/RAPID_RESULT/", "mobile/RAPID_SELF_REPORTED/")
+
+    private fun submissionListingShards(allowedPrefixes: List<String>) =
+        listOf(ListingShard.ROOT) + (mobileTestKitPrefixes + allowedPrefixes).map(::ListingShard)
 }
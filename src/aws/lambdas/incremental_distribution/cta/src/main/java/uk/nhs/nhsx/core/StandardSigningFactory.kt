@@ -2,28 +2,50 @@ package uk.nhs.nhsx.core
 
 import com.amazonaws.services.kms.AWSKMS
 import uk.nhs.nhsx.core.Environment.EnvironmentKey
+import uk.nhs.nhsx.core.StandardSigning.LOCAL_SIGNING_KEY_SECRET_NAME
 import uk.nhs.nhsx.core.StandardSigning.SSM_KEY_ID_PARAMETER_NAME
 import uk.nhs.nhsx.core.auth.AwsResponseSigner
+import uk.nhs.nhsx.core.auth.DigestResponseSigner
 import uk.nhs.nhsx.core.auth.ResponseSigner
 import uk.nhs.nhsx.core.aws.kms.KmsSigner
+import uk.nhs.nhsx.core.aws.secretsmanager.CachingSecretManager
+import uk.nhs.nhsx.core.aws.secretsmanager.SecretManager
+import uk.nhs.nhsx.core.aws.secretsmanager.SecretName
 import uk.nhs.nhsx.core.aws.ssm.ParameterKeyLookup
 import uk.nhs.nhsx.core.aws.ssm.ParameterName
 import uk.nhs.nhsx.core.aws.ssm.Parameters
 import uk.nhs.nhsx.core.events.Events
+import uk.nhs.nhsx.core.signature.LocalEcdsaSigner
 import uk.nhs.nhsx.core.signature.RFC2616DatedSigner
 import uk.nhs.nhsx.core.signature.Signer
+import java.security.PrivateKey
+import java.util.concurrent.atomic.AtomicReference
 
 class StandardSigningFactory(
     private val clock: Clock,
     private val parameters: Parameters,
-    private val client: AWSKMS
+    private val client: AWSKMS,
+    secretManager: () -> SecretManager = { CachingSecretManager.shared }
 ) {
+    private val secretManager by lazy(secretManager)
 
-    fun signResponseWithKeyGivenInSsm(environment: Environment, events: Events): ResponseSigner =
-        AwsResponseSigner(datedSigner(environment), events)
+    fun signResponseWithKeyGivenInSsm(environment: Environment, events: Events): ResponseSigner {
+        val signer = signer(environment)
+        return DigestResponseSigner(AwsResponseSigner(RFC2616DatedSigner(clock, signer), events), signer, clock)
+    }
+
+    fun datedSigner(environment: Environment): RFC2616DatedSigner = RFC2616DatedSigner(clock, signer(environment))
 
-    fun datedSigner(environment: Environment): RFC2616DatedSigner =
-        datedSigner(environment.access.required(SSM_KEY_ID_PARAMETER_NAME))
+    /**
+     * signs with KMS, or in-process when the environment names a secret holding the private key
+     */
+    private fun signer(environment: Environment): Signer {
+        val parameterName = environment.access.required(SSM_KEY_ID_PARAMETER_NAME)
+        return when (val secretName = environment.access.optional(LOCAL_SIGNING_KEY_SECRET_NAME).orElse(null)) {
+            null -> signContentWithKeyFromParameter(parameterName)
+            else -> signContentWithLocalKey(parameterName, secretName)
+        }
+    }
 
     fun datedSigner(parameterName: ParameterName): RFC2616DatedSigner =
         RFC2616DatedSigner(clock, signContentWithKeyFromParameter(parameterName))
@@ -32,8 +54,22 @@ class StandardSigningFactory(
         val parameterKeyLookup = ParameterKeyLookup(parameters, name)
         return KmsSigner(parameterKeyLookup::kmsKeyId, client)
     }
+
+    fun signContentWithLocalKey(keyIdParameterName: ParameterName, privateKeySecretName: SecretName): Signer {
+        val parameterKeyLookup = ParameterKeyLookup(parameters, keyIdParameterName)
+        val parsed = AtomicReference<Pair<String, PrivateKey>>()
+
+        return LocalEcdsaSigner(parameterKeyLookup::kmsKeyId) {
+            val pem = secretManager.getSecret(privateKeySecretName)
+                .orElseThrow { IllegalStateException("Unable to load signing key ${privateKeySecretName.value}") }
+                .value
+            parsed.get()?.takeIf { it.first == pem }?.second
+                ?: LocalEcdsaSigner.privateKeyFromPem(pem).also { parsed.set(pem to it) }
+        }
+    }
 }
 
 object StandardSigning {
     val SSM_KEY_ID_PARAMETER_NAME = EnvironmentKey.value("SSM_KEY_ID_PARAMETER_NAME", ParameterName)
+    val LOCAL_SIGNING_KEY_SECRET_NAME = EnvironmentKey.value("LOCAL_SIGNING_KEY_SECRET_NAME", SecretName)
 }
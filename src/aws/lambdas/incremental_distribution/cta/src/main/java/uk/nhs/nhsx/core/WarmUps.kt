@@ -0,0 +1,45 @@
+package uk.nhs.nhsx.core
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent
+import uk.nhs.nhsx.core.auth.ResponseSigner
+import uk.nhs.nhsx.core.aws.s3.AwsS3
+import uk.nhs.nhsx.core.aws.s3.BucketName
+import uk.nhs.nhsx.core.aws.s3.Locator
+import uk.nhs.nhsx.core.aws.s3.ObjectKey
+import uk.nhs.nhsx.core.aws.ssm.Parameters
+import uk.nhs.nhsx.core.handler.WarmUp
+import uk.nhs.nhsx.virology.order.TokensGenerator
+import java.util.*
+
+object WarmUps {
+    fun configuration(parameters: Parameters) = WarmUp("configuration") { parameters.preload() }
+
+    /**
+     * signs a throwaway response, which loads the signing key id and opens the connection to KMS
+     */
+    fun responseSigning(signer: ResponseSigner) = WarmUp("response-signing") {
+        signer.sign(
+            APIGatewayProxyRequestEvent()
+                .withHttpMethod("GET")
+                .withPath("/warm-up")
+                .withHeaders(mapOf("Request-Id" to "warm-up")),
+            APIGatewayProxyResponseEvent()
+                .withHeaders(mutableMapOf())
+                .withBody("")
+        )
+    }
+
+    /**
+     * presigns a url for the bucket, which builds the S3 client and resolves its credentials without
+     * needing any permission on the bucket
+     */
+    fun storage(awsS3: AwsS3, bucketName: BucketName) = WarmUp("storage") {
+        awsS3.getSignedURL(Locator.of(bucketName, ObjectKey.of("warm-up")), Date())
+    }
+
+    /**
+     * generates a throwaway set of tokens, which compiles the banned word patterns of the cta token generator
+     */
+    fun tokenGeneration() = WarmUp("token-generation") { TokensGenerator.generateVirologyTokens() }
+}
@@ -1,38 +1,121 @@
 package uk.nhs.nhsx.core.auth
 
 import com.github.benmanes.caffeine.cache.Caffeine
+import com.github.benmanes.caffeine.cache.Expiry
+import com.github.benmanes.caffeine.cache.stats.CacheStats
+import uk.nhs.nhsx.core.Clock
+import uk.nhs.nhsx.core.SystemClock
+import uk.nhs.nhsx.core.events.Events
 import uk.nhs.nhsx.core.exceptions.Defect
 import java.security.MessageDigest
 import java.security.NoSuchAlgorithmException
 import java.time.Duration
-import java.util.Base64
-import java.util.Optional
+import java.time.Instant
+import java.util.concurrent.Executor
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.atomic.AtomicReference
+
+/**
+ * Remembers the outcome of the (BCrypt based, so expensive) delegate for each key.
+ *
+ * - concurrent requests for a key that is not cached wait for a single verification
+ * - accepted keys are verified again in the background once `refreshAfter` has passed, so a burst of requests
+ *   never waits for BCrypt while the key stays in use
+ * - rejected keys are only remembered for `rejectedFor`
+ *
+ * Entries are identified by the SHA-256 digest of the key. To verify it again the key itself is kept alongside,
+ * for no longer than its entry: at most `acceptedFor` after it was last verified, and for at most `maximumKeys`.
+ *
+ * Hit, miss and load statistics are emitted at most once per `statisticsInterval`.
+ */
+class CachingApiKeyAuthorizer @JvmOverloads constructor(
+    private val delegate: ApiKeyAuthorizer,
+    private val events: Events,
+    private val clock: Clock = SystemClock.CLOCK,
+    private val acceptedFor: Duration = Duration.ofMinutes(1),
+    private val refreshAfter: Duration = Duration.ofSeconds(45),
+    private val rejectedFor: Duration = Duration.ofSeconds(10),
+    private val statisticsInterval: Duration = Duration.ofMinutes(1),
+    private val maximumKeys: Long = 10_000,
+    executor: Executor = ForkJoinPool.commonPool()
+) : ApiKeyAuthorizer {
 
-class CachingApiKeyAuthorizer(private val delegate: ApiKeyAuthorizer) : ApiKeyAuthorizer {
-    private val encoder = Base64.getEncoder()
     private val cache = Caffeine.newBuilder()
-        .expireAfterWrite(Duration.ofMinutes(1))
-        .build<String, Boolean>()
+        .executor(executor)
+        .ticker { Duration.between(Instant.EPOCH, clock()).toNanos() }
+        .expireAfter(ExpiryByOutcome())
+        .refreshAfterWrite(refreshAfter)
+        .maximumSize(maximumKeys)
+        .recordStats()
+        .build { key: CachedKey -> delegate.authorize(key.apiKey) }
+
+    private val reported = AtomicReference(Reported(clock(), CacheStats.empty()))
 
     override fun authorize(key: ApiKey) = try {
-        authorizeInternal(key)
+        cache[CachedKey(digestOf(key), key)] ?: false
     } catch (e: Exception) {
         throw RuntimeException("Unable to verify key", e)
+    } finally {
+        reportStatistics()
     }
 
-    private fun authorizeInternal(key: ApiKey): Boolean =
-        Optional.ofNullable(cache[hashOf(key), { delegate.authorize(key) }]).orElse(false)
+    private fun reportStatistics() {
+        val previous = reported.get()
+        val now = clock()
+        if (Duration.between(previous.at, now) < statisticsInterval) return
 
-    private fun hashOf(key: ApiKey) = encoder.encodeToString(newDigest().apply {
-        update(bytesFor(key.keyName))
-        update(bytesFor(key.keyValue))
-    }.digest())
+        val stats = cache.stats()
+        if (!reported.compareAndSet(previous, Reported(now, stats))) return
+
+        val delta = stats.minus(previous.stats)
+        events(
+            ApiKeyCacheStatistics(
+                hits = delta.hitCount(),
+                misses = delta.missCount(),
+                loads = delta.loadSuccessCount(),
+                loadFailures = delta.loadFailureCount(),
+                averageLoadMillis = Duration.ofNanos(delta.averageLoadPenalty().toLong()).toMillis(),
+                size = cache.estimatedSize()
+            )
+        )
+    }
 
-    private fun newDigest() = try {
-        MessageDigest.getInstance("SHA-256")
-    } catch (e: NoSuchAlgorithmException) {
-        throw Defect("Unable to get message digest", e)
+    private fun digestOf(key: ApiKey) = digests.get().run {
+        reset()
+        update(key.keyName.toByteArray())
+        update(key.keyValue.toByteArray())
+        digest()
     }
 
-    private fun bytesFor(keyName: String) = keyName.toByteArray()
+    private inner class ExpiryByOutcome : Expiry<CachedKey, Boolean> {
+        private fun ttlFor(authorized: Boolean) = (if (authorized) acceptedFor else rejectedFor).toNanos()
+
+        override fun expireAfterCreate(key: CachedKey, value: Boolean, currentTime: Long) = ttlFor(value)
+
+        override fun expireAfterUpdate(key: CachedKey, value: Boolean, currentTime: Long, currentDuration: Long) =
+            ttlFor(value)
+
+        override fun expireAfterRead(key: CachedKey, value: Boolean, currentTime: Long, currentDuration: Long) =
+            currentDuration
+    }
+
+    /**
+     * identified by the digest only, the key is only needed to verify it again
+     */
+    private class CachedKey(private val digest: ByteArray, val apiKey: ApiKey) {
+        override fun equals(other: Any?) = other is CachedKey && digest.contentEquals(other.digest)
+        override fun hashCode() = digest.contentHashCode()
+    }
+
+    private class Reported(val at: Instant, val stats: CacheStats)
+
+    companion object {
+        private val digests = ThreadLocal.withInitial {
+            try {
+                MessageDigest.getInstance("SHA-256")
+            } catch (e: NoSuchAlgorithmException) {
+                throw Defect("Unable to get message digest", e)
+            }
+        }
+    }
 }
@@ -0,0 +1,92 @@
+package uk.nhs.nhsx.core.auth
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent
+import com.github.benmanes.caffeine.cache.Caffeine
+import uk.nhs.nhsx.core.Clock
+import uk.nhs.nhsx.core.exceptions.Defect
+import uk.nhs.nhsx.core.aws.s3.MetaHeader
+import uk.nhs.nhsx.core.signature.DatedSignature
+import uk.nhs.nhsx.core.signature.RFC2616DatedSigner
+import uk.nhs.nhsx.core.signature.Signer
+import uk.nhs.nhsx.core.signature.SigningHeaders
+import java.security.MessageDigest
+import java.security.NoSuchAlgorithmException
+import java.time.Duration
+import java.time.Instant
+import java.time.temporal.ChronoUnit.MINUTES
+import java.util.Base64
+
+/**
+ * Clients sending `Accept-Signature-Scheme: digest-v1` get a signature over
+ * `method:path:date:base64(sha256(body))`, where the date is truncated to the minute and there is no request id,
+ * so identical responses within a minute share one cached signature. Everyone else is signed by `delegate`.
+ *
+ * See doc/architecture/api-security.md
+ */
+class DigestResponseSigner(
+    private val delegate: ResponseSigner,
+    private val signer: Signer,
+    private val clock: Clock,
+    cacheSize: Long = 1000
+) : ResponseSigner {
+
+    private val signatures = Caffeine.newBuilder()
+        .maximumSize(cacheSize)
+        .expireAfterWrite(Duration.ofMinutes(2))
+        .build<DigestContent, DatedSignature>()
+
+    override fun sign(request: APIGatewayProxyRequestEvent, response: APIGatewayProxyResponseEvent) {
+        if (!request.acceptsDigestScheme()) return delegate.sign(request, response)
+
+        val content = DigestContent(
+            minute = clock().truncatedTo(MINUTES),
+            method = request.httpMethod,
+            path = request.path,
+            bodyDigest = digestOf(response)
+        )
+
+        // signed with the minute of the cache key, so the signature date always matches the entry it is cached under
+        val signature = signatures.get(content) {
+            RFC2616DatedSigner({ it.minute }, signer)
+                .sign { date -> "${it.method}:${it.path}:${date.string}:${it.bodyDigest}".toByteArray() }
+        }!!
+
+        (SigningHeaders.fromDatedSignature(signature) + MetaHeader(SCHEME_HEADER, DIGEST_SCHEME)).forEach {
+            response.headers[it.asHttpHeaderName()] = it.value
+        }
+    }
+
+    private fun APIGatewayProxyRequestEvent.acceptsDigestScheme() = headers.orEmpty().entries
+        .any { it.key.equals(ACCEPT_SCHEME_HEADER, ignoreCase = true) && it.value?.trim() == DIGEST_SCHEME }
+
+    private fun digestOf(response: APIGatewayProxyResponseEvent): String {
+        val body = response.body ?: ""
+        val bytes = when (response.isBase64Encoded) {
+            true -> Base64.getDecoder().decode(body)
+            else -> body.toByteArray()
+        }
+        return Base64.getEncoder().encodeToString(digests.get().digest(bytes))
+    }
+
+    private data class DigestContent(
+        val minute: Instant,
+        val method: String,
+        val path: String,
+        val bodyDigest: String
+    )
+
+    companion object {
+        private val digests = ThreadLocal.withInitial {
+            try {
+                MessageDigest.getInstance("SHA-256")
+            } catch (e: NoSuchAlgorithmException) {
+                throw Defect("Unable to get message digest", e)
+            }
+        }
+
+        const val ACCEPT_SCHEME_HEADER = "Accept-Signature-Scheme"
+        const val SCHEME_HEADER = "Signature-Scheme"
+        const val DIGEST_SCHEME = "digest-v1"
+    }
+}
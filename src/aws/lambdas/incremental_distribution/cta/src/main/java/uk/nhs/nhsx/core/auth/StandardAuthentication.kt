@@ -1,7 +1,5 @@
 package uk.nhs.nhsx.core.auth
 
-import com.amazonaws.services.secretsmanager.AWSSecretsManagerClientBuilder
-import uk.nhs.nhsx.core.aws.secretsmanager.AwsSecretManager
 import uk.nhs.nhsx.core.aws.secretsmanager.CachingSecretManager
 import uk.nhs.nhsx.core.events.Events
 import java.util.regex.Pattern
@@ -13,9 +11,10 @@ object StandardAuthentication {
         val cachingApiKeyAuthorizer = CachingApiKeyAuthorizer(
             SecretManagerKeyAuthorizer(
                 apiName,
-                CachingSecretManager(AwsSecretManager(AWSSecretsManagerClientBuilder.defaultClient())),
+                CachingSecretManager.shared,
                 events
-            )
+            ),
+            events
         )
 
         return ApiKeyAuthenticator.authenticatingWithApiKey(
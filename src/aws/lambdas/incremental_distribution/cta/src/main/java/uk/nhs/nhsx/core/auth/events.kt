@@ -1,6 +1,16 @@
 package uk.nhs.nhsx.core.auth
 
 import uk.nhs.nhsx.core.events.Event
+import uk.nhs.nhsx.core.events.EventCategory.Metric
 import uk.nhs.nhsx.core.events.EventCategory.Warning
 
 data class BCryptKeyVerificationFailure(val keyName: String) : Event(Warning)
+
+data class ApiKeyCacheStatistics(
+    val hits: Long,
+    val misses: Long,
+    val loads: Long,
+    val loadFailures: Long,
+    val averageLoadMillis: Long,
+    val size: Long
+) : Event(Metric)
@@ -0,0 +1,39 @@
+package uk.nhs.nhsx.core.aws
+
+import com.github.benmanes.caffeine.cache.CacheLoader
+import com.github.benmanes.caffeine.cache.Caffeine
+import uk.nhs.nhsx.core.events.Event
+import uk.nhs.nhsx.core.events.EventCategory.Warning
+import uk.nhs.nhsx.core.events.Events
+import java.time.Duration
+import java.util.concurrent.Executor
+import java.util.concurrent.Executors
+
+/**
+ * Caches for remote configuration (SSM parameters, secrets) that are refreshed in the background once
+ * `refreshInterval` has passed, so only the very first lookup of a value waits for the remote call.
+ */
+object ConfigurationCache {
+    private val executor: Executor = Executors.newFixedThreadPool(2) { runnable ->
+        Thread(runnable, "configuration-refresh").apply { isDaemon = true }
+    }
+
+    fun refreshingAfter(refreshInterval: Duration): Caffeine<Any, Any> = Caffeine.newBuilder()
+        .executor(executor)
+        .refreshAfterWrite(refreshInterval)
+}
+
+/**
+ * Keeps serving the last known value when a background refresh fails, it is reported and retried after the next
+ * interval
+ */
+abstract class LastKnownValueLoader<K : Any, V : Any>(private val events: Events) : CacheLoader<K, V> {
+    override fun reload(key: K, oldValue: V): V = try {
+        load(key)
+    } catch (e: Exception) {
+        events(ConfigurationLoadFailed(key.toString(), e.message ?: e.javaClass.simpleName))
+        oldValue
+    }
+}
+
+data class ConfigurationLoadFailed(val key: String, val message: String) : Event(Warning)
@@ -6,8 +6,12 @@ import com.amazonaws.services.dynamodbv2.document.Item
 import com.amazonaws.services.dynamodbv2.document.PrimaryKey
 import com.amazonaws.services.dynamodbv2.document.spec.DeleteItemSpec
 import com.amazonaws.services.dynamodbv2.model.ReturnValue.ALL_OLD
+import uk.nhs.nhsx.core.events.MetricsRegistry
 
-class DynamoDBUtils(client: AmazonDynamoDB) : AwsDynamoClient {
+class DynamoDBUtils(
+    client: AmazonDynamoDB,
+    private val metrics: MetricsRegistry = MetricsRegistry.default
+) : AwsDynamoClient {
 
     private val dynamoDB: DynamoDB = DynamoDB(client)
 
@@ -15,7 +19,9 @@ class DynamoDBUtils(client: AmazonDynamoDB) : AwsDynamoClient {
         tableName: TableName,
         hashKeyName: String,
         hashKeyValue: String
-    ): Item? = getTable(tableName).getItem(hashKeyName, hashKeyValue)
+    ): Item? = metrics.timed("DynamoDbLatency", "Operation" to "GetItem") {
+        getTable(tableName).getItem(hashKeyName, hashKeyValue)
+    }
 
     override fun deleteItem(
         tableName: TableName,
@@ -26,7 +32,7 @@ class DynamoDBUtils(client: AmazonDynamoDB) : AwsDynamoClient {
             .withPrimaryKey(PrimaryKey(hashKeyName, hashKeyValue))
             .withReturnValues(ALL_OLD)
 
-        getTable(tableName).deleteItem(spec)
+        metrics.timed("DynamoDbLatency", "Operation" to "DeleteItem") { getTable(tableName).deleteItem(spec) }
     }
 
     private fun getTable(tableName: TableName) = dynamoDB.getTable(tableName.value)
@@ -5,6 +5,7 @@ import com.amazonaws.services.dynamodbv2.model.TransactWriteItem
 import com.amazonaws.services.dynamodbv2.model.TransactWriteItemsRequest
 import com.amazonaws.services.dynamodbv2.model.TransactWriteItemsResult
 import com.amazonaws.services.dynamodbv2.model.TransactionCanceledException
+import uk.nhs.nhsx.core.events.MetricsRegistry
 import uk.nhs.nhsx.core.exceptions.TransactionException
 
 object DynamoTransactions {
@@ -14,7 +15,9 @@ object DynamoTransactions {
         dynamoDbClient: AmazonDynamoDB,
         items: List<TransactWriteItem?>?
     ): TransactWriteItemsResult = try {
-        dynamoDbClient.transactWriteItems(TransactWriteItemsRequest().withTransactItems(items))
+        MetricsRegistry.default.timed("DynamoDbLatency", "Operation" to "TransactWriteItems") {
+            dynamoDbClient.transactWriteItems(TransactWriteItemsRequest().withTransactItems(items))
+        }
     } catch (e: TransactionCanceledException) {
         throw TransactionException(e)
     }
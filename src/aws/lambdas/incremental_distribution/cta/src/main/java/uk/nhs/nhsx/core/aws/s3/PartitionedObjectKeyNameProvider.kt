@@ -2,8 +2,10 @@ package uk.nhs.nhsx.core.aws.s3
 
 import uk.nhs.nhsx.core.Clock
 import uk.nhs.nhsx.core.UniqueId
+import java.time.Instant
 import java.time.ZoneOffset.UTC
 import java.time.format.DateTimeFormatter
+import java.time.temporal.ChronoUnit.DAYS
 
 class PartitionedObjectKeyNameProvider(
     private val systemClock: Clock,
@@ -18,5 +20,15 @@ class PartitionedObjectKeyNameProvider(
 
     companion object {
         val DATE_TIME_FORMATTER: DateTimeFormatter = DateTimeFormatter.ofPattern("yyyy/MM/dd/HH/")
+        private val DAY_FORMATTER: DateTimeFormatter = DateTimeFormatter.ofPattern("yyyy/MM/dd/")
+
+        /**
+         * the key prefixes of the days holding all hourly partitions between the two instants, both inclusive
+         */
+        fun dayPartitionPrefixes(fromInclusive: Instant, toInclusive: Instant): List<String> =
+            generateSequence(fromInclusive.truncatedTo(DAYS)) { it.plus(1, DAYS) }
+                .takeWhile { !it.isAfter(toInclusive) }
+                .map { DAY_FORMATTER.format(it.atZone(UTC)) }
+                .toList()
     }
 }
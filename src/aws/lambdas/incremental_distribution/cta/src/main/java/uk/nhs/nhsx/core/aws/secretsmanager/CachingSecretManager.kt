@@ -1,17 +1,28 @@
 package uk.nhs.nhsx.core.aws.secretsmanager
 
-import com.github.benmanes.caffeine.cache.Caffeine
+import com.amazonaws.services.secretsmanager.AWSSecretsManagerClientBuilder
+import uk.nhs.nhsx.core.SystemClock
+import uk.nhs.nhsx.core.aws.ConfigurationCache
+import uk.nhs.nhsx.core.aws.LastKnownValueLoader
+import uk.nhs.nhsx.core.events.Events
+import uk.nhs.nhsx.core.events.PrintingJsonEvents
 import java.time.Duration
 import java.util.*
 
-class CachingSecretManager(delegate: SecretManager) : SecretManager {
-    private val cache = Caffeine.newBuilder()
-        .expireAfterWrite(Duration.ofMinutes(5))
-        .build(delegate::getSecret)
+class CachingSecretManager @JvmOverloads constructor(
+    private val delegate: SecretManager,
+    refreshInterval: Duration = Duration.ofMinutes(5),
+    events: Events = PrintingJsonEvents(SystemClock.CLOCK)
+) : SecretManager {
+    private val cache = ConfigurationCache.refreshingAfter(refreshInterval)
+        .build(object : LastKnownValueLoader<SecretName, Optional<SecretValue>>(events) {
+            override fun load(key: SecretName) = delegate.getSecret(key)
+        })
 
-    private val cacheBinary = Caffeine.newBuilder()
-        .expireAfterWrite(Duration.ofMinutes(5))
-        .build(delegate::getSecretBinary)
+    private val cacheBinary = ConfigurationCache.refreshingAfter(refreshInterval)
+        .build(object : LastKnownValueLoader<SecretName, ByteArray>(events) {
+            override fun load(key: SecretName) = delegate.getSecretBinary(key)
+        })
 
     override fun getSecret(secretName: SecretName): Optional<SecretValue> = try {
         cache[secretName]!!
@@ -24,4 +35,13 @@ class CachingSecretManager(delegate: SecretManager) : SecretManager {
     } catch (e: Exception) {
         throw RuntimeException("Unable to load secret", e)
     }
+
+    companion object {
+        /**
+         * one cache per container, shared by authentication, signing and handlers
+         */
+        val shared: SecretManager by lazy {
+            CachingSecretManager(AwsSecretManager(AWSSecretsManagerClientBuilder.defaultClient()))
+        }
+    }
 }
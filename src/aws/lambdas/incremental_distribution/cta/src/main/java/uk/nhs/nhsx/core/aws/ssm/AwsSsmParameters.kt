@@ -3,37 +3,90 @@ package uk.nhs.nhsx.core.aws.ssm
 import com.amazonaws.services.simplesystemsmanagement.AWSSimpleSystemsManagement
 import com.amazonaws.services.simplesystemsmanagement.AWSSimpleSystemsManagementClientBuilder
 import com.amazonaws.services.simplesystemsmanagement.model.GetParameterRequest
-import com.github.benmanes.caffeine.cache.Caffeine
+import com.amazonaws.services.simplesystemsmanagement.model.GetParametersRequest
+import uk.nhs.nhsx.core.SystemClock
+import uk.nhs.nhsx.core.aws.ConfigurationCache
+import uk.nhs.nhsx.core.aws.ConfigurationLoadFailed
+import uk.nhs.nhsx.core.aws.LastKnownValueLoader
+import uk.nhs.nhsx.core.events.Events
+import uk.nhs.nhsx.core.events.PrintingJsonEvents
 import java.time.Duration
-import java.util.concurrent.Executors
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicReference
 import java.util.function.Function
 
+/**
+ * All parameters of an instance share one cache of raw values, refreshed in the background.
+ *
+ * Parameters are registered when they are declared (usually while the handler is constructed), the first lookup
+ * of any of them - or [preload] - fetches every registered parameter in batches through `GetParameters`. When a
+ * batch fails, the parameter being looked up is still loaded on its own.
+ */
 class AwsSsmParameters @JvmOverloads constructor(
     private val ssmClient: AWSSimpleSystemsManagement = AWSSimpleSystemsManagementClientBuilder.defaultClient(),
-    private val refreshInterval: Duration = Duration.ofMinutes(2)
+    refreshInterval: Duration = Duration.ofMinutes(2),
+    private val events: Events = PrintingJsonEvents(SystemClock.CLOCK)
 ) : Parameters {
+    private val registered = ConcurrentHashMap.newKeySet<ParameterName>()
+
+    private val cache = ConfigurationCache.refreshingAfter(refreshInterval)
+        .build(object : LastKnownValueLoader<ParameterName, String>(events) {
+            override fun load(key: ParameterName): String = getParameter(key)
+
+            override fun loadAll(keys: Set<ParameterName>): Map<ParameterName, String> = getParameters(keys)
+        })
+
     override fun <T> parameter(name: ParameterName, convert: Function<String, T>): Parameter<T> {
-        val loader = Caffeine.newBuilder()
-            .executor(executor)
-            .refreshAfterWrite(refreshInterval)
-            .build { key: ParameterName -> getParameter(key, convert) }
+        registered += name
+        val converted = AtomicReference<Pair<String, T>>()
 
         return Parameter {
             try {
-                loader[name] ?: error("No value loaded")
+                val raw = rawValue(name)
+                converted.get()
+                    ?.takeIf { it.first == raw }
+                    ?.second
+                    ?: convert.apply(raw).also { converted.set(raw to it) }
             } catch (e: Exception) {
                 throw RuntimeException(String.format("Unable to load parameter for %s", name), e)
             }
         }
     }
 
-    private fun <T> getParameter(name: ParameterName, convert: Function<String, T>): T {
-        val request = GetParameterRequest().withName(name.value)
-        val result = ssmClient.getParameter(request)
-        return convert.apply(result.parameter.value)
+    override fun preload() {
+        cache.getAll(registered)
+    }
+
+    private fun rawValue(name: ParameterName): String =
+        cache.getIfPresent(name)
+            ?: registeredValue(name)
+            ?: cache[name]
+            ?: error("No value loaded")
+
+    private fun registeredValue(name: ParameterName): String? = try {
+        cache.getAll(registered)[name]
+    } catch (e: Exception) {
+        events(ConfigurationLoadFailed(name.toString(), e.message ?: e.javaClass.simpleName))
+        null
     }
 
+    private fun getParameter(name: ParameterName): String =
+        ssmClient.getParameter(GetParameterRequest().withName(name.value)).parameter.value
+
+    private fun getParameters(names: Set<ParameterName>): Map<ParameterName, String> =
+        names.chunked(MAX_NAMES_PER_REQUEST)
+            .flatMap { batch ->
+                ssmClient.getParameters(GetParametersRequest().withNames(batch.map(ParameterName::value)))
+                    .parameters
+            }
+            .associate { ParameterName.of(it.name) to it.value }
+
     companion object {
-        private val executor = Executors.newCachedThreadPool()
+        private const val MAX_NAMES_PER_REQUEST = 10
+
+        /**
+         * one cache per container, shared by all handler dependencies
+         */
+        val shared: AwsSsmParameters by lazy { AwsSsmParameters() }
     }
 }
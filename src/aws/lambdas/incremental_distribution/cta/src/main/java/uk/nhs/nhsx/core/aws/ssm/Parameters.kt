@@ -7,6 +7,11 @@ import java.util.function.Function
 interface Parameters {
     fun <T> parameter(name: ParameterName, convert: Function<String, T>): Parameter<T>
 
+    /**
+     * loads all declared parameters ahead of their first lookup
+     */
+    fun preload() {}
+
     companion object {
         val positive = setOf("yes", "true", "enabled")
     }
@@ -2,4 +2,6 @@ package uk.nhs.nhsx.core.signature
 
 interface DatedSigner {
     fun sign(content: (SignatureDate) -> ByteArray): DatedSignature
+
+    fun signContent(content: (SignatureDate) -> SignableContent): DatedSignature = sign { content(it).toByteArray() }
 }
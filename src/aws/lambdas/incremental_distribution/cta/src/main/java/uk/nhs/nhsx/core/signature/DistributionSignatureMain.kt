@@ -40,7 +40,7 @@ object DistributionSignatureMain {
         sign(
             StandardSigningFactory(
                 SystemClock.CLOCK,
-                AwsSsmParameters(),
+                AwsSsmParameters.shared,
                 AWSKMSClientBuilder.defaultClient()
             ).datedSigner(
                 ParameterName.of(
@@ -57,7 +57,7 @@ object DistributionSignatureMain {
         source: ByteArraySource,
         output: PrintStream
     ) {
-        val signature = signer.sign(DistributionSignature(source))
+        val signature = signer.signContent(DistributionSignature(source))
 
         val signed = fromDatedSignature(signature).associateBy({ it.asS3MetaName() }, { it.value })
 
@@ -0,0 +1,63 @@
+package uk.nhs.nhsx.core.signature
+
+import com.amazonaws.services.kms.model.SigningAlgorithmSpec.ECDSA_SHA_256
+import uk.nhs.nhsx.core.exceptions.Defect
+import java.security.GeneralSecurityException
+import java.security.KeyFactory
+import java.security.PrivateKey
+import java.security.spec.PKCS8EncodedKeySpec
+import java.util.Base64
+import java.util.function.Supplier
+import java.security.Signature as JavaSignature
+
+/**
+ * Signs in-process with an EC private key instead of calling KMS.
+ *
+ * The output is the DER encoded ECDSA_SHA_256 signature KMS produces for the SHA-256 digest of the
+ * same content, so it works unchanged with [Signature.asJWSCompatible] and the signing headers.
+ */
+class LocalEcdsaSigner(
+    private val keyId: Supplier<KeyId>,
+    private val privateKey: Supplier<PrivateKey>
+) : Signer {
+
+    private val signatures = ThreadLocal.withInitial { JavaSignature.getInstance("SHA256withECDSA") }
+    private val digestSignatures = ThreadLocal.withInitial { JavaSignature.getInstance("NONEwithECDSA") }
+
+    override fun sign(bytes: ByteArray): Signature = signWith(signatures, bytes)
+
+    // NONEwithECDSA over the SHA-256 digest is the same signature as SHA256withECDSA over the content
+    override fun signContent(content: SignableContent): Signature = signWith(digestSignatures, content.sha256())
+
+    override fun keyId(): KeyId = keyId.get()
+
+    private fun signWith(signature: ThreadLocal<JavaSignature>, bytes: ByteArray): Signature {
+        val der = try {
+            signature.get().run {
+                initSign(privateKey.get())
+                update(bytes)
+                sign()
+            }
+        } catch (e: GeneralSecurityException) {
+            throw Defect("Failed to sign message", e)
+        }
+        return Signature(keyId.get(), ECDSA_SHA_256, der)
+    }
+
+    companion object {
+        /**
+         * reads an unencrypted PKCS#8 EC private key, PEM armoured or as bare Base64
+         */
+        fun privateKeyFromPem(pem: String): PrivateKey = try {
+            val base64 = pem.lineSequence()
+                .map(String::trim)
+                .filterNot { it.startsWith("-----") }
+                .joinToString("")
+            KeyFactory.getInstance("EC").generatePrivate(PKCS8EncodedKeySpec(Base64.getDecoder().decode(base64)))
+        } catch (e: GeneralSecurityException) {
+            throw Defect("Unable to read EC private key", e)
+        } catch (e: IllegalArgumentException) {
+            throw Defect("Unable to read EC private key", e)
+        }
+    }
+}
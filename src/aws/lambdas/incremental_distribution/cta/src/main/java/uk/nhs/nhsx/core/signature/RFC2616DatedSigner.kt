@@ -9,9 +9,17 @@ class RFC2616DatedSigner(private val clock: Clock, private val signer: Signer) :
     private val format = DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.ENGLISH)
 
     override fun sign(content: (SignatureDate) -> ByteArray): DatedSignature {
-        val instant = clock()
-        val date = format.format(instant.atZone(ZoneId.of("UTC")))
-        val signatureDate = SignatureDate(date, instant)
+        val signatureDate = signatureDate()
         return DatedSignature(signatureDate, signer.sign(content(signatureDate)))
     }
+
+    override fun signContent(content: (SignatureDate) -> SignableContent): DatedSignature {
+        val signatureDate = signatureDate()
+        return DatedSignature(signatureDate, signer.signContent(content(signatureDate)))
+    }
+
+    private fun signatureDate(): SignatureDate {
+        val instant = clock()
+        return SignatureDate(format.format(instant.atZone(ZoneId.of("UTC"))), instant)
+    }
 }
@@ -0,0 +1,40 @@
+package uk.nhs.nhsx.core.signature
+
+import uk.nhs.nhsx.core.exceptions.Defect
+import java.io.ByteArrayOutputStream
+import java.security.MessageDigest
+import java.security.NoSuchAlgorithmException
+
+/**
+ * Content to sign, kept as the parts it is made of (e.g. a date prefix and a payload).
+ *
+ * Backends signing a SHA-256 digest only ever feed the parts through a [MessageDigest], or use a digest
+ * already known to the producer, so the content is never copied into one array.
+ */
+class SignableContent private constructor(
+    private val parts: List<ByteArray>,
+    private val knownSha256: ByteArray?
+) {
+    constructor(vararg parts: ByteArray) : this(parts.toList(), null)
+
+    fun sha256(): ByteArray = knownSha256?.copyOf() ?: try {
+        MessageDigest.getInstance("SHA-256").run {
+            parts.forEach { update(it) }
+            digest()
+        }
+    } catch (e: NoSuchAlgorithmException) {
+        throw Defect("Failed to digest message", e)
+    }
+
+    fun toByteArray(): ByteArray = when (parts.size) {
+        1 -> parts.single()
+        else -> ByteArrayOutputStream(parts.sumOf { it.size }).use { out ->
+            parts.forEach { out.write(it) }
+            out.toByteArray()
+        }
+    }
+
+    companion object {
+        fun withSha256(content: ByteArray, sha256: ByteArray) = SignableContent(listOf(content), sha256.copyOf())
+    }
+}
@@ -2,4 +2,14 @@ package uk.nhs.nhsx.core.signature
 
 fun interface Signer {
     fun sign(bytes: ByteArray): Signature
+
+    /**
+     * Backends that sign a SHA-256 digest override this to sign [SignableContent.sha256] directly
+     */
+    fun signContent(content: SignableContent): Signature = sign(content.toByteArray())
+
+    /**
+     * The key signatures are made with, when the backend knows it without signing, otherwise null
+     */
+    fun keyId(): KeyId? = null
 }
@@ -0,0 +1,135 @@
+package uk.nhs.nhsx.core.signature
+
+import com.amazonaws.AmazonServiceException
+import com.amazonaws.retry.RetryUtils
+import uk.nhs.nhsx.core.Clock
+import uk.nhs.nhsx.core.LatencyPercentiles
+import uk.nhs.nhsx.core.events.Events
+import java.time.Duration
+import java.time.Instant
+import java.util.concurrent.ThreadLocalRandom
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
+
+/**
+ * Funnels the sign requests of all concurrent producers (e.g. the distribution ZIP pipelines) through one
+ * shared concurrency limit, so a batch keeps KMS busy without running into its request quota.
+ *
+ * The limit halves whenever a request is throttled and grows back by one with every successful request.
+ * Throttled requests are retried with jittered exponential backoff, other failures are rethrown straight away.
+ */
+class SigningCoordinator(
+    private val name: String,
+    private val events: Events,
+    private val clock: Clock,
+    private val maxConcurrency: Int = 10,
+    private val maxAttempts: Int = 5,
+    private val backoff: Duration = Duration.ofMillis(50),
+    private val isThrottled: (Exception) -> Boolean = { isThrottling(it) },
+    private val sleep: (Duration) -> Unit = { Thread.sleep(it.toMillis()) }
+) {
+    private val lock = ReentrantLock()
+    private val permitted = lock.newCondition()
+    private var limit = maxConcurrency
+    private var inFlight = 0
+    private var peakInFlight = 0
+    private var signed = 0
+    private var failed = 0
+    private var throttled = 0
+    private var latencies = mutableListOf<Long>()
+    private var firstRequest: Instant? = null
+
+    init {
+        require(maxConcurrency > 0) { "maxConcurrency needs to be greater than 0" }
+        require(maxAttempts > 0) { "maxAttempts needs to be greater than 0" }
+    }
+
+    fun coordinated(signer: Signer): Signer = object : Signer {
+        override fun sign(bytes: ByteArray) = coordinate { signer.sign(bytes) }
+        override fun signContent(content: SignableContent) = coordinate { signer.signContent(content) }
+        override fun keyId() = signer.keyId()
+    }
+
+    private fun coordinate(sign: () -> Signature): Signature {
+        val start = clock()
+        var attempt = 1
+        while (true) {
+            acquire(start)
+            var wasThrottled = false
+            try {
+                return sign().also { completed(start) }
+            } catch (e: Exception) {
+                wasThrottled = isThrottled(e)
+                if (!wasThrottled || attempt >= maxAttempts) {
+                    lock.withLock { failed++ }
+                    throw e
+                }
+            } finally {
+                release(wasThrottled)
+            }
+            events(SigningThrottled(name, attempt, lock.withLock { limit }))
+            sleep(backoffFor(attempt))
+            attempt++
+        }
+    }
+
+    private fun acquire(start: Instant) = lock.withLock {
+        while (inFlight >= limit) permitted.await()
+        inFlight++
+        peakInFlight = maxOf(peakInFlight, inFlight)
+        if (firstRequest == null) firstRequest = start
+    }
+
+    private fun release(wasThrottled: Boolean) = lock.withLock {
+        inFlight--
+        if (wasThrottled) {
+            throttled++
+            limit = maxOf(1, limit / 2)
+        } else {
+            limit = minOf(maxConcurrency, limit + 1)
+        }
+        permitted.signalAll()
+    }
+
+    private fun completed(start: Instant) = lock.withLock {
+        signed++
+        latencies.add(Duration.between(start, clock()).toMillis())
+    }
+
+    private fun backoffFor(attempt: Int): Duration {
+        val ceiling = backoff.toMillis() shl (attempt - 1)
+        return Duration.ofMillis(ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1))
+    }
+
+    /**
+     * the metrics since the previous summary
+     */
+    fun summary(): SigningSummary = lock.withLock {
+        val percentiles = LatencyPercentiles(latencies)
+        val elapsedMillis = firstRequest?.let { Duration.between(it, clock()).toMillis() } ?: 0L
+
+        SigningSummary(
+            name = name,
+            signed = signed,
+            failed = failed,
+            throttled = throttled,
+            peakConcurrency = peakInFlight,
+            signaturesPerSecond = if (elapsedMillis > 0) signed * 1000.0 / elapsedMillis else 0.0,
+            p50Millis = percentiles.percentile(50),
+            p90Millis = percentiles.percentile(90),
+            p99Millis = percentiles.percentile(99),
+            maxMillis = percentiles.maxMillis
+        ).also {
+            signed = 0
+            failed = 0
+            throttled = 0
+            peakInFlight = inFlight
+            latencies = mutableListOf()
+            firstRequest = null
+        }
+    }
+
+    companion object {
+        fun isThrottling(e: Exception) = e is AmazonServiceException && RetryUtils.isThrottlingException(e)
+    }
+}
@@ -0,0 +1,20 @@
+package uk.nhs.nhsx.core.signature
+
+import uk.nhs.nhsx.core.events.Event
+import uk.nhs.nhsx.core.events.EventCategory.Info
+import uk.nhs.nhsx.core.events.EventCategory.Warning
+
+data class SigningSummary(
+    val name: String,
+    val signed: Int,
+    val failed: Int,
+    val throttled: Int,
+    val peakConcurrency: Int,
+    val signaturesPerSecond: Double,
+    val p50Millis: Long,
+    val p90Millis: Long,
+    val p99Millis: Long,
+    val maxMillis: Long
+) : Event(Info)
+
+data class SigningThrottled(val name: String, val attempt: Int, val concurrencyLimit: Int) : Event(Warning)
@@ -6,6 +6,7 @@ import uk.nhs.nhsx.core.Environment.EnvironmentKey.Companion.bool
 import uk.nhs.nhsx.core.Environment.EnvironmentKey.Companion.string
 import uk.nhs.nhsx.core.Environment.EnvironmentKey.Companion.value
 import uk.nhs.nhsx.core.aws.s3.BucketName
+import uk.nhs.nhsx.core.aws.s3.ObjectKey
 import uk.nhs.nhsx.core.aws.ssm.ParameterName
 import java.time.Duration
 
@@ -20,7 +21,16 @@ data class BatchProcessingConfig(
     val zipSubmissionPeriodOffset: Duration,
     val loadSubmissionsThreadPoolSize: Int,
     val loadSubmissionsTimeout: Duration,
-    val maximalZipSignS3PutTime: Duration
+    val maximalZipSignS3PutTime: Duration,
+    val incrementalDistribution: Boolean,
+    val submissionIndexObjectKey: ObjectKey?,
+    val validSubmissionEventSampleRate: Double,
+    val workStealingDistribution: Boolean,
+    val pipelinedSubmissionLoading: Boolean,
+    val loadSubmissionsMaxInFlight: Int,
+    val shardedSubmissionListing: Boolean,
+    val partitionedSubmissionListing: Boolean,
+    val signingMaxConcurrency: Int?
 ) {
     companion object {
         private val ABORT_OUTSIDE_TIME_WINDOW = bool("ABORT_OUTSIDE_TIME_WINDOW")
@@ -34,6 +44,15 @@ data class BatchProcessingConfig(
         private val LOAD_SUBMISSIONS_TIMEOUT = EnvironmentKey.duration("LOAD_SUBMISSIONS_TIMEOUT")
         private val LOAD_SUBMISSIONS_THREAD_POOL_SIZE = EnvironmentKey.integer("LOAD_SUBMISSIONS_THREAD_POOL_SIZE")
         private val MAXIMAL_ZIP_SIGN_S3_PUT_TIME = EnvironmentKey.duration("MAXIMAL_ZIP_SIGN_S3_PUT_TIME")
+        private val INCREMENTAL_DISTRIBUTION = bool("INCREMENTAL_DISTRIBUTION")
+        private val SUBMISSION_INDEX_OBJECT_KEY = value("SUBMISSION_INDEX_OBJECT_KEY", ObjectKey)
+        private val VALID_SUBMISSION_EVENT_SAMPLE_RATE = EnvironmentKey.double("VALID_SUBMISSION_EVENT_SAMPLE_RATE")
+        private val WORK_STEALING_DISTRIBUTION = bool("WORK_STEALING_DISTRIBUTION")
+        private val PIPELINED_SUBMISSION_LOADING = bool("PIPELINED_SUBMISSION_LOADING")
+        private val LOAD_SUBMISSIONS_MAX_IN_FLIGHT = EnvironmentKey.integer("LOAD_SUBMISSIONS_MAX_IN_FLIGHT")
+        private val SHARDED_SUBMISSION_LISTING = bool("SHARDED_SUBMISSION_LISTING")
+        private val PARTITIONED_SUBMISSION_LISTING = bool("PARTITIONED_SUBMISSION_LISTING")
+        private val SIGNING_MAX_CONCURRENCY = EnvironmentKey.integer("SIGNING_MAX_CONCURRENCY")
 
         fun fromEnvironment(e: Environment) = BatchProcessingConfig(
             e.access.required(ABORT_OUTSIDE_TIME_WINDOW),
@@ -46,7 +65,16 @@ data class BatchProcessingConfig(
             e.access.defaulted(ZIP_SUBMISSION_PERIOD_OFFSET) { Duration.ofMinutes(-15) },
             e.access.defaulted(LOAD_SUBMISSIONS_THREAD_POOL_SIZE) { 15 },
             e.access.defaulted(LOAD_SUBMISSIONS_TIMEOUT) { Duration.ofMinutes(10) },
-            e.access.defaulted(MAXIMAL_ZIP_SIGN_S3_PUT_TIME) { Duration.ofMinutes(2) }
+            e.access.defaulted(MAXIMAL_ZIP_SIGN_S3_PUT_TIME) { Duration.ofMinutes(2) },
+            e.access.defaulted(INCREMENTAL_DISTRIBUTION) { false },
+            e.access.optional(SUBMISSION_INDEX_OBJECT_KEY).orElse(null),
+            e.access.defaulted(VALID_SUBMISSION_EVENT_SAMPLE_RATE) { 0.0 },
+            e.access.defaulted(WORK_STEALING_DISTRIBUTION) { false },
+            e.access.defaulted(PIPELINED_SUBMISSION_LOADING) { false },
+            e.access.defaulted(LOAD_SUBMISSIONS_MAX_IN_FLIGHT) { 64 },
+            e.access.defaulted(SHARDED_SUBMISSION_LISTING) { false },
+            e.access.defaulted(PARTITIONED_SUBMISSION_LISTING) { false },
+            e.access.optional(SIGNING_MAX_CONCURRENCY).orElse(null)
         )
     }
 }
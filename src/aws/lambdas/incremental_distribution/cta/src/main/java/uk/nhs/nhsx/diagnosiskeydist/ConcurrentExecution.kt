@@ -4,6 +4,7 @@ import uk.nhs.nhsx.core.Clock
 import uk.nhs.nhsx.core.events.Events
 import uk.nhs.nhsx.core.events.ExceptionThrown
 import uk.nhs.nhsx.core.events.InfoEvent
+import uk.nhs.nhsx.core.events.MetricsRegistry
 import uk.nhs.nhsx.core.handler.RequestContext
 import uk.nhs.nhsx.diagnosiskeydist.ConcurrentExecution.OnErrorHandler
 import java.time.Duration
@@ -19,7 +20,8 @@ class ConcurrentExecution(
     private val events: Events,
     private val clock: Clock,
     private val onErrorHandler: OnErrorHandler = SYSTEM_EXIT_ERROR_HANDLER,
-    threadPoolSize: Int = 15
+    threadPoolSize: Int = 15,
+    private val metrics: MetricsRegistry = MetricsRegistry.default
 ) : AutoCloseable {
     private val counter = AtomicInteger()
     private val start: Instant = clock()
@@ -30,7 +32,7 @@ class ConcurrentExecution(
         pool.execute {
             try {
                 RequestContext.assignAwsRequestId(existingRequestId)
-                runnable.run()
+                metrics.timed("TaskLatency", "Executor" to name) { runnable.run() }
                 counter.incrementAndGet()
             } catch (e: Exception) {
                 events(ExceptionThrown(e, "Error: $name. Terminating lambda (System.exit)."))
@@ -47,6 +49,7 @@ class ConcurrentExecution(
             pool.shutdownNow()
             throw IllegalStateException("Timed-out while waiting for executor service to shutdown")
         } else {
+            metrics.counter("TasksCompleted", "Executor" to name).add(counter.get().toLong())
             events(InfoEvent("Success: $name. Count=${counter.get()}. Duration=${Duration.between(start, clock())}"))
         }
     }
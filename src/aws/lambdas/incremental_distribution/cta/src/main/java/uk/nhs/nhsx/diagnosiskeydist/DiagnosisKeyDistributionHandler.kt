@@ -12,18 +12,31 @@ import uk.nhs.nhsx.core.Handler
 import uk.nhs.nhsx.core.ObjectKeyFilters
 import uk.nhs.nhsx.core.StandardSigningFactory
 import uk.nhs.nhsx.core.SystemClock
+import uk.nhs.nhsx.core.WarmUps
 import uk.nhs.nhsx.core.aws.cloudfront.AwsCloudFront
 import uk.nhs.nhsx.core.aws.cloudfront.AwsCloudFrontClient
 import uk.nhs.nhsx.core.aws.s3.AwsS3
 import uk.nhs.nhsx.core.aws.s3.AwsS3Client
+import uk.nhs.nhsx.core.aws.s3.Locator
+import uk.nhs.nhsx.core.aws.s3.ObjectKey
 import uk.nhs.nhsx.core.aws.ssm.AwsSsmParameters
+import uk.nhs.nhsx.core.aws.ssm.ParameterName
 import uk.nhs.nhsx.core.aws.ssm.Parameters
 import uk.nhs.nhsx.core.events.Event
 import uk.nhs.nhsx.core.events.Events
 import uk.nhs.nhsx.core.events.PrintingJsonEvents
+import uk.nhs.nhsx.core.events.SamplingEvents
 import uk.nhs.nhsx.core.handler.SchedulingHandler
+import uk.nhs.nhsx.core.signature.RFC2616DatedSigner
+import uk.nhs.nhsx.core.signature.Signer
+import uk.nhs.nhsx.core.signature.SigningCoordinator
 import uk.nhs.nhsx.diagnosiskeydist.keydistribution.UploadToS3KeyDistributor
+import uk.nhs.nhsx.diagnosiskeydist.s3.IndexedSubmissionRepository
+import uk.nhs.nhsx.diagnosiskeydist.s3.PipelinedSubmissionFromS3Repository
 import uk.nhs.nhsx.diagnosiskeydist.s3.SubmissionFromS3Repository
+import uk.nhs.nhsx.diagnosiskeydist.s3.SubmissionListing
+import uk.nhs.nhsx.diagnosiskeydist.s3.TimePartitionedSubmissionListing
+import uk.nhs.nhsx.diagnosiskeydist.s3.submissionSummaries
 
 /**
  * Scheduling strategy:
@@ -52,7 +65,7 @@ class DiagnosisKeyDistributionHandler(
         environment: Environment = Environment.fromSystem(),
         clock: Clock = SystemClock.CLOCK,
         events: Events = PrintingJsonEvents(clock),
-        parameters: Parameters = AwsSsmParameters(),
+        parameters: Parameters = AwsSsmParameters.shared,
         awsCloudFrontClient: AwsCloudFront = AwsCloudFrontClient(events, AmazonCloudFrontClientBuilder.defaultClient()),
         awsS3Client: AwsS3 = AwsS3Client(events),
         awsKmsClient: AWSKMS = AWSKMSClientBuilder.defaultClient()
@@ -60,7 +73,9 @@ class DiagnosisKeyDistributionHandler(
         clock,
         events,
         distributionService(environment, clock, events, parameters, awsCloudFrontClient, awsS3Client, awsKmsClient)
-    )
+    ) {
+        prime(WarmUps.configuration(parameters))
+    }
 
     override fun handler() = Handler<ScheduledEvent, Event> { _, _ ->
         try {
@@ -86,35 +101,84 @@ fun distributionService(
     val allowedPrefixes = environment.access.required(EnvironmentKey.strings("DIAGNOSIS_KEY_SUBMISSION_PREFIXES"))
     val submissionBucket = environment.access.required(EnvironmentKeys.SUBMISSION_BUCKET_NAME)
     val objectKeyFilter = ObjectKeyFilters.batched().withPrefixes(allowedPrefixes)
+    // the index only avoids listing the whole bucket when submissions are listed by time partition
+    val submissionListing = when {
+        batchProcessingConfig.partitionedSubmissionListing
+            || batchProcessingConfig.submissionIndexObjectKey != null -> TimePartitionedSubmissionListing(
+            ObjectKeyFilters.batched().listingShards(allowedPrefixes),
+            ObjectKeyFilters.mobileTestKitPrefixes,
+            clock
+        )
+        batchProcessingConfig.shardedSubmissionListing -> SubmissionListing.of(
+            ObjectKeyFilters.batched().listingShards(allowedPrefixes)
+        )
+        else -> null
+    }
 
-    val submissionRepository = SubmissionFromS3Repository(
-        awsS3Client,
-        objectKeyFilter,
-        submissionBucket,
-        loadSubmissionsTimeout,
-        submissionsThreadPoolSize,
-        events,
-        clock
-    )
+    val s3SubmissionRepository = when {
+        batchProcessingConfig.pipelinedSubmissionLoading -> PipelinedSubmissionFromS3Repository(
+            awsS3Client,
+            objectKeyFilter,
+            submissionBucket,
+            loadSubmissionsTimeout,
+            submissionsThreadPoolSize,
+            batchProcessingConfig.loadSubmissionsMaxInFlight,
+            submissionListing,
+            events,
+            clock
+        )
+        else -> SubmissionFromS3Repository(
+            awsS3Client,
+            objectKeyFilter,
+            submissionBucket,
+            loadSubmissionsTimeout,
+            submissionsThreadPoolSize,
+            submissionListing,
+            events,
+            clock
+        )
+    }
+
+    val submissionRepository = when (val indexObjectKey = batchProcessingConfig.submissionIndexObjectKey) {
+        null -> s3SubmissionRepository
+        else -> IndexedSubmissionRepository(
+            s3SubmissionRepository,
+            awsS3Client,
+            Locator.of(submissionBucket, indexObjectKey),
+            { from ->
+                awsS3Client.submissionSummaries(submissionBucket, submissionListing?.shards(from))
+                    .map { ObjectKey.of(it.key) }
+                    .filter(objectKeyFilter::test)
+                    .toSet()
+            },
+            events,
+            clock,
+            submissionFilter = objectKeyFilter
+        )
+    }
 
     val standardSigningFactory = StandardSigningFactory(clock, parameters, awsKmsClient)
+    val signingCoordinator = batchProcessingConfig.signingMaxConcurrency?.let {
+        SigningCoordinator("Distribution", events, clock, maxConcurrency = it)
+    }
+
+    fun signer(parameterName: ParameterName): Signer =
+        standardSigningFactory.signContentWithKeyFromParameter(parameterName)
+            .let { signingCoordinator?.coordinated(it) ?: it }
 
     return DistributionService(
         submissionRepository,
         ExposureProtobuf(environment.access.required(EnvironmentKey.string("MOBILE_APP_BUNDLE_ID"))),
         UploadToS3KeyDistributor(
             awsS3Client,
-            standardSigningFactory.datedSigner(
-                batchProcessingConfig.ssmMetaDataSigningKeyParameterName
-            )
-        ),
-        standardSigningFactory.signContentWithKeyFromParameter(
-            batchProcessingConfig.ssmAGSigningKeyParameterName
+            RFC2616DatedSigner(clock, signer(batchProcessingConfig.ssmMetaDataSigningKeyParameterName))
         ),
+        signer(batchProcessingConfig.ssmAGSigningKeyParameterName),
         awsCloudFrontClient,
         awsS3Client,
         batchProcessingConfig,
-        events,
-        clock
+        SamplingEvents(events, mapOf(ValidSubmission::class to batchProcessingConfig.validSubmissionEventSampleRate)),
+        clock,
+        signingCoordinator
     )
 }
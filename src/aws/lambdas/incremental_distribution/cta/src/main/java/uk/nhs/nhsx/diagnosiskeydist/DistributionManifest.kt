@@ -0,0 +1,138 @@
+package uk.nhs.nhsx.diagnosiskeydist
+
+import uk.nhs.nhsx.core.ContentType.Companion.APPLICATION_JSON
+import uk.nhs.nhsx.core.Json
+import uk.nhs.nhsx.core.Json.readJsonOrNull
+import uk.nhs.nhsx.core.aws.s3.AwsS3
+import uk.nhs.nhsx.core.aws.s3.BucketName
+import uk.nhs.nhsx.core.aws.s3.ByteArraySource.Companion.fromUtf8String
+import uk.nhs.nhsx.core.aws.s3.Locator
+import uk.nhs.nhsx.core.aws.s3.ObjectKey
+import uk.nhs.nhsx.core.exceptions.Defect
+import uk.nhs.nhsx.core.signature.KeyId
+import uk.nhs.nhsx.diagnosiskeydist.apispec.ZIPSubmissionPeriod
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.StoredTemporaryExposureKey
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.TemporaryExposureKeyBatch
+import java.nio.ByteBuffer
+import java.security.MessageDigest
+import java.security.NoSuchAlgorithmException
+import java.time.Duration
+import java.util.Arrays
+import java.util.Base64
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Inputs each distribution ZIP was generated from, keyed by ZIP path
+ */
+data class DistributionManifest(val periods: Map<String, PeriodManifest>) {
+    companion object {
+        /**
+         * outside of the distribution/ prefixes, so it is never served through CloudFront
+         */
+        const val MANIFEST_OBJECT_KEY = "manifest/distribution.json"
+
+        val EMPTY = DistributionManifest(emptyMap())
+    }
+}
+
+data class PeriodManifest(
+    val submissionObjectKeys: List<ObjectKey>,
+    val contentHash: String
+) {
+    companion object {
+        // bump whenever the export.bin layout or the hashed content changes, so all ZIPs get regenerated once
+        private const val FORMAT_VERSION = "4"
+
+        fun of(
+            submissionObjectKeys: List<ObjectKey>,
+            keys: List<StoredTemporaryExposureKey>,
+            period: ZIPSubmissionPeriod,
+            offset: Duration,
+            signingKey: KeyId?
+        ) = of(submissionObjectKeys, TemporaryExposureKeyBatch.of(keys), period, offset, signingKey)
+
+        fun of(
+            submissionObjectKeys: List<ObjectKey>,
+            keys: TemporaryExposureKeyBatch,
+            period: ZIPSubmissionPeriod,
+            offset: Duration,
+            signingKey: KeyId?
+        ) = PeriodManifest(
+            submissionObjectKeys.sortedBy(ObjectKey::value),
+            contentHash(keys, period, offset, signingKey)
+        )
+
+        /**
+         * keys are shuffled before distribution, so the hash is taken over a stable ordering. The signing key
+         * is part of the hash, so rotating it re-signs every ZIP
+         */
+        private fun contentHash(
+            keys: TemporaryExposureKeyBatch,
+            period: ZIPSubmissionPeriod,
+            offset: Duration,
+            signingKey: KeyId?
+        ): String {
+            val digest = newDigest()
+            digest.update("$FORMAT_VERSION:${signingKey?.value ?: "unknown"}:${period.zipPath()}:$offset:".toByteArray())
+            (0 until keys.size)
+                .map { keys.record(it) }
+                .sortedWith { a, b -> Arrays.compare(a, b) }
+                .forEach { digest.update(it) }
+            return Base64.getEncoder().encodeToString(digest.digest())
+        }
+
+        private fun TemporaryExposureKeyBatch.record(index: Int) =
+            ByteBuffer.allocate(1 + keyDataLength(index) + 4 * Int.SIZE_BYTES)
+                .put(keyDataLength(index).toByte())
+                .put(keyData, keyDataOffset(index), keyDataLength(index))
+                .putInt(rollingStartNumber(index))
+                .putInt(rollingPeriod(index))
+                .putInt(transmissionRisk(index))
+                .putInt(daysSinceOnset[index])
+                .array()
+
+        private fun newDigest() = try {
+            MessageDigest.getInstance("SHA-256")
+        } catch (e: NoSuchAlgorithmException) {
+            throw Defect("Unable to get message digest", e)
+        }
+    }
+}
+
+/**
+ * Tracks a single distribution run: decides which periods can be skipped and collects the manifest to store afterwards
+ */
+class IncrementalDistribution(
+    private val previous: DistributionManifest,
+    private val existingObjectKeys: Set<String>
+) {
+    private val periods = ConcurrentHashMap<String, PeriodManifest>()
+
+    fun isUnchanged(zipPath: String, manifest: PeriodManifest): Boolean =
+        zipPath in existingObjectKeys && previous.periods[zipPath]?.contentHash == manifest.contentHash
+
+    fun record(zipPath: String, manifest: PeriodManifest) {
+        periods[zipPath] = manifest
+    }
+
+    fun manifest() = DistributionManifest(periods.toSortedMap())
+}
+
+class DistributionManifestStore(
+    private val awsS3: AwsS3,
+    bucketName: BucketName
+) {
+    private val locator = Locator.of(bucketName, ObjectKey.of(DistributionManifest.MANIFEST_OBJECT_KEY))
+
+    /**
+     * a missing or unreadable manifest results in every ZIP being regenerated
+     */
+    fun load(): DistributionManifest = awsS3.getObject(locator)
+        ?.objectContent
+        ?.use { readJsonOrNull<DistributionManifest>(it.reader().readText()) }
+        ?: DistributionManifest.EMPTY
+
+    fun store(manifest: DistributionManifest) {
+        awsS3.upload(locator, APPLICATION_JSON, fromUtf8String(Json.toJson(manifest)))
+    }
+}
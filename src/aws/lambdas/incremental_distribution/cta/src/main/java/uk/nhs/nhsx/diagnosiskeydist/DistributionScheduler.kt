@@ -0,0 +1,137 @@
+package uk.nhs.nhsx.diagnosiskeydist
+
+import uk.nhs.nhsx.core.Clock
+import uk.nhs.nhsx.core.LatencyPercentiles
+import uk.nhs.nhsx.core.events.Events
+import uk.nhs.nhsx.core.events.ExceptionThrown
+import uk.nhs.nhsx.core.events.InfoEvent
+import uk.nhs.nhsx.core.events.MetricsRegistry
+import uk.nhs.nhsx.core.handler.RequestContext
+import java.time.Duration
+import java.time.Instant
+import java.util.concurrent.CancellationException
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicReference
+
+/**
+ * Runs the stages of all submitted pipelines on a single work-stealing pool.
+ *
+ * Pipelines are started in submission order, so callers submit the largest ones first. The first failing stage
+ * cancels all outstanding work and is rethrown from [close], instead of terminating the JVM.
+ */
+class DistributionScheduler(
+    private val name: String,
+    private val timeout: Duration,
+    private val events: Events,
+    private val clock: Clock,
+    parallelism: Int = 15,
+    private val metrics: MetricsRegistry = MetricsRegistry.default
+) : AutoCloseable {
+    private val start: Instant = clock()
+    private val pool = Executors.newWorkStealingPool(parallelism)
+    private val existingRequestId = RequestContext.awsRequestId()
+    private val pipelines = ConcurrentLinkedQueue<CompletableFuture<*>>()
+    private val latencies = ConcurrentHashMap<String, StageLatencies>()
+    private val failure = AtomicReference<Throwable>()
+    private val counter = AtomicInteger()
+
+    fun submit(pipeline: DistributionScheduler.() -> CompletableFuture<*>) {
+        if (failure.get() != null) return
+
+        val future = pipeline()
+        pipelines.add(future)
+        future.whenComplete { _, e ->
+            when (e) {
+                null -> counter.incrementAndGet()
+                is CancellationException -> Unit
+                else -> failed(e)
+            }
+        }
+        if (failure.get() != null) future.cancel(true)
+    }
+
+    fun <T> stage(stage: String, block: () -> T): CompletableFuture<T> =
+        CompletableFuture.supplyAsync({ timed(stage, block) }, pool)
+
+    fun <T, R> CompletableFuture<T>.thenStage(stage: String, block: (T) -> R): CompletableFuture<R> =
+        thenApplyAsync({ timed(stage) { block(it) } }, pool)
+
+    private fun <T> timed(stage: String, block: () -> T): T {
+        // only the last future of each pipeline is cancelled, so its earlier stages stop here
+        failure.get()?.let { throw CancellationException("$name failed, skipping $stage") }
+        RequestContext.assignAwsRequestId(existingRequestId)
+        val stageStart = clock()
+        try {
+            return block()
+        } finally {
+            val latency = Duration.between(stageStart, clock())
+            latencies.computeIfAbsent(stage) { StageLatencies() }.record(latency)
+            metrics.histogram("StageLatency", "Scheduler" to name, "Stage" to stage).record(latency)
+        }
+    }
+
+    private fun failed(e: Throwable) {
+        if (failure.compareAndSet(null, e.unwrapped())) {
+            events(ExceptionThrown(e.unwrapped(), "Error: $name. Cancelling outstanding work."))
+            pipelines.forEach { it.cancel(true) }
+        }
+    }
+
+    override fun close() {
+        try {
+            CompletableFuture.allOf(*pipelines.toTypedArray()).get(timeout.toMillis(), TimeUnit.MILLISECONDS)
+        } catch (e: TimeoutException) {
+            events(ExecutorTimedOutWaitingForShutdown)
+            failure.compareAndSet(null, e)
+            pipelines.forEach { it.cancel(true) }
+        } catch (e: ExecutionException) {
+            failed(e)
+        } catch (e: CancellationException) {
+            // a failing pipeline has cancelled the others, its cause is recorded in failure
+        } finally {
+            pool.shutdownNow()
+            latencies.toSortedMap().forEach { (stage, latencies) -> events(latencies.summary(name, stage)) }
+        }
+
+        failure.get()?.let { throw IllegalStateException("Failed: $name", it) }
+
+        metrics.counter("PipelinesCompleted", "Scheduler" to name).add(counter.get().toLong())
+        events(InfoEvent("Success: $name. Count=${counter.get()}. Duration=${Duration.between(start, clock())}"))
+    }
+
+    private fun Throwable.unwrapped(): Throwable = when (this) {
+        is ExecutionException, is CompletionException -> cause?.unwrapped() ?: this
+        else -> this
+    }
+}
+
+class StageLatencies {
+    private val samples = mutableListOf<Long>()
+
+    @Synchronized
+    fun record(duration: Duration) {
+        samples.add(duration.toMillis())
+    }
+
+    @Synchronized
+    fun summary(scheduler: String, stage: String): StageLatencySummary {
+        val latencies = LatencyPercentiles(samples)
+        return StageLatencySummary(
+            scheduler = scheduler,
+            stage = stage,
+            count = latencies.count,
+            p50Millis = latencies.percentile(50),
+            p90Millis = latencies.percentile(90),
+            p99Millis = latencies.percentile(99),
+            maxMillis = latencies.maxMillis
+        )
+    }
+}
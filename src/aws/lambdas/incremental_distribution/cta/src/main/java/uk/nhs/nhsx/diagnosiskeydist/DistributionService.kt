@@ -7,20 +7,20 @@ import uk.nhs.nhsx.core.aws.s3.BucketName
 import uk.nhs.nhsx.core.aws.s3.Locator
 import uk.nhs.nhsx.core.aws.s3.ObjectKey
 import uk.nhs.nhsx.core.events.Events
+import uk.nhs.nhsx.core.signature.SignableContent
 import uk.nhs.nhsx.core.signature.Signer
-import uk.nhs.nhsx.diagnosiskeydist.agspec.ENIntervalNumber
+import uk.nhs.nhsx.core.signature.SigningCoordinator
+import uk.nhs.nhsx.diagnosiskeydist.DistributionManifest.Companion.MANIFEST_OBJECT_KEY
 import uk.nhs.nhsx.diagnosiskeydist.apispec.DailyZIPSubmissionPeriod
 import uk.nhs.nhsx.diagnosiskeydist.apispec.DailyZIPSubmissionPeriod.Companion.DAILY_PATH_PREFIX
 import uk.nhs.nhsx.diagnosiskeydist.apispec.TwoHourlyZIPSubmissionPeriod
 import uk.nhs.nhsx.diagnosiskeydist.apispec.ZIPSubmissionPeriod
 import uk.nhs.nhsx.diagnosiskeydist.keydistribution.KeyDistributor
-import uk.nhs.nhsx.diagnosiskeydist.keydistribution.KeyFileUtility.writeToFile
-import uk.nhs.nhsx.diagnosiskeyssubmission.model.StoredTemporaryExposureKey
-import java.io.ByteArrayOutputStream
-import java.io.File
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.TemporaryExposureKeyBatch
 import java.time.Duration
 import java.time.Instant
 import java.time.temporal.ChronoUnit.DAYS
+import java.time.temporal.ChronoUnit.HOURS
 import java.util.Collections.synchronizedList
 
 /**
@@ -35,9 +35,11 @@ class DistributionService(
     private val awsS3: AwsS3,
     private val config: BatchProcessingConfig,
     private val events: Events,
-    private val clock: Clock
+    private val clock: Clock,
+    private val signingCoordinator: SigningCoordinator? = null
 ) {
     private val uploadedZipFileNames = synchronizedList(ArrayList<String>())
+    private val manifestStore = DistributionManifestStore(awsS3, config.zipBucketName)
 
     fun distributeKeys(now: Instant) {
         val window = DistributionServiceWindow(now, config.zipSubmissionPeriodOffset)
@@ -55,26 +57,66 @@ class DistributionService(
         }
 
         val allSubmissions = submissionRepository.loadAllSubmissions()
+        val existingObjectKeys = awsS3.objectSummaries(config.zipBucketName).map { it.key }.toList()
+        val incremental = when {
+            config.incrementalDistribution -> IncrementalDistribution(manifestStore.load(), existingObjectKeys.toSet())
+            else -> null
+        }
+        val buckets = ZipPeriodBuckets(allSubmissions, window, events)
+
         val daily = DailyZIPSubmissionPeriod.periodForSubmissionDate(now)
         val twoHourly = TwoHourlyZIPSubmissionPeriod.periodForSubmissionDate(now)
-        for (lastZipPeriod in listOf(daily, twoHourly)) {
-            ConcurrentExecution(
-                name = "Distribution: ${lastZipPeriod.javaClass.simpleName}",
-                timeout = config.maximalZipSignS3PutTime,
+        if (config.workStealingDistribution) {
+            DistributionScheduler(
+                name = "Distribution",
+                // the fixed pools below allow this for each of the two sequential blocks
+                timeout = config.maximalZipSignS3PutTime.multipliedBy(2),
                 events = events,
                 clock = clock,
-            ).use { pool ->
-                for (zipPeriod in lastZipPeriod.allPeriodsToGenerate()) {
-                    pool.execute { distributeSubmissions(allSubmissions, window, zipPeriod) }
+            ).use { scheduler ->
+                (daily.allPeriodsToGenerate() + twoHourly.allPeriodsToGenerate())
+                    .map { it to buckets.bucketFor(it) }
+                    .sortedByDescending { (_, bucket) -> bucket.validKeys.size }
+                    .forEach { (zipPeriod, bucket) ->
+                        scheduler.submit {
+                            stage("export") { exportFrom(bucket, window, zipPeriod, incremental) }
+                                .thenStage("sign") { export -> export?.let { sign(it) } }
+                                .thenStage("upload") { signed -> signed?.let { upload(it) } }
+                        }
+                    }
+            }
+        } else {
+            for (lastZipPeriod in listOf(daily, twoHourly)) {
+                ConcurrentExecution(
+                    name = "Distribution: ${lastZipPeriod.javaClass.simpleName}",
+                    timeout = config.maximalZipSignS3PutTime,
+                    events = events,
+                    clock = clock,
+                ).use { pool ->
+                    for (zipPeriod in lastZipPeriod.allPeriodsToGenerate()) {
+                        pool.execute { distributeSubmissions(buckets.bucketFor(zipPeriod), window, zipPeriod, incremental) }
+                    }
                 }
             }
         }
 
-        deleteOrReplaceZipFiles(config.zipBucketName, window)
+        if (incremental != null) uploadedZipFileNames.add(MANIFEST_OBJECT_KEY)
+
+        deleteOrReplaceZipFiles(config.zipBucketName, existingObjectKeys, window, incremental)
+
+        incremental?.let { manifestStore.store(it.manifest()) }
+
+        signingCoordinator?.let { events(it.summary()) }
+
         invalidateCloudFrontCaches()
     }
 
-    private fun deleteOrReplaceZipFiles(bucketName: BucketName, window: DistributionServiceWindow) {
+    private fun deleteOrReplaceZipFiles(
+        bucketName: BucketName,
+        existingObjectKeys: List<String>,
+        window: DistributionServiceWindow,
+        incremental: IncrementalDistribution?
+    ) {
         fun generateEmptyZipFor(
             objectKey: String,
             threshold: Instant,
@@ -82,7 +124,7 @@ class DistributionService(
         ) {
             val dailyInstant = DailyZIPSubmissionPeriod.parseOrNull(objectKey)
             if (dailyInstant != null && dailyInstant.isAfter(threshold)) {
-                distributeExposureKeys(listOf(), window, DailyZIPSubmissionPeriod(dailyInstant))
+                distributeExposureKeys(TemporaryExposureKeyBatch(0), listOf(), window, DailyZIPSubmissionPeriod(dailyInstant), incremental)
                 events(EmptyZipDistributed(objectKey))
             }
         }
@@ -91,8 +133,7 @@ class DistributionService(
             .truncatedTo(DAYS)
             .minus(Duration.ofDays(30))
 
-        awsS3.getObjectSummaries(bucketName)
-            .map { it.key }
+        existingObjectKeys
             .filterNot { uploadedZipFileNames.contains(it) }
             .forEach {
                 when {
@@ -114,80 +155,126 @@ class DistributionService(
     }
 
     private fun distributeSubmissions(
-        submissions: List<Submission>,
+        bucket: PeriodBucket,
         window: DistributionServiceWindow,
-        zipPeriod: ZIPSubmissionPeriod
+        zipPeriod: ZIPSubmissionPeriod,
+        incremental: IncrementalDistribution?
     ) {
-        distributeExposureKeys(validKeysFromSubmissions(submissions, window, zipPeriod), window, zipPeriod)
+        exportFrom(bucket, window, zipPeriod, incremental)?.let { sign(it) }?.let { upload(it) }
     }
 
+    private fun exportFrom(
+        bucket: PeriodBucket,
+        window: DistributionServiceWindow,
+        zipPeriod: ZIPSubmissionPeriod,
+        incremental: IncrementalDistribution?
+    ) = export(
+        validKeysFrom(bucket, zipPeriod),
+        bucket.submissions.map(Submission::objectKey),
+        window,
+        zipPeriod,
+        incremental
+    )
+
     private fun distributeExposureKeys(
-        temporaryExposureKeys: List<StoredTemporaryExposureKey>,
+        temporaryExposureKeys: TemporaryExposureKeyBatch,
+        submissionObjectKeys: List<ObjectKey>,
         window: DistributionServiceWindow,
-        zipPeriod: ZIPSubmissionPeriod
+        zipPeriod: ZIPSubmissionPeriod,
+        incremental: IncrementalDistribution?
     ) {
-        val binFile = File.createTempFile("export", ".bin")
-        val sigFile = File.createTempFile("export", ".sig")
-
-        try {
-            val binFileContent = generateExportFileContentFrom(temporaryExposureKeys, window, zipPeriod)
-            writeToFile(binFile, binFileContent)
+        export(temporaryExposureKeys, submissionObjectKeys, window, zipPeriod, incremental)?.let { sign(it) }?.let { upload(it) }
+    }
 
-            val sigFileContent = generateSigFileContentFrom(binFileContent)
-            writeToFile(sigFile, sigFileContent)
+    /**
+     * @return null, if the ZIP for `zipPeriod` is unchanged since the previous incremental distribution
+     */
+    private fun export(
+        temporaryExposureKeys: TemporaryExposureKeyBatch,
+        submissionObjectKeys: List<ObjectKey>,
+        window: DistributionServiceWindow,
+        zipPeriod: ZIPSubmissionPeriod,
+        incremental: IncrementalDistribution?
+    ): PeriodExport? {
+        val objectName = zipPeriod.zipPath()
 
-            val objectName = zipPeriod.zipPath()
+        if (incremental != null) {
+            val manifest = PeriodManifest.of(
+                submissionObjectKeys,
+                temporaryExposureKeys,
+                zipPeriod,
+                window.zipSubmissionPeriodOffset,
+                signer.keyId()
+            )
 
-            keyDistributor.distribute(config.zipBucketName, ObjectKey.of(objectName), binFile, sigFile)
+            incremental.record(objectName, manifest)
 
-            uploadedZipFileNames.add(objectName)
-        } finally {
-            listOf(binFile, sigFile).forEach(File::delete)
+            if (incremental.isUnchanged(objectName, manifest)) {
+                events(UnchangedZipSkipped(objectName))
+                uploadedZipFileNames.add(objectName)
+                return null
+            }
         }
+
+        return PeriodExport(objectName, generateExportFileContentFrom(temporaryExposureKeys, window, zipPeriod))
     }
 
-    private fun validKeysFromSubmissions(
-        submissions: List<Submission>,
-        window: DistributionServiceWindow,
-        zipPeriod: ZIPSubmissionPeriod,
-    ): List<StoredTemporaryExposureKey> {
-        val temporaryExposureKeys = mutableListOf<StoredTemporaryExposureKey>()
-        for (submission in submissions) {
-            if (zipPeriod.isCoveringSubmissionDate(submission.submissionDate, window.zipSubmissionPeriodOffset)) {
-                for (key in submission.payload.temporaryExposureKeys) {
-                    val enIntervalNumber = ENIntervalNumber(key.rollingStartNumber.toLong())
-                    if (enIntervalNumber.validUntil(window.zipExpirationExclusive())) {
-                        events(ValidSubmission(zipPeriod.zipPath(), submission.submissionDate, enIntervalNumber))
-                        temporaryExposureKeys.add(key)
-                    }
-                }
-            }
-        }
+    private fun sign(export: PeriodExport) = SignedPeriodExport(export, generateSigFileContentFrom(export.exportBin))
+
+    private fun upload(signed: SignedPeriodExport) {
+        val objectName = signed.export.objectName
+
+        keyDistributor.distribute(
+            config.zipBucketName,
+            ObjectKey.of(objectName),
+            signed.export.exportBin.content,
+            signed.sigFileContent
+        )
+
+        uploadedZipFileNames.add(objectName)
+    }
+
+    private class PeriodExport(val objectName: String, val exportBin: ExportBin)
+
+    private class SignedPeriodExport(val export: PeriodExport, val sigFileContent: ByteArray)
+
+    private fun validKeysFrom(
+        bucket: PeriodBucket,
+        zipPeriod: ZIPSubmissionPeriod
+    ): TemporaryExposureKeyBatch {
+        val zipPath = zipPeriod.zipPath()
+        bucket.validKeys.forEach { events(ValidSubmission(zipPath, it.submissionDate, it.enIntervalNumber)) }
+
+        events(
+            ValidSubmissions(
+                zipPath = zipPath,
+                keyCount = bucket.validKeys.size,
+                keysBySubmissionHour = bucket.validKeys
+                    .groupingBy { it.submissionDate.truncatedTo(HOURS).toString() }
+                    .eachCount()
+                    .toSortedMap(),
+                keysByEnIntervalNumber = bucket.validKeys
+                    .groupingBy { it.enIntervalNumber.enIntervalNumber }
+                    .eachCount()
+                    .toSortedMap()
+            )
+        )
 
         // Important: the keys must not be distributed in submission order for privacy reasons
-        temporaryExposureKeys.shuffle()
+        val temporaryExposureKeys = TemporaryExposureKeyBatch(bucket.validKeys.size)
+        bucket.validKeys.shuffled().forEach { temporaryExposureKeys.add(it.batch, it.index) }
         return temporaryExposureKeys
     }
 
     private fun generateExportFileContentFrom(
-        temporaryExposureKeys: List<StoredTemporaryExposureKey>,
+        temporaryExposureKeys: TemporaryExposureKeyBatch,
         window: DistributionServiceWindow,
         period: ZIPSubmissionPeriod
-    ): ByteArray {
-        val bout = ByteArrayOutputStream()
-        bout.write(EK_EXPORT_V1_HEADER.toByteArray())
-        bout.write(
-            exposureProtobuf.buildTemporaryExposureKeyExport(
-                temporaryExposureKeys,
-                period,
-                window.zipSubmissionPeriodOffset
-            ).toByteArray()
-        )
-        return bout.toByteArray()
-    }
+    ): ExportBin = exposureProtobuf.buildExportBin(temporaryExposureKeys, period, window.zipSubmissionPeriodOffset)
 
-    private fun generateSigFileContentFrom(binFileContent: ByteArray): ByteArray =
-        signer.sign(binFileContent)
+    // the digest was computed while building export.bin, so the content is not hashed again
+    private fun generateSigFileContentFrom(exportBin: ExportBin): ByteArray =
+        signer.signContent(SignableContent.withSha256(exportBin.content, exportBin.sha256))
             .let { exposureProtobuf.buildTEKSignatureList(it.asByteBuffer()) }
             .toByteArray()
 
@@ -6,14 +6,28 @@ import batchZipCreation.Exposure.TEKSignatureList
 import batchZipCreation.Exposure.TemporaryExposureKey
 import batchZipCreation.Exposure.TemporaryExposureKeyExport
 import com.google.protobuf.ByteString
+import com.google.protobuf.CodedOutputStream
+import com.google.protobuf.WireFormat.WIRETYPE_LENGTH_DELIMITED
+import uk.nhs.nhsx.core.exceptions.Defect
+import uk.nhs.nhsx.diagnosiskeydist.DistributionService.Companion.EK_EXPORT_V1_HEADER
 import uk.nhs.nhsx.diagnosiskeydist.apispec.ZIPSubmissionPeriod
 import uk.nhs.nhsx.diagnosiskeyssubmission.model.StoredTemporaryExposureKey
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.TemporaryExposureKeyBatch
+import java.io.ByteArrayOutputStream
 import java.nio.ByteBuffer
+import java.security.DigestOutputStream
+import java.security.MessageDigest
+import java.security.NoSuchAlgorithmException
 import java.time.Duration
 import java.util.Base64
 
 class ExposureProtobuf(private val mobileAppBundleId: String) {
 
+    private val signatureInfo by lazy { buildSignatureInfo() }
+
+    // export.bin grows to a few MB on peak days, so each distribution thread keeps its buffer between periods
+    private val buffers = ThreadLocal.withInitial { ByteArrayOutputStream(INITIAL_BUFFER_SIZE) }
+
     fun buildTEKSignatureList(byteBufferSignatureResult: ByteBuffer?): TEKSignatureList = TEKSignatureList
         .newBuilder()
         .addSignatures(
@@ -41,6 +55,75 @@ class ExposureProtobuf(private val mobileAppBundleId: String) {
         .addAllKeys(keys.map(::buildTemporaryExposureKey))
         .build()
 
+    /**
+     * Writes header and [TemporaryExposureKeyExport] straight to the wire format, without building
+     * the message tree, hashing the content as it goes.
+     *
+     * The output is byte-identical to [EK_EXPORT_V1_HEADER] followed by [buildTemporaryExposureKeyExport].
+     */
+    fun buildExportBin(
+        keys: List<StoredTemporaryExposureKey>,
+        period: ZIPSubmissionPeriod,
+        offset: Duration?
+    ): ExportBin = buildExportBin(TemporaryExposureKeyBatch.of(keys), period, offset)
+
+    /**
+     * Writes the key data straight from the batch, so keys are not decoded again for every period they are in
+     */
+    fun buildExportBin(
+        keys: TemporaryExposureKeyBatch,
+        period: ZIPSubmissionPeriod,
+        offset: Duration?
+    ): ExportBin {
+        val buffer = buffers.get().apply { reset() }
+        val digest = sha256()
+
+        DigestOutputStream(buffer, digest).let { out ->
+            out.write(EK_EXPORT_V1_HEADER_BYTES)
+            CodedOutputStream.newInstance(out, CODED_OUTPUT_BUFFER_SIZE).apply {
+                writeFixed64(1, period.startInclusive.plus(offset).epochSecond)
+                writeFixed64(2, period.endExclusive.plus(offset).epochSecond)
+                writeInt32(4, 1)
+                writeInt32(5, 1)
+                writeMessage(6, signatureInfo)
+                for (index in 0 until keys.size) writeTemporaryExposureKey(7, keys, index)
+                flush()
+            }
+        }
+
+        return ExportBin(buffer.toByteArray(), digest.digest())
+    }
+
+    private fun CodedOutputStream.writeTemporaryExposureKey(fieldNumber: Int, keys: TemporaryExposureKeyBatch, index: Int) {
+        val transmissionRisk = keys.transmissionRisk(index)
+        val rollingStartNumber = keys.rollingStartNumber(index)
+        val rollingPeriod = keys.rollingPeriod(index)
+        val daysSinceOnsetOfSymptoms = keys.daysSinceOnsetOfSymptoms(index) ?: 0
+        val keyDataLength = keys.keyDataLength(index)
+
+        writeTag(fieldNumber, WIRETYPE_LENGTH_DELIMITED)
+        writeUInt32NoTag(
+            CodedOutputStream.computeTagSize(1) +
+                CodedOutputStream.computeUInt32SizeNoTag(keyDataLength) +
+                keyDataLength +
+                CodedOutputStream.computeInt32Size(2, transmissionRisk) +
+                CodedOutputStream.computeInt32Size(3, rollingStartNumber) +
+                CodedOutputStream.computeInt32Size(4, rollingPeriod) +
+                CodedOutputStream.computeSInt32Size(6, daysSinceOnsetOfSymptoms)
+        )
+        writeByteArray(1, keys.keyData, keys.keyDataOffset(index), keyDataLength)
+        writeInt32(2, transmissionRisk)
+        writeInt32(3, rollingStartNumber)
+        writeInt32(4, rollingPeriod)
+        writeSInt32(6, daysSinceOnsetOfSymptoms)
+    }
+
+    private fun sha256() = try {
+        MessageDigest.getInstance("SHA-256")
+    } catch (e: NoSuchAlgorithmException) {
+        throw Defect("Unable to get message digest", e)
+    }
+
     private fun buildTemporaryExposureKey(tek: StoredTemporaryExposureKey) = TemporaryExposureKey
         .newBuilder()
         .setKeyData(ByteString.copyFrom(Base64.getDecoder().decode(tek.key)))
@@ -63,5 +146,13 @@ class ExposureProtobuf(private val mobileAppBundleId: String) {
         private const val SIGNATURE_ALGORITHM = "1.2.840.10045.4.3.2"
         private const val MOBILE_COUNTRY_CODE = "234"
         private const val VERIFICATION_KEY_VERSION = "v1"
+        private const val INITIAL_BUFFER_SIZE = 64 * 1024
+        private const val CODED_OUTPUT_BUFFER_SIZE = 8 * 1024
+        private val EK_EXPORT_V1_HEADER_BYTES = EK_EXPORT_V1_HEADER.toByteArray()
     }
 }
+
+/**
+ * Content of export.bin together with its SHA-256 digest
+ */
+class ExportBin(val content: ByteArray, val sha256: ByteArray)
@@ -1,6 +1,7 @@
 package uk.nhs.nhsx.diagnosiskeydist
 
 import uk.nhs.nhsx.core.Json.readJsonOrThrow
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.BinarySubmissionCodec
 import uk.nhs.nhsx.diagnosiskeyssubmission.model.StoredTemporaryExposureKeyPayload
 import java.io.InputStream
 
@@ -13,6 +14,15 @@ interface SubmissionRepository {
     ): List<Submission>
 
     companion object {
-        fun getTemporaryExposureKeys(input: InputStream?) = readJsonOrThrow<StoredTemporaryExposureKeyPayload>(input)
+        /**
+         * reads submissions stored in either format, see [uk.nhs.nhsx.diagnosiskeyssubmission.model.SubmissionObjectFormat]
+         */
+        fun getTemporaryExposureKeys(input: InputStream?): StoredTemporaryExposureKeyPayload {
+            val buffered = input?.buffered()
+            return when {
+                buffered != null && BinarySubmissionCodec.isBinary(buffered) -> BinarySubmissionCodec.decode(buffered)
+                else -> readJsonOrThrow(buffered)
+            }
+        }
     }
 }
@@ -0,0 +1,72 @@
+package uk.nhs.nhsx.diagnosiskeydist
+
+import uk.nhs.nhsx.core.events.Events
+import uk.nhs.nhsx.diagnosiskeydist.agspec.ENIntervalNumber
+import uk.nhs.nhsx.diagnosiskeydist.apispec.DailyZIPSubmissionPeriod
+import uk.nhs.nhsx.diagnosiskeydist.apispec.TwoHourlyZIPSubmissionPeriod
+import uk.nhs.nhsx.diagnosiskeydist.apispec.ZIPSubmissionPeriod
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.StoredTemporaryExposureKey
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.TemporaryExposureKeyBatch
+import uk.nhs.nhsx.keyfederation.InvalidTemporaryExposureKey
+import java.time.Instant
+
+/**
+ * Assigns every submission to the daily and two-hourly ZIP period covering it in a single pass,
+ * so generating a period only touches its own submissions and keys
+ */
+class ZipPeriodBuckets(submissions: List<Submission>, window: DistributionServiceWindow, events: Events) {
+    private val buckets = HashMap<ZIPSubmissionPeriod, PeriodBucket>()
+
+    init {
+        val offset = window.zipSubmissionPeriodOffset
+        val expiration = window.zipExpirationExclusive()
+
+        for (submission in submissions.sortedBy(Submission::submissionDate)) {
+            // key validity only depends on the window, so it is checked once rather than once per period,
+            // and the keys are decoded once rather than for every ZIP they end up in
+            val keys = TemporaryExposureKeyBatch.of(submission.payload.temporaryExposureKeys)
+            val validKeys = submission.payload.temporaryExposureKeys.mapIndexedNotNull { index, key ->
+                val enIntervalNumber = ENIntervalNumber(key.rollingStartNumber.toLong())
+                when {
+                    !enIntervalNumber.validUntil(expiration) -> null
+                    // key data that is not Base64 of fewer than 32 bytes cannot be exported
+                    !keys.hasKeyData(index) -> null.also { events(InvalidTemporaryExposureKey(key.key)) }
+                    else -> ValidKey(key, submission.submissionDate, enIntervalNumber, keys, index)
+                }
+            }
+
+            // a period covers [end + offset - length, end + offset), so shifting back by the offset yields its end date
+            val shifted = submission.submissionDate.minus(offset)
+            listOf(
+                DailyZIPSubmissionPeriod.periodForSubmissionDate(shifted),
+                TwoHourlyZIPSubmissionPeriod.periodForSubmissionDate(shifted)
+            ).forEach { buckets.getOrPut(it, ::PeriodBucket).add(submission, validKeys) }
+        }
+    }
+
+    fun bucketFor(period: ZIPSubmissionPeriod): PeriodBucket = buckets[period] ?: PeriodBucket()
+}
+
+class PeriodBucket {
+    private val _submissions = mutableListOf<Submission>()
+    private val _validKeys = mutableListOf<ValidKey>()
+
+    /**
+     * all covering submissions, including those without any valid key
+     */
+    val submissions: List<Submission> get() = _submissions
+    val validKeys: List<ValidKey> get() = _validKeys
+
+    internal fun add(submission: Submission, validKeys: List<ValidKey>) {
+        _submissions.add(submission)
+        _validKeys.addAll(validKeys)
+    }
+}
+
+data class ValidKey(
+    val key: StoredTemporaryExposureKey,
+    val submissionDate: Instant,
+    val enIntervalNumber: ENIntervalNumber,
+    val batch: TemporaryExposureKeyBatch,
+    val index: Int
+)
@@ -0,0 +1,91 @@
+package uk.nhs.nhsx.diagnosiskeydist.agspec
+
+import uk.nhs.nhsx.core.Clock
+import uk.nhs.nhsx.core.events.Events
+import uk.nhs.nhsx.diagnosiskeydist.agspec.ENIntervalNumber.Companion.MAX_DIAGNOSIS_KEY_AGE_DAYS
+import uk.nhs.nhsx.diagnosiskeydist.agspec.ENIntervalNumber.Companion.enIntervalNumberFromTimestamp
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.TemporaryExposureKeyBatch
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.TemporaryExposureKeyBatch.Companion.KEY_LENGTH
+import uk.nhs.nhsx.keyfederation.InvalidRollingPeriod
+import uk.nhs.nhsx.keyfederation.InvalidRollingStartNumber
+import uk.nhs.nhsx.keyfederation.InvalidTemporaryExposureKey
+import uk.nhs.nhsx.keyfederation.InvalidTransmissionRiskLevel
+import java.time.Duration
+
+/**
+ * The checks every temporary exposure key has to pass, whether it was submitted by the app or downloaded from the
+ * federation server, run over a whole [TemporaryExposureKeyBatch] at once.
+ *
+ * Each check is a branch-free loop over one primitive array, so the JIT can unroll and vectorise it. Only the keys
+ * that failed are visited again, to report the first check they failed in the order the checks used to run.
+ */
+class TemporaryExposureKeyValidator(
+    private val clock: Clock,
+    private val events: Events
+) {
+
+    /**
+     * @return for every key of the batch, whether it passed all checks
+     */
+    fun validate(batch: TemporaryExposureKeyBatch): BooleanArray {
+        val size = batch.size
+        val now = clock()
+        val latest = enIntervalNumberFromTimestamp(now).enIntervalNumber
+        val expiry = enIntervalNumberFromTimestamp(now.minus(Duration.ofDays(MAX_DIAGNOSIS_KEY_AGE_DAYS.toLong()))).enIntervalNumber
+
+        val rollingStartNumbers = batch.rollingStartNumbers
+        val rollingPeriods = batch.rollingPeriods
+        val transmissionRisks = batch.transmissionRisks
+        val keyDataValid = batch.keyDataValid
+        val failures = IntArray(size)
+
+        // in reverse order of precedence, so the first failed check is the one left behind
+        for (i in 0 until size) {
+            val risk = transmissionRisks[i]
+            failures[i] = if (risk < 0 || risk > 7) TRANSMISSION_RISK else VALID
+        }
+        for (i in 0 until size) {
+            val period = rollingPeriods[i]
+            failures[i] = if (period < 1 || period > 144) ROLLING_PERIOD else failures[i]
+        }
+        for (i in 0 until size) {
+            val start = rollingStartNumbers[i].toLong()
+            failures[i] = if (start + rollingPeriods[i] < expiry || start > latest) ROLLING_START_NUMBER else failures[i]
+        }
+        for (i in 0 until size) {
+            failures[i] = if (keyDataValid[i]) failures[i] else KEY_DATA
+        }
+
+        val valid = BooleanArray(size)
+        for (i in 0 until size) {
+            when (failures[i]) {
+                VALID -> valid[i] = true
+                KEY_DATA -> events(InvalidTemporaryExposureKey(batch.rejectedKey(i)))
+                ROLLING_START_NUMBER -> events(
+                    InvalidRollingStartNumber(now, rollingStartNumbers[i].toLong(), rollingPeriods[i])
+                )
+                ROLLING_PERIOD -> events(InvalidRollingPeriod(rollingPeriods[i]))
+                TRANSMISSION_RISK -> events(InvalidTransmissionRiskLevel(transmissionRisks[i]))
+            }
+        }
+        return valid
+    }
+
+    /**
+     * only checks that the key data is exactly [KEY_LENGTH] bytes, for keys that were validated when they were
+     * submitted and are uploaded to the federation server
+     */
+    fun validateKeyData(batch: TemporaryExposureKeyBatch) = BooleanArray(batch.size) { i ->
+        (batch.hasKeyData(i) && batch.keyDataLength(i) == KEY_LENGTH).also {
+            if (!it) events(InvalidTemporaryExposureKey(batch.rejectedKey(i) ?: batch.key(i)))
+        }
+    }
+
+    private companion object {
+        const val VALID = 0
+        const val KEY_DATA = 1
+        const val ROLLING_START_NUMBER = 2
+        const val ROLLING_PERIOD = 3
+        const val TRANSMISSION_RISK = 4
+    }
+}
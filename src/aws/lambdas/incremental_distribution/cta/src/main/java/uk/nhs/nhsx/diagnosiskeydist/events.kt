@@ -16,8 +16,30 @@ data class DistributionBatchWindow(
 
 data class EmptyZipDistributed(val name: String) : Event(Info)
 
+data class UnchangedZipSkipped(val name: String) : Event(Info)
+
 data class ValidSubmission(val zipPath: String, val submissionDate: Instant, val enIntervalNumber: ENIntervalNumber) : Event(Info)
 
+/**
+ * per-period summary of the keys distributed, emitted regardless of the [ValidSubmission] sample rate
+ */
+data class ValidSubmissions(
+    val zipPath: String,
+    val keyCount: Int,
+    val keysBySubmissionHour: Map<String, Int>,
+    val keysByEnIntervalNumber: Map<Long, Int>
+) : Event(Info)
+
+data class StageLatencySummary(
+    val scheduler: String,
+    val stage: String,
+    val count: Int,
+    val p50Millis: Long,
+    val p90Millis: Long,
+    val p99Millis: Long,
+    val maxMillis: Long
+) : Event(Info)
+
 object KeysDistributed : Event(Info) {
     override fun toString(): String = this::class.qualifiedName ?: "KeysDistributed"
 }
@@ -1,7 +1,7 @@
 package uk.nhs.nhsx.diagnosiskeydist.keydistribution
 
+import java.io.ByteArrayOutputStream
 import java.io.File
-import java.io.FileInputStream
 import java.io.FileOutputStream
 import java.util.zip.ZipEntry
 import java.util.zip.ZipOutputStream
@@ -10,24 +10,25 @@ object KeyFileUtility {
     private const val EXPORT_BIN = "export.bin"
     private const val EXPORT_SIG = "export.sig"
 
+    // distribution ZIPs are zipped on a fixed pool of worker threads, so each keeps its buffer between periods
+    private val zipBuffers = ThreadLocal.withInitial { ByteArrayOutputStream(64 * 1024) }
+
     fun writeToFile(file: File, fileContent: ByteArray) {
         FileOutputStream(file).use { it.write(fileContent) }
     }
 
-    fun zipFiles(zipFile: File, binFile: File, sigFile: File) {
-        FileOutputStream(zipFile).use {
-            ZipOutputStream(it).use { zipOut ->
-                addFileToZip(zipOut, EXPORT_BIN, binFile)
-                addFileToZip(zipOut, EXPORT_SIG, sigFile)
-            }
+    fun zip(binFileContent: ByteArray, sigFileContent: ByteArray): ByteArray {
+        val buffer = zipBuffers.get().apply { reset() }
+        ZipOutputStream(buffer).use { zipOut ->
+            addToZip(zipOut, EXPORT_BIN, binFileContent)
+            addToZip(zipOut, EXPORT_SIG, sigFileContent)
         }
+        return buffer.toByteArray()
     }
 
-    private fun addFileToZip(zipOut: ZipOutputStream, zipEntryName: String, zipEntryFile: File) {
-        FileInputStream(zipEntryFile).use { inputStream ->
-            val zipEntry = ZipEntry(zipEntryName)
-            zipOut.putNextEntry(zipEntry)
-            inputStream.copyTo(zipOut)
-        }
+    private fun addToZip(zipOut: ZipOutputStream, zipEntryName: String, zipEntryContent: ByteArray) {
+        zipOut.putNextEntry(ZipEntry(zipEntryName))
+        zipOut.write(zipEntryContent)
+        zipOut.closeEntry()
     }
 }
@@ -0,0 +1,113 @@
+package uk.nhs.nhsx.diagnosiskeydist.s3
+
+import uk.nhs.nhsx.core.Clock
+import uk.nhs.nhsx.core.ContentType
+import uk.nhs.nhsx.core.aws.s3.AwsS3
+import uk.nhs.nhsx.core.aws.s3.ByteArraySource
+import uk.nhs.nhsx.core.aws.s3.Locator
+import uk.nhs.nhsx.core.aws.s3.ObjectKey
+import uk.nhs.nhsx.core.events.Events
+import uk.nhs.nhsx.diagnosiskeydist.Submission
+import uk.nhs.nhsx.diagnosiskeydist.SubmissionRepository
+import uk.nhs.nhsx.diagnosiskeydist.agspec.ENIntervalNumber.Companion.MAX_DIAGNOSIS_KEY_AGE_DAYS
+import java.time.Duration
+import java.time.Instant
+import java.util.function.Predicate
+
+/**
+ * Keeps decoded submissions in a single binary index object, so a full load only has to fetch
+ * the submissions newer than the index checkpoint from the delegate.
+ *
+ * Calls restricting the result (federation upload batches) go straight to the delegate.
+ *
+ * The delegate is asked for submissions after the checkpoint only. That only saves listing the whole bucket when it
+ * lists by time partition, so the distribution handler always pairs the index with [TimePartitionedSubmissionListing].
+ * The index object must not be accepted by [submissionFilter], or it would be read back as a submission.
+ *
+ * Indexed submissions are never fetched again, so [storedObjectKeys] lists the submission objects still stored
+ * since a given time (a listing, without fetching any object) and indexed submissions deleted from the bucket
+ * are evicted.
+ */
+class IndexedSubmissionRepository(
+    private val delegate: SubmissionRepository,
+    private val awsS3: AwsS3,
+    private val indexLocator: Locator,
+    private val storedObjectKeys: (Instant) -> Set<ObjectKey>,
+    private val events: Events,
+    private val clock: Clock,
+    private val retention: Duration = Duration.ofDays(MAX_DIAGNOSIS_KEY_AGE_DAYS + 1L),
+    private val checkpointOverlap: Duration = Duration.ofMinutes(5),
+    submissionFilter: Predicate<ObjectKey> = Predicate { false }
+) : SubmissionRepository {
+
+    init {
+        require(!submissionFilter.test(indexLocator.key)) {
+            "submission index ${indexLocator.key} would be loaded as a submission"
+        }
+    }
+
+    override fun loadAllSubmissions(
+        minimalSubmissionTimeEpochMillisExclusive: Long,
+        limit: Int,
+        maxResults: Int
+    ): List<Submission> {
+        if (minimalSubmissionTimeEpochMillisExclusive != 0L || limit != Int.MAX_VALUE || maxResults != Int.MAX_VALUE) {
+            return delegate.loadAllSubmissions(minimalSubmissionTimeEpochMillisExclusive, limit, maxResults)
+        }
+
+        val start = clock()
+        val index = loadIndex()
+
+        // S3 lastModified only has second precision, so re-read a short overlap and de-duplicate by object key
+        val fresh = delegate.loadAllSubmissions(index.checkpoint.minus(checkpointOverlap).toEpochMilli())
+
+        val retainedFrom = start.minus(retention)
+        val retained = (index.submissions + fresh)
+            .associateBy(Submission::objectKey)
+            .values
+            .filter { it.submissionDate.isAfter(retainedFrom) }
+
+        // listed after loading the fresh submissions, so only objects deleted in the meantime are missing
+        val stored = storedObjectKeys(retainedFrom)
+        val merged = retained
+            .filter { it.objectKey in stored }
+            .sortedBy(Submission::submissionDate)
+
+        val checkpoint = fresh.maxOfOrNull(Submission::submissionDate)
+            ?.let { maxOf(it, index.checkpoint) }
+            ?: index.checkpoint
+
+        storeIndex(SubmissionIndex(checkpoint, merged))
+
+        events(
+            SubmissionIndexLoaded(
+                indexed = index.submissions.size,
+                fetched = fresh.size,
+                evicted = retained.size - merged.size,
+                total = merged.size,
+                checkpoint = checkpoint,
+                duration = Duration.between(start, clock())
+            )
+        )
+
+        return merged
+    }
+
+    private fun loadIndex(): SubmissionIndex = try {
+        awsS3.getObject(indexLocator)
+            ?.objectContent
+            ?.use(SubmissionIndexCodec::decode)
+            ?: SubmissionIndex.EMPTY
+    } catch (e: Exception) {
+        events(SubmissionIndexUnreadable(indexLocator, e.message ?: e.javaClass.simpleName))
+        SubmissionIndex.EMPTY
+    }
+
+    private fun storeIndex(index: SubmissionIndex) {
+        awsS3.upload(indexLocator, APPLICATION_OCTET_STREAM, ByteArraySource(SubmissionIndexCodec.encode(index)))
+    }
+
+    companion object {
+        private val APPLICATION_OCTET_STREAM = ContentType.of("application/octet-stream")
+    }
+}
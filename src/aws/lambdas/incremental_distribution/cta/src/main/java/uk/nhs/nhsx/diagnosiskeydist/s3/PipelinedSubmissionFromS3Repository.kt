@@ -0,0 +1,170 @@
+package uk.nhs.nhsx.diagnosiskeydist.s3
+
+import uk.nhs.nhsx.core.Clock
+import uk.nhs.nhsx.core.aws.s3.AwsS3
+import uk.nhs.nhsx.core.aws.s3.BucketName
+import uk.nhs.nhsx.core.aws.s3.Locator
+import uk.nhs.nhsx.core.aws.s3.ObjectKey
+import uk.nhs.nhsx.core.events.Events
+import uk.nhs.nhsx.core.events.MetricsRegistry
+import uk.nhs.nhsx.core.handler.RequestContext
+import uk.nhs.nhsx.diagnosiskeydist.StageLatencies
+import uk.nhs.nhsx.diagnosiskeydist.Submission
+import uk.nhs.nhsx.diagnosiskeydist.SubmissionRepository
+import uk.nhs.nhsx.diagnosiskeydist.SubmissionRepository.Companion.getTemporaryExposureKeys
+import java.time.Duration
+import java.time.Instant
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.Semaphore
+import java.util.concurrent.TimeUnit.MILLISECONDS
+import java.util.concurrent.TimeoutException
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicReference
+import java.util.concurrent.atomic.AtomicReferenceArray
+import java.util.function.Predicate
+
+/**
+ * Loads submissions through a bounded fetch stage (S3 I/O) feeding a parse stage (JSON).
+ *
+ * At most `maxInFlight` objects are being fetched or parsed at any time, which bounds the raw object bytes held
+ * at once. The whole listing is still collected before loading starts, as the limits are applied in last modified
+ * order, and every parsed submission is kept until all are returned. Results are written into their slot of a
+ * pre-sized array, in the same (last modified) order as the summaries, so no locking or final sort is needed.
+ */
+class PipelinedSubmissionFromS3Repository(
+    private val awsS3: AwsS3,
+    private val objectKeyFilter: Predicate<ObjectKey>,
+    private val submissionBucketName: BucketName,
+    private val loadSubmissionsTimeout: Duration,
+    private val fetchThreadPoolSize: Int,
+    private val maxInFlight: Int,
+    private val submissionListing: SubmissionListing? = null,
+    private val events: Events,
+    private val clock: Clock,
+    private val parseThreadPoolSize: Int = Runtime.getRuntime().availableProcessors(),
+    private val metrics: MetricsRegistry = MetricsRegistry.default
+) : SubmissionRepository {
+
+    override fun loadAllSubmissions(
+        minimalSubmissionTimeEpochMillisExclusive: Long,
+        limit: Int,
+        maxResults: Int
+    ): List<Submission> {
+        val start = clock()
+
+        val summaries = awsS3.submissionSummaries(
+            submissionBucketName,
+            submissionListing?.shards(Instant.ofEpochMilli(minimalSubmissionTimeEpochMillisExclusive))
+        )
+            .filter { objectKeyFilter.test(ObjectKey.of(it.key)) }
+            .filter { it.lastModified.time > minimalSubmissionTimeEpochMillisExclusive }
+            .toList()
+            .limit(limit, maxResults)
+
+        val results = AtomicReferenceArray<Submission>(summaries.size)
+        val inFlight = Semaphore(maxInFlight)
+        val currentInFlight = AtomicInteger()
+        val peakInFlight = AtomicInteger()
+        val missing = AtomicInteger()
+        val failure = AtomicReference<Throwable>()
+        val fetchLatencies = StageLatencies()
+        val parseLatencies = StageLatencies()
+        val requestId = RequestContext.awsRequestId()
+        val deadline = start.plus(loadSubmissionsTimeout)
+
+        val fetchPool = Executors.newFixedThreadPool(fetchThreadPoolSize)
+        val parsePool = Executors.newFixedThreadPool(parseThreadPoolSize)
+
+        fun <T> timed(latencies: StageLatencies, block: () -> T): T {
+            RequestContext.assignAwsRequestId(requestId)
+            val stageStart = clock()
+            try {
+                return block()
+            } finally {
+                latencies.record(Duration.between(stageStart, clock()))
+            }
+        }
+
+        try {
+            val pipelines = ArrayList<CompletableFuture<*>>(summaries.size)
+
+            for ((index, summary) in summaries.withIndex()) {
+                if (failure.get() != null) break
+                if (!inFlight.tryAcquire(deadline.remainingMillis(), MILLISECONDS)) throw TimeoutException()
+                peakInFlight.accumulateAndGet(currentInFlight.incrementAndGet()) { a, b -> maxOf(a, b) }
+
+                val objectKey = ObjectKey.of(summary.key)
+                pipelines += CompletableFuture
+                    .supplyAsync({
+                        timed(fetchLatencies) {
+                            awsS3.getObject(Locator.of(submissionBucketName, objectKey))
+                                ?.objectContent
+                                ?.use { it.readAllBytes() }
+                        }
+                    }, fetchPool)
+                    .thenApplyAsync({ bytes ->
+                        when (bytes) {
+                            null -> {
+                                missing.incrementAndGet()
+                                events(SubmissionMissing(submissionBucketName, summary.key))
+                            }
+                            else -> timed(parseLatencies) {
+                                results[index] = Submission(
+                                    submissionDate = summary.lastModified.toInstant(),
+                                    objectKey = objectKey,
+                                    payload = getTemporaryExposureKeys(bytes.inputStream())
+                                )
+                                events(SubmissionLoaded(submissionBucketName, summary.key))
+                            }
+                        }
+                    }, parsePool)
+                    .whenComplete { _, e ->
+                        currentInFlight.decrementAndGet()
+                        inFlight.release()
+                        if (e != null) failure.compareAndSet(null, e.unwrapped())
+                    }
+            }
+
+            CompletableFuture.allOf(*pipelines.toTypedArray()).get(deadline.remainingMillis(), MILLISECONDS)
+        } catch (e: TimeoutException) {
+            events(SubmissionLoadingTimedOut(submissionBucketName, loadSubmissionsTimeout))
+            failure.compareAndSet(null, e)
+        } catch (e: ExecutionException) {
+            failure.compareAndSet(null, e.unwrapped())
+        } finally {
+            fetchPool.shutdownNow()
+            parsePool.shutdownNow()
+        }
+
+        failure.get()?.let { throw IllegalStateException("Failed: LoadSubmissions", it) }
+
+        val submissions = ArrayList<Submission>(summaries.size - missing.get())
+        for (i in 0 until results.length()) results[i]?.let { submissions.add(it) }
+
+        metrics.gauge("SubmissionsPeakInFlight").set(peakInFlight.get().toLong())
+        events(fetchLatencies.summary("LoadSubmissions", "fetch"))
+        events(parseLatencies.summary("LoadSubmissions", "parse"))
+        events(
+            SubmissionLoadingCompleted(
+                bucket = submissionBucketName,
+                count = submissions.size,
+                missing = missing.get(),
+                maxInFlight = maxInFlight,
+                peakInFlight = peakInFlight.get(),
+                duration = Duration.between(start, clock())
+            )
+        )
+
+        return submissions
+    }
+
+    private fun Instant.remainingMillis() = maxOf(0L, Duration.between(clock(), this).toMillis())
+
+    private fun Throwable.unwrapped(): Throwable = when (this) {
+        is ExecutionException, is CompletionException -> cause?.unwrapped() ?: this
+        else -> this
+    }
+}
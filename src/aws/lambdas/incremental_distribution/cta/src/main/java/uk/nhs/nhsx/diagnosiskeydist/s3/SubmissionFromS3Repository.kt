@@ -4,8 +4,10 @@ import com.amazonaws.services.s3.model.S3ObjectSummary
 import uk.nhs.nhsx.core.Clock
 import uk.nhs.nhsx.core.aws.s3.AwsS3
 import uk.nhs.nhsx.core.aws.s3.BucketName
+import uk.nhs.nhsx.core.aws.s3.ListingShard
 import uk.nhs.nhsx.core.aws.s3.Locator
 import uk.nhs.nhsx.core.aws.s3.ObjectKey
+import uk.nhs.nhsx.core.aws.s3.ShardedObjectLister
 import uk.nhs.nhsx.core.events.Events
 import uk.nhs.nhsx.core.events.InfoEvent
 import uk.nhs.nhsx.diagnosiskeydist.ConcurrentExecution
@@ -13,6 +15,7 @@ import uk.nhs.nhsx.diagnosiskeydist.Submission
 import uk.nhs.nhsx.diagnosiskeydist.SubmissionRepository
 import uk.nhs.nhsx.diagnosiskeydist.SubmissionRepository.Companion.getTemporaryExposureKeys
 import java.time.Duration
+import java.time.Instant
 import java.util.*
 import java.util.Collections.synchronizedList
 import java.util.function.Predicate
@@ -23,6 +26,7 @@ class SubmissionFromS3Repository(
     private val submissionBucketName: BucketName,
     private val loadSubmissionsTimeout: Duration,
     private val loadSubmissionsThreadPoolSize: Int,
+    private val submissionListing: SubmissionListing? = null,
     private val events: Events,
     private val clock: Clock
 ) : SubmissionRepository {
@@ -35,9 +39,13 @@ class SubmissionFromS3Repository(
 
         val start = clock()
 
-        var summaries = awsS3.getObjectSummaries(submissionBucketName)
+        var summaries = awsS3.submissionSummaries(
+            submissionBucketName,
+            submissionListing?.shards(Instant.ofEpochMilli(minimalSubmissionTimeEpochMillisExclusive))
+        )
             .filter { objectKeyFilter.test(ObjectKey.of(it.key)) }
             .filter { it.lastModified.time > minimalSubmissionTimeEpochMillisExclusive }
+            .toList()
 
         summaries = summaries.limit(limit, maxResults)
 
@@ -84,6 +92,15 @@ class SubmissionFromS3Repository(
     }
 }
 
+/**
+ * lists the whole bucket page by page, or the given shards concurrently
+ */
+fun AwsS3.submissionSummaries(bucketName: BucketName, listingShards: List<ListingShard>?): Sequence<S3ObjectSummary> =
+    when (listingShards) {
+        null -> objectSummaries(bucketName)
+        else -> ShardedObjectLister(this).list(bucketName, listingShards).asSequence()
+    }
+
 fun List<S3ObjectSummary>.limit(limit: Int, maxResults: Int): List<S3ObjectSummary> {
     require(limit > 0) { "limit needs to be greater than 0" }
 
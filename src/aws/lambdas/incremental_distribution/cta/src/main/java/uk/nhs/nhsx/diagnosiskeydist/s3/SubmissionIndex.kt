@@ -0,0 +1,121 @@
+package uk.nhs.nhsx.diagnosiskeydist.s3
+
+import uk.nhs.nhsx.core.aws.s3.ObjectKey
+import uk.nhs.nhsx.diagnosiskeydist.Submission
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.StoredTemporaryExposureKey
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.StoredTemporaryExposureKeyPayload
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.IOException
+import java.io.InputStream
+import java.time.Instant
+import java.util.Base64
+
+/**
+ * Decoded submissions up to (and including) `checkpoint`, the latest submission date read from the bucket
+ */
+data class SubmissionIndex(
+    val checkpoint: Instant,
+    val submissions: List<Submission>
+) {
+    companion object {
+        val EMPTY = SubmissionIndex(Instant.EPOCH, emptyList())
+    }
+}
+
+/**
+ * Binary segment layout (all numbers big-endian):
+ *
+ * ```
+ * "SIDX" version:int checkpoint:long count:int
+ *   [objectKey:utf submissionDate:long keyCount:int
+ *     [flags:byte key rollingStartNumber:int rollingPeriod:int transmissionRisk:int daysSinceOnsetOfSymptoms:int?]*]*
+ * ```
+ *
+ * Keys are stored as their decoded bytes whenever the Base64 form can be reproduced exactly, otherwise as utf.
+ */
+object SubmissionIndexCodec {
+    private const val MAGIC = 0x53494458 // SIDX
+    private const val VERSION = 1
+
+    private const val FLAG_RAW_KEY = 1
+    private const val FLAG_DAYS_SINCE_ONSET = 2
+
+    private val encoder = Base64.getEncoder()
+    private val decoder = Base64.getDecoder()
+
+    fun encode(index: SubmissionIndex): ByteArray = ByteArrayOutputStream().use { bytes ->
+        DataOutputStream(bytes).use { out ->
+            out.writeInt(MAGIC)
+            out.writeInt(VERSION)
+            out.writeLong(index.checkpoint.toEpochMilli())
+            out.writeInt(index.submissions.size)
+            index.submissions.forEach { out.writeSubmission(it) }
+        }
+        bytes.toByteArray()
+    }
+
+    fun decode(input: InputStream): SubmissionIndex = DataInputStream(input.buffered()).let { data ->
+        if (data.readInt() != MAGIC) throw IOException("Not a submission index")
+        val version = data.readInt()
+        if (version != VERSION) throw IOException("Unsupported submission index version $version")
+        val checkpoint = Instant.ofEpochMilli(data.readLong())
+        val count = data.readInt()
+        SubmissionIndex(checkpoint, List(count) { data.readSubmission() })
+    }
+
+    private fun DataOutputStream.writeSubmission(submission: Submission) {
+        writeUTF(submission.objectKey.value)
+        writeLong(submission.submissionDate.toEpochMilli())
+        val keys = submission.payload.temporaryExposureKeys
+        writeInt(keys.size)
+        keys.forEach { writeKey(it) }
+    }
+
+    private fun DataInputStream.readSubmission(): Submission {
+        val objectKey = ObjectKey.of(readUTF())
+        val submissionDate = Instant.ofEpochMilli(readLong())
+        val keyCount = readInt()
+        return Submission(submissionDate, objectKey, StoredTemporaryExposureKeyPayload(List(keyCount) { readKey() }))
+    }
+
+    private fun DataOutputStream.writeKey(key: StoredTemporaryExposureKey) {
+        val raw = rawKeyOrNull(key.key)
+        var flags = 0
+        if (raw != null) flags = flags or FLAG_RAW_KEY
+        if (key.daysSinceOnsetOfSymptoms != null) flags = flags or FLAG_DAYS_SINCE_ONSET
+        writeByte(flags)
+        if (raw != null) {
+            writeByte(raw.size)
+            write(raw)
+        } else {
+            writeUTF(key.key)
+        }
+        writeInt(key.rollingStartNumber)
+        writeInt(key.rollingPeriod)
+        writeInt(key.transmissionRisk)
+        key.daysSinceOnsetOfSymptoms?.let { writeInt(it) }
+    }
+
+    private fun DataInputStream.readKey(): StoredTemporaryExposureKey {
+        val flags = readUnsignedByte()
+        val key = when {
+            flags and FLAG_RAW_KEY != 0 -> ByteArray(readUnsignedByte()).also { readFully(it) }.let(encoder::encodeToString)
+            else -> readUTF()
+        }
+        return StoredTemporaryExposureKey(
+            key = key,
+            rollingStartNumber = readInt(),
+            rollingPeriod = readInt(),
+            transmissionRisk = readInt(),
+            daysSinceOnsetOfSymptoms = if (flags and FLAG_DAYS_SINCE_ONSET != 0) readInt() else null
+        )
+    }
+
+    private fun rawKeyOrNull(key: String) = try {
+        decoder.decode(key).takeIf { it.size <= 255 && encoder.encodeToString(it) == key }
+    } catch (e: IllegalArgumentException) {
+        null
+    }
+}
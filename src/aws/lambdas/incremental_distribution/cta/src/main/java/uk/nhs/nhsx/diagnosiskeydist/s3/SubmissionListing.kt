@@ -0,0 +1,52 @@
+package uk.nhs.nhsx.diagnosiskeydist.s3
+
+import uk.nhs.nhsx.core.Clock
+import uk.nhs.nhsx.core.aws.s3.ListingShard
+import uk.nhs.nhsx.core.aws.s3.PartitionedObjectKeyNameProvider.Companion.dayPartitionPrefixes
+import uk.nhs.nhsx.diagnosiskeydist.agspec.ENIntervalNumber.Companion.MAX_DIAGNOSIS_KEY_AGE_DAYS
+import java.time.Duration
+import java.time.Instant
+
+/**
+ * Decides which shards of the submission bucket need listing to find the submissions newer than a given time
+ */
+fun interface SubmissionListing {
+    fun shards(minimalSubmissionTimeExclusive: Instant): List<ListingShard>
+
+    companion object {
+        fun of(shards: List<ListingShard>) = SubmissionListing { shards }
+    }
+}
+
+/**
+ * Lists only the days of hour partitions (see [uk.nhs.nhsx.core.aws.s3.PartitionedObjectKeyNameProvider]) of the
+ * `partitionedPrefixes` which can hold submissions newer than the requested time, plus the objects directly
+ * under those prefixes written before partitioning was enabled. Other shards are listed as they are.
+ *
+ * Listing a day at a time takes one LIST call per day and prefix instead of one per hour, at the cost of listing
+ * the earlier hours of the first day too. Those are dropped by their last modified time like any other.
+ *
+ * Partitions are named after the time the key was generated, which is shortly before the object is last
+ * modified, so one extra hour is listed before the requested time. Nothing older than `retention` is listed.
+ */
+class TimePartitionedSubmissionListing(
+    private val shards: List<ListingShard>,
+    private val partitionedPrefixes: List<String>,
+    private val clock: Clock,
+    private val retention: Duration = Duration.ofDays(MAX_DIAGNOSIS_KEY_AGE_DAYS + 1L)
+) : SubmissionListing {
+
+    override fun shards(minimalSubmissionTimeExclusive: Instant): List<ListingShard> {
+        val now = clock()
+        val from = maxOf(minimalSubmissionTimeExclusive, now.minus(retention)).minus(Duration.ofHours(1))
+        val partitions = dayPartitionPrefixes(from, now)
+
+        return shards.flatMap { shard ->
+            when (shard.prefix) {
+                in partitionedPrefixes -> listOf(ListingShard(shard.prefix, rootOnly = true)) +
+                    partitions.map { ListingShard(shard.prefix + it) }
+                else -> listOf(shard)
+            }
+        }
+    }
+}
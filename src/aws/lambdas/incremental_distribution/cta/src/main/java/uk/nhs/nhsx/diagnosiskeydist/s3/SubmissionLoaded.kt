@@ -1,9 +1,35 @@
 package uk.nhs.nhsx.diagnosiskeydist.s3
 
 import uk.nhs.nhsx.core.aws.s3.BucketName
+import uk.nhs.nhsx.core.aws.s3.Locator
 import uk.nhs.nhsx.core.events.Event
+import uk.nhs.nhsx.core.events.EventCategory.Error
 import uk.nhs.nhsx.core.events.EventCategory.Info
 import uk.nhs.nhsx.core.events.EventCategory.Warning
+import java.time.Duration
+import java.time.Instant
 
 data class SubmissionLoaded(val bucket: BucketName, val objectKey: String) : Event(Info)
 data class SubmissionMissing(val bucket: BucketName, val objectKey: String) : Event(Warning)
+
+data class SubmissionLoadingCompleted(
+    val bucket: BucketName,
+    val count: Int,
+    val missing: Int,
+    val maxInFlight: Int,
+    val peakInFlight: Int,
+    val duration: Duration
+) : Event(Info)
+
+data class SubmissionLoadingTimedOut(val bucket: BucketName, val timeout: Duration) : Event(Error)
+
+data class SubmissionIndexLoaded(
+    val indexed: Int,
+    val fetched: Int,
+    val evicted: Int,
+    val total: Int,
+    val checkpoint: Instant,
+    val duration: Duration
+) : Event(Info)
+
+data class SubmissionIndexUnreadable(val locator: Locator, val message: String) : Event(Warning)
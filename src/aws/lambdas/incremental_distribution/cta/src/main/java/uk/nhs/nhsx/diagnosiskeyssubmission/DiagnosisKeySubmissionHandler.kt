@@ -4,6 +4,7 @@ import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder
 import com.amazonaws.services.kms.AWSKMSClientBuilder
 import uk.nhs.nhsx.core.Clock
 import uk.nhs.nhsx.core.Environment
+import uk.nhs.nhsx.core.Environment.EnvironmentKey
 import uk.nhs.nhsx.core.EnvironmentKeys.SUBMISSIONS_TOKENS_TABLE
 import uk.nhs.nhsx.core.EnvironmentKeys.SUBMISSION_STORE
 import uk.nhs.nhsx.core.HttpResponses.ok
@@ -11,6 +12,7 @@ import uk.nhs.nhsx.core.Json
 import uk.nhs.nhsx.core.RandomUUID
 import uk.nhs.nhsx.core.StandardSigningFactory
 import uk.nhs.nhsx.core.SystemClock
+import uk.nhs.nhsx.core.WarmUps
 import uk.nhs.nhsx.core.auth.ApiName.Health
 import uk.nhs.nhsx.core.auth.ApiName.Mobile
 import uk.nhs.nhsx.core.auth.Authenticator
@@ -21,6 +23,7 @@ import uk.nhs.nhsx.core.aws.dynamodb.DynamoDBUtils
 import uk.nhs.nhsx.core.aws.s3.AwsS3
 import uk.nhs.nhsx.core.aws.s3.AwsS3Client
 import uk.nhs.nhsx.core.aws.s3.ObjectKeyNameProvider
+import uk.nhs.nhsx.core.aws.s3.PartitionedObjectKeyNameProvider
 import uk.nhs.nhsx.core.aws.s3.UniqueObjectKeyNameProvider
 import uk.nhs.nhsx.core.aws.ssm.AwsSsmParameters
 import uk.nhs.nhsx.core.events.DiagnosisKeySubmission
@@ -36,6 +39,7 @@ import uk.nhs.nhsx.core.routing.Routing.routes
 import uk.nhs.nhsx.core.routing.authorisedBy
 import uk.nhs.nhsx.core.routing.withSignedResponses
 import uk.nhs.nhsx.diagnosiskeyssubmission.model.ClientTemporaryExposureKeysPayload
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.SubmissionObjectFormat
 
 class DiagnosisKeySubmissionHandler @JvmOverloads constructor(
     environment: Environment = Environment.fromSystem(),
@@ -45,12 +49,12 @@ class DiagnosisKeySubmissionHandler @JvmOverloads constructor(
     healthAuthenticator: Authenticator = awsAuthentication(Health, events),
     signer: ResponseSigner = StandardSigningFactory(
         clock,
-        AwsSsmParameters(),
+        AwsSsmParameters.shared,
         AWSKMSClientBuilder.defaultClient()
     ).signResponseWithKeyGivenInSsm(environment, events),
     awsS3: AwsS3 = AwsS3Client(events),
     awsDynamoClient: AwsDynamoClient = DynamoDBUtils(AmazonDynamoDBClientBuilder.defaultClient()),
-    objectKeyNameProvider: ObjectKeyNameProvider = UniqueObjectKeyNameProvider(clock, RandomUUID)
+    objectKeyNameProvider: ObjectKeyNameProvider = submissionObjectKeyNameProvider(environment, clock)
 ) : RoutingHandler() {
 
     private fun diagnosisKeysSubmissionService(
@@ -67,9 +71,18 @@ class DiagnosisKeySubmissionHandler @JvmOverloads constructor(
         tableName = environment.access.required(SUBMISSIONS_TOKENS_TABLE),
         bucketName = environment.access.required(SUBMISSION_STORE),
         clock = clock,
-        events = events
+        events = events,
+        objectFormat = SubmissionObjectFormat.fromEnvironment(environment)
     )
 
+    init {
+        prime(
+            events,
+            WarmUps.responseSigning(signer),
+            WarmUps.storage(awsS3, environment.access.required(SUBMISSION_STORE))
+        )
+    }
+
     override fun handler(): ApiGatewayHandler = handler
 
     private val handler = createHandler(
@@ -88,6 +101,19 @@ class DiagnosisKeySubmissionHandler @JvmOverloads constructor(
         )
     )
 
+    companion object {
+        private val PARTITIONED_SUBMISSION_KEYS = EnvironmentKey.bool("PARTITIONED_SUBMISSION_KEYS")
+
+        /**
+         * partitioned keys (`mobile/<test kit>/yyyy/MM/dd/HH/...`) let the batch lambdas list only recent hours
+         */
+        private fun submissionObjectKeyNameProvider(environment: Environment, clock: Clock): ObjectKeyNameProvider = when {
+            environment.access.defaulted(PARTITIONED_SUBMISSION_KEYS) { false } ->
+                PartitionedObjectKeyNameProvider(clock, RandomUUID)
+            else -> UniqueObjectKeyNameProvider(clock, RandomUUID)
+        }
+    }
+
     private fun createHandler(
         events: Events,
         environment: Environment,
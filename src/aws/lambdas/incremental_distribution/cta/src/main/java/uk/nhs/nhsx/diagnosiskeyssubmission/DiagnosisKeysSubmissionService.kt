@@ -2,30 +2,25 @@ package uk.nhs.nhsx.diagnosiskeyssubmission
 
 import com.amazonaws.services.dynamodbv2.document.Item
 import uk.nhs.nhsx.core.Clock
-import uk.nhs.nhsx.core.ContentType.Companion.APPLICATION_JSON
-import uk.nhs.nhsx.core.Json.toJson
 import uk.nhs.nhsx.core.aws.dynamodb.AwsDynamoClient
 import uk.nhs.nhsx.core.aws.dynamodb.TableName
 import uk.nhs.nhsx.core.aws.s3.AwsS3
 import uk.nhs.nhsx.core.aws.s3.BucketName
-import uk.nhs.nhsx.core.aws.s3.ByteArraySource.Companion.fromUtf8String
 import uk.nhs.nhsx.core.aws.s3.Locator
 import uk.nhs.nhsx.core.aws.s3.ObjectKeyNameProvider
 import uk.nhs.nhsx.core.events.Events
-import uk.nhs.nhsx.diagnosiskeydist.agspec.RollingStartNumber.isRollingStartNumberValid
+import uk.nhs.nhsx.diagnosiskeydist.agspec.TemporaryExposureKeyValidator
 import uk.nhs.nhsx.diagnosiskeyssubmission.model.ClientTemporaryExposureKey
 import uk.nhs.nhsx.diagnosiskeyssubmission.model.ClientTemporaryExposureKeysPayload
 import uk.nhs.nhsx.diagnosiskeyssubmission.model.StoredTemporaryExposureKey
 import uk.nhs.nhsx.diagnosiskeyssubmission.model.StoredTemporaryExposureKeyPayload
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.SubmissionObjectFormat
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.TemporaryExposureKeyBatch
 import uk.nhs.nhsx.diagnosiskeyssubmission.model.ValidatedTemporaryExposureKeysPayload
 import uk.nhs.nhsx.domain.TestKit
 import uk.nhs.nhsx.domain.TestKit.LAB_RESULT
 import uk.nhs.nhsx.domain.TestKit.RAPID_SELF_REPORTED
-import uk.nhs.nhsx.keyfederation.InvalidRollingPeriod
-import uk.nhs.nhsx.keyfederation.InvalidRollingStartNumber
-import uk.nhs.nhsx.keyfederation.InvalidTemporaryExposureKey
 import uk.nhs.nhsx.keyfederation.InvalidTestKitInPayload
-import uk.nhs.nhsx.keyfederation.InvalidTransmissionRiskLevel
 import java.util.*
 
 class DiagnosisKeysSubmissionService(
@@ -35,17 +30,21 @@ class DiagnosisKeysSubmissionService(
     private val tableName: TableName,
     private val bucketName: BucketName,
     private val clock: Clock,
-    private val events: Events
+    private val events: Events,
+    private val objectFormat: SubmissionObjectFormat = SubmissionObjectFormat.JSON
 ) {
+    private val validator = TemporaryExposureKeyValidator(clock, events)
+
     fun acceptTemporaryExposureKeys(payload: ClientTemporaryExposureKeysPayload) =
         allValidMaybe(payload)?.also(::acceptPayload)
 
     private fun allValidMaybe(payload: ClientTemporaryExposureKeysPayload): ValidatedTemporaryExposureKeysPayload? {
         with(payload) { if (temporaryExposureKeys.size > MAX_KEYS) return null }
 
-        val validKeys = payload.temporaryExposureKeys
-            .filterNotNull()
-            .filter(::isValidKey)
+        val keys = payload.temporaryExposureKeys.filterNotNull()
+        val valid = validator.validate(batchOf(keys))
+        val validKeys = keys
+            .filterIndexed { index, _ -> valid[index] }
             .map(::asStoredKey)
 
         val invalidKeysCount = payload.temporaryExposureKeys.size - validKeys.size
@@ -65,48 +64,6 @@ class DiagnosisKeysSubmissionService(
         }
     }
 
-    private fun isValidKey(temporaryExposureKey: ClientTemporaryExposureKey) =
-        temporaryExposureKey
-            .takeIf { isKeyValid(it.key) }
-            ?.takeIf { isRollingStartNumberValid(it.rollingStartNumber.toLong(), it.rollingPeriod) }
-            ?.takeIf { isRollingPeriodValid(it.rollingPeriod) }
-            ?.takeIf { isTransmissionRiskLevelValid(it.transmissionRiskLevel) } != null
-
-    private fun isKeyValid(key: String?): Boolean {
-        val isValid = key != null && isBase64EncodedAndLessThan32Bytes(key)
-        if (!isValid) events(InvalidTemporaryExposureKey(key))
-        return isValid
-    }
-
-    private fun isRollingStartNumberValid(rollingStartNumber: Long, rollingPeriod: Int): Boolean {
-        val now = clock()
-        val isValid = isRollingStartNumberValid(
-            clock = { now },
-            rollingStartNumber = rollingStartNumber,
-            rollingPeriod = rollingPeriod
-        )
-        if (!isValid) events(InvalidRollingStartNumber(now, rollingStartNumber, rollingPeriod))
-        return isValid
-    }
-
-    private fun isRollingPeriodValid(rollingPeriod: Int): Boolean {
-        val isValid = rollingPeriod in 1..144
-        if (!isValid) events(InvalidRollingPeriod(rollingPeriod))
-        return isValid
-    }
-
-    private fun isBase64EncodedAndLessThan32Bytes(value: String) = try {
-        Base64.getDecoder().decode(value).size < 32
-    } catch (e: IllegalArgumentException) {
-        false
-    }
-
-    private fun isTransmissionRiskLevelValid(transmissionRiskLevel: Int): Boolean {
-        val isValid = transmissionRiskLevel in 0..7
-        if (!isValid) events(InvalidTransmissionRiskLevel(transmissionRiskLevel))
-        return isValid
-    }
-
     private fun acceptPayload(payload: ValidatedTemporaryExposureKeysPayload) {
         if (payload.isPrivateJourney == true) {
             if (payload.testKit == LAB_RESULT || payload.testKit == RAPID_SELF_REPORTED) uploadToS3(payload.testKit, payload)
@@ -145,14 +102,20 @@ class DiagnosisKeysSubmissionService(
     ) {
         val uploadPayload = StoredTemporaryExposureKeyPayload(payload.temporaryExposureKeys)
         val provider = TestKitAwareObjectKeyNameProvider(objectKeyNameProvider, testKit)
-        val objectKey = provider.generateObjectKeyName().append(".json")
+        val objectKey = provider.generateObjectKeyName().append(objectFormat.extension)
         awsS3.upload(
             locator = Locator.of(bucketName, objectKey),
-            contentType = APPLICATION_JSON,
-            bytes = fromUtf8String(toJson(uploadPayload))
+            contentType = objectFormat.contentType,
+            bytes = objectFormat.encode(uploadPayload)
         )
     }
 
+    private fun batchOf(keys: List<ClientTemporaryExposureKey>) = TemporaryExposureKeyBatch(keys.size).apply {
+        keys.forEach {
+            add(it.key, it.rollingStartNumber, it.rollingPeriod, it.transmissionRiskLevel, it.daysSinceOnsetOfSymptoms)
+        }
+    }
+
     private fun asStoredKey(it: ClientTemporaryExposureKey) =
         StoredTemporaryExposureKey(
             key = it.key!!,
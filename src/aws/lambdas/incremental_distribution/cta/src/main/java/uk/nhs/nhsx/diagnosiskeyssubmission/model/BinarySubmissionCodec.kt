@@ -0,0 +1,140 @@
+package uk.nhs.nhsx.diagnosiskeyssubmission.model
+
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.TemporaryExposureKeyBatch.Companion.KEY_LENGTH
+import java.io.BufferedInputStream
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.IOException
+import java.io.InputStream
+import java.util.Base64
+
+/**
+ * Binary submission object layout (all numbers big-endian):
+ *
+ * ```
+ * "TEKS" version:byte count:int
+ *   [flags:byte key rollingStartNumber:int rollingPeriod:int transmissionRisk:int daysSinceOnsetOfSymptoms:int]*
+ * ```
+ *
+ * Keys are stored as their sixteen decoded bytes whenever the Base64 form can be reproduced exactly, so most keys
+ * take a fixed 33 bytes, otherwise as utf. `daysSinceOnsetOfSymptoms` is always written and only read back when its
+ * flag is set.
+ *
+ * Decoding fails with an [IOException] for a truncated object, a count the object is too short to hold, or bytes
+ * left over after the last key.
+ */
+object BinarySubmissionCodec {
+    private val MAGIC = "TEKS".toByteArray()
+    private const val VERSION = 1
+    private val HEADER_SIZE = MAGIC.size + 5
+
+    // flags, an empty utf key and the four ints
+    private const val MIN_KEY_SIZE = 1 + 2 + 4 * Int.SIZE_BYTES
+
+    private const val FLAG_RAW_KEY = 1
+    private const val FLAG_DAYS_SINCE_ONSET = 2
+
+    private val encoder = Base64.getEncoder()
+    private val decoder = Base64.getDecoder()
+
+    fun encode(payload: StoredTemporaryExposureKeyPayload): ByteArray =
+        writer(payload.temporaryExposureKeys.size)
+            .apply { payload.temporaryExposureKeys.forEach(::write) }
+            .finish()
+
+    /**
+     * writes the header with no keys, [SubmissionObjectWriter.finish] then patches in the count of keys written
+     */
+    fun writer(expectedKeys: Int = 16): SubmissionObjectWriter = object : SubmissionObjectWriter {
+        private val bytes = ByteArrayOutputStream(HEADER_SIZE + expectedKeys * 33)
+        private val out = DataOutputStream(bytes).apply {
+            write(MAGIC)
+            writeByte(VERSION)
+            writeInt(0)
+        }
+
+        override var count = 0
+            private set
+
+        override fun write(key: StoredTemporaryExposureKey) {
+            out.writeKey(key)
+            count++
+        }
+
+        override fun finish(): ByteArray {
+            out.close()
+            return bytes.toByteArray().also { encoded ->
+                for (i in 0 until 4) encoded[MAGIC.size + 1 + i] = (count ushr (24 - 8 * i)).toByte()
+            }
+        }
+    }
+
+    /**
+     * looks at the start of the stream without consuming it
+     */
+    fun isBinary(input: BufferedInputStream): Boolean {
+        input.mark(MAGIC.size)
+        val start = input.readNBytes(MAGIC.size)
+        input.reset()
+        return start.contentEquals(MAGIC)
+    }
+
+    /**
+     * submission objects are small, so the whole object is read first to check the count against its size
+     */
+    fun decode(input: InputStream): StoredTemporaryExposureKeyPayload {
+        val bytes = input.readAllBytes()
+        val data = DataInputStream(ByteArrayInputStream(bytes))
+        val magic = ByteArray(MAGIC.size).also { data.readFully(it) }
+        if (!magic.contentEquals(MAGIC)) throw IOException("Not a binary submission")
+        val version = data.readUnsignedByte()
+        if (version != VERSION) throw IOException("Unsupported binary submission version $version")
+        val count = data.readInt()
+        if (count < 0 || count > (bytes.size - HEADER_SIZE) / MIN_KEY_SIZE) {
+            throw IOException("Binary submission of ${bytes.size} bytes cannot hold $count keys")
+        }
+        val keys = List(count) { data.readKey() }
+        if (data.available() > 0) throw IOException("${data.available()} bytes after the last key of binary submission")
+        return StoredTemporaryExposureKeyPayload(keys)
+    }
+
+    private fun DataOutputStream.writeKey(key: StoredTemporaryExposureKey) {
+        val raw = rawKeyOrNull(key.key)
+        var flags = 0
+        if (raw != null) flags = flags or FLAG_RAW_KEY
+        if (key.daysSinceOnsetOfSymptoms != null) flags = flags or FLAG_DAYS_SINCE_ONSET
+        writeByte(flags)
+        if (raw != null) write(raw) else writeUTF(key.key)
+        writeInt(key.rollingStartNumber)
+        writeInt(key.rollingPeriod)
+        writeInt(key.transmissionRisk)
+        writeInt(key.daysSinceOnsetOfSymptoms ?: 0)
+    }
+
+    private fun DataInputStream.readKey(): StoredTemporaryExposureKey {
+        val flags = readUnsignedByte()
+        val key = when {
+            flags and FLAG_RAW_KEY != 0 -> ByteArray(KEY_LENGTH).also { readFully(it) }.let(encoder::encodeToString)
+            else -> readUTF()
+        }
+        val rollingStartNumber = readInt()
+        val rollingPeriod = readInt()
+        val transmissionRisk = readInt()
+        val daysSinceOnsetOfSymptoms = readInt()
+        return StoredTemporaryExposureKey(
+            key = key,
+            rollingStartNumber = rollingStartNumber,
+            rollingPeriod = rollingPeriod,
+            transmissionRisk = transmissionRisk,
+            daysSinceOnsetOfSymptoms = if (flags and FLAG_DAYS_SINCE_ONSET != 0) daysSinceOnsetOfSymptoms else null
+        )
+    }
+
+    private fun rawKeyOrNull(key: String) = try {
+        decoder.decode(key).takeIf { it.size == KEY_LENGTH && encoder.encodeToString(it) == key }
+    } catch (e: IllegalArgumentException) {
+        null
+    }
+}
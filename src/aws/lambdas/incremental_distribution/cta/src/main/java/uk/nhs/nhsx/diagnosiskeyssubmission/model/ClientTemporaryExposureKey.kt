@@ -7,6 +7,10 @@ data class ClientTemporaryExposureKey(
     val key: String?,
     val rollingStartNumber: Int,
     val rollingPeriod: Int,
-    var transmissionRiskLevel: Int = 7,
+    var transmissionRiskLevel: Int = DEFAULT_TRANSMISSION_RISK_LEVEL,
     @JsonInclude(NON_NULL) var daysSinceOnsetOfSymptoms: Int? = null
-)
+) {
+    companion object {
+        const val DEFAULT_TRANSMISSION_RISK_LEVEL = 7
+    }
+}
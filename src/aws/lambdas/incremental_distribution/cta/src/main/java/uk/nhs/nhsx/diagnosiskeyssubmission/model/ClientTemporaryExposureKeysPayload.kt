@@ -4,8 +4,14 @@ import uk.nhs.nhsx.domain.TestKit
 import java.util.*
 
 data class ClientTemporaryExposureKeysPayload(
-    val diagnosisKeySubmissionToken: UUID? = UUID.fromString("00000000-0000-0000-0000-000000000000"),
+    val diagnosisKeySubmissionToken: UUID? = DEFAULT_TOKEN,
     val temporaryExposureKeys: List<ClientTemporaryExposureKey?>,
-    val isPrivateJourney: Boolean? = false,
-    val testKit: TestKit? = TestKit.LAB_RESULT
-)
+    val isPrivateJourney: Boolean? = DEFAULT_PRIVATE_JOURNEY,
+    val testKit: TestKit? = DEFAULT_TEST_KIT
+) {
+    companion object {
+        val DEFAULT_TOKEN: UUID = UUID.fromString("00000000-0000-0000-0000-000000000000")
+        const val DEFAULT_PRIVATE_JOURNEY = false
+        val DEFAULT_TEST_KIT = TestKit.LAB_RESULT
+    }
+}
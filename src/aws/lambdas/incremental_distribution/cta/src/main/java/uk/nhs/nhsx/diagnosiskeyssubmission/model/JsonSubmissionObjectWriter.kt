@@ -0,0 +1,30 @@
+package uk.nhs.nhsx.diagnosiskeyssubmission.model
+
+import uk.nhs.nhsx.core.AppServicesJson
+import java.io.ByteArrayOutputStream
+
+/**
+ * Writes a [StoredTemporaryExposureKeyPayload] as JSON one key at a time
+ */
+class JsonSubmissionObjectWriter : SubmissionObjectWriter {
+    private val bytes = ByteArrayOutputStream()
+    private val generator = AppServicesJson.mapper.createGenerator(bytes).apply {
+        writeStartObject()
+        writeArrayFieldStart("temporaryExposureKeys")
+    }
+
+    override var count = 0
+        private set
+
+    override fun write(key: StoredTemporaryExposureKey) {
+        generator.writeObject(key)
+        count++
+    }
+
+    override fun finish(): ByteArray {
+        generator.writeEndArray()
+        generator.writeEndObject()
+        generator.close()
+        return bytes.toByteArray()
+    }
+}
@@ -0,0 +1,44 @@
+package uk.nhs.nhsx.diagnosiskeyssubmission.model
+
+import uk.nhs.nhsx.core.ContentType
+import uk.nhs.nhsx.core.ContentType.Companion.APPLICATION_JSON
+import uk.nhs.nhsx.core.ContentType.Companion.APPLICATION_OCTET_STREAM
+import uk.nhs.nhsx.core.Environment
+import uk.nhs.nhsx.core.Environment.EnvironmentKey
+import uk.nhs.nhsx.core.Json.toJson
+import uk.nhs.nhsx.core.aws.s3.ByteArraySource
+import uk.nhs.nhsx.core.aws.s3.ByteArraySource.Companion.fromUtf8String
+
+/**
+ * How submissions are written to the submission bucket. Readers accept both formats, so switching does not need the
+ * objects already stored to be rewritten.
+ */
+enum class SubmissionObjectFormat(val extension: String, val contentType: ContentType) {
+    JSON(".json", APPLICATION_JSON) {
+        override fun encode(payload: StoredTemporaryExposureKeyPayload) = fromUtf8String(toJson(payload))
+
+        override fun writer(): SubmissionObjectWriter = JsonSubmissionObjectWriter()
+    },
+    BINARY(".bin", APPLICATION_OCTET_STREAM) {
+        override fun encode(payload: StoredTemporaryExposureKeyPayload) =
+            ByteArraySource(BinarySubmissionCodec.encode(payload))
+
+        override fun writer() = BinarySubmissionCodec.writer()
+    };
+
+    abstract fun encode(payload: StoredTemporaryExposureKeyPayload): ByteArraySource
+
+    /**
+     * writes the same bytes as [encode] one key at a time
+     */
+    abstract fun writer(): SubmissionObjectWriter
+
+    companion object {
+        private val BINARY_SUBMISSION_OBJECTS = EnvironmentKey.bool("BINARY_SUBMISSION_OBJECTS")
+
+        fun fromEnvironment(environment: Environment) = when {
+            environment.access.defaulted(BINARY_SUBMISSION_OBJECTS) { false } -> BINARY
+            else -> JSON
+        }
+    }
+}
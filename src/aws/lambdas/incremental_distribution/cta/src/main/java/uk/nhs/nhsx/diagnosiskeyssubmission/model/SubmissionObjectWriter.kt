@@ -0,0 +1,15 @@
+package uk.nhs.nhsx.diagnosiskeyssubmission.model
+
+/**
+ * Encodes the keys of one submission object as they are written, so only the encoded object is kept
+ */
+interface SubmissionObjectWriter {
+    val count: Int
+
+    fun write(key: StoredTemporaryExposureKey)
+
+    /**
+     * the encoded object, nothing can be written after
+     */
+    fun finish(): ByteArray
+}
@@ -0,0 +1,148 @@
+package uk.nhs.nhsx.diagnosiskeyssubmission.model
+
+import java.util.Base64
+
+/**
+ * Temporary exposure keys decoded once into primitive arrays: the key data of every key in one byte array, one
+ * fixed size slot per key, and one int array per field. Validating, copying and writing keys never goes back to
+ * Base64 or to an object per key.
+ *
+ * Key data is accepted as it always was, when it is Base64 of fewer than 32 bytes. Anything else leaves its slot
+ * empty and is reported by [hasKeyData]. Whether a key has the [KEY_LENGTH] the Exposure Notification framework
+ * expects is left to the caller, see [keyDataLength].
+ */
+class TemporaryExposureKeyBatch(initialCapacity: Int = 16) {
+    var size = 0
+        private set
+
+    internal var keyData = ByteArray(maxOf(initialCapacity, 1) * KEY_SLOT_SIZE)
+        private set
+    internal var keyDataLengths = ByteArray(maxOf(initialCapacity, 1))
+        private set
+    internal var rollingStartNumbers = IntArray(maxOf(initialCapacity, 1))
+        private set
+    internal var rollingPeriods = IntArray(maxOf(initialCapacity, 1))
+        private set
+    internal var transmissionRisks = IntArray(maxOf(initialCapacity, 1))
+        private set
+    internal var daysSinceOnset = IntArray(maxOf(initialCapacity, 1))
+        private set
+    internal var keyDataValid = BooleanArray(maxOf(initialCapacity, 1))
+        private set
+
+    // only kept for keys that could not be decoded, so they can still be reported
+    private val rejectedKeys = HashMap<Int, String?>()
+
+    fun add(
+        key: String?,
+        rollingStartNumber: Int,
+        rollingPeriod: Int,
+        transmissionRisk: Int,
+        daysSinceOnsetOfSymptoms: Int?
+    ): Int {
+        val index = nextIndex()
+        val decoded = key?.let(::decode)
+        if (decoded != null) {
+            System.arraycopy(decoded, 0, keyData, keyDataOffset(index), decoded.size)
+            keyDataLengths[index] = decoded.size.toByte()
+            keyDataValid[index] = true
+        } else {
+            rejectedKeys[index] = key
+        }
+        rollingStartNumbers[index] = rollingStartNumber
+        rollingPeriods[index] = rollingPeriod
+        transmissionRisks[index] = transmissionRisk
+        daysSinceOnset[index] = daysSinceOnsetOfSymptoms ?: NO_DAYS_SINCE_ONSET
+        return index
+    }
+
+    fun add(key: StoredTemporaryExposureKey) = add(
+        key.key,
+        key.rollingStartNumber,
+        key.rollingPeriod,
+        key.transmissionRisk,
+        key.daysSinceOnsetOfSymptoms
+    )
+
+    /**
+     * copies a key of another batch without decoding it again
+     */
+    fun add(source: TemporaryExposureKeyBatch, sourceIndex: Int): Int {
+        val index = nextIndex()
+        System.arraycopy(source.keyData, source.keyDataOffset(sourceIndex), keyData, keyDataOffset(index), KEY_SLOT_SIZE)
+        keyDataLengths[index] = source.keyDataLengths[sourceIndex]
+        keyDataValid[index] = source.keyDataValid[sourceIndex]
+        if (!source.keyDataValid[sourceIndex]) rejectedKeys[index] = source.rejectedKeys[sourceIndex]
+        rollingStartNumbers[index] = source.rollingStartNumbers[sourceIndex]
+        rollingPeriods[index] = source.rollingPeriods[sourceIndex]
+        transmissionRisks[index] = source.transmissionRisks[sourceIndex]
+        daysSinceOnset[index] = source.daysSinceOnset[sourceIndex]
+        return index
+    }
+
+    fun hasKeyData(index: Int) = keyDataValid[index]
+
+    fun keyDataOffset(index: Int) = index * KEY_SLOT_SIZE
+
+    fun keyDataLength(index: Int) = keyDataLengths[index].toInt()
+
+    fun rollingStartNumber(index: Int) = rollingStartNumbers[index]
+
+    fun rollingPeriod(index: Int) = rollingPeriods[index]
+
+    fun transmissionRisk(index: Int) = transmissionRisks[index]
+
+    fun daysSinceOnsetOfSymptoms(index: Int) = daysSinceOnset[index].takeUnless { it == NO_DAYS_SINCE_ONSET }
+
+    /**
+     * the key as it was given, for keys whose key data could not be decoded
+     */
+    fun rejectedKey(index: Int) = rejectedKeys[index]
+
+    fun key(index: Int): String = Base64.getEncoder()
+        .encodeToString(keyData.copyOfRange(keyDataOffset(index), keyDataOffset(index) + keyDataLength(index)))
+
+    fun toStoredKey(index: Int) = StoredTemporaryExposureKey(
+        key = key(index),
+        rollingStartNumber = rollingStartNumbers[index],
+        rollingPeriod = rollingPeriods[index],
+        transmissionRisk = transmissionRisks[index],
+        daysSinceOnsetOfSymptoms = daysSinceOnsetOfSymptoms(index)
+    )
+
+    private fun nextIndex(): Int {
+        if (size == rollingStartNumbers.size) grow()
+        return size++
+    }
+
+    private fun grow() {
+        val capacity = rollingStartNumbers.size * 2
+        keyData = keyData.copyOf(capacity * KEY_SLOT_SIZE)
+        keyDataLengths = keyDataLengths.copyOf(capacity)
+        rollingStartNumbers = rollingStartNumbers.copyOf(capacity)
+        rollingPeriods = rollingPeriods.copyOf(capacity)
+        transmissionRisks = transmissionRisks.copyOf(capacity)
+        daysSinceOnset = daysSinceOnset.copyOf(capacity)
+        keyDataValid = keyDataValid.copyOf(capacity)
+    }
+
+    companion object {
+        /**
+         * the only key length the Exposure Notification framework accepts
+         */
+        const val KEY_LENGTH = 16
+
+        // key data is accepted when it decodes to fewer than 32 bytes
+        private const val KEY_SLOT_SIZE = 31
+        private const val NO_DAYS_SINCE_ONSET = Int.MIN_VALUE
+
+        fun of(keys: List<StoredTemporaryExposureKey>) =
+            TemporaryExposureKeyBatch(keys.size).apply { keys.forEach { add(it) } }
+
+        private fun decode(key: String): ByteArray? = try {
+            Base64.getDecoder().decode(key).takeIf { it.size <= KEY_SLOT_SIZE }
+        } catch (e: IllegalArgumentException) {
+            null
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package uk.nhs.nhsx.diagnosiskeyssubmission.model
+
+import com.fasterxml.jackson.core.JsonGenerator
+import com.fasterxml.jackson.core.JsonParser
+import com.fasterxml.jackson.databind.DeserializationContext
+import com.fasterxml.jackson.databind.SerializerProvider
+import com.fasterxml.jackson.databind.ser.std.StdSerializer
+import uk.nhs.nhsx.core.StreamingDeserializer
+import uk.nhs.nhsx.domain.TestKit
+import java.util.*
+
+class ClientTemporaryExposureKeysPayloadDeserializer :
+    StreamingDeserializer<ClientTemporaryExposureKeysPayload>(ClientTemporaryExposureKeysPayload::class.java) {
+
+    override fun deserialize(p: JsonParser, ctxt: DeserializationContext): ClientTemporaryExposureKeysPayload {
+        val uuids = deserializerFor(ctxt, UUID::class.java)
+        val testKits = deserializerFor(ctxt, TestKit::class.java)
+        val keys = deserializerFor(ctxt, ClientTemporaryExposureKey::class.java)
+
+        var token: UUID? = ClientTemporaryExposureKeysPayload.DEFAULT_TOKEN
+        var temporaryExposureKeys: List<ClientTemporaryExposureKey?>? = null
+        var isPrivateJourney: Boolean? = ClientTemporaryExposureKeysPayload.DEFAULT_PRIVATE_JOURNEY
+        var testKit: TestKit? = ClientTemporaryExposureKeysPayload.DEFAULT_TEST_KIT
+
+        p.forEachField(ctxt) {
+            when (it) {
+                "diagnosisKeySubmissionToken" -> token = p.readWith(ctxt, uuids, it, nullable = true)
+                "temporaryExposureKeys" -> temporaryExposureKeys = p.readList(ctxt, it, nullableElements = true) {
+                    keys.deserialize(p, ctxt)
+                }
+                "isPrivateJourney" -> isPrivateJourney = p.readBoolean(ctxt, it, nullable = true)
+                "testKit" -> testKit = p.readWith(ctxt, testKits, it, nullable = true)
+                else -> p.skipUnknown(ctxt, it)
+            }
+        }
+
+        return ClientTemporaryExposureKeysPayload(
+            diagnosisKeySubmissionToken = token,
+            temporaryExposureKeys = required(p, ctxt, "temporaryExposureKeys", temporaryExposureKeys),
+            isPrivateJourney = isPrivateJourney,
+            testKit = testKit
+        )
+    }
+}
+
+class ClientTemporaryExposureKeyDeserializer :
+    StreamingDeserializer<ClientTemporaryExposureKey>(ClientTemporaryExposureKey::class.java) {
+
+    override fun deserialize(p: JsonParser, ctxt: DeserializationContext): ClientTemporaryExposureKey {
+        var key: String? = null
+        var rollingStartNumber: Int? = null
+        var rollingPeriod: Int? = null
+        var transmissionRiskLevel: Int? = ClientTemporaryExposureKey.DEFAULT_TRANSMISSION_RISK_LEVEL
+        var daysSinceOnsetOfSymptoms: Int? = null
+
+        p.forEachField(ctxt) {
+            when (it) {
+                "key" -> key = p.readString(ctxt, it, nullable = true)
+                "rollingStartNumber" -> rollingStartNumber = p.readInt(ctxt, it)
+                "rollingPeriod" -> rollingPeriod = p.readInt(ctxt, it)
+                "transmissionRiskLevel" -> transmissionRiskLevel = p.readInt(ctxt, it)
+                "daysSinceOnsetOfSymptoms" -> daysSinceOnsetOfSymptoms = p.readInt(ctxt, it, nullable = true)
+                else -> p.skipUnknown(ctxt, it)
+            }
+        }
+
+        return ClientTemporaryExposureKey(
+            key = key,
+            rollingStartNumber = required(p, ctxt, "rollingStartNumber", rollingStartNumber),
+            rollingPeriod = required(p, ctxt, "rollingPeriod", rollingPeriod),
+            transmissionRiskLevel = required(p, ctxt, "transmissionRiskLevel", transmissionRiskLevel),
+            daysSinceOnsetOfSymptoms = daysSinceOnsetOfSymptoms
+        )
+    }
+}
+
+class StoredTemporaryExposureKeyPayloadDeserializer :
+    StreamingDeserializer<StoredTemporaryExposureKeyPayload>(StoredTemporaryExposureKeyPayload::class.java) {
+
+    override fun deserialize(p: JsonParser, ctxt: DeserializationContext): StoredTemporaryExposureKeyPayload {
+        val keys = deserializerFor(ctxt, StoredTemporaryExposureKey::class.java)
+        var temporaryExposureKeys: List<StoredTemporaryExposureKey>? = null
+
+        p.forEachField(ctxt) {
+            when (it) {
+                "temporaryExposureKeys" -> temporaryExposureKeys = p.readList(ctxt, it, nullableElements = false) {
+                    keys.deserialize(p, ctxt)
+                }.filterNotNull()
+                else -> p.skipUnknown(ctxt, it)
+            }
+        }
+
+        return StoredTemporaryExposureKeyPayload(required(p, ctxt, "temporaryExposureKeys", temporaryExposureKeys))
+    }
+}
+
+class StoredTemporaryExposureKeyDeserializer :
+    StreamingDeserializer<StoredTemporaryExposureKey>(StoredTemporaryExposureKey::class.java) {
+
+    override fun deserialize(p: JsonParser, ctxt: DeserializationContext): StoredTemporaryExposureKey {
+        var key: String? = null
+        var rollingStartNumber: Int? = null
+        var rollingPeriod: Int? = null
+        var transmissionRisk: Int? = null
+        var daysSinceOnsetOfSymptoms: Int? = null
+
+        p.forEachField(ctxt) {
+            when (it) {
+                "key" -> key = p.readString(ctxt, it)
+                "rollingStartNumber" -> rollingStartNumber = p.readInt(ctxt, it)
+                "rollingPeriod" -> rollingPeriod = p.readInt(ctxt, it)
+                "transmissionRisk" -> transmissionRisk = p.readInt(ctxt, it)
+                "daysSinceOnsetOfSymptoms" -> daysSinceOnsetOfSymptoms = p.readInt(ctxt, it, nullable = true)
+                else -> p.skipUnknown(ctxt, it)
+            }
+        }
+
+        return StoredTemporaryExposureKey(
+            key = required(p, ctxt, "key", key),
+            rollingStartNumber = required(p, ctxt, "rollingStartNumber", rollingStartNumber),
+            rollingPeriod = required(p, ctxt, "rollingPeriod", rollingPeriod),
+            transmissionRisk = required(p, ctxt, "transmissionRisk", transmissionRisk),
+            daysSinceOnsetOfSymptoms = daysSinceOnsetOfSymptoms
+        )
+    }
+}
+
+/**
+ * Writes the same bytes as the reflective mapper: creator properties in declaration order, no null onset days
+ */
+class StoredTemporaryExposureKeyPayloadSerializer :
+    StdSerializer<StoredTemporaryExposureKeyPayload>(StoredTemporaryExposureKeyPayload::class.java) {
+
+    override fun serialize(value: StoredTemporaryExposureKeyPayload, gen: JsonGenerator, provider: SerializerProvider) {
+        gen.writeStartObject()
+        gen.writeArrayFieldStart("temporaryExposureKeys")
+        value.temporaryExposureKeys.forEach { writeKey(it, gen) }
+        gen.writeEndArray()
+        gen.writeEndObject()
+    }
+}
+
+class StoredTemporaryExposureKeySerializer :
+    StdSerializer<StoredTemporaryExposureKey>(StoredTemporaryExposureKey::class.java) {
+
+    override fun serialize(value: StoredTemporaryExposureKey, gen: JsonGenerator, provider: SerializerProvider) =
+        writeKey(value, gen)
+}
+
+private fun writeKey(key: StoredTemporaryExposureKey, gen: JsonGenerator) {
+    gen.writeStartObject()
+    gen.writeStringField("key", key.key)
+    gen.writeNumberField("rollingStartNumber", key.rollingStartNumber)
+    gen.writeNumberField("rollingPeriod", key.rollingPeriod)
+    gen.writeNumberField("transmissionRisk", key.transmissionRisk)
+    key.daysSinceOnsetOfSymptoms?.let { gen.writeNumberField("daysSinceOnsetOfSymptoms", it) }
+    gen.writeEndObject()
+}
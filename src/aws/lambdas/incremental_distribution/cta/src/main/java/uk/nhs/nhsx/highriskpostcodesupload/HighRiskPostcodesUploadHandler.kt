@@ -39,7 +39,7 @@ class HighRiskPostcodesUploadHandler @JvmOverloads constructor(
     authenticator: Authenticator = awsAuthentication(HighRiskPostCodeUpload, events),
     signer: DatedSigner = StandardSigningFactory(
         clock,
-        AwsSsmParameters(),
+        AwsSsmParameters.shared,
         AWSKMSClientBuilder.defaultClient()
     ).datedSigner(Environment.fromSystem()),
     s3Storage: AwsS3 = AwsS3Client(events),
@@ -53,7 +53,7 @@ class RiskyPostCodesPersistence(
             Locator.of(bucketName, objectKey),
             APPLICATION_JSON,
             byteSource,
-            fromDatedSignature(signer.sign(DistributionSignature(byteSource)))
+            fromDatedSignature(signer.signContent(DistributionSignature(byteSource)))
         )
     }
 
@@ -65,7 +65,7 @@ class HighRiskVenuesUploadHandler @JvmOverloads constructor(
             ),
             StandardSigningFactory(
                 clock,
-                AwsSsmParameters(),
+                AwsSsmParameters.shared,
                 AWSKMSClientBuilder.defaultClient()
             ).datedSigner(environment),
             AwsS3Client(events),
@@ -30,7 +30,7 @@ class HighRiskVenuesUploadService(
 
     private fun upload(result: Success): VenuesUploadResult {
         val bytes = fromUtf8String(result.json)
-        val headers = fromDatedSignature(signer.sign(DistributionSignature(bytes)))
+        val headers = fromDatedSignature(signer.signContent(DistributionSignature(bytes)))
         awsS3.upload(config.locator, APPLICATION_JSON, bytes, headers)
         awsCloudFront.invalidateCache(config.cloudFrontDistId, config.cloudFrontInvalidationPattern)
         return VenuesUploadResult.ok()
@@ -47,7 +47,7 @@ class IsolationPaymentOrderHandler @JvmOverloads constructor(
     authenticator: Authenticator = awsAuthentication(Mobile, events),
     signer: ResponseSigner = StandardSigningFactory(
         clock,
-        AwsSsmParameters(),
+        AwsSsmParameters.shared,
         AWSKMSClientBuilder.defaultClient()
     ).signResponseWithKeyGivenInSsm(environment, events),
     private val service: IsolationPaymentMobileService = isolationPaymentService(clock, environment, events),
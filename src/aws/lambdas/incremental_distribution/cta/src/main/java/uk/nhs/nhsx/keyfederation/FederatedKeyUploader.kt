@@ -1,18 +1,18 @@
 package uk.nhs.nhsx.keyfederation
 
 import uk.nhs.nhsx.core.Clock
-import uk.nhs.nhsx.core.ContentType.Companion.APPLICATION_JSON
-import uk.nhs.nhsx.core.Json.toJson
 import uk.nhs.nhsx.core.aws.s3.AwsS3
 import uk.nhs.nhsx.core.aws.s3.BucketName
-import uk.nhs.nhsx.core.aws.s3.ByteArraySource.Companion.fromUtf8String
+import uk.nhs.nhsx.core.aws.s3.ByteArraySource
 import uk.nhs.nhsx.core.aws.s3.Locator
 import uk.nhs.nhsx.core.aws.s3.ObjectKey
 import uk.nhs.nhsx.core.events.Events
 import uk.nhs.nhsx.core.events.InfoEvent
-import uk.nhs.nhsx.diagnosiskeydist.agspec.RollingStartNumber.isRollingStartNumberValid
+import uk.nhs.nhsx.diagnosiskeydist.agspec.TemporaryExposureKeyValidator
 import uk.nhs.nhsx.diagnosiskeyssubmission.model.StoredTemporaryExposureKey
 import uk.nhs.nhsx.diagnosiskeyssubmission.model.StoredTemporaryExposureKeyPayload
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.SubmissionObjectFormat
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.TemporaryExposureKeyBatch
 import uk.nhs.nhsx.domain.BatchTag
 import uk.nhs.nhsx.domain.ReportType
 import uk.nhs.nhsx.domain.TestType
@@ -21,7 +21,6 @@ import uk.nhs.nhsx.keyfederation.download.ExposureDownload
 import uk.nhs.nhsx.keyfederation.download.ExposureKeysPayload
 import java.time.ZoneOffset
 import java.time.format.DateTimeFormatter
-import java.util.*
 
 class FederatedKeyUploader(
     private val awsS3: AwsS3,
@@ -29,25 +28,85 @@ class FederatedKeyUploader(
     private val federatedKeySourcePrefix: String,
     private val clock: Clock,
     private val validOrigins: List<String>,
-    private val events: Events
+    private val events: Events,
+    private val objectFormat: SubmissionObjectFormat = SubmissionObjectFormat.JSON
 ) {
 
     private val dateStringProvider = { DATE_TIME_FORMATTER.format(clock()) }
+    private val validator = TemporaryExposureKeyValidator(clock, events)
 
     fun acceptKeysFromFederatedServer(payload: DiagnosisKeysDownloadResponse) =
         filterByReportTypeAndGroupByOrigin(payload).forEach { (origin, keys) -> handleOriginKeys(payload.batchTag, origin, keys) }
 
     fun filterByReportTypeAndGroupByOrigin(payload: DiagnosisKeysDownloadResponse): Map<String, List<ExposureDownload>> =
         payload.exposures
-            .filter { (it.testType === TestType.LAB_RESULT ||
-                       it.testType === TestType.RAPID_RESULT ||
-                       it.testType === TestType.RAPID_SELF_REPORTED) && it.reportType === ReportType.CONFIRMED_TEST }
+            .filter(::isConfirmedTestResult)
             .groupBy(ExposureDownload::origin)
 
+    /**
+     * Accepts the exposures of one batch as they are downloaded. Exposures are validated a chunk at a time as they
+     * arrive and the valid ones written straight into the submission object of their origin, so only the encoded
+     * object is kept until [StreamingBatch.complete] uploads it.
+     */
+    fun streamingBatch() = StreamingBatch()
+
+    inner class StreamingBatch {
+        private val origins = LinkedHashMap<String, OriginKeys>()
+
+        fun accept(exposure: ExposureDownload) {
+            if (!isConfirmedTestResult(exposure)) return
+            origins.getOrPut(exposure.origin) { OriginKeys(exposure.origin) }.add(exposure)
+        }
+
+        fun complete(batchTag: BatchTag) = origins.values.forEach { it.complete(batchTag) }
+    }
+
+    private inner class OriginKeys(private val origin: String) {
+        private val pending = ArrayList<ExposureDownload>(VALIDATION_CHUNK_SIZE)
+        private val keyCounts = LinkedHashMap<TestType, IntArray>()
+        private val writer = if (validOrigins.contains(origin)) objectFormat.writer() else null
+
+        fun add(exposure: ExposureDownload) {
+            pending += exposure
+            if (pending.size == VALIDATION_CHUNK_SIZE) validatePending()
+        }
+
+        fun complete(batchTag: BatchTag) {
+            validatePending()
+            keyCounts.forEach { (testType, counts) ->
+                events(DownloadedFederatedDiagnosisKeys(testType, counts[0], counts[1], origin))
+            }
+
+            when {
+                writer == null -> events(InvalidOriginKeys(origin, batchTag))
+                writer.count == 0 -> events(
+                    InfoEvent("Skip store to s3 because no valid keys were found or all keys were invalid, origin=$origin, batchTag=${batchTag}")
+                )
+                else -> upload(origin, batchTag, ByteArraySource(writer.finish()))
+            }
+        }
+
+        private fun validatePending() {
+            val valid = validator.validate(batchOf(pending))
+            pending.forEachIndexed { index, exposure ->
+                keyCounts.getOrPut(exposure.testType) { IntArray(2) }[if (valid[index]) 0 else 1]++
+                // stored as downloaded, so the stored keys are the same as those stored from a whole batch
+                if (valid[index]) writer?.write(StoredTemporaryExposureKeyTransform(exposure))
+            }
+            pending.clear()
+        }
+    }
+
+    private fun isConfirmedTestResult(exposure: ExposureDownload) =
+        (exposure.testType === TestType.LAB_RESULT ||
+            exposure.testType === TestType.RAPID_RESULT ||
+            exposure.testType === TestType.RAPID_SELF_REPORTED) && exposure.reportType === ReportType.CONFIRMED_TEST
+
     private fun handleOriginKeys(batchTag: BatchTag, origin: String, exposureDownloads: List<ExposureDownload>) {
-        emitStatistics(exposureDownloads, origin)
+        val valid = validator.validate(batchOf(exposureDownloads))
+        emitStatistics(exposureDownloads.map(ExposureDownload::testType), valid, origin)
 
-        val validKeys = exposureDownloads.filter(::isValidExposure)
+        val validKeys = exposureDownloads.filterIndexed { index, _ -> valid[index] }
 
         when {
             validOrigins.contains(origin) -> {
@@ -68,85 +127,42 @@ class FederatedKeyUploader(
         }
     }
 
-    private fun emitStatistics(exposureDownloads: List<ExposureDownload>, origin: String) {
-        exposureDownloads
-            .groupBy { it.testType }
-            .forEach { (testType: TestType, exposures: List<ExposureDownload>) ->
-                val validKeys = exposures.filter { isValidExposure(it) }
-                val invalidKeys = exposures.size - validKeys.size
-                events(
-                    DownloadedFederatedDiagnosisKeys(
-                        testType,
-                        validKeys.size,
-                        invalidKeys,
-                        origin
-                    )
-                )
-            }
-    }
-
-    private fun isValidExposure(exposureDownload: ExposureDownload): Boolean = exposureDownload
-        .takeIf { isKeyValid(it.keyData) }
-        ?.takeIf { isRollingStartNumberValid(clock, it.rollingStartNumber.toLong(), it.rollingPeriod, events) }
-        ?.takeIf { isRollingPeriodValid(it.rollingPeriod) }
-        ?.takeIf { isTransmissionRiskLevelValid(it.transmissionRiskLevel) } != null
-
-    private fun isRollingStartNumberValid(
-        clock: Clock,
-        rollingStartNumber: Long,
-        rollingPeriod: Int,
-        events: Events
-    ): Boolean {
-        val now = clock()
-        val isValid = isRollingStartNumberValid(
-            { now },
-            rollingStartNumber,
-            rollingPeriod
-        )
-        if (!isValid) {
-            events(InvalidRollingStartNumber(now, rollingStartNumber, rollingPeriod))
+    private fun emitStatistics(testTypes: List<TestType>, valid: BooleanArray, origin: String) {
+        val keyCounts = LinkedHashMap<TestType, IntArray>()
+        testTypes.forEachIndexed { index, testType ->
+            keyCounts.getOrPut(testType) { IntArray(2) }[if (valid[index]) 0 else 1]++
+        }
+        keyCounts.forEach { (testType, counts) ->
+            events(DownloadedFederatedDiagnosisKeys(testType, counts[0], counts[1], origin))
         }
-        return isValid
-    }
-
-    private fun isKeyValid(key: String?): Boolean {
-        val isValid = key != null && isBase64EncodedAndLessThan32Bytes(key)
-        if (!isValid) events(InvalidTemporaryExposureKey(key))
-        return isValid
-    }
-
-    private fun isRollingPeriodValid(isRollingPeriod: Int): Boolean {
-        val isValid = isRollingPeriod in 1..144
-        if (!isValid) events(InvalidRollingPeriod(isRollingPeriod))
-        return isValid
-    }
-
-    private fun isBase64EncodedAndLessThan32Bytes(value: String): Boolean = try {
-        Base64.getDecoder().decode(value).size < 32
-    } catch (e: Exception) {
-        false
     }
 
-    private fun isTransmissionRiskLevelValid(transmissionRiskLevel: Int): Boolean {
-        val isValid = transmissionRiskLevel in 0..7
-        if (!isValid) events(InvalidTransmissionRiskLevel(transmissionRiskLevel))
-        return isValid
+    private fun batchOf(exposures: List<ExposureDownload>) = TemporaryExposureKeyBatch(exposures.size).apply {
+        exposures.forEach {
+            add(it.keyData, it.rollingStartNumber, it.rollingPeriod, it.transmissionRiskLevel, it.daysSinceOnset)
+        }
     }
 
     private fun uploadOriginKeysToS3(exposureKeysPayload: ExposureKeysPayload) {
         val payload = StoredTemporaryExposureKeyPayload(exposureKeysPayload.temporaryExposureKeys)
-        val objectKey =
-            ObjectKey.of("""$federatedKeySourcePrefix/${exposureKeysPayload.origin}/${dateStringProvider()}/${exposureKeysPayload.batchTag}.json""")
+        upload(exposureKeysPayload.origin, exposureKeysPayload.batchTag, objectFormat.encode(payload))
+    }
+
+    private fun upload(origin: String, batchTag: BatchTag, bytes: ByteArraySource) {
+        val objectKey = ObjectKey.of(
+            """$federatedKeySourcePrefix/$origin/${dateStringProvider()}/$batchTag${objectFormat.extension}"""
+        )
 
         awsS3.upload(
             Locator.of(bucketName, objectKey),
-            APPLICATION_JSON,
-            fromUtf8String(toJson(payload))
+            objectFormat.contentType,
+            bytes
         )
     }
 
     companion object {
         private val DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd").withZone(ZoneOffset.UTC)
+        private const val VALIDATION_CHUNK_SIZE = 1024
     }
 }
 
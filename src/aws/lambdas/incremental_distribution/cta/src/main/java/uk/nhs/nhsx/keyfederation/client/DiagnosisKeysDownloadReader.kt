@@ -0,0 +1,55 @@
+package uk.nhs.nhsx.keyfederation.client
+
+import com.fasterxml.jackson.core.JsonParseException
+import com.fasterxml.jackson.core.JsonToken.END_ARRAY
+import com.fasterxml.jackson.core.JsonToken.END_OBJECT
+import com.fasterxml.jackson.core.JsonToken.FIELD_NAME
+import com.fasterxml.jackson.core.JsonToken.START_ARRAY
+import com.fasterxml.jackson.core.JsonToken.START_OBJECT
+import uk.nhs.nhsx.core.AppServicesJson
+import uk.nhs.nhsx.domain.BatchTag
+import uk.nhs.nhsx.keyfederation.download.ExposureDownload
+import java.io.InputStream
+
+/**
+ * Reads a download response token by token, so only one exposure is held at a time whatever the batch size.
+ * Fields may come in any order, the batch tag is only needed once the whole batch has been read.
+ */
+object DiagnosisKeysDownloadReader {
+
+    fun read(input: InputStream, onExposure: (ExposureDownload) -> Unit): StreamedDiagnosisKeys =
+        AppServicesJson.mapper.createParser(input).use { p ->
+            if (p.nextToken() != START_OBJECT) throw JsonParseException(p, "Expected download response object")
+
+            var batchTag: BatchTag? = null
+            var exposureCount: Int? = null
+
+            while (p.nextToken() == FIELD_NAME) {
+                val name = p.currentName
+                p.nextToken()
+                when (name) {
+                    "batchTag" -> batchTag = p.readValueAs(BatchTag::class.java)
+                    "exposures" -> {
+                        if (p.currentToken != START_ARRAY) throw JsonParseException(p, "Expected exposures array")
+                        var count = 0
+                        while (p.nextToken() != END_ARRAY) {
+                            onExposure(
+                                p.readValueAs(ExposureDownload::class.java)
+                                    ?: throw JsonParseException(p, "Unexpected null exposure")
+                            )
+                            count++
+                        }
+                        exposureCount = count
+                    }
+                    else -> p.skipChildren()
+                }
+            }
+
+            if (p.currentToken != END_OBJECT) throw JsonParseException(p, "Unexpected end of download response")
+
+            StreamedDiagnosisKeys(
+                batchTag = batchTag ?: throw JsonParseException(p, "Missing batchTag"),
+                exposureCount = exposureCount ?: throw JsonParseException(p, "Missing exposures")
+            )
+        }
+}
@@ -8,4 +8,8 @@ data class DiagnosisKeysDownloadResponse(
     val batchTag: BatchTag,
     val exposures: List<ExposureDownload>
 ): InteropDownloadResponse()
+data class StreamedDiagnosisKeys(
+    val batchTag: BatchTag,
+    val exposureCount: Int
+): InteropDownloadResponse()
 object NoContent: InteropDownloadResponse()
@@ -1,5 +1,6 @@
 package uk.nhs.nhsx.keyfederation.client
 
+import com.fasterxml.jackson.core.JsonProcessingException
 import uk.nhs.nhsx.core.Json
 import uk.nhs.nhsx.core.Json.toJson
 import uk.nhs.nhsx.core.RandomUUID
@@ -10,6 +11,7 @@ import uk.nhs.nhsx.core.events.OutgoingHttpRequest
 import uk.nhs.nhsx.core.events.UnprocessableJson
 import uk.nhs.nhsx.core.readJsonOrNull
 import uk.nhs.nhsx.domain.BatchTag
+import uk.nhs.nhsx.keyfederation.download.ExposureDownload
 import uk.nhs.nhsx.keyfederation.upload.JWS
 import java.net.URI
 import java.net.http.HttpClient
@@ -29,16 +31,7 @@ class HttpInteropClient(
     private val client: HttpClient = HttpClient.newHttpClient()
 
     override fun downloadKeys(date: LocalDate, batchTag: BatchTag?): InteropDownloadResponse {
-        val base = "$interopBaseUrl/diagnosiskeys/download/${date}"
-        val query = batchTag?.let { "?batchTag=${batchTag}" }.orEmpty()
-        return downloadKeys(URI.create(base + query))
-    }
-
-    private fun downloadKeys(downloadKeysUri: URI): InteropDownloadResponse {
-        val request = HttpRequest.newBuilder()
-            .header("Authorization", "Bearer $authToken")
-            .uri(downloadKeysUri)
-            .build()
+        val request = downloadRequest(date, batchTag)
 
         val response = client.send(request, BodyHandlers.ofString())
         val statusCode = response.statusCode()
@@ -52,6 +45,42 @@ class HttpInteropClient(
         }
     }
 
+    override fun downloadKeys(
+        date: LocalDate,
+        batchTag: BatchTag?,
+        onExposure: (ExposureDownload) -> Unit
+    ): InteropDownloadResponse {
+        val request = downloadRequest(date, batchTag)
+
+        val response = client.send(request, BodyHandlers.ofInputStream())
+        val statusCode = response.statusCode()
+
+        events(OutgoingHttpRequest(request.uri().toString(), request.method(), statusCode))
+
+        return response.body().use { body ->
+            when (statusCode) {
+                200 -> try {
+                    DiagnosisKeysDownloadReader.read(body, onExposure)
+                } catch (e: JsonProcessingException) {
+                    events(UnprocessableJson(e))
+                    error("Unable to parse response from key federation server")
+                }
+                204 -> NoContent
+                else -> error("""Request to download keys from federated key server with batch tag ${request.uri()} failed with status code $statusCode""")
+            }
+        }
+    }
+
+    private fun downloadRequest(date: LocalDate, batchTag: BatchTag?): HttpRequest {
+        val base = "$interopBaseUrl/diagnosiskeys/download/${date}"
+        val query = batchTag?.let { "?batchTag=${batchTag}" }.orEmpty()
+
+        return HttpRequest.newBuilder()
+            .header("Authorization", "Bearer $authToken")
+            .uri(URI.create(base + query))
+            .build()
+    }
+
     override fun uploadKeys(keys: List<ExposureUpload>): InteropUploadResponse {
         val payload = toJson(keys)
         val requestBody = DiagnosisKeysUploadRequest(BatchTag.of(uniqueId().toString()), jws.sign(payload))
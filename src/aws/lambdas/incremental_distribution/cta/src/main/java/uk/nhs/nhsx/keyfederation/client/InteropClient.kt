@@ -1,9 +1,27 @@
 package uk.nhs.nhsx.keyfederation.client
 
 import uk.nhs.nhsx.domain.BatchTag
+import uk.nhs.nhsx.keyfederation.download.ExposureDownload
 import java.time.LocalDate
 
 interface InteropClient {
     fun downloadKeys(date: LocalDate, batchTag: BatchTag? = null): InteropDownloadResponse
+
+    /**
+     * Hands every exposure to [onExposure] as it is read instead of returning them all, answering
+     * [StreamedDiagnosisKeys] once the batch has been read completely
+     */
+    fun downloadKeys(
+        date: LocalDate,
+        batchTag: BatchTag?,
+        onExposure: (ExposureDownload) -> Unit
+    ): InteropDownloadResponse = when (val response = downloadKeys(date, batchTag)) {
+        is DiagnosisKeysDownloadResponse -> {
+            response.exposures.forEach(onExposure)
+            StreamedDiagnosisKeys(response.batchTag, response.exposures.size)
+        }
+        else -> response
+    }
+
     fun uploadKeys(keys: List<ExposureUpload>): InteropUploadResponse
 }
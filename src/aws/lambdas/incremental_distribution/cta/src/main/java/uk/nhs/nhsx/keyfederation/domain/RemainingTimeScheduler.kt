@@ -3,21 +3,45 @@ package uk.nhs.nhsx.keyfederation.domain
 import com.amazonaws.services.lambda.runtime.Context
 import uk.nhs.nhsx.core.Clock
 import java.time.Duration
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.Executor
 
 class RemainingTimeScheduler<R>(
     private val context: Context,
     private val clock: Clock
 ) {
+    @Volatile
     var maxDuration: Duration = Duration.ZERO
+        private set
 
     fun runMaybe(task: () -> R) = when {
-        context.remainingTimeInMillis > maxDuration.toMillis() -> {
-            val start = clock()
-            val response = task()
-            val duration = Duration.between(start, clock())
-            maxDuration = if (maxDuration > duration) maxDuration else duration
-            response
-        }
+        hasTimeLeft() -> timed(task)
         else -> null
     }
+
+    /**
+     * Starts the task on the executor while the caller works on the previous result. Completes with null when there
+     * is not enough time left for it.
+     */
+    fun submitMaybe(executor: Executor, task: () -> R): CompletableFuture<R?> = when {
+        hasTimeLeft() -> CompletableFuture.supplyAsync({ timed(task) }, executor)
+        else -> CompletableFuture.completedFuture(null)
+    }
+
+    /**
+     * Accounts for work done alongside the tasks, e.g. processing a batch while the next one downloads
+     */
+    @Synchronized
+    fun record(duration: Duration) {
+        if (duration > maxDuration) maxDuration = duration
+    }
+
+    private fun hasTimeLeft() = context.remainingTimeInMillis > maxDuration.toMillis()
+
+    private fun timed(task: () -> R): R {
+        val start = clock()
+        val response = task()
+        record(Duration.between(start, clock()))
+        return response
+    }
 }
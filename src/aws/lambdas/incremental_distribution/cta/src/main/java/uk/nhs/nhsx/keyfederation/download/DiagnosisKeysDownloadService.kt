@@ -4,17 +4,22 @@ import com.amazonaws.services.lambda.runtime.Context
 import uk.nhs.nhsx.core.Clock
 import uk.nhs.nhsx.core.events.Events
 import uk.nhs.nhsx.core.events.InfoEvent
+import uk.nhs.nhsx.core.handler.RequestContext
 import uk.nhs.nhsx.domain.BatchTag
 import uk.nhs.nhsx.keyfederation.DownloadedExposures
 import uk.nhs.nhsx.keyfederation.FederatedKeyUploader
 import uk.nhs.nhsx.keyfederation.client.DiagnosisKeysDownloadResponse
 import uk.nhs.nhsx.keyfederation.client.InteropClient
-import uk.nhs.nhsx.keyfederation.client.InteropDownloadResponse
+import uk.nhs.nhsx.keyfederation.client.StreamedDiagnosisKeys
 import uk.nhs.nhsx.keyfederation.domain.FederationBatch
 import uk.nhs.nhsx.keyfederation.domain.RemainingTimeScheduler
 import uk.nhs.nhsx.keyfederation.storage.BatchTagService
+import java.time.Duration
 import java.time.LocalDate
 import java.time.ZoneOffset
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
 
 class DiagnosisKeysDownloadService(
     private val clock: Clock,
@@ -26,7 +31,9 @@ class DiagnosisKeysDownloadService(
     private val initialDownloadHistoryDays: Int,
     private val maxSubsequentBatchDownloadCount: Int,
     private val context: Context,
-    private val events: Events
+    private val events: Events,
+    private val pipelined: Boolean = false,
+    private val streaming: Boolean = false
 ) {
 
     fun downloadFromFederatedServerAndStoreKeys(): Int {
@@ -42,27 +49,116 @@ class DiagnosisKeysDownloadService(
         date: LocalDate,
         batchTag: BatchTag?
     ): Int {
+        val scheduler = RemainingTimeScheduler<DownloadedBatch?>(context, clock)
 
-        val scheduler = RemainingTimeScheduler<InteropDownloadResponse>(context, clock)
-        var next: InteropDownloadResponse? = interopClient.downloadKeys(date, batchTag)
+        val processedBatches = when {
+            pipelined -> downloadPipelined(scheduler, date, batchTag)
+            else -> downloadSerially(scheduler, date, batchTag)
+        }
+
+        events(InfoEvent("Downloaded keys from federated server finished, batchCount=$processedBatches"))
+
+        return processedBatches
+    }
+
+    private fun downloadSerially(
+        scheduler: RemainingTimeScheduler<DownloadedBatch?>,
+        date: LocalDate,
+        batchTag: BatchTag?
+    ): Int {
+        var next: DownloadedBatch? = download(date, batchTag)
         var processedBatches = 0
 
         for (idx in 1..maxSubsequentBatchDownloadCount) {
-            if (next !is DiagnosisKeysDownloadResponse) break
-            val nextBatchTag = next.batchTag
+            val current = next ?: break
 
-            convertAndSaveKeys(next)
-            events(DownloadedExposures(next.exposures.size, nextBatchTag, idx))
+            current.save()
+            events(DownloadedExposures(current.exposureCount, current.batchTag, idx))
             processedBatches++
 
-            next = scheduler.runMaybe { interopClient.downloadKeys(date, nextBatchTag) }
+            next = scheduler.runMaybe { download(date, current.batchTag) }
         }
 
-        events(InfoEvent("Downloaded keys from federated server finished, batchCount=$processedBatches"))
+        return processedBatches
+    }
+
+    /**
+     * Downloads the next batch while the current one is validated and uploaded. Batches are still saved and
+     * checkpointed one after the other, so the stored batch tag never gets ahead of the keys in S3.
+     *
+     * The scheduler accounts for both the downloads and the processing, so no batch is prefetched that could
+     * not be processed in the remaining time.
+     */
+    private fun downloadPipelined(
+        scheduler: RemainingTimeScheduler<DownloadedBatch?>,
+        date: LocalDate,
+        batchTag: BatchTag?
+    ): Int {
+        val requestId = RequestContext.awsRequestId()
+        val prefetch = Executors.newSingleThreadExecutor { Thread(it, "federation-prefetch").apply { isDaemon = true } }
+        val prefetched = { tag: BatchTag ->
+            RequestContext.assignAwsRequestId(requestId)
+            download(date, tag)
+        }
+
+        var next: CompletableFuture<DownloadedBatch?> = CompletableFuture.completedFuture(download(date, batchTag))
+        var processedBatches = 0
+
+        try {
+            for (idx in 1..maxSubsequentBatchDownloadCount) {
+                val current = next.awaitBatch() ?: break
+                val start = clock()
+
+                next = when {
+                    idx < maxSubsequentBatchDownloadCount -> scheduler.submitMaybe(prefetch) { prefetched(current.batchTag) }
+                    else -> CompletableFuture.completedFuture(null)
+                }
+
+                current.save()
+                events(DownloadedExposures(current.exposureCount, current.batchTag, idx))
+                processedBatches++
+
+                scheduler.record(Duration.between(start, clock()))
+            }
+        } finally {
+            next.cancel(true)
+            prefetch.shutdownNow()
+        }
 
         return processedBatches
     }
 
+    private fun CompletableFuture<DownloadedBatch?>.awaitBatch() = try {
+        get()
+    } catch (e: ExecutionException) {
+        throw e.cause ?: e
+    }
+
+    /**
+     * A downloaded batch, not saved or checkpointed until [save] is called
+     */
+    private class DownloadedBatch(val batchTag: BatchTag, val exposureCount: Int, val save: () -> Unit)
+
+    private fun download(date: LocalDate, batchTag: BatchTag?): DownloadedBatch? = when {
+        streaming -> {
+            val batch = keyUploader.streamingBatch()
+            val response = interopClient.downloadKeys(date, batchTag) { batch.accept(postDownloadTransformations(it)) }
+            when (response) {
+                is StreamedDiagnosisKeys -> DownloadedBatch(response.batchTag, response.exposureCount) {
+                    batch.complete(response.batchTag)
+                    batchTagService.updateLatestFederationBatch(FederationBatch(response.batchTag, dateNow()))
+                }
+                else -> null
+            }
+        }
+        else -> when (val response = interopClient.downloadKeys(date, batchTag)) {
+            is DiagnosisKeysDownloadResponse -> DownloadedBatch(response.batchTag, response.exposures.size) {
+                convertAndSaveKeys(response)
+            }
+            else -> null
+        }
+    }
+
     private fun dateNow() = LocalDate.ofInstant(clock(), ZoneOffset.UTC)
 
     private fun convertAndSaveKeys(diagnosisKeysDownloadResponse: DiagnosisKeysDownloadResponse) {
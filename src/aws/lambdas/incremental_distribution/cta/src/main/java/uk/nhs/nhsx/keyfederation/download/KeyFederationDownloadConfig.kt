@@ -10,6 +10,7 @@ import uk.nhs.nhsx.core.aws.dynamodb.TableName
 import uk.nhs.nhsx.core.aws.s3.BucketName
 import uk.nhs.nhsx.core.aws.secretsmanager.SecretName
 import uk.nhs.nhsx.core.aws.ssm.ParameterName
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.SubmissionObjectFormat
 
 class KeyFederationDownloadConfig(
     val maxSubsequentBatchDownloadCount: Int,
@@ -23,7 +24,10 @@ class KeyFederationDownloadConfig(
     val signingKeyParameterName: ParameterName,
     val federatedKeyDownloadPrefix: String,
     val stateTableName: TableName,
-    val validOrigins: List<String>
+    val validOrigins: List<String>,
+    val pipelinedDownload: Boolean = false,
+    val streamingDownload: Boolean = false,
+    val objectFormat: SubmissionObjectFormat = SubmissionObjectFormat.JSON
 ) {
     companion object {
         private val MAX_SUBSEQUENT_BATCH_DOWNLOAD_COUNT = EnvironmentKey.integer("MAX_SUBSEQUENT_BATCH_DOWNLOAD_COUNT")
@@ -37,6 +41,8 @@ class KeyFederationDownloadConfig(
         private val FEDERATED_KEY_DOWNLOAD_PREFIX = EnvironmentKey.string("FEDERATED_KEY_DOWNLOAD_PREFIX")
         private val PROCESSOR_STATE_TABLE = EnvironmentKey.value("PROCESSOR_STATE_TABLE", TableName)
         private val VALID_DOWNLOAD_ORIGINS = EnvironmentKey.strings("VALID_DOWNLOAD_ORIGINS")
+        private val PIPELINED_DOWNLOAD = EnvironmentKey.bool("PIPELINED_DOWNLOAD")
+        private val STREAMING_DOWNLOAD = EnvironmentKey.bool("STREAMING_DOWNLOAD")
 
         fun fromEnvironment(e: Environment) = KeyFederationDownloadConfig(
             maxSubsequentBatchDownloadCount = e.access.required(MAX_SUBSEQUENT_BATCH_DOWNLOAD_COUNT),
@@ -51,6 +57,9 @@ class KeyFederationDownloadConfig(
             federatedKeyDownloadPrefix = e.access.required(FEDERATED_KEY_DOWNLOAD_PREFIX),
             stateTableName = e.access.required(PROCESSOR_STATE_TABLE),
             validOrigins = e.access.required(VALID_DOWNLOAD_ORIGINS),
+            pipelinedDownload = e.access.defaulted(PIPELINED_DOWNLOAD) { false },
+            streamingDownload = e.access.defaulted(STREAMING_DOWNLOAD) { false },
+            objectFormat = SubmissionObjectFormat.fromEnvironment(e)
         )
     }
 }
@@ -60,7 +60,8 @@ class KeyFederationDownloadHandler @JvmOverloads constructor(
                     federatedKeySourcePrefix = config.federatedKeyDownloadPrefix,
                     clock = clock,
                     validOrigins = config.validOrigins,
-                    events = events
+                    events = events,
+                    objectFormat = config.objectFormat
                 ),
                 batchTagService = batchTagService,
                 downloadRiskLevelDefaultEnabled = config.downloadRiskLevelDefaultEnabled,
@@ -68,7 +69,9 @@ class KeyFederationDownloadHandler @JvmOverloads constructor(
                 initialDownloadHistoryDays = config.initialDownloadHistoryDays,
                 maxSubsequentBatchDownloadCount = config.maxSubsequentBatchDownloadCount,
                 context = context,
-                events = events
+                events = events,
+                pipelined = config.pipelinedDownload,
+                streaming = config.streamingDownload
             ).downloadFromFederatedServerAndStoreKeys()
         }
         else -> {
@@ -94,7 +97,7 @@ private fun buildInteropClient(
 
     val signer = StandardSigningFactory(
         clock = clock,
-        parameters = AwsSsmParameters(),
+        parameters = AwsSsmParameters.shared,
         client = AWSKMSClientBuilder.defaultClient()
     ).signContentWithKeyFromParameter(config.signingKeyParameterName)
 
@@ -4,17 +4,25 @@ import com.amazonaws.services.lambda.runtime.Context
 import uk.nhs.nhsx.core.Clock
 import uk.nhs.nhsx.core.events.Events
 import uk.nhs.nhsx.core.events.InfoEvent
+import uk.nhs.nhsx.core.handler.RequestContext
 import uk.nhs.nhsx.diagnosiskeydist.Submission
 import uk.nhs.nhsx.diagnosiskeydist.SubmissionRepository
+import uk.nhs.nhsx.diagnosiskeydist.agspec.TemporaryExposureKeyValidator
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.StoredTemporaryExposureKeyPayload
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.TemporaryExposureKeyBatch
 import uk.nhs.nhsx.keyfederation.storage.BatchTagService
 import uk.nhs.nhsx.keyfederation.DiagnosisKeysUploadIncomplete
 import uk.nhs.nhsx.keyfederation.client.InteropClient
-import uk.nhs.nhsx.keyfederation.InvalidTemporaryExposureKey
 import uk.nhs.nhsx.keyfederation.UploadedDiagnosisKeys
 import uk.nhs.nhsx.keyfederation.client.ExposureUpload
+import uk.nhs.nhsx.keyfederation.client.InteropUploadResponse
+import uk.nhs.nhsx.keyfederation.domain.RemainingTimeScheduler
 import java.time.Duration
 import java.time.Instant
-import java.util.*
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicBoolean
 import kotlin.math.max
 
 class DiagnosisKeysUploadService(
@@ -29,11 +37,18 @@ class DiagnosisKeysUploadService(
     private val maxUploadBatchSize: Int,
     private val maxSubsequentBatchUploadCount: Int,
     private val context: Context,
-    private val events: Events
+    private val events: Events,
+    private val uploadConcurrency: Int = 1
 ) {
     private val maxUploadBatchLimit: Int = maxUploadBatchSize - 4 // mobile submissions/sec
+    private val validator = TemporaryExposureKeyValidator(clock, events)
 
-    fun loadKeysAndUploadToFederatedServer(): Int {
+    fun loadKeysAndUploadToFederatedServer(): Int = when {
+        uploadConcurrency > 1 && maxUploadBatchSize != NO_BATCH_SIZE_LIMIT_LEGACY_BATCH_SIZE -> loadKeysAndUploadInParallel()
+        else -> loadKeysAndUploadSerially()
+    }
+
+    private fun loadKeysAndUploadSerially(): Int {
         var submissionCount = 0
         var iterationDuration = 0L
         var lastUploadedSubmissionTime = getLastUploadedTime()
@@ -58,6 +73,154 @@ class DiagnosisKeysUploadService(
         return submissionCount
     }
 
+    /**
+     * Loads the whole pending window once and uploads it in batches of at most [maxUploadBatchSize] submissions,
+     * [uploadConcurrency] at a time, so signing and posting one batch overlaps with the others.
+     *
+     * Batches are acknowledged in order: the last uploaded time only advances up to the first batch that failed or
+     * was skipped for lack of time, so everything after it is uploaded again by a later run. Once one has, the uploads
+     * that have not started yet are not sent at all.
+     */
+    private fun loadKeysAndUploadInParallel(): Int {
+        var lastUploadedSubmissionTime = getLastUploadedTime()
+
+        val maxResults = maxUploadBatchSize * maxSubsequentBatchUploadCount
+        val submissions = submissionRepository.loadAllSubmissions(
+            lastUploadedSubmissionTime.toEpochMilli(),
+            maxUploadBatchLimit * maxSubsequentBatchUploadCount,
+            maxResults
+        )
+        val batches = submissions.chunkedBySubmissionDate(truncated = submissions.size >= maxResults)
+
+        events(InfoEvent("Begin: Upload diagnosis keys to the Nearform server - ${batches.size} batches, concurrency $uploadConcurrency"))
+
+        val scheduler = RemainingTimeScheduler<InteropUploadResponse>(context, clock)
+        val requestId = RequestContext.awsRequestId()
+        val pool = Executors.newFixedThreadPool(uploadConcurrency) { Thread(it, "federation-upload").apply { isDaemon = true } }
+        // cancelling a future does not take it off the pool's queue, so queued uploads check this before sending
+        val stopped = AtomicBoolean(false)
+
+        val uploads = batches.map { batch ->
+            val exposures = exposuresOf(batch.submissions)
+            PendingUpload(batch, exposures, when {
+                exposures.isEmpty() -> CompletableFuture.completedFuture(null)
+                else -> CompletableFuture.supplyAsync({
+                    RequestContext.assignAwsRequestId(requestId)
+                    when {
+                        stopped.get() -> null
+                        else -> scheduler.runMaybe { interopClient.uploadKeys(exposures) }
+                    }
+                }, pool)
+            })
+        }
+
+        var submissionCount = 0
+        try {
+            for ((index, upload) in uploads.withIndex()) {
+                val batchNumber = index + 1
+
+                if (upload.exposures.isNotEmpty()) {
+                    val uploadResponse = upload.response.awaitUpload() ?: break
+
+                    emitStatistics(upload.exposures, lastUploadedSubmissionTime, batchNumber)
+
+                    if (uploadResponse.insertedExposures != upload.exposures.size) {
+                        events(
+                            DiagnosisKeysUploadIncomplete(
+                                upload.exposures.size,
+                                uploadResponse.insertedExposures,
+                                lastUploadedSubmissionTime,
+                                batchNumber
+                            )
+                        )
+                    }
+                }
+
+                lastUploadedSubmissionTime = maxOf(lastUploadedSubmissionTime, upload.batch.checkpoint)
+                batchTagService.updateLastUploadState(lastUploadedSubmissionTime)
+                submissionCount += upload.batch.submissions.size
+            }
+        } finally {
+            stopped.set(true)
+            uploads.forEach { it.response.cancel(true) }
+            pool.shutdownNow()
+        }
+
+        events(InfoEvent("Uploaded diagnosis keys to the Nearform server, submissionCount=$submissionCount, lastUploadedSubmissionTime=$lastUploadedSubmissionTime"))
+
+        return submissionCount
+    }
+
+    /**
+     * @param checkpoint the last uploaded time to record once the batch is uploaded
+     */
+    private class SubmissionBatch(val submissions: List<Submission>, val checkpoint: Instant)
+
+    private class PendingUpload(
+        val batch: SubmissionBatch,
+        val exposures: List<ExposureUpload>,
+        val response: CompletableFuture<InteropUploadResponse?>
+    )
+
+    private fun CompletableFuture<InteropUploadResponse?>.awaitUpload() = try {
+        get()
+    } catch (e: ExecutionException) {
+        throw e.cause ?: e
+    }
+
+    /**
+     * Same batch boundaries as the serial upload: a batch only ends between submission dates once it reaches the
+     * batch limit, and never grows beyond the batch size.
+     *
+     * The last uploaded time is stored in whole seconds and later runs only load submissions after it, so a batch cut
+     * within a second, including the last one when the load was [truncated], is checkpointed a second earlier. The
+     * rest of that second is then uploaded again rather than skipped.
+     */
+    private fun List<Submission>.chunkedBySubmissionDate(truncated: Boolean): List<SubmissionBatch> {
+        val batches = mutableListOf<List<Submission>>()
+        var batch = mutableListOf<Submission>()
+
+        for (submission in sortedBy(Submission::submissionDate)) {
+            if (batch.size >= maxUploadBatchSize
+                || batch.size >= maxUploadBatchLimit && batch.last().submissionDate != submission.submissionDate
+            ) {
+                batches += batch
+                batch = mutableListOf()
+            }
+            batch += submission
+        }
+        if (batch.isNotEmpty()) batches += batch
+
+        return batches.mapIndexed { index, submissions ->
+            val last = submissions.last().submissionDate
+            val next = batches.getOrNull(index + 1)?.first()?.submissionDate ?: last.takeIf { truncated }
+            SubmissionBatch(
+                submissions,
+                when {
+                    next != null && next.epochSecond == last.epochSecond -> Instant.ofEpochSecond(last.epochSecond - 1)
+                    else -> last
+                }
+            )
+        }
+    }
+
+    private fun exposuresOf(submissions: List<Submission>): List<ExposureUpload> =
+        getUploadRequestRawPayload(submissions.map(::withValidKeyData))
+            .map { updateRiskLevelIfDefaultEnabled(it) }
+
+    /**
+     * decodes the stored keys of the submission once, straight from its payload, and keeps those with key data the
+     * federation server accepts; the other checks already passed when the keys were submitted
+     */
+    private fun withValidKeyData(submission: Submission): Submission {
+        val keys = submission.payload.temporaryExposureKeys
+        val valid = validator.validateKeyData(TemporaryExposureKeyBatch.of(keys))
+        if (valid.all { it }) return submission
+        return submission.copy(
+            payload = StoredTemporaryExposureKeyPayload(keys.filterIndexed { index, _ -> valid[index] })
+        )
+    }
+
     private fun loadKeysAndUploadOneBatchToFederatedServer(
         lastUploadedSubmissionTime: Instant,
         batchNumber: Int
@@ -70,9 +233,7 @@ class DiagnosisKeysUploadService(
             if (maxUploadBatchSize == NO_BATCH_SIZE_LIMIT_LEGACY_BATCH_SIZE) Int.MAX_VALUE else maxUploadBatchSize
         )
 
-        val exposures = getUploadRequestRawPayload(newSubmissions)
-            .filter { isKeyValid(it.keyData) }
-            .map { updateRiskLevelIfDefaultEnabled(it) }
+        val exposures = exposuresOf(newSubmissions)
 
         events(
             InfoEvent("Loading and transforming keys from submissions finished (from ${if (newSubmissions.isEmpty()) null else newSubmissions[0].submissionDate} to ${if (newSubmissions.isEmpty()) null else newSubmissions[newSubmissions.size - 1].submissionDate}), keyCount=${exposures.size} (batch $batchNumber)")
@@ -148,19 +309,6 @@ class DiagnosisKeysUploadService(
         upload.daysSinceOnset
     )
 
-    private fun isKeyValid(key: String?): Boolean {
-        val isValid = key != null && isBase64EncodedAndEqualTo16Bytes(key)
-        if (!isValid) events(InvalidTemporaryExposureKey(key))
-        return isValid
-    }
-
-    private fun isBase64EncodedAndEqualTo16Bytes(value: String): Boolean = try {
-        val decodedKeyData = Base64.getDecoder().decode(value)
-        decodedKeyData.size == 16
-    } catch (e: Exception) {
-        false
-    }
-
     // FIXME filter expired keys (rollingStartNumber & rollingPeriod)
     private fun getUploadRequestRawPayload(submissions: List<Submission>): List<ExposureUpload> = submissions
         .flatMap { exposureUploadFactory.create(it) }
@@ -25,7 +25,9 @@ class KeyFederationUploadConfig(
     val region: String,
     val federatedKeyUploadPrefixes: List<String>,
     val loadSubmissionsTimeout: Duration,
-    val loadSubmissionsThreadPoolSize: Int
+    val loadSubmissionsThreadPoolSize: Int,
+    val partitionedSubmissionListing: Boolean = false,
+    val uploadConcurrency: Int = 1
 ) {
     companion object {
         private val MAX_SUBSEQUENT_BATCH_UPLOAD_COUNT = EnvironmentKey.integer("MAX_SUBSEQUENT_BATCH_UPLOAD_COUNT")
@@ -41,6 +43,8 @@ class KeyFederationUploadConfig(
         private val FEDERATED_KEY_UPLOAD_PREFIXES = EnvironmentKey.strings("FEDERATED_KEY_UPLOAD_PREFIXES")
         private val LOAD_SUBMISSIONS_TIMEOUT = EnvironmentKey.duration("LOAD_SUBMISSIONS_TIMEOUT")
         private val LOAD_SUBMISSIONS_THREAD_POOL_SIZE = EnvironmentKey.integer("LOAD_SUBMISSIONS_THREAD_POOL_SIZE")
+        private val PARTITIONED_SUBMISSION_LISTING = EnvironmentKey.bool("PARTITIONED_SUBMISSION_LISTING")
+        private val UPLOAD_CONCURRENCY = EnvironmentKey.integer("UPLOAD_CONCURRENCY")
 
         fun fromEnvironment(e: Environment) = KeyFederationUploadConfig(
             maxSubsequentBatchUploadCount = e.access.required(MAX_SUBSEQUENT_BATCH_UPLOAD_COUNT),
@@ -57,6 +61,8 @@ class KeyFederationUploadConfig(
             federatedKeyUploadPrefixes = e.access.required(FEDERATED_KEY_UPLOAD_PREFIXES),
             loadSubmissionsTimeout = e.access.defaulted(LOAD_SUBMISSIONS_TIMEOUT) { Duration.ofMinutes(12) },
             loadSubmissionsThreadPoolSize = e.access.defaulted(LOAD_SUBMISSIONS_THREAD_POOL_SIZE) { 15 },
+            partitionedSubmissionListing = e.access.defaulted(PARTITIONED_SUBMISSION_LISTING) { false },
+            uploadConcurrency = e.access.defaulted(UPLOAD_CONCURRENCY) { 1 },
         )
     }
 }
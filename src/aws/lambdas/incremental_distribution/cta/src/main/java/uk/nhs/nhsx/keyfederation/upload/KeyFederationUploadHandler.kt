@@ -9,6 +9,7 @@ import uk.nhs.nhsx.core.Clock
 import uk.nhs.nhsx.core.Environment
 import uk.nhs.nhsx.core.EnvironmentKeys
 import uk.nhs.nhsx.core.Handler
+import uk.nhs.nhsx.core.ObjectKeyFilters
 import uk.nhs.nhsx.core.StandardSigningFactory
 import uk.nhs.nhsx.core.SystemClock.CLOCK
 import uk.nhs.nhsx.core.aws.s3.AwsS3
@@ -23,6 +24,7 @@ import uk.nhs.nhsx.core.events.InfoEvent
 import uk.nhs.nhsx.core.events.PrintingJsonEvents
 import uk.nhs.nhsx.core.handler.SchedulingHandler
 import uk.nhs.nhsx.diagnosiskeydist.s3.SubmissionFromS3Repository
+import uk.nhs.nhsx.diagnosiskeydist.s3.TimePartitionedSubmissionListing
 import uk.nhs.nhsx.keyfederation.storage.BatchTagDynamoDBService
 import uk.nhs.nhsx.keyfederation.storage.BatchTagService
 import uk.nhs.nhsx.keyfederation.client.HttpInteropClient
@@ -67,6 +69,14 @@ class KeyFederationUploadHandler @JvmOverloads constructor(
                 submissionBucketName = submissionBucket,
                 loadSubmissionsTimeout = config.loadSubmissionsTimeout,
                 loadSubmissionsThreadPoolSize = config.loadSubmissionsThreadPoolSize,
+                submissionListing = when {
+                    config.partitionedSubmissionListing -> TimePartitionedSubmissionListing(
+                        ObjectKeyFilters.federated().listingShards(config.federatedKeyUploadPrefixes),
+                        ObjectKeyFilters.mobileTestKitPrefixes,
+                        clock
+                    )
+                    else -> null
+                },
                 events = events,
                 clock = clock
             )
@@ -83,7 +93,8 @@ class KeyFederationUploadHandler @JvmOverloads constructor(
                 maxUploadBatchSize = config.maxUploadBatchSize,
                 maxSubsequentBatchUploadCount = config.maxSubsequentBatchUploadCount,
                 context = context,
-                events = events
+                events = events,
+                uploadConcurrency = config.uploadConcurrency
             ).loadKeysAndUploadToFederatedServer()
         }
         else -> {
@@ -103,7 +114,7 @@ private fun buildInteropClient(
 
     val signer = StandardSigningFactory(
         clock = CLOCK,
-        parameters = AwsSsmParameters(),
+        parameters = AwsSsmParameters.shared,
         client = AWSKMSClientBuilder.defaultClient()
     ).signContentWithKeyFromParameter(config.signingKeyParameterName)
 
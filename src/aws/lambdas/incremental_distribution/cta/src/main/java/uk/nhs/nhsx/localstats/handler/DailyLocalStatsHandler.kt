@@ -70,7 +70,7 @@ private fun documentStorageFrom(env: Environment, clock: Clock) = S3DailyLocalSt
     amazonS3 = AmazonS3ClientBuilder.defaultClient(),
     signer = StandardSigningFactory(
         clock = clock,
-        parameters = AwsSsmParameters(),
+        parameters = AwsSsmParameters.shared,
         client = AWSKMSClientBuilder.defaultClient()
     ).datedSigner(env)
 )
@@ -31,7 +31,7 @@ class S3DailyLocalStatsDocumentStorage(
     override fun put(document: DailyLocalStatsDocument) {
         val content = LocalStatsJson.asFormatString(document)
         val byteSource = ByteArraySource.fromUtf8String(content)
-        val sigHeaders = SigningHeaders.fromDatedSignature(signer.sign(DistributionSignature(byteSource)))
+        val sigHeaders = SigningHeaders.fromDatedSignature(signer.signContent(DistributionSignature(byteSource)))
         val metadata = ObjectMetadata().apply {
             contentType = "application/json"
             contentLength = byteSource.size.toLong()
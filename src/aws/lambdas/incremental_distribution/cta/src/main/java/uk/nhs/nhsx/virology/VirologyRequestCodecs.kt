@@ -0,0 +1,96 @@
+package uk.nhs.nhsx.virology
+
+import com.fasterxml.jackson.core.JsonParser
+import com.fasterxml.jackson.databind.DeserializationContext
+import uk.nhs.nhsx.core.StreamingDeserializer
+import uk.nhs.nhsx.domain.Country
+import uk.nhs.nhsx.domain.CtaToken
+import uk.nhs.nhsx.domain.TestResultPollingToken
+import uk.nhs.nhsx.virology.exchange.CtaExchangeRequestV1
+import uk.nhs.nhsx.virology.exchange.CtaExchangeRequestV2
+import uk.nhs.nhsx.virology.lookup.VirologyLookupRequestV1
+import uk.nhs.nhsx.virology.lookup.VirologyLookupRequestV2
+
+class VirologyLookupRequestV1Deserializer :
+    StreamingDeserializer<VirologyLookupRequestV1>(VirologyLookupRequestV1::class.java) {
+
+    override fun deserialize(p: JsonParser, ctxt: DeserializationContext): VirologyLookupRequestV1 {
+        val tokens = deserializerFor(ctxt, TestResultPollingToken::class.java)
+        var token: TestResultPollingToken? = null
+
+        p.forEachField(ctxt) {
+            when (it) {
+                "testResultPollingToken" -> token = p.readWith(ctxt, tokens, it)
+                else -> p.skipUnknown(ctxt, it)
+            }
+        }
+
+        return VirologyLookupRequestV1(required(p, ctxt, "testResultPollingToken", token))
+    }
+}
+
+class VirologyLookupRequestV2Deserializer :
+    StreamingDeserializer<VirologyLookupRequestV2>(VirologyLookupRequestV2::class.java) {
+
+    override fun deserialize(p: JsonParser, ctxt: DeserializationContext): VirologyLookupRequestV2 {
+        val tokens = deserializerFor(ctxt, TestResultPollingToken::class.java)
+        val countries = deserializerFor(ctxt, Country::class.java)
+        var token: TestResultPollingToken? = null
+        var country: Country? = null
+
+        p.forEachField(ctxt) {
+            when (it) {
+                "testResultPollingToken" -> token = p.readWith(ctxt, tokens, it)
+                "country" -> country = p.readWith(ctxt, countries, it)
+                else -> p.skipUnknown(ctxt, it)
+            }
+        }
+
+        return VirologyLookupRequestV2(
+            testResultPollingToken = required(p, ctxt, "testResultPollingToken", token),
+            country = required(p, ctxt, "country", country)
+        )
+    }
+}
+
+class CtaExchangeRequestV1Deserializer :
+    StreamingDeserializer<CtaExchangeRequestV1>(CtaExchangeRequestV1::class.java) {
+
+    override fun deserialize(p: JsonParser, ctxt: DeserializationContext): CtaExchangeRequestV1 {
+        val tokens = deserializerFor(ctxt, CtaToken::class.java)
+        var token: CtaToken? = null
+
+        p.forEachField(ctxt) {
+            when (it) {
+                "ctaToken" -> token = p.readWith(ctxt, tokens, it)
+                else -> p.skipUnknown(ctxt, it)
+            }
+        }
+
+        return CtaExchangeRequestV1(required(p, ctxt, "ctaToken", token))
+    }
+}
+
+class CtaExchangeRequestV2Deserializer :
+    StreamingDeserializer<CtaExchangeRequestV2>(CtaExchangeRequestV2::class.java) {
+
+    override fun deserialize(p: JsonParser, ctxt: DeserializationContext): CtaExchangeRequestV2 {
+        val tokens = deserializerFor(ctxt, CtaToken::class.java)
+        val countries = deserializerFor(ctxt, Country::class.java)
+        var token: CtaToken? = null
+        var country: Country? = null
+
+        p.forEachField(ctxt) {
+            when (it) {
+                "ctaToken" -> token = p.readWith(ctxt, tokens, it)
+                "country" -> country = p.readWith(ctxt, countries, it)
+                else -> p.skipUnknown(ctxt, it)
+            }
+        }
+
+        return CtaExchangeRequestV2(
+            ctaToken = required(p, ctxt, "ctaToken", token),
+            country = required(p, ctxt, "country", country)
+        )
+    }
+}
@@ -9,6 +9,7 @@ import uk.nhs.nhsx.core.HttpResponses
 import uk.nhs.nhsx.core.Json
 import uk.nhs.nhsx.core.StandardSigningFactory
 import uk.nhs.nhsx.core.SystemClock.CLOCK
+import uk.nhs.nhsx.core.WarmUps
 import uk.nhs.nhsx.core.auth.ApiName.Health
 import uk.nhs.nhsx.core.auth.ApiName.Mobile
 import uk.nhs.nhsx.core.auth.Authenticator
@@ -60,7 +61,7 @@ class VirologySubmissionHandler @JvmOverloads constructor(
     mobileAuthenticator: Authenticator = awsAuthentication(Mobile, events),
     signer: ResponseSigner = StandardSigningFactory(
         clock,
-        AwsSsmParameters(),
+        AwsSsmParameters.shared,
         AWSKMSClientBuilder.defaultClient()
     ).signResponseWithKeyGivenInSsm(environment, events),
     persistence: VirologyPersistenceService = VirologyPersistenceService(
@@ -157,6 +158,10 @@ class VirologySubmissionHandler @JvmOverloads constructor(
         return HttpResponses.ok(Json.toJson(response))
     }
 
+    init {
+        prime(events, WarmUps.responseSigning(signer), WarmUps.tokenGeneration())
+    }
+
     override fun handler() = handler
 
     companion object {
@@ -0,0 +1,84 @@
+package benchmark
+
+import java.io.File
+import java.time.Duration
+import java.util.concurrent.TimeUnit
+
+/**
+ * Reports how long each handler takes to initialise (class loading plus construction), each in a fresh JVM.
+ *
+ * Handlers read their configuration from the environment, so run this with the environment of a deployed
+ * workspace (`./gradlew :cta:benchmarkStartup`). Set PRIME_ON_INIT=true to include the warm-up actions.
+ */
+object HandlerStartupBenchmark {
+    private val handlers = listOf(
+        "uk.nhs.nhsx.analyticsevents.AnalyticsEventsHandler",
+        "uk.nhs.nhsx.analyticssubmission.AnalyticsSubmissionQueuedHandler",
+        "uk.nhs.nhsx.circuitbreakers.ExposureNotificationHandler",
+        "uk.nhs.nhsx.circuitbreakers.RiskyVenueHandler",
+        "uk.nhs.nhsx.crashreports.CrashReportsHandler",
+        "uk.nhs.nhsx.diagnosiskeydist.DiagnosisKeyDistributionHandler",
+        "uk.nhs.nhsx.diagnosiskeyssubmission.DiagnosisKeySubmissionHandler",
+        "uk.nhs.nhsx.emptysubmission.EmptySubmissionHandler",
+        "uk.nhs.nhsx.highriskpostcodesupload.HighRiskPostcodesUploadHandler",
+        "uk.nhs.nhsx.highriskvenuesupload.HighRiskVenuesUploadHandler",
+        "uk.nhs.nhsx.isolationpayment.IsolationPaymentConsumeHandler",
+        "uk.nhs.nhsx.isolationpayment.IsolationPaymentOrderHandler",
+        "uk.nhs.nhsx.isolationpayment.IsolationPaymentUploadHandler",
+        "uk.nhs.nhsx.isolationpayment.IsolationPaymentVerifyHandler",
+        "uk.nhs.nhsx.keyfederation.download.KeyFederationDownloadHandler",
+        "uk.nhs.nhsx.keyfederation.upload.KeyFederationUploadHandler",
+        "uk.nhs.nhsx.localstats.handler.DailyLocalStatsHandler",
+        "uk.nhs.nhsx.virology.ScheduledCtaTokenGenerationHandler",
+        "uk.nhs.nhsx.virology.VirologyProcessorHandler",
+        "uk.nhs.nhsx.virology.VirologySubmissionHandler",
+        "uk.nhs.nhsx.virology.VirologyUploadHandler"
+    )
+
+    private val timeout = Duration.ofMinutes(1)
+
+    @JvmStatic
+    fun main(args: Array<String>) {
+        val selected = if (args.isEmpty()) handlers else args.toList()
+        val java = File(System.getProperty("java.home"), "bin/java").path
+        val classpath = System.getProperty("java.class.path")
+
+        println(String.format("%-70s %12s", "handler", "init (ms)"))
+        selected.forEach { handler ->
+            // handlers may log a lot while starting, a file never fills up and blocks the child like a pipe does
+            val output = File.createTempFile("handler-startup", ".log").apply { deleteOnExit() }
+            val process = ProcessBuilder(java, "-cp", classpath, HandlerStartup::class.java.name, handler)
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .redirectOutput(output)
+                .start()
+
+            val result = when {
+                !process.waitFor(timeout.toMillis(), TimeUnit.MILLISECONDS) -> "timed out".also { process.destroyForcibly() }
+                else -> output.readLines().lastOrNull { it.startsWith(RESULT) }
+                    ?.removePrefix(RESULT)
+                    ?: "exit ${process.exitValue()}"
+            }
+            output.delete()
+            println(String.format("%-70s %12s", handler, result))
+        }
+    }
+
+    internal const val RESULT = "startup: "
+}
+
+/**
+ * Runs in the child JVM, so the measurement includes loading every class the handler needs
+ */
+object HandlerStartup {
+    @JvmStatic
+    fun main(args: Array<String>) {
+        val start = System.nanoTime()
+        val result = try {
+            Class.forName(args.single()).getDeclaredConstructor().newInstance()
+            Duration.ofNanos(System.nanoTime() - start).toMillis().toString()
+        } catch (e: Throwable) {
+            "failed: ${(e.cause ?: e).javaClass.simpleName}"
+        }
+        println(HandlerStartupBenchmark.RESULT + result)
+    }
+}
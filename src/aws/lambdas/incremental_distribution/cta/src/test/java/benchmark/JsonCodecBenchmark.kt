@@ -0,0 +1,73 @@
+package benchmark
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import uk.nhs.nhsx.core.reflectiveAppServicesMapper
+import uk.nhs.nhsx.core.withCodecs
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.ClientTemporaryExposureKeysPayload
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.StoredTemporaryExposureKey
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.StoredTemporaryExposureKeyPayload
+import uk.nhs.nhsx.virology.exchange.CtaExchangeRequestV2
+import java.lang.management.ManagementFactory
+
+/**
+ * Compares the reflective mapper with the registered codecs: time and allocation per operation once warm,
+ * and the time of the first operation on a new mapper (the cold first request).
+ *
+ * `./gradlew :cta:benchmarkJson`
+ */
+object JsonCodecBenchmark {
+    private const val WARM_UP = 20_000
+    private const val ITERATIONS = 200_000
+
+    private val threads = ManagementFactory.getThreadMXBean() as com.sun.management.ThreadMXBean
+
+    private val submission = """
+        {
+          "diagnosisKeySubmissionToken": "dd3aa1bf-4c91-43bb-afb6-12d0b5dcad43",
+          "temporaryExposureKeys": [${(1..14).joinToString(",") { key(it) }}],
+          "isPrivateJourney": false,
+          "testKit": "LAB_RESULT"
+        }
+    """.trimIndent()
+
+    private val exchange = """{"ctaToken":"cc8f0b6z","country":"England"}"""
+
+    private val stored = StoredTemporaryExposureKeyPayload(
+        (1..14).map { StoredTemporaryExposureKey("W2zb3BeMWt6Xr2u0ABG32Q==", 2664864 + it * 144, 144, 7, it % 5) }
+    )
+
+    private fun key(i: Int) =
+        """{"key":"kzQt9Lf3xjtAlMtm7jkSqw==","rollingStartNumber":${2664864 + i * 144},"rollingPeriod":144,"transmissionRiskLevel":7}"""
+
+    @JvmStatic
+    fun main(args: Array<String>) {
+        val operations = listOf<Pair<String, (ObjectMapper) -> Any>>(
+            "read submission" to { it.readValue(submission, ClientTemporaryExposureKeysPayload::class.java) },
+            "read cta exchange" to { it.readValue(exchange, CtaExchangeRequestV2::class.java) },
+            "write stored payload" to { it.writeValueAsString(stored) }
+        )
+
+        println(String.format("%-22s %-10s %12s %12s %14s", "operation", "mapper", "first (ms)", "ns/op", "bytes/op"))
+        operations.forEach { (name, operation) ->
+            report(name, "reflective", reflectiveAppServicesMapper(), operation)
+            report(name, "codecs", reflectiveAppServicesMapper().withCodecs(), operation)
+        }
+    }
+
+    private fun report(name: String, mapperName: String, mapper: ObjectMapper, operation: (ObjectMapper) -> Any) {
+        val firstStart = System.nanoTime()
+        operation(mapper)
+        val first = (System.nanoTime() - firstStart) / 1_000_000.0
+
+        repeat(WARM_UP) { operation(mapper) }
+
+        val thread = Thread.currentThread().id
+        val allocatedBefore = threads.getThreadAllocatedBytes(thread)
+        val start = System.nanoTime()
+        repeat(ITERATIONS) { operation(mapper) }
+        val nanosPerOp = (System.nanoTime() - start) / ITERATIONS
+        val bytesPerOp = (threads.getThreadAllocatedBytes(thread) - allocatedBefore) / ITERATIONS
+
+        println(String.format("%-22s %-10s %12.2f %12d %14d", name, mapperName, first, nanosPerOp, bytesPerOp))
+    }
+}
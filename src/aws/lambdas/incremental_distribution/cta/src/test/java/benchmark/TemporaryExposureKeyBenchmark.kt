@@ -0,0 +1,92 @@
+package benchmark
+
+import uk.nhs.nhsx.core.events.Event
+import uk.nhs.nhsx.core.events.Events
+import uk.nhs.nhsx.diagnosiskeydist.ExposureProtobuf
+import uk.nhs.nhsx.diagnosiskeydist.agspec.ENIntervalNumber.Companion.enIntervalNumberFromTimestamp
+import uk.nhs.nhsx.diagnosiskeydist.agspec.TemporaryExposureKeyValidator
+import uk.nhs.nhsx.diagnosiskeydist.apispec.DailyZIPSubmissionPeriod
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.StoredTemporaryExposureKey
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.TemporaryExposureKeyBatch
+import java.lang.management.ManagementFactory
+import java.time.Duration
+import java.time.Instant
+import java.util.Base64
+import kotlin.random.Random
+
+/**
+ * Compares validating and exporting keys one object at a time, decoding the Base64 key data at every step, with
+ * decoding them once into a [TemporaryExposureKeyBatch]: time and allocation per key once warm.
+ *
+ * `./gradlew :cta:benchmarkKeys`
+ */
+object TemporaryExposureKeyBenchmark {
+    private const val KEYS = 10_000
+    private const val WARM_UP = 200
+    private const val ITERATIONS = 2_000
+
+    private val threads = ManagementFactory.getThreadMXBean() as com.sun.management.ThreadMXBean
+
+    private val now = Instant.parse("2020-09-15T23:50:00Z")
+    private val period = DailyZIPSubmissionPeriod.periodForSubmissionDate(now)
+    private val protobuf = ExposureProtobuf("uk.nhs.covid19.internal")
+    private val validator = TemporaryExposureKeyValidator({ now }, object : Events {
+        override fun invoke(event: Event) = Unit
+    })
+
+    private val keys = Random(42).let { random ->
+        (0 until KEYS).map {
+            StoredTemporaryExposureKey(
+                Base64.getEncoder().encodeToString(random.nextBytes(16)),
+                2664864 + random.nextInt(14) * 144,
+                144,
+                random.nextInt(8),
+                random.nextInt(-14, 14).takeIf { it != 0 }
+            )
+        }
+    }
+    private val batch = TemporaryExposureKeyBatch.of(keys)
+
+    @JvmStatic
+    fun main(args: Array<String>) {
+        val operations = listOf<Pair<String, () -> Any>>(
+            "validate per key" to { keys.count(::isValid) },
+            "validate batch" to { validator.validate(TemporaryExposureKeyBatch.of(keys)) },
+            "export per key" to { protobuf.buildExportBin(keys, period, Duration.ZERO) },
+            "export batch" to { protobuf.buildExportBin(batch, period, Duration.ZERO) }
+        )
+
+        println(String.format("%-18s %12s %14s", "operation", "ns/key", "bytes/key"))
+        operations.forEach { (name, operation) -> report(name, operation) }
+    }
+
+    // how each key used to be checked, decoding its key data on its own
+    private fun isValid(key: StoredTemporaryExposureKey): Boolean {
+        val keyData = try {
+            Base64.getDecoder().decode(key.key)
+        } catch (e: IllegalArgumentException) {
+            return false
+        }
+        val latest = enIntervalNumberFromTimestamp(now).enIntervalNumber
+        val expiry = enIntervalNumberFromTimestamp(now.minus(Duration.ofDays(14))).enIntervalNumber
+        return keyData.size < 32 &&
+            key.rollingStartNumber + key.rollingPeriod >= expiry &&
+            key.rollingStartNumber <= latest &&
+            key.rollingPeriod in 1..144 &&
+            key.transmissionRisk in 0..7
+    }
+
+    private fun report(name: String, operation: () -> Any) {
+        repeat(WARM_UP) { operation() }
+
+        val thread = Thread.currentThread().id
+        val allocatedBefore = threads.getThreadAllocatedBytes(thread)
+        val start = System.nanoTime()
+        repeat(ITERATIONS) { operation() }
+        val operations = ITERATIONS.toLong() * KEYS
+        val nanosPerKey = (System.nanoTime() - start).toDouble() / operations
+        val bytesPerKey = (threads.getThreadAllocatedBytes(thread) - allocatedBefore).toDouble() / operations
+
+        println(String.format("%-18s %12.1f %14.1f", name, nanosPerKey, bytesPerKey))
+    }
+}
@@ -0,0 +1,179 @@
+package uk.nhs.nhsx.core
+
+import com.fasterxml.jackson.databind.DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES
+import com.fasterxml.jackson.databind.ObjectMapper
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.params.ParameterizedTest
+import org.junit.jupiter.params.provider.MethodSource
+import strikt.api.expectThat
+import strikt.assertions.contains
+import strikt.assertions.isEqualTo
+import uk.nhs.nhsx.analyticssubmission.model.AnalyticsMetadata
+import uk.nhs.nhsx.analyticssubmission.model.AnalyticsWindow
+import uk.nhs.nhsx.analyticssubmission.model.ClientAnalyticsSubmissionPayload
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.ClientTemporaryExposureKeysPayload
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.StoredTemporaryExposureKey
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.StoredTemporaryExposureKeyPayload
+import uk.nhs.nhsx.virology.exchange.CtaExchangeRequestV2
+import uk.nhs.nhsx.virology.lookup.VirologyLookupRequestV1
+import uk.nhs.nhsx.virology.lookup.VirologyLookupRequestV2
+import java.util.*
+
+class CtaJsonCodecsTest {
+
+    private val reflective = reflectiveAppServicesMapper()
+    private val codecs = AppServicesJson.mapper
+
+    @Test
+    fun `codecs are found by the app services mapper`() {
+        expectThat(ServiceLoader.load(JsonCodecs::class.java).map { it.javaClass }).contains(CtaJsonCodecs::class.java)
+    }
+
+    @ParameterizedTest
+    @MethodSource("clientPayloads")
+    fun `reads client payloads like the reflective mapper`(json: String) =
+        expectSameOutcome(json, ClientTemporaryExposureKeysPayload::class.java)
+
+    @ParameterizedTest
+    @MethodSource("storedPayloads")
+    fun `reads stored payloads like the reflective mapper`(json: String) =
+        expectSameOutcome(json, StoredTemporaryExposureKeyPayload::class.java)
+
+    @ParameterizedTest
+    @MethodSource("virologyRequests")
+    fun `reads virology requests like the reflective mapper`(json: String) {
+        expectSameOutcome(json, VirologyLookupRequestV1::class.java)
+        expectSameOutcome(json, VirologyLookupRequestV2::class.java)
+        expectSameOutcome(json, CtaExchangeRequestV2::class.java)
+    }
+
+    @ParameterizedTest
+    @MethodSource("analyticsPayloads")
+    fun `reads analytics payloads like the reflective mapper`(json: String) {
+        // AnalyticsMetrics has no equals, so whole payloads are compared in their written form
+        expectThat(written(outcome(codecs, json, ClientAnalyticsSubmissionPayload::class.java))).describedAs(json)
+            .isEqualTo(written(outcome(reflective, json, ClientAnalyticsSubmissionPayload::class.java)))
+    }
+
+    @ParameterizedTest
+    @MethodSource("analyticsParts")
+    fun `reads analytics window and metadata like the reflective mapper`(json: String) {
+        expectSameOutcome(json, AnalyticsWindow::class.java)
+        expectSameOutcome(json, AnalyticsMetadata::class.java)
+    }
+
+    @Test
+    fun `rejects unknown properties in strict mode`() {
+        val json = """{"temporaryExposureKeys":[],"unknown":{"nested":[1,2]}}"""
+
+        expectSameOutcome(json, StoredTemporaryExposureKeyPayload::class.java)
+        expectThat(outcome(StrictAppServicesJson.mapper, json, StoredTemporaryExposureKeyPayload::class.java))
+            .isEqualTo(outcome(reflective.copy().configure(FAIL_ON_UNKNOWN_PROPERTIES, true), json, StoredTemporaryExposureKeyPayload::class.java))
+    }
+
+    @Test
+    fun `writes stored payload like the reflective mapper`() {
+        val payload = StoredTemporaryExposureKeyPayload(
+            listOf(
+                StoredTemporaryExposureKey("W2zb3BeMWt6Xr2u0ABG32Q==", 12345, 144, 7),
+                StoredTemporaryExposureKey("kzQt9Lf3xjtAlMtm7jkSqw==", 12499, 144, 7, 4)
+            )
+        )
+
+        expectThat(codecs.writeValueAsString(payload)).isEqualTo(reflective.writeValueAsString(payload))
+        expectThat(codecs.writeValueAsString(payload.temporaryExposureKeys[0]))
+            .isEqualTo(reflective.writeValueAsString(payload.temporaryExposureKeys[0]))
+    }
+
+    private fun expectSameOutcome(json: String, type: Class<*>) {
+        expectThat(outcome(codecs, json, type)).describedAs("$json as ${type.simpleName}")
+            .isEqualTo(outcome(reflective, json, type))
+    }
+
+    private fun outcome(mapper: ObjectMapper, json: String, type: Class<*>): Any = try {
+        mapper.readValue(json, type)
+    } catch (e: Exception) {
+        "failed"
+    }
+
+    private fun written(outcome: Any): String = outcome as? String ?: reflective.writeValueAsString(outcome)
+
+    companion object {
+        private const val WINDOW = """{"startDate":"2020-01-27T00:00:00Z","endDate":"2020-01-28T00:00:00Z"}"""
+        private const val METADATA = """{"postalDistrict":"AB10","deviceModel":"iPhone","operatingSystemVersion":"iPhone OS 13.5.1 (17F80)","latestApplicationVersion":"3.0""""
+        private const val KEY = """{"key":"W2zb3BeMWt6Xr2u0ABG32Q==","rollingStartNumber":12345,"rollingPeriod":144"""
+
+        @JvmStatic
+        fun clientPayloads() = listOf(
+            """{}""",
+            """[]""",
+            """{"temporaryExposureKeys":[]}""",
+            """{"temporaryExposureKeys":null}""",
+            """{"temporaryExposureKeys":{}}""",
+            """{"temporaryExposureKeys":[null, $KEY}]}""",
+            """{"diagnosisKeySubmissionToken":"dd3aa1bf-4c91-43bb-afb6-12d0b5dcad43","temporaryExposureKeys":[$KEY,"transmissionRiskLevel":4}]}""",
+            """{"diagnosisKeySubmissionToken":"not-a-uuid","temporaryExposureKeys":[]}""",
+            """{"diagnosisKeySubmissionToken":null,"temporaryExposureKeys":[]}""",
+            """{"temporaryExposureKeys":[],"isPrivateJourney":true,"testKit":"RAPID_RESULT"}""",
+            """{"temporaryExposureKeys":[],"isPrivateJourney":"true","testKit":"RAPID_SELF_REPORTED"}""",
+            """{"temporaryExposureKeys":[],"testKit":"UNKNOWN"}""",
+            """{"temporaryExposureKeys":[],"isPrivateJourney":null}""",
+            """{"temporaryExposureKeys":[{"key":null,"rollingStartNumber":1,"rollingPeriod":2}]}""",
+            """{"temporaryExposureKeys":[{"rollingStartNumber":1,"rollingPeriod":2}]}""",
+            """{"temporaryExposureKeys":[{"key":"abc","rollingPeriod":2}]}""",
+            """{"temporaryExposureKeys":[{"key":"abc","rollingStartNumber":"1","rollingPeriod":2.0}]}""",
+            """{"temporaryExposureKeys":[{"key":"abc","rollingStartNumber":1,"rollingPeriod":2,"transmissionRiskLevel":null}]}""",
+            """{"temporaryExposureKeys":[$KEY,"daysSinceOnsetOfSymptoms":3,"extra":[1,{"a":2}]}]}""",
+            """{"temporaryExposureKeys":[$KEY,"daysSinceOnsetOfSymptoms":null}]}""",
+            """{"temporaryExposureKeys":[$KEY}]} trailing"""
+        )
+
+        @JvmStatic
+        fun storedPayloads() = listOf(
+            """{"temporaryExposureKeys":[]}""",
+            """{"temporaryExposureKeys":[null]}""",
+            """{"temporaryExposureKeys":[$KEY,"transmissionRisk":7}]}""",
+            """{"temporaryExposureKeys":[$KEY,"transmissionRisk":7,"daysSinceOnsetOfSymptoms":2}]}""",
+            """{"temporaryExposureKeys":[$KEY}]}""",
+            """{"temporaryExposureKeys":[{"key":null,"rollingStartNumber":1,"rollingPeriod":2,"transmissionRisk":7}]}""",
+            """{}"""
+        )
+
+        @JvmStatic
+        fun analyticsPayloads() = listOf(
+            """{}""",
+            """{"analyticsWindow":$WINDOW,"metadata":$METADATA},"metrics":{"cumulativeDownloadBytes":140000000},"includesMultipleApplicationVersions":false}""",
+            """{"analyticsWindow":$WINDOW,"metadata":$METADATA,"localAuthority":"E06000051"},"metrics":{},"includesMultipleApplicationVersions":true,"extra":[1]}""",
+            """{"analyticsWindow":$WINDOW,"metadata":$METADATA},"metrics":{}}""",
+            """{"analyticsWindow":$WINDOW,"metadata":$METADATA},"metrics":{},"includesMultipleApplicationVersions":null}""",
+            """{"analyticsWindow":$WINDOW,"metadata":$METADATA},"metrics":null,"includesMultipleApplicationVersions":false}""",
+            """{"analyticsWindow":null,"metadata":$METADATA},"metrics":{},"includesMultipleApplicationVersions":false}""",
+            """{"analyticsWindow":$WINDOW,"metadata":$METADATA},"metrics":{"totalBackgroundTasks":"3"},"includesMultipleApplicationVersions":"false"}"""
+        )
+
+        @JvmStatic
+        fun analyticsParts() = listOf(
+            """{}""",
+            WINDOW,
+            """{"startDate":"2020-01-27T00:00:00Z"}""",
+            """{"startDate":"2020-01-27T00:00:00Z","endDate":null}""",
+            """{"startDate":"yesterday","endDate":"2020-01-28T00:00:00Z"}""",
+            "$METADATA}",
+            "$METADATA,\"localAuthority\":null}",
+            "$METADATA,\"localAuthority\":\"E06000051\"}",
+            """{"postalDistrict":"AB10","deviceModel":"iPhone","operatingSystemVersion":"13.5.1"}""",
+            """{"postalDistrict":null,"deviceModel":"iPhone","operatingSystemVersion":"13.5.1","latestApplicationVersion":"3.0"}"""
+        )
+
+        @JvmStatic
+        fun virologyRequests() = listOf(
+            """{}""",
+            """{"testResultPollingToken":"98cff3dd-882c-417b-a00a-350a205378c7","country":"England"}""",
+            """{"ctaToken":"cc8f0b6z","country":"Wales"}""",
+            """{"ctaToken":"cc8f0b6z","country":""}""",
+            """{"ctaToken":null,"country":"England"}""",
+            """{"testResultPollingToken":"","country":"England"}""",
+            """{"testResultPollingToken":"98cff3dd-882c-417b-a00a-350a205378c7"}"""
+        )
+    }
+}
@@ -0,0 +1,35 @@
+package uk.nhs.nhsx.core
+
+import org.junit.jupiter.api.Test
+import strikt.api.expectThat
+import strikt.assertions.isEqualTo
+
+class LatencyPercentilesTest {
+
+    @Test
+    fun `nearest rank percentiles of unsorted samples`() {
+        val latencies = LatencyPercentiles((100L downTo 1L).toList())
+
+        expectThat(latencies.count).isEqualTo(100)
+        expectThat(latencies.percentile(50)).isEqualTo(50L)
+        expectThat(latencies.percentile(99)).isEqualTo(99L)
+        expectThat(latencies.maxMillis).isEqualTo(100L)
+    }
+
+    @Test
+    fun `high percentiles of few samples round up to the next rank`() {
+        val latencies = LatencyPercentiles((1L..10L).toList())
+
+        expectThat(latencies.percentile(50)).isEqualTo(5L)
+        expectThat(latencies.percentile(90)).isEqualTo(9L)
+        expectThat(latencies.percentile(99)).isEqualTo(10L)
+    }
+
+    @Test
+    fun `zero without samples`() {
+        val latencies = LatencyPercentiles(emptyList())
+
+        expectThat(latencies.percentile(90)).isEqualTo(0L)
+        expectThat(latencies.maxMillis).isEqualTo(0L)
+    }
+}
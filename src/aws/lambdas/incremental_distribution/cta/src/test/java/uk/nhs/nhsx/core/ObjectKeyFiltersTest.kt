@@ -83,4 +83,32 @@ class ObjectKeyFiltersTest {
             .get { includeKeyWithAbcPrefix.test(this) }
             .isEqualTo(expected)
     }
+
+    @ParameterizedTest
+    @CsvSource(
+        value = [
+            "abc,true",
+            "abcdef,true",
+            "abc/def,true",
+            "ab/def,false",
+            "123,true",
+            "mobile/LAB_RESULT/abc,true",
+            "mobile/RAPID_RESULT/abc,true",
+            "mobile/RAPID_SELF_REPORTED/123,true",
+            "mobile/OTHER/123,false",
+            "///,false",
+        ]
+    )
+    fun `batch listing shards cover the keys accepted by the batch filter`(
+        input: String,
+        expected: Boolean
+    ) {
+        val shards = ObjectKeyFilters
+            .batched()
+            .listingShards(listOf("abc"))
+
+        expectThat(shards.any {
+            input.startsWith(it.prefix) && (!it.rootOnly || !input.removePrefix(it.prefix).contains("/"))
+        }).isEqualTo(expected)
+    }
 }
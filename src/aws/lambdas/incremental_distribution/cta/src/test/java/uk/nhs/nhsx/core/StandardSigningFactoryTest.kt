@@ -6,11 +6,20 @@ import io.mockk.every
 import io.mockk.mockk
 import io.mockk.verify
 import org.junit.jupiter.api.Test
+import strikt.api.expectThat
+import strikt.assertions.isEqualTo
+import strikt.assertions.isTrue
+import uk.nhs.nhsx.core.aws.secretsmanager.SecretManager
+import uk.nhs.nhsx.core.aws.secretsmanager.SecretName
+import uk.nhs.nhsx.core.aws.secretsmanager.SecretValue
 import uk.nhs.nhsx.core.aws.ssm.Parameter
 import uk.nhs.nhsx.core.aws.ssm.ParameterName
 import uk.nhs.nhsx.core.aws.ssm.Parameters
 import uk.nhs.nhsx.core.signature.KeyId
+import uk.nhs.nhsx.keyfederation.TestKeyPairs
 import java.nio.ByteBuffer
+import java.util.Base64
+import java.util.Optional
 
 internal class StandardSigningFactoryTest {
 
@@ -36,4 +45,38 @@ internal class StandardSigningFactoryTest {
         verify(exactly = 1) { parameters.parameter<KeyId>(name, any()) }
         verify(exactly = 2) { client.sign(any()) }
     }
+
+    @Test
+    fun `signs locally when environment names a private key secret`() {
+        val parameters = mockk<Parameters>()
+        every { parameters.parameter<KeyId>(ParameterName.of("ssm_key"), any()) } returns Parameter { KeyId.of("localKey") }
+
+        val client: AWSKMS = mockk()
+        val keyPair = TestKeyPairs.ecPrime256r1
+        val pem = Base64.getEncoder().encodeToString(keyPair.private.encoded)
+        val secretManager = object : SecretManager {
+            override fun getSecret(secretName: SecretName) = Optional.of(SecretValue.of(pem))
+            override fun getSecretBinary(secretName: SecretName) = throw UnsupportedOperationException()
+        }
+
+        val signature = StandardSigningFactory(SystemClock.CLOCK, parameters, client) { secretManager }
+            .datedSigner(
+                TestEnvironments.environmentWith(
+                    "SSM_KEY_ID_PARAMETER_NAME" to "ssm_key",
+                    "LOCAL_SIGNING_KEY_SECRET_NAME" to "signing-key"
+                )
+            )
+            .sign { "content".toByteArray() }
+            .signature
+
+        val verified = java.security.Signature.getInstance("SHA256withECDSA").run {
+            initVerify(keyPair.public)
+            update("content".toByteArray())
+            verify(signature.asByteBuffer().array())
+        }
+
+        expectThat(signature.keyId).isEqualTo(KeyId.of("localKey"))
+        expectThat(verified).isTrue()
+        verify(exactly = 0) { client.sign(any()) }
+    }
 }
@@ -3,9 +3,17 @@ package uk.nhs.nhsx.core.auth
 import org.junit.jupiter.api.Test
 import strikt.api.expect
 import strikt.api.expectThat
+import strikt.assertions.isEmpty
 import strikt.assertions.isEqualTo
 import strikt.assertions.isFalse
 import strikt.assertions.isTrue
+import uk.nhs.nhsx.core.events.RecordingEvents
+import uk.nhs.nhsx.testhelper.data.asInstant
+import java.time.Duration
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executor
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
 import java.util.concurrent.atomic.AtomicInteger
 
 class CachingApiKeyAuthorizerTest {
@@ -20,7 +28,16 @@ class CachingApiKeyAuthorizerTest {
         result
     }
 
-    private val authorizer = CachingApiKeyAuthorizer(delegate)
+    private var now = "2021-01-20T12:00:00Z".asInstant()
+    private val events = RecordingEvents()
+
+    private val authorizer = CachingApiKeyAuthorizer(
+        delegate = delegate,
+        events = events,
+        clock = { now },
+        statisticsInterval = Duration.ofSeconds(30),
+        executor = Executor { it.run() }
+    )
 
     @Test
     fun `caches positive result`() {
@@ -105,4 +122,102 @@ class CachingApiKeyAuthorizerTest {
 
         }
     }
+
+    @Test
+    fun `forgets negative result sooner than positive result`() {
+        result = false
+        authorizer.authorize(ApiKey("name", "value"))
+
+        now = now.plusSeconds(9)
+        expectThat(authorizer.authorize(ApiKey("name", "value"))).isFalse()
+        expectThat(count.get()).isEqualTo(1)
+
+        now = now.plusSeconds(2)
+        result = true
+        expectThat(authorizer.authorize(ApiKey("name", "value"))).isTrue()
+        expectThat(count.get()).isEqualTo(2)
+
+        now = now.plusSeconds(30)
+        expectThat(authorizer.authorize(ApiKey("name", "value"))).isTrue()
+        expectThat(count.get()).isEqualTo(2)
+    }
+
+    @Test
+    fun `verifies key again in the background before it expires`() {
+        authorizer.authorize(ApiKey("name", "value"))
+
+        now = now.plusSeconds(50)
+        result = false
+
+        expectThat(authorizer.authorize(ApiKey("name", "value"))).describedAs("stale").isTrue()
+        expectThat(count.get()).isEqualTo(2)
+
+        now = now.plusSeconds(1)
+        expectThat(authorizer.authorize(ApiKey("name", "value"))).describedAs("refreshed").isFalse()
+        expectThat(count.get()).isEqualTo(2)
+    }
+
+    @Test
+    fun `serves stale result while the key is verified again`() {
+        val reloads = ArrayDeque<Runnable>()
+        val refreshing = CachingApiKeyAuthorizer(
+            delegate = delegate,
+            events = events,
+            clock = { now },
+            executor = Executor { reloads.add(it) }
+        )
+        refreshing.authorize(ApiKey("name", "value"))
+        reloads.clear()
+
+        now = now.plusSeconds(50)
+        result = false
+
+        expectThat(refreshing.authorize(ApiKey("name", "value"))).describedAs("stale").isTrue()
+        expectThat(refreshing.authorize(ApiKey("name", "value"))).describedAs("still reloading").isTrue()
+        expectThat(count.get()).isEqualTo(1)
+
+        while (reloads.isNotEmpty()) reloads.removeFirst().run()
+
+        expectThat(count.get()).isEqualTo(2)
+        expectThat(refreshing.authorize(ApiKey("name", "value"))).describedAs("reloaded").isFalse()
+    }
+
+    @Test
+    fun `verifies concurrent requests for the same key once`() {
+        val release = CountDownLatch(1)
+        val slow = CachingApiKeyAuthorizer(ApiKeyAuthorizer {
+            count.incrementAndGet()
+            release.await(5, TimeUnit.SECONDS)
+        }, events)
+
+        val pool = Executors.newFixedThreadPool(8)
+        try {
+            val results = (1..8).map { pool.submit<Boolean> { slow.authorize(ApiKey("name", "value")) } }
+            Thread.sleep(100)
+            release.countDown()
+
+            expectThat(results.map { it.get(5, TimeUnit.SECONDS) }.all { it }).isTrue()
+            expectThat(count.get()).isEqualTo(1)
+        } finally {
+            pool.shutdownNow()
+        }
+    }
+
+    @Test
+    fun `emits cache statistics once per interval`() {
+        repeat(3) { authorizer.authorize(ApiKey("name", "value")) }
+        expectThat(events.filterIsInstance<ApiKeyCacheStatistics>()).isEmpty()
+
+        now = now.plusSeconds(31)
+        authorizer.authorize(ApiKey("name", "value"))
+        authorizer.authorize(ApiKey("name", "value"))
+
+        expectThat(events.filterIsInstance<ApiKeyCacheStatistics>().single()) {
+            get(ApiKeyCacheStatistics::hits).isEqualTo(3)
+            get(ApiKeyCacheStatistics::misses).isEqualTo(1)
+            get(ApiKeyCacheStatistics::loads).isEqualTo(1)
+            get(ApiKeyCacheStatistics::loadFailures).isEqualTo(0)
+            get(ApiKeyCacheStatistics::size).isEqualTo(1)
+        }
+    }
 }
@@ -0,0 +1,105 @@
+package uk.nhs.nhsx.core.auth
+
+import com.amazonaws.HttpMethod.GET
+import com.amazonaws.services.kms.model.SigningAlgorithmSpec
+import org.junit.jupiter.api.Test
+import strikt.api.expectThat
+import strikt.assertions.containsExactly
+import strikt.assertions.doesNotContainKey
+import strikt.assertions.hasEntry
+import strikt.assertions.isEqualTo
+import uk.nhs.nhsx.core.HttpResponses
+import uk.nhs.nhsx.core.signature.KeyId
+import uk.nhs.nhsx.core.signature.Signature
+import uk.nhs.nhsx.core.signature.Signer
+import uk.nhs.nhsx.testhelper.ProxyRequestBuilder.request
+import uk.nhs.nhsx.testhelper.assertions.AwsRuntimeAssertions.ProxyResponse.headers
+import uk.nhs.nhsx.testhelper.withHeader
+import uk.nhs.nhsx.testhelper.withMethod
+import java.security.MessageDigest
+import java.time.Instant
+import java.util.Base64
+
+class DigestResponseSignerTest {
+
+    private var now = Instant.parse("2020-08-02T10:18:44.000Z")
+    private val signed = mutableListOf<String>()
+    private val signer = Signer {
+        signed.add(String(it))
+        Signature(KeyId.of("some-id"), SigningAlgorithmSpec.ECDSA_SHA_256, "some-signature".toByteArray())
+    }
+    private val delegated = mutableListOf<String>()
+    private val delegate = ResponseSigner { request, _ -> delegated.add(request.path) }
+
+    private val responseSigner = DigestResponseSigner(delegate, signer, { now })
+
+    @Test
+    fun `clients without the digest scheme are signed by the delegate`() {
+        val response = HttpResponses.ok("""{"foo":"bar"}""")
+
+        responseSigner.sign(request().withMethod(GET).withPath("/circuit-breaker"), response)
+
+        expectThat(delegated).containsExactly("/circuit-breaker")
+        expectThat(signed).isEqualTo(emptyList())
+        expectThat(response).headers.doesNotContainKey("X-Amz-Meta-Signature-Scheme")
+    }
+
+    @Test
+    fun `signs method, path, minute and body digest`() {
+        val response = HttpResponses.ok("""{"foo":"bar"}""")
+
+        responseSigner.sign(digestRequest("/circuit-breaker"), response)
+
+        expectThat(signed).containsExactly(
+            "GET:/circuit-breaker:Sun, 02 Aug 2020 10:18:00 UTC:${sha256("""{"foo":"bar"}""")}"
+        )
+        expectThat(response)
+            .headers
+            .hasEntry("X-Amz-Meta-Signature", """keyId="some-id",signature="c29tZS1zaWduYXR1cmU="""")
+            .hasEntry("X-Amz-Meta-Signature-Date", "Sun, 02 Aug 2020 10:18:00 UTC")
+            .hasEntry("X-Amz-Meta-Signature-Scheme", "digest-v1")
+        expectThat(delegated).isEqualTo(emptyList())
+    }
+
+    @Test
+    fun `reuses signature for identical responses within the minute`() {
+        repeat(3) {
+            responseSigner.sign(digestRequest("/circuit-breaker", "request-$it"), HttpResponses.ok("same"))
+            now = now.plusSeconds(5)
+        }
+
+        expectThat(signed.size).isEqualTo(1)
+    }
+
+    @Test
+    fun `signs again for a different body, path or minute`() {
+        responseSigner.sign(digestRequest("/a"), HttpResponses.ok("one"))
+        responseSigner.sign(digestRequest("/a"), HttpResponses.ok("two"))
+        responseSigner.sign(digestRequest("/b"), HttpResponses.ok("two"))
+        now = now.plusSeconds(60)
+        responseSigner.sign(digestRequest("/b"), HttpResponses.ok("two"))
+
+        expectThat(signed.size).isEqualTo(4)
+    }
+
+    @Test
+    fun `signs with the minute the clock was read at when it turns over during signing`() {
+        val instants = ArrayDeque(listOf(Instant.parse("2020-08-02T10:18:59.999Z"), Instant.parse("2020-08-02T10:19:00.000Z")))
+        val response = HttpResponses.ok("same")
+
+        DigestResponseSigner(delegate, signer, { instants.removeFirstOrNull() ?: now })
+            .sign(digestRequest("/circuit-breaker"), response)
+
+        expectThat(signed).containsExactly("GET:/circuit-breaker:Sun, 02 Aug 2020 10:18:00 UTC:${sha256("same")}")
+        expectThat(response).headers.hasEntry("X-Amz-Meta-Signature-Date", "Sun, 02 Aug 2020 10:18:00 UTC")
+    }
+
+    private fun digestRequest(path: String, requestId: String = "client-request-id") = request()
+        .withMethod(GET)
+        .withPath(path)
+        .withHeader("Request-Id", requestId)
+        .withHeader("accept-signature-scheme", "digest-v1")
+
+    private fun sha256(content: String) =
+        Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(content.toByteArray()))
+}
@@ -2,7 +2,10 @@ package uk.nhs.nhsx.core.aws.s3
 
 import org.junit.jupiter.api.Test
 import strikt.api.expectThat
+import strikt.assertions.containsExactly
+import strikt.assertions.isEmpty
 import strikt.assertions.isEqualTo
+import java.time.Duration
 import java.time.Instant
 import java.time.ZoneOffset
 import java.time.ZonedDateTime
@@ -29,4 +32,22 @@ class PartitionedObjectKeyNameProviderTest {
         expectThat(objectKeyName.value).isEqualTo("2020/11/12/13/1605186429000_${uuid}")
     }
 
+    @Test
+    fun `day partition prefixes cover every day between both instants`() {
+        val from = ZonedDateTime.of(2020, 12, 30, 22, 59, 0, 0, ZoneOffset.UTC).toInstant()
+        val to = ZonedDateTime.of(2021, 1, 1, 1, 0, 0, 0, ZoneOffset.UTC).toInstant()
+
+        expectThat(PartitionedObjectKeyNameProvider.dayPartitionPrefixes(from, to)).containsExactly(
+            "2020/12/30/",
+            "2020/12/31/",
+            "2021/01/01/"
+        )
+    }
+
+    @Test
+    fun `no partition prefixes when range is reversed`() {
+        val from = ZonedDateTime.of(2021, 1, 1, 2, 0, 0, 0, ZoneOffset.UTC).toInstant()
+
+        expectThat(PartitionedObjectKeyNameProvider.dayPartitionPrefixes(from, from.minus(Duration.ofDays(1)))).isEmpty()
+    }
 }
@@ -4,6 +4,9 @@ import io.mockk.every
 import io.mockk.mockk
 import io.mockk.verify
 import org.junit.jupiter.api.Test
+import strikt.api.expectThat
+import strikt.assertions.isEqualTo
+import java.time.Duration
 import java.util.*
 
 class CachingSecretManagerTest {
@@ -35,4 +38,21 @@ class CachingSecretManagerTest {
 
         verify(exactly = 1) { delegate.getSecret(secretName) }
     }
+
+    @Test
+    fun `keeps last known secret value when refresh fails`() {
+        val secretName = SecretName.of("Foobar")
+
+        val delegate = mockk<SecretManager>()
+        every { delegate.getSecret(secretName) } returns Optional.of(SecretValue.of("first")) andThenThrows RuntimeException("unavailable")
+
+        val manager = CachingSecretManager(delegate, Duration.ofMillis(50))
+
+        repeat(5) {
+            expectThat(manager.getSecret(secretName)).isEqualTo(Optional.of(SecretValue.of("first")))
+            Thread.sleep(50)
+        }
+
+        verify(atLeast = 2) { delegate.getSecret(secretName) }
+    }
 }
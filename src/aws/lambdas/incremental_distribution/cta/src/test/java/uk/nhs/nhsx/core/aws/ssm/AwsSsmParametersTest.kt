@@ -3,11 +3,17 @@ package uk.nhs.nhsx.core.aws.ssm
 import com.amazonaws.services.simplesystemsmanagement.AWSSimpleSystemsManagement
 import com.amazonaws.services.simplesystemsmanagement.model.GetParameterRequest
 import com.amazonaws.services.simplesystemsmanagement.model.GetParameterResult
+import com.amazonaws.services.simplesystemsmanagement.model.GetParametersRequest
+import com.amazonaws.services.simplesystemsmanagement.model.GetParametersResult
 import com.amazonaws.services.simplesystemsmanagement.model.Parameter
 import org.awaitility.Awaitility.await
 import org.junit.jupiter.api.Test
 import strikt.api.expectThat
+import strikt.assertions.containsExactly
 import strikt.assertions.isEqualTo
+import strikt.assertions.isSameInstanceAs
+import uk.nhs.nhsx.core.aws.ConfigurationLoadFailed
+import uk.nhs.nhsx.core.events.RecordingEvents
 import uk.nhs.nhsx.testhelper.proxy
 import java.time.Duration
 import java.util.*
@@ -15,10 +21,12 @@ import java.util.concurrent.atomic.AtomicInteger
 
 class AwsSsmParametersTest {
 
+    private val events = RecordingEvents()
+
     @Test
     fun `caches parameter results`() {
         val interval = Duration.ofSeconds(1)
-        val parameters = AwsSsmParameters(FakeSimpleSystemsManagementClient(), interval)
+        val parameters = AwsSsmParameters(FakeSimpleSystemsManagementClient(), interval, events)
         val name = ParameterName.of("Hello")
 
         expectThat(getValue(parameters, name)).isEqualTo("world1")
@@ -27,16 +35,91 @@ class AwsSsmParametersTest {
         await().atMost(interval).until { getValue(parameters, name) == "world3" }
     }
 
+    @Test
+    fun `fetches all registered parameters in batches on first lookup`() {
+        val client = FakeSimpleSystemsManagementClient()
+        val parameters = AwsSsmParameters(client, events = events)
+
+        val declared = (1..12).map { parameters.parameter(ParameterName.of("name$it")) { it } }
+
+        declared.forEach { it.value() }
+
+        expectThat(client.batches).containsExactly(10, 2)
+        expectThat(client.singles.get()).isEqualTo(0)
+    }
+
+    @Test
+    fun `keeps last known value when refresh fails`() {
+        val interval = Duration.ofMillis(100)
+        val client = FakeSimpleSystemsManagementClient()
+        val parameters = AwsSsmParameters(client, interval, events)
+        val parameter = parameters.parameter(ParameterName.of("Hello")) { it }
+
+        expectThat(parameter.value()).isEqualTo("WORLD1")
+
+        client.failing = true
+        repeat(5) {
+            Thread.sleep(interval.toMillis())
+            expectThat(parameter.value()).isEqualTo("WORLD1")
+        }
+        await().atMost(Duration.ofSeconds(1)).until { events.any { it is ConfigurationLoadFailed } }
+
+        client.failing = false
+        await().atMost(Duration.ofSeconds(1)).until { parameter.value() != "WORLD1" }
+    }
+
+    @Test
+    fun `loads the parameter on its own when its batch fails`() {
+        val client = FakeSimpleSystemsManagementClient()
+        val parameters = AwsSsmParameters(client, events = events)
+        val parameter = parameters.parameter(ParameterName.of("Hello")) { it }
+        parameters.parameter(ParameterName.of("Other")) { it }
+
+        client.failingBatches = true
+
+        expectThat(parameter.value()).isEqualTo("WORLD1")
+        expectThat(client.singles.get()).isEqualTo(1)
+        expectThat(events.filterIsInstance<ConfigurationLoadFailed>().map { it.key }).containsExactly("Hello")
+    }
+
+    @Test
+    fun `shares one instance per container`() {
+        val region = System.getProperty("aws.region")
+        try {
+            // the default client only needs a region to be built, no call is made
+            System.setProperty("aws.region", "eu-west-2")
+
+            expectThat(AwsSsmParameters.shared).isSameInstanceAs(AwsSsmParameters.shared)
+        } finally {
+            if (region == null) System.clearProperty("aws.region") else System.setProperty("aws.region", region)
+        }
+    }
+
     class FakeSimpleSystemsManagementClient : AWSSimpleSystemsManagement by proxy() {
         val count = AtomicInteger(0)
+        val singles = AtomicInteger(0)
+        val batches = mutableListOf<Int>()
+        @Volatile var failing = false
+        @Volatile var failingBatches = false
 
-        override fun getParameter(getParameterRequest: GetParameterRequest): GetParameterResult =
-            GetParameterResult()
+        override fun getParameter(getParameterRequest: GetParameterRequest): GetParameterResult {
+            if (failing) error("unavailable")
+            singles.incrementAndGet()
+            return GetParameterResult()
                 .withParameter(
                     Parameter()
-                        .withName("Hello")
+                        .withName(getParameterRequest.name)
                         .withValue("WORLD${count.incrementAndGet()}")
                 )
+        }
+
+        override fun getParameters(getParametersRequest: GetParametersRequest): GetParametersResult {
+            if (failing || failingBatches) error("unavailable")
+            batches += getParametersRequest.names.size
+            val value = "WORLD${count.incrementAndGet()}"
+            return GetParametersResult()
+                .withParameters(getParametersRequest.names.map { Parameter().withName(it).withValue(value) })
+        }
     }
 
     private fun getValue(
@@ -0,0 +1,51 @@
+package uk.nhs.nhsx.core.signature
+
+import com.amazonaws.services.kms.model.SigningAlgorithmSpec.ECDSA_SHA_256
+import org.junit.jupiter.api.Test
+import strikt.api.expectThat
+import strikt.assertions.isEqualTo
+import uk.nhs.nhsx.core.aws.s3.ByteArraySource
+import java.security.MessageDigest
+import java.time.Instant
+
+class SignableContentTest {
+
+    private fun sha256(bytes: ByteArray) = MessageDigest.getInstance("SHA-256").digest(bytes)
+
+    @Test
+    fun `digest of parts is digest of their concatenation`() {
+        val content = SignableContent("date:".toByteArray(), "payload".toByteArray())
+
+        expectThat(content.toByteArray()).isEqualTo("date:payload".toByteArray())
+        expectThat(content.sha256()).isEqualTo(sha256("date:payload".toByteArray()))
+    }
+
+    @Test
+    fun `uses digest known by producer`() {
+        val known = ByteArray(32) { 7 }
+
+        expectThat(SignableContent.withSha256("payload".toByteArray(), known).sha256()).isEqualTo(known)
+    }
+
+    @Test
+    fun `distribution signature prefixes payload with date`() {
+        val content = DistributionSignature(ByteArraySource.fromUtf8String("payload"))(
+            SignatureDate("Tue, 19 Jan 2021 10:00:00 UTC", Instant.EPOCH)
+        )
+
+        expectThat(content.toByteArray()).isEqualTo("Tue, 19 Jan 2021 10:00:00 UTC:payload".toByteArray())
+    }
+
+    @Test
+    fun `signers without a digest path sign the concatenated content`() {
+        val signed = mutableListOf<String>()
+        val signer = Signer {
+            signed.add(String(it))
+            Signature(KeyId.of("key"), ECDSA_SHA_256, it)
+        }
+
+        signer.signContent(SignableContent("a:".toByteArray(), "b".toByteArray()))
+
+        expectThat(signed).isEqualTo(listOf("a:b"))
+    }
+}
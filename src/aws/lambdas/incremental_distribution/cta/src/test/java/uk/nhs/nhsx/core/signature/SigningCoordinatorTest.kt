@@ -0,0 +1,123 @@
+package uk.nhs.nhsx.core.signature
+
+import com.amazonaws.AmazonServiceException
+import com.amazonaws.services.kms.model.SigningAlgorithmSpec.ECDSA_SHA_256
+import org.junit.jupiter.api.Test
+import strikt.api.expectThat
+import strikt.api.expectThrows
+import strikt.assertions.all
+import strikt.assertions.hasSize
+import strikt.assertions.isEqualTo
+import strikt.assertions.isFalse
+import strikt.assertions.isLessThanOrEqualTo
+import strikt.assertions.isTrue
+import uk.nhs.nhsx.core.events.RecordingEvents
+import java.time.Instant
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit.SECONDS
+import java.util.concurrent.atomic.AtomicInteger
+
+class SigningCoordinatorTest {
+
+    private val events = RecordingEvents()
+    private val clock = { Instant.EPOCH }
+    private val signature = Signature(KeyId.of("key"), ECDSA_SHA_256, byteArrayOf(1, 2, 3))
+
+    @Test
+    fun `signs through delegate and summarises`() {
+        val coordinator = SigningCoordinator("test", events, clock, sleep = {})
+        val signer = coordinator.coordinated { signature }
+
+        repeat(3) { expectThat(signer.sign(byteArrayOf(it.toByte()))).isEqualTo(signature) }
+
+        val summary = coordinator.summary()
+        expectThat(summary.signed).isEqualTo(3)
+        expectThat(summary.failed).isEqualTo(0)
+        expectThat(summary.throttled).isEqualTo(0)
+        expectThat(coordinator.summary().signed).isEqualTo(0)
+    }
+
+    @Test
+    fun `exposes the key of the delegate`() {
+        val coordinator = SigningCoordinator("test", events, clock, sleep = {})
+        val delegate = LocalEcdsaSigner({ KeyId.of("key") }) { error("not signing") }
+
+        expectThat(coordinator.coordinated(delegate).keyId()).isEqualTo(KeyId.of("key"))
+    }
+
+    @Test
+    fun `retries throttled requests`() {
+        val calls = AtomicInteger()
+        val coordinator = SigningCoordinator("test", events, clock, sleep = {})
+        val signer = coordinator.coordinated {
+            if (calls.incrementAndGet() < 3) throw throttling() else signature
+        }
+
+        expectThat(signer.sign(byteArrayOf())).isEqualTo(signature)
+
+        expectThat(calls.get()).isEqualTo(3)
+        expectThat(coordinator.summary().throttled).isEqualTo(2)
+        expectThat(events.filterIsInstance<SigningThrottled>().map { it.concurrencyLimit }).isEqualTo(listOf(5, 2))
+    }
+
+    @Test
+    fun `gives up after max attempts`() {
+        val coordinator = SigningCoordinator("test", events, clock, maxAttempts = 2, sleep = {})
+        val signer = coordinator.coordinated { throw throttling() }
+
+        expectThrows<AmazonServiceException> { signer.sign(byteArrayOf()) }
+
+        val summary = coordinator.summary()
+        expectThat(summary.failed).isEqualTo(1)
+        expectThat(summary.throttled).isEqualTo(2)
+    }
+
+    @Test
+    fun `does not retry other failures`() {
+        val calls = AtomicInteger()
+        val coordinator = SigningCoordinator("test", events, clock, sleep = {})
+        val signer = coordinator.coordinated {
+            calls.incrementAndGet()
+            throw IllegalStateException("boom")
+        }
+
+        expectThrows<IllegalStateException> { signer.sign(byteArrayOf()) }
+        expectThat(calls.get()).isEqualTo(1)
+        expectThat(coordinator.summary().failed).isEqualTo(1)
+    }
+
+    @Test
+    fun `bounds concurrent requests across signers`() {
+        val inFlight = AtomicInteger()
+        val peak = AtomicInteger()
+        val coordinator = SigningCoordinator("test", events, clock, maxConcurrency = 2, sleep = {})
+        val delegate = Signer {
+            peak.accumulateAndGet(inFlight.incrementAndGet()) { a, b -> maxOf(a, b) }
+            Thread.sleep(10)
+            inFlight.decrementAndGet()
+            signature
+        }
+        val signers = listOf(coordinator.coordinated(delegate), coordinator.coordinated(delegate))
+        val pool = Executors.newFixedThreadPool(8)
+
+        try {
+            val results = pool.invokeAll((0 until 16).map { i -> Callable { signers[i % 2].sign(byteArrayOf()) } })
+            expectThat(results.map { it.get(5, SECONDS) }).hasSize(16).all { isEqualTo(signature) }
+        } finally {
+            pool.shutdownNow()
+        }
+
+        expectThat(peak.get()).isLessThanOrEqualTo(2)
+        expectThat(coordinator.summary().peakConcurrency).isLessThanOrEqualTo(2)
+    }
+
+    @Test
+    fun `recognises aws throttling`() {
+        expectThat(SigningCoordinator.isThrottling(throttling())).isTrue()
+        expectThat(SigningCoordinator.isThrottling(AmazonServiceException("no").apply { errorCode = "AccessDenied" })).isFalse()
+        expectThat(SigningCoordinator.isThrottling(IllegalStateException())).isFalse()
+    }
+
+    private fun throttling() = AmazonServiceException("slow down").apply { errorCode = "ThrottlingException" }
+}
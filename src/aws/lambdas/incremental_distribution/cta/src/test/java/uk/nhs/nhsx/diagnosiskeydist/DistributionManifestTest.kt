@@ -0,0 +1,112 @@
+package uk.nhs.nhsx.diagnosiskeydist
+
+import org.junit.jupiter.api.Test
+import strikt.api.expectThat
+import strikt.assertions.containsExactly
+import strikt.assertions.isEqualTo
+import strikt.assertions.isFalse
+import strikt.assertions.isNotEqualTo
+import strikt.assertions.isTrue
+import uk.nhs.nhsx.core.ContentType.Companion.APPLICATION_JSON
+import uk.nhs.nhsx.core.Json
+import uk.nhs.nhsx.core.aws.s3.BucketName
+import uk.nhs.nhsx.core.aws.s3.ByteArraySource.Companion.fromUtf8String
+import uk.nhs.nhsx.core.aws.s3.Locator
+import uk.nhs.nhsx.core.aws.s3.ObjectKey
+import uk.nhs.nhsx.core.signature.KeyId
+import uk.nhs.nhsx.diagnosiskeydist.apispec.DailyZIPSubmissionPeriod
+import uk.nhs.nhsx.diagnosiskeydist.apispec.TwoHourlyZIPSubmissionPeriod
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.StoredTemporaryExposureKey
+import uk.nhs.nhsx.testhelper.data.asInstant
+import uk.nhs.nhsx.testhelper.mocks.FakeS3
+import java.time.Duration
+
+class DistributionManifestTest {
+
+    private val period = DailyZIPSubmissionPeriod("2021-01-20T00:00:00Z".asInstant())
+    private val offset = Duration.ofMinutes(-15)
+    private val signingKey = KeyId.of("arn:aws:kms:eu-west-2:123456789012:key/b4c27bf3-8a76-4d2b-b91c-2152e7710a57")
+
+    private val keys = listOf(
+        StoredTemporaryExposureKey("W2zb3BeMWt6Xr2u0ABG32Q==", 12345, 144, 7),
+        StoredTemporaryExposureKey("kzQt9Lf3xjtAlMtm7jkSqw==", 12499, 144, 7, 4)
+    )
+
+    private val objectKeys = listOf(ObjectKey.of("mobile/LAB_RESULT/def"), ObjectKey.of("mobile/LAB_RESULT/abc"))
+
+    @Test
+    fun `content hash does not depend on key order`() {
+        val first = PeriodManifest.of(objectKeys, keys, period, offset, signingKey)
+        val second = PeriodManifest.of(objectKeys.reversed(), keys.reversed(), period, offset, signingKey)
+
+        expectThat(first).isEqualTo(second)
+    }
+
+    @Test
+    fun `submission object keys are sorted`() {
+        expectThat(PeriodManifest.of(objectKeys, keys, period, offset, signingKey).submissionObjectKeys)
+            .containsExactly(ObjectKey.of("mobile/LAB_RESULT/abc"), ObjectKey.of("mobile/LAB_RESULT/def"))
+    }
+
+    @Test
+    fun `content hash changes with keys, period, offset and signing key`() {
+        val hash = PeriodManifest.of(objectKeys, keys, period, offset, signingKey).contentHash
+
+        expectThat(PeriodManifest.of(objectKeys, keys.take(1), period, offset, signingKey).contentHash).isNotEqualTo(hash)
+        expectThat(PeriodManifest.of(objectKeys, keys, period.allPeriodsToGenerate()[1], offset, signingKey).contentHash).isNotEqualTo(hash)
+        expectThat(PeriodManifest.of(objectKeys, keys, period, Duration.ZERO, signingKey).contentHash).isNotEqualTo(hash)
+        expectThat(PeriodManifest.of(objectKeys, keys, period, offset, KeyId.of("rotated-key")).contentHash).isNotEqualTo(hash)
+        expectThat(PeriodManifest.of(objectKeys, keys, period, offset, null).contentHash).isNotEqualTo(hash)
+        expectThat(
+            PeriodManifest.of(
+                objectKeys,
+                keys,
+                TwoHourlyZIPSubmissionPeriod("2021-01-20T00:00:00Z".asInstant()),
+                offset,
+                signingKey
+            ).contentHash
+        ).isNotEqualTo(hash)
+    }
+
+    @Test
+    fun `unchanged only when zip exists and hash matches`() {
+        val manifest = PeriodManifest.of(objectKeys, keys, period, offset, signingKey)
+        val previous = DistributionManifest(mapOf(period.zipPath() to manifest))
+
+        expectThat(IncrementalDistribution(previous, setOf(period.zipPath())).isUnchanged(period.zipPath(), manifest)).isTrue()
+        expectThat(IncrementalDistribution(previous, emptySet()).isUnchanged(period.zipPath(), manifest)).isFalse()
+        expectThat(IncrementalDistribution(DistributionManifest.EMPTY, setOf(period.zipPath())).isUnchanged(period.zipPath(), manifest)).isFalse()
+        expectThat(
+            IncrementalDistribution(previous, setOf(period.zipPath()))
+                .isUnchanged(period.zipPath(), PeriodManifest.of(objectKeys, keys.take(1), period, offset, signingKey))
+        ).isFalse()
+    }
+
+    @Test
+    fun `round trips manifest through store`() {
+        val s3 = FakeS3()
+        val store = DistributionManifestStore(s3, BucketName.of("distribution"))
+        val manifest = DistributionManifest(mapOf(period.zipPath() to PeriodManifest.of(objectKeys, keys, period, offset, signingKey)))
+
+        store.store(manifest)
+
+        expectThat(store.load()).isEqualTo(manifest)
+    }
+
+    @Test
+    fun `missing or unreadable manifest loads as empty`() {
+        val s3 = FakeS3()
+        val store = DistributionManifestStore(s3, BucketName.of("distribution"))
+
+        expectThat(store.load()).isEqualTo(DistributionManifest.EMPTY)
+
+        s3.upload(
+            Locator.of(BucketName.of("distribution"), ObjectKey.of(DistributionManifest.MANIFEST_OBJECT_KEY)),
+            APPLICATION_JSON,
+            fromUtf8String("not json")
+        )
+
+        expectThat(store.load()).isEqualTo(DistributionManifest.EMPTY)
+        expectThat(Json.toJson(DistributionManifest.EMPTY)).isEqualTo("""{"periods":{}}""")
+    }
+}
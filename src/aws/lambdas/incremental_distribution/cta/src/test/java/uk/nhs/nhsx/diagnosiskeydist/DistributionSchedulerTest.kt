@@ -0,0 +1,118 @@
+package uk.nhs.nhsx.diagnosiskeydist
+
+import org.junit.jupiter.api.Test
+import strikt.api.expectThat
+import strikt.api.expectThrows
+import strikt.assertions.contains
+import strikt.assertions.containsExactly
+import strikt.assertions.isA
+import strikt.assertions.isEqualTo
+import strikt.assertions.isFalse
+import strikt.assertions.isNotNull
+import strikt.assertions.message
+import uk.nhs.nhsx.core.SystemClock
+import uk.nhs.nhsx.core.events.ExceptionThrown
+import uk.nhs.nhsx.core.events.RecordingEvents
+import uk.nhs.nhsx.core.handler.RequestContext
+import java.time.Duration
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit.MILLISECONDS
+import java.util.concurrent.TimeUnit.SECONDS
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+
+class DistributionSchedulerTest {
+
+    private val events = RecordingEvents()
+
+    @Test
+    fun `runs all stages of all pipelines`() {
+        val uploaded = AtomicInteger()
+
+        scheduler().use { scheduler ->
+            repeat(20) { i ->
+                scheduler.submit {
+                    stage("export") { i }
+                        .thenStage("sign") { it * 2 }
+                        .thenStage("upload") { uploaded.addAndGet(it) }
+                }
+            }
+        }
+
+        expectThat(uploaded.get()).isEqualTo((0 until 20).sumOf { it * 2 })
+        expectThat(events.filterIsInstance<StageLatencySummary>().map { it.stage to it.count })
+            .containsExactly("export" to 20, "sign" to 20, "upload" to 20)
+    }
+
+    @Test
+    fun `failure cancels outstanding work and is rethrown`() {
+        val started = CountDownLatch(1)
+        val reachedUpload = AtomicBoolean(false)
+
+        expectThrows<IllegalStateException> {
+            scheduler().use { scheduler ->
+                scheduler.submit {
+                    stage("export") {
+                        started.countDown()
+                        SECONDS.sleep(5)
+                    }.thenStage("upload") { reachedUpload.set(true) }
+                }
+                scheduler.submit {
+                    stage("export") {
+                        started.await(5, SECONDS)
+                        error("Oh no!")
+                    }
+                }
+            }
+        }.get { cause }.isNotNull().isA<IllegalStateException>().message.isEqualTo("Oh no!")
+
+        expectThat(reachedUpload.get()).isFalse()
+        expectThat(events.map { it.javaClass.simpleName }).contains("ExceptionThrown")
+    }
+
+    @Test
+    fun `failure skips the remaining stages of running pipelines`() {
+        val reachedSign = AtomicBoolean(false)
+
+        expectThrows<IllegalStateException> {
+            scheduler().use { scheduler ->
+                scheduler.submit {
+                    stage("export") {
+                        repeat(500) { if (events.none { it is ExceptionThrown<*> }) MILLISECONDS.sleep(10) }
+                    }
+                        .thenStage("sign") { reachedSign.set(true) }
+                        .thenStage("upload") { }
+                }
+                scheduler.submit { stage("export") { error("Oh no!") } }
+            }
+        }
+
+        expectThat(reachedSign.get()).isFalse()
+    }
+
+    @Test
+    fun `timeout cancels outstanding work`() {
+        expectThrows<IllegalStateException> {
+            scheduler(Duration.ofMillis(200)).use { scheduler ->
+                scheduler.submit { stage("export") { SECONDS.sleep(5) } }
+            }
+        }
+
+        expectThat(events.toList()).contains(ExecutorTimedOutWaitingForShutdown)
+    }
+
+    @Test
+    fun `copies request context onto pool threads`() {
+        RequestContext.assignAwsRequestId("hello")
+        var captured = ""
+
+        scheduler().use { scheduler ->
+            scheduler.submit { stage("export") { captured = RequestContext.awsRequestId() } }
+        }
+
+        expectThat(captured).isEqualTo("hello")
+    }
+
+    private fun scheduler(timeout: Duration = Duration.ofSeconds(10)) =
+        DistributionScheduler("Distribution", timeout, events, SystemClock.CLOCK, parallelism = 4)
+}
@@ -16,6 +16,7 @@ import strikt.api.Assertion
 import strikt.api.expectThat
 import strikt.api.expectThrows
 import strikt.assertions.contains
+import strikt.assertions.containsExactly
 import strikt.assertions.doesNotContain
 import strikt.assertions.hasSize
 import strikt.assertions.isEmpty
@@ -178,6 +179,41 @@ class DistributionServiceS3Test {
                 .tekExport(yesterday.dailyZIPSubmissionPeriodS3Key()) { hasSize(13) }
                 .tekExport(twoDaysAgo.dailyZIPSubmissionPeriodS3Key()) { hasSize(12) }
                 .tekExport(threeDaysAgo.dailyZIPSubmissionPeriodS3Key()) { hasSize(0) }
+
+            val summaries = testSetup.events.filterIsInstance<ValidSubmissions>()
+            expectThat(summaries.single { it.zipPath == now.dailyZIPSubmissionPeriodS3Key() }.keyCount).isEqualTo(14)
+            expectThat(testSetup.events.filterIsInstance<ValidSubmission>()).hasSize(summaries.sumOf { it.keyCount })
+        }
+    }
+
+    @Test
+    fun `work stealing distribution generates the same zips`() {
+        startS3(clock) { client ->
+            val now = clock.instant()
+            val yesterday = now.minus(Duration.ofDays(1))
+
+            val testSetup = TestSetup(clock, client) {
+                it.copy(workStealingDistribution = true)
+            }
+            val submissionBucket = testSetup.submissionBucket
+            val distributionBucket = testSetup.distributionBucket
+
+            distributionBucket.create()
+            submissionBucket.create()
+
+            submissionBucket.addSubmissions(Submissions(y, now, yesterday))
+
+            testSetup.distributionService.distributeKeys(now)
+
+            distributionBucket
+                .expectThat()
+                .dailyBatchIsEqualTo(15)
+                .twoHourlyBatchIsEqualTo(168)
+                .tekExport(now.dailyZIPSubmissionPeriodS3Key()) { hasSize(14) }
+                .tekExport(yesterday.dailyZIPSubmissionPeriodS3Key()) { hasSize(13) }
+
+            expectThat(testSetup.events.filterIsInstance<StageLatencySummary>().map { it.stage })
+                .containsExactly("export", "sign", "upload")
         }
     }
 
@@ -249,6 +285,96 @@ class DistributionServiceS3Test {
         }
     }
 
+    @Test
+    fun `incremental distribution skips zips with unchanged inputs`() {
+        startS3(clock) { client ->
+            val now = clock.instant()
+
+            val testSetup = TestSetup(clock, client) {
+                it.copy(incrementalDistribution = true)
+            }
+
+            val submissionBucket = testSetup.submissionBucket
+            val distributionBucket = testSetup.distributionBucket
+
+            submissionBucket.create()
+            distributionBucket.create()
+
+            submissionBucket.addSubmissions(Submissions(y, now, now.minus(Duration.ofDays(1))))
+
+            testSetup.distributionService.distributeKeys(now)
+
+            expectThat(testSetup.events.filterIsInstance<UnchangedZipSkipped>()).isEmpty()
+
+            testSetup.distributionService.distributeKeys(now)
+
+            expectThat(testSetup.events.filterIsInstance<UnchangedZipSkipped>()).hasSize(15 + 168)
+
+            distributionBucket
+                .expectThat()
+                .dailyBatchIsEqualTo(15)
+                .twoHourlyBatchIsEqualTo(168)
+                .contains(DistributionManifest.MANIFEST_OBJECT_KEY)
+                .tekExport(now.dailyZIPSubmissionPeriodS3Key()) { hasSize(14) }
+        }
+    }
+
+    @Test
+    fun `incremental distribution regenerates zips with new submissions`() {
+        startS3(clock) { client ->
+            val now = clock.instant()
+
+            val testSetup = TestSetup(clock, client) {
+                it.copy(incrementalDistribution = true)
+            }
+
+            val submissionBucket = testSetup.submissionBucket
+            val distributionBucket = testSetup.distributionBucket
+
+            submissionBucket.create()
+            distributionBucket.create()
+
+            submissionBucket.addSubmissions(Submissions(y, now.minus(Duration.ofDays(1))))
+
+            testSetup.distributionService.distributeKeys(now)
+
+            submissionBucket.addSubmissions(Submissions(y, now))
+
+            testSetup.distributionService.distributeKeys(now)
+
+            expectThat(testSetup.events.filterIsInstance<UnchangedZipSkipped>())
+                .map { it.name }
+                .doesNotContain(now.dailyZIPSubmissionPeriodS3Key())
+                .contains(now.minus(Duration.ofDays(1)).dailyZIPSubmissionPeriodS3Key())
+
+            distributionBucket
+                .expectThat()
+                .tekExport(now.dailyZIPSubmissionPeriodS3Key()) { hasSize(14) }
+        }
+    }
+
+    @Test
+    fun `removes manifest when incremental distribution is disabled`() {
+        startS3(clock) { client ->
+            val now = clock.instant()
+
+            val testSetup = TestSetup(clock, client)
+            val submissionBucket = testSetup.submissionBucket
+            val distributionBucket = testSetup.distributionBucket
+
+            submissionBucket.create()
+            distributionBucket
+                .create()
+                .putZip(DistributionManifest.MANIFEST_OBJECT_KEY)
+
+            testSetup.distributionService.distributeKeys(now)
+
+            distributionBucket
+                .expectThat()
+                .doesNotContain(DistributionManifest.MANIFEST_OBJECT_KEY)
+        }
+    }
+
     @Test
     fun `deletes old objects that dont match uploaded`() {
         startS3(clock) { client ->
@@ -575,7 +701,16 @@ class TestSetup(
         zipSubmissionPeriodOffset = Duration.ofMinutes(-15),
         loadSubmissionsThreadPoolSize = 15,
         loadSubmissionsTimeout = Duration.ofMinutes(12),
-        maximalZipSignS3PutTime = Duration.ofMinutes(6)
+        maximalZipSignS3PutTime = Duration.ofMinutes(6),
+        incrementalDistribution = false,
+        submissionIndexObjectKey = null,
+        validSubmissionEventSampleRate = 1.0,
+        workStealingDistribution = false,
+        pipelinedSubmissionLoading = false,
+        loadSubmissionsMaxInFlight = 64,
+        shardedSubmissionListing = false,
+        partitionedSubmissionListing = false,
+        signingMaxConcurrency = null
     ).let(configOverride)
 
     val submissionRepository = SubmissionFromS3Repository(
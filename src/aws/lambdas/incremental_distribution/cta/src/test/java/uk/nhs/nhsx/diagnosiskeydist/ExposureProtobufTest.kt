@@ -8,6 +8,7 @@ import strikt.api.expectThat
 import strikt.assertions.hasSize
 import strikt.assertions.isEmpty
 import strikt.assertions.isEqualTo
+import strikt.assertions.isGreaterThan
 import strikt.assertions.isTrue
 import strikt.assertions.withElementAt
 import strikt.assertions.withFirst
@@ -15,6 +16,7 @@ import uk.nhs.nhsx.diagnosiskeydist.apispec.DailyZIPSubmissionPeriod
 import uk.nhs.nhsx.diagnosiskeydist.apispec.ZIPSubmissionPeriod
 import uk.nhs.nhsx.diagnosiskeyssubmission.model.StoredTemporaryExposureKey
 import java.nio.ByteBuffer
+import java.security.MessageDigest
 import java.time.Duration
 import java.time.Instant
 import java.util.*
@@ -183,4 +185,47 @@ class ExposureProtobufTest {
             get(TemporaryExposureKey::getDaysSinceOnsetOfSymptoms).isEqualTo(4)
         }
     }
+
+    @Test
+    fun `streamed export bin is byte identical to built export`() {
+        val period = DailyZIPSubmissionPeriod.periodForSubmissionDate(now)
+        val offset = Duration.ofMinutes(-15)
+
+        val expected = DistributionService.EK_EXPORT_V1_HEADER.toByteArray() +
+            exposureProtobuf.buildTemporaryExposureKeyExport(storedKeys, period, offset).toByteArray()
+
+        expectThat(exposureProtobuf.buildExportBin(storedKeys, period, offset).content).isEqualTo(expected)
+    }
+
+    @Test
+    fun `streamed export bin is byte identical to built export without keys`() {
+        val period = DailyZIPSubmissionPeriod.periodForSubmissionDate(now)
+
+        val expected = DistributionService.EK_EXPORT_V1_HEADER.toByteArray() +
+            exposureProtobuf.buildTemporaryExposureKeyExport(emptyList(), period, zero).toByteArray()
+
+        expectThat(exposureProtobuf.buildExportBin(emptyList(), period, zero).content).isEqualTo(expected)
+    }
+
+    @Test
+    fun `streamed export bin reuses buffer between periods`() {
+        val period = DailyZIPSubmissionPeriod.periodForSubmissionDate(now)
+
+        val first = exposureProtobuf.buildExportBin(storedKeys, period, zero).content
+        val second = exposureProtobuf.buildExportBin(storedKeys.take(1), period, zero).content
+
+        expectThat(second).isEqualTo(
+            DistributionService.EK_EXPORT_V1_HEADER.toByteArray() +
+                exposureProtobuf.buildTemporaryExposureKeyExport(storedKeys.take(1), period, zero).toByteArray()
+        )
+        expectThat(first.size).isGreaterThan(second.size)
+    }
+
+    @Test
+    fun `streamed export bin has digest of content`() {
+        val period = DailyZIPSubmissionPeriod.periodForSubmissionDate(now)
+        val exportBin = exposureProtobuf.buildExportBin(storedKeys, period, zero)
+
+        expectThat(exportBin.sha256).isEqualTo(MessageDigest.getInstance("SHA-256").digest(exportBin.content))
+    }
 }
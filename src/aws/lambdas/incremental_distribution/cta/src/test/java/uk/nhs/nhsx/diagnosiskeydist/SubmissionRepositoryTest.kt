@@ -12,6 +12,7 @@ import strikt.assertions.isTrue
 import strikt.assertions.map
 import strikt.assertions.message
 import uk.nhs.nhsx.diagnosiskeydist.s3.limit
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.BinarySubmissionCodec
 import uk.nhs.nhsx.diagnosiskeyssubmission.model.StoredTemporaryExposureKey
 import uk.nhs.nhsx.diagnosiskeyssubmission.model.StoredTemporaryExposureKeyPayload
 import uk.nhs.nhsx.testhelper.data.TestData
@@ -48,6 +49,16 @@ class SubmissionRepositoryTest {
         }).isTrue()
     }
 
+    @Test
+    fun `deserializes binary stored payload`() {
+        val inputStream = ByteArrayInputStream(
+            BinarySubmissionCodec.encode(STORED_KEYS_PAYLOAD_DESERIALIZED_DAYS_SINCE_ONSET)
+        )
+        val payload = SubmissionRepository.getTemporaryExposureKeys(inputStream)
+
+        expectThat(payload).isEqualTo(STORED_KEYS_PAYLOAD_DESERIALIZED_DAYS_SINCE_ONSET)
+    }
+
     @Test
     fun `limits submissions`() {
         val summaries = listOf(
@@ -0,0 +1,100 @@
+package uk.nhs.nhsx.diagnosiskeydist
+
+import org.junit.jupiter.api.Test
+import strikt.api.expectThat
+import strikt.assertions.containsExactly
+import strikt.assertions.isEmpty
+import strikt.assertions.isEqualTo
+import uk.nhs.nhsx.core.aws.s3.ObjectKey
+import uk.nhs.nhsx.core.events.RecordingEvents
+import uk.nhs.nhsx.diagnosiskeydist.agspec.ENIntervalNumber
+import uk.nhs.nhsx.diagnosiskeydist.agspec.ENIntervalNumber.Companion.enIntervalNumberFromTimestamp
+import uk.nhs.nhsx.diagnosiskeydist.apispec.DailyZIPSubmissionPeriod
+import uk.nhs.nhsx.diagnosiskeydist.apispec.TwoHourlyZIPSubmissionPeriod
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.StoredTemporaryExposureKey
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.StoredTemporaryExposureKeyPayload
+import uk.nhs.nhsx.keyfederation.InvalidTemporaryExposureKey
+import uk.nhs.nhsx.testhelper.data.asInstant
+import java.time.Duration
+import java.util.Base64
+import kotlin.random.Random
+
+class ZipPeriodBucketsTest {
+
+    private val now = "2021-01-20T07:46:00Z".asInstant()
+    private val window = DistributionServiceWindow(now, Duration.ofMinutes(-15))
+    private val events = RecordingEvents()
+
+    @Test
+    fun `buckets match covering submissions and valid keys of every period`() {
+        val random = Random(42)
+        val submissions = (0 until 2000).map {
+            val submissionDate = now.minus(Duration.ofMinutes(random.nextLong(0L, 16L * 24 * 60)))
+            val keys = (0 until random.nextInt(0, 4)).map {
+                val rollingStart = enIntervalNumberFromTimestamp(submissionDate.minus(Duration.ofDays(random.nextLong(0L, 20L))))
+                StoredTemporaryExposureKey(
+                    Base64.getEncoder().encodeToString(random.nextBytes(16)),
+                    rollingStart.enIntervalNumber.toInt(),
+                    144,
+                    7
+                )
+            }
+            Submission(submissionDate, ObjectKey.of("submission-$it"), StoredTemporaryExposureKeyPayload(keys))
+        }
+
+        val buckets = ZipPeriodBuckets(submissions, window, events)
+
+        val periods = DailyZIPSubmissionPeriod.periodForSubmissionDate(now).allPeriodsToGenerate() +
+            TwoHourlyZIPSubmissionPeriod.periodForSubmissionDate(now).allPeriodsToGenerate()
+
+        periods.forEach { period ->
+            val covering = submissions
+                .filter { period.isCoveringSubmissionDate(it.submissionDate, window.zipSubmissionPeriodOffset) }
+                .sortedBy(Submission::submissionDate)
+            val validKeys = covering.flatMap { submission ->
+                submission.payload.temporaryExposureKeys.filter {
+                    ENIntervalNumber(it.rollingStartNumber.toLong()).validUntil(window.zipExpirationExclusive())
+                }
+            }
+
+            val bucket = buckets.bucketFor(period)
+            expectThat(bucket.submissions).describedAs(period.toString()).isEqualTo(covering)
+            expectThat(bucket.validKeys.map(ValidKey::key)).describedAs(period.toString()).isEqualTo(validKeys)
+        }
+    }
+
+    @Test
+    fun `submissions on the shifted period boundary fall into the later period`() {
+        val submission = Submission(
+            "2021-01-20T05:45:00Z".asInstant(),
+            ObjectKey.of("boundary"),
+            StoredTemporaryExposureKeyPayload(emptyList())
+        )
+
+        val buckets = ZipPeriodBuckets(listOf(submission), window, events)
+
+        expectThat(buckets.bucketFor(TwoHourlyZIPSubmissionPeriod("2021-01-20T06:00:00Z".asInstant())).submissions).isEmpty()
+        expectThat(buckets.bucketFor(TwoHourlyZIPSubmissionPeriod("2021-01-20T08:00:00Z".asInstant())).submissions)
+            .containsExactly(submission)
+        expectThat(buckets.bucketFor(DailyZIPSubmissionPeriod("2021-01-21T00:00:00Z".asInstant())).submissions)
+            .containsExactly(submission)
+    }
+
+    @Test
+    fun `keys with key data of 32 bytes or more are reported once and not bucketed`() {
+        val rollingStart = enIntervalNumberFromTimestamp(now.minus(Duration.ofDays(1))).enIntervalNumber.toInt()
+        val valid = StoredTemporaryExposureKey("W2zb3BeMWt6Xr2u0ABG32Q==", rollingStart, 144, 7)
+        val tooLong = StoredTemporaryExposureKey("YWJjZGVmZ2hpamtsbW5vcHFyc3R1dnd4eXpBQkNERUZHCg==", rollingStart, 144, 7)
+        val submission = Submission(
+            now.minus(Duration.ofHours(3)),
+            ObjectKey.of("submission"),
+            StoredTemporaryExposureKeyPayload(listOf(valid, tooLong))
+        )
+
+        val buckets = ZipPeriodBuckets(listOf(submission), window, events)
+
+        val period = DailyZIPSubmissionPeriod.periodForSubmissionDate(submission.submissionDate.minus(window.zipSubmissionPeriodOffset))
+        expectThat(buckets.bucketFor(period).validKeys.map(ValidKey::key)).containsExactly(valid)
+        expectThat(events.toList()).isEqualTo(listOf(InvalidTemporaryExposureKey(tooLong.key)))
+    }
+}
@@ -0,0 +1,66 @@
+package uk.nhs.nhsx.diagnosiskeydist.agspec
+
+import org.junit.jupiter.api.Test
+import strikt.api.expectThat
+import strikt.assertions.isEqualTo
+import uk.nhs.nhsx.core.events.RecordingEvents
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.TemporaryExposureKeyBatch
+import uk.nhs.nhsx.keyfederation.InvalidRollingPeriod
+import uk.nhs.nhsx.keyfederation.InvalidRollingStartNumber
+import uk.nhs.nhsx.keyfederation.InvalidTemporaryExposureKey
+import uk.nhs.nhsx.keyfederation.InvalidTransmissionRiskLevel
+import java.time.Instant
+
+class TemporaryExposureKeyValidatorTest {
+
+    private val now = Instant.ofEpochSecond((2667023 * 600).toLong()) // 2020-09-15 23:50:00 UTC
+    private val events = RecordingEvents()
+    private val validator = TemporaryExposureKeyValidator({ now }, events)
+
+    @Test
+    fun `accepts keys of the past fourteen days`() {
+        val batch = TemporaryExposureKeyBatch().apply {
+            add("W2zb3BeMWt6Xr2u0ABG32Q==", 2666736, 144, 7, null)
+            add("kzQt9Lf3xjtAlMtm7jkSqw==", 2664864, 144, 0, 4)
+            add("kzQt9Lf3xjtAlMtm7jkSqw", 2666880, 1, 3, null)
+        }
+
+        expectThat(validator.validate(batch).toList()).isEqualTo(listOf(true, true, true))
+        expectThat(events.toList()).isEqualTo(emptyList())
+    }
+
+    @Test
+    fun `reports the first check each key failed`() {
+        val batch = TemporaryExposureKeyBatch().apply {
+            add("YWJjZGVmZ2hpamtsbW5vcHFyc3R1dnd4eXpBQkNERUZHCg==", 2664720, 0, 9, null)
+            add("not base64", 2666736, 144, 7, null)
+            add(null, 2666736, 144, 7, null)
+            add("W2zb3BeMWt6Xr2u0ABG32Q==", 2664720, 0, 9, null)
+            add("W2zb3BeMWt6Xr2u0ABG32Q==", 2666736, 145, 9, null)
+            add("W2zb3BeMWt6Xr2u0ABG32Q==", 2666736, 144, -1, null)
+        }
+
+        expectThat(validator.validate(batch).toList()).isEqualTo(List(6) { false })
+        expectThat(events.toList()).isEqualTo(
+            listOf(
+                InvalidTemporaryExposureKey("YWJjZGVmZ2hpamtsbW5vcHFyc3R1dnd4eXpBQkNERUZHCg=="),
+                InvalidTemporaryExposureKey("not base64"),
+                InvalidTemporaryExposureKey(null),
+                InvalidRollingStartNumber(now, 2664720, 0),
+                InvalidRollingPeriod(145),
+                InvalidTransmissionRiskLevel(-1)
+            )
+        )
+    }
+
+    @Test
+    fun `only checks the key data of keys validated on submission`() {
+        val batch = TemporaryExposureKeyBatch().apply {
+            add("W2zb3BeMWt6Xr2u0ABG32Q==", 0, 0, 99, null)
+            add("c29tZS1zaWduYXR1cmU=", 2666736, 144, 7, null)
+        }
+
+        expectThat(validator.validateKeyData(batch).toList()).isEqualTo(listOf(true, false))
+        expectThat(events.toList()).isEqualTo(listOf(InvalidTemporaryExposureKey("c29tZS1zaWduYXR1cmU=")))
+    }
+}
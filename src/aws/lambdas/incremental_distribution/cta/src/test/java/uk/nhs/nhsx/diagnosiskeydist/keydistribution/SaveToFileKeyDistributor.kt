@@ -6,9 +6,9 @@ import java.io.File
 
 class SaveToFileKeyDistributor(private val distributionOutputDir: File) : KeyDistributor {
 
-    override fun distribute(name: BucketName, key: ObjectKey, binFile: File, sigFile: File) {
+    override fun distribute(name: BucketName, key: ObjectKey, binFileContent: ByteArray, sigFileContent: ByteArray) {
         val zipFile = File(distributionOutputDir, key.value)
         zipFile.parentFile.mkdirs()
-        KeyFileUtility.zipFiles(zipFile, binFile, sigFile)
+        KeyFileUtility.writeToFile(zipFile, KeyFileUtility.zip(binFileContent, sigFileContent))
     }
 }
@@ -0,0 +1,57 @@
+package uk.nhs.nhsx.diagnosiskeydist.keydistribution
+
+import org.junit.jupiter.api.Test
+import strikt.api.expectThat
+import strikt.assertions.containsExactly
+import strikt.assertions.hasSize
+import strikt.assertions.isEqualTo
+import uk.nhs.nhsx.core.aws.s3.BucketName
+import uk.nhs.nhsx.core.aws.s3.ObjectKey
+import uk.nhs.nhsx.testhelper.TestDatedSigner
+import uk.nhs.nhsx.testhelper.mocks.FakeS3
+import java.io.ByteArrayInputStream
+import java.util.zip.ZipInputStream
+
+class UploadToS3KeyDistributorTest {
+
+    private val bucketName = BucketName.of("distribution")
+    private val objectKey = ObjectKey.of("distribution/daily/2021012000.zip")
+
+    @Test
+    fun `uploads zip with export entries and signature headers`() {
+        val s3 = FakeS3()
+        val signer = TestDatedSigner("some-date")
+
+        UploadToS3KeyDistributor(s3, signer).distribute(bucketName, objectKey, "bin".toByteArray(), "sig".toByteArray())
+
+        val uploaded = s3.objects.getValue(bucketName).single()
+        val zip = uploaded.objectContent.readAllBytes()
+
+        expectThat(uploaded.key).isEqualTo(objectKey.value)
+        expectThat(uploaded.objectMetadata.contentType).isEqualTo("application/zip")
+        expectThat(uploaded.objectMetadata.userMetadata).isEqualTo(
+            mapOf(
+                "Signature" to """keyId="some-key",signature="AAECAwQ="""",
+                "Signature-Date" to "some-date"
+            )
+        )
+        expectThat(unzip(zip)).containsExactly("export.bin" to "bin", "export.sig" to "sig")
+        expectThat(signer.content).hasSize(1)
+        expectThat(signer.content.single()).isEqualTo("some-date:".toByteArray() + zip)
+    }
+
+    @Test
+    fun `zip buffer is reused without leaking previous content`() {
+        val first = KeyFileUtility.zip(ByteArray(10_000) { 1 }, "first".toByteArray())
+        val second = KeyFileUtility.zip("bin".toByteArray(), "sig".toByteArray())
+
+        expectThat(unzip(first).map { it.first }).containsExactly("export.bin", "export.sig")
+        expectThat(unzip(second)).containsExactly("export.bin" to "bin", "export.sig" to "sig")
+    }
+
+    private fun unzip(zip: ByteArray) = ZipInputStream(ByteArrayInputStream(zip)).use { zipIn ->
+        generateSequence { zipIn.nextEntry }
+            .map { it.name to zipIn.readBytes().decodeToString() }
+            .toList()
+    }
+}
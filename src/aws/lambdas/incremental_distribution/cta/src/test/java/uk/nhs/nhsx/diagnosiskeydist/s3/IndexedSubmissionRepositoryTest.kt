@@ -0,0 +1,189 @@
+package uk.nhs.nhsx.diagnosiskeydist.s3
+
+import com.amazonaws.services.s3.model.S3Object
+import org.junit.jupiter.api.Test
+import strikt.api.expectThat
+import strikt.api.expectThrows
+import strikt.assertions.containsExactly
+import strikt.assertions.hasSize
+import strikt.assertions.isEqualTo
+import strikt.assertions.isTrue
+import strikt.assertions.map
+import uk.nhs.nhsx.core.ContentType
+import uk.nhs.nhsx.core.aws.s3.BucketName
+import uk.nhs.nhsx.core.aws.s3.ByteArraySource
+import uk.nhs.nhsx.core.aws.s3.Locator
+import uk.nhs.nhsx.core.aws.s3.MetaHeader
+import uk.nhs.nhsx.core.aws.s3.ObjectKey
+import uk.nhs.nhsx.core.events.RecordingEvents
+import uk.nhs.nhsx.diagnosiskeydist.Submission
+import uk.nhs.nhsx.diagnosiskeydist.SubmissionRepository
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.StoredTemporaryExposureKey
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.StoredTemporaryExposureKeyPayload
+import uk.nhs.nhsx.testhelper.assertions.contains
+import uk.nhs.nhsx.testhelper.data.asInstant
+import uk.nhs.nhsx.testhelper.mocks.FakeS3
+import java.time.Duration
+import java.time.Instant
+
+class IndexedSubmissionRepositoryTest {
+
+    private val now = "2021-01-20T13:00:00Z".asInstant()
+    private val events = RecordingEvents()
+    private val indexLocator = Locator.of(BucketName.of("submissions"), ObjectKey.of("index/submissions.idx"))
+
+    @Test
+    fun `only loads submissions newer than the checkpoint from the delegate`() {
+        val s3 = InMemoryIndexS3()
+        val delegate = RecordingSubmissionRepository()
+        delegate.submissions += submission("a", now.minus(Duration.ofHours(2)))
+
+        repository(delegate, s3).loadAllSubmissions()
+
+        delegate.submissions += submission("b", now.minus(Duration.ofHours(1)))
+
+        val loaded = repository(delegate, s3).loadAllSubmissions()
+
+        expectThat(loaded).map { it.objectKey.value }.containsExactly("a", "b")
+        expectThat(delegate.requestedFrom).containsExactly(
+            Instant.EPOCH.minus(Duration.ofMinutes(5)).toEpochMilli(),
+            now.minus(Duration.ofHours(2)).minus(Duration.ofMinutes(5)).toEpochMilli()
+        )
+        expectThat(events).contains(SubmissionIndexLoaded::class)
+    }
+
+    @Test
+    fun `drops submissions outside of retention`() {
+        val s3 = InMemoryIndexS3()
+        val delegate = RecordingSubmissionRepository()
+        delegate.submissions += submission("old", now.minus(Duration.ofDays(16)))
+        delegate.submissions += submission("new", now.minus(Duration.ofDays(1)))
+
+        val loaded = repository(delegate, s3).loadAllSubmissions()
+
+        expectThat(loaded).map { it.objectKey.value }.containsExactly("new")
+    }
+
+    @Test
+    fun `de-duplicates submissions within the checkpoint overlap`() {
+        val s3 = InMemoryIndexS3()
+        val delegate = RecordingSubmissionRepository()
+        delegate.submissions += submission("a", now.minus(Duration.ofMinutes(1)))
+
+        repository(delegate, s3).loadAllSubmissions()
+        val loaded = repository(delegate, s3).loadAllSubmissions()
+
+        expectThat(loaded).hasSize(1)
+    }
+
+    @Test
+    fun `evicts indexed submissions deleted from the bucket`() {
+        val s3 = InMemoryIndexS3()
+        val delegate = RecordingSubmissionRepository()
+        delegate.submissions += submission("a", now.minus(Duration.ofHours(2)))
+        delegate.submissions += submission("b", now.minus(Duration.ofHours(2)))
+
+        repository(delegate, s3).loadAllSubmissions()
+
+        delegate.submissions.removeIf { it.objectKey.value == "a" }
+
+        val loaded = repository(delegate, s3).loadAllSubmissions()
+
+        expectThat(loaded).map { it.objectKey.value }.containsExactly("b")
+        expectThat(events.filterIsInstance<SubmissionIndexLoaded>().last().evicted).isEqualTo(1)
+        expectThat(repository(delegate, s3).loadAllSubmissions()).map { it.objectKey.value }.containsExactly("b")
+    }
+
+    @Test
+    fun `falls back to full load when index is unreadable`() {
+        val s3 = InMemoryIndexS3()
+        s3.upload(indexLocator, ContentType.of("application/octet-stream"), ByteArraySource.fromUtf8String("garbage"))
+        val delegate = RecordingSubmissionRepository()
+        delegate.submissions += submission("a", now.minus(Duration.ofHours(2)))
+
+        val loaded = repository(delegate, s3).loadAllSubmissions()
+
+        expectThat(loaded).hasSize(1)
+        expectThat(events).contains(SubmissionIndexUnreadable::class)
+    }
+
+    @Test
+    fun `restricted loads go straight to the delegate`() {
+        val s3 = InMemoryIndexS3()
+        val delegate = RecordingSubmissionRepository()
+        delegate.submissions += submission("a", now.minus(Duration.ofHours(2)))
+
+        repository(delegate, s3).loadAllSubmissions(1234, 10, 100)
+
+        expectThat(delegate.requestedFrom).containsExactly(1234L)
+        expectThat(s3.isEmpty()).isTrue()
+    }
+
+    @Test
+    fun `rejects an index object key that would be loaded as a submission`() {
+        expectThrows<IllegalArgumentException> {
+            IndexedSubmissionRepository(
+                RecordingSubmissionRepository(),
+                FakeS3(),
+                indexLocator,
+                { emptySet() },
+                events,
+                { now },
+                submissionFilter = { it.value.startsWith("index/") }
+            )
+        }
+    }
+
+    private fun repository(delegate: RecordingSubmissionRepository, s3: FakeS3) =
+        IndexedSubmissionRepository(delegate, s3, indexLocator, delegate::storedObjectKeys, events, { now })
+
+    private fun submission(objectKey: String, submissionDate: Instant) = Submission(
+        submissionDate,
+        ObjectKey.of(objectKey),
+        StoredTemporaryExposureKeyPayload(listOf(StoredTemporaryExposureKey("W2zb3BeMWt6Xr2u0ABG32Q==", 12345, 144, 7)))
+    )
+
+    private class RecordingSubmissionRepository : SubmissionRepository {
+        val submissions = mutableListOf<Submission>()
+        val requestedFrom = mutableListOf<Long>()
+
+        override fun loadAllSubmissions(
+            minimalSubmissionTimeEpochMillisExclusive: Long,
+            limit: Int,
+            maxResults: Int
+        ): List<Submission> {
+            requestedFrom += minimalSubmissionTimeEpochMillisExclusive
+            return submissions.filter { it.submissionDate.toEpochMilli() > minimalSubmissionTimeEpochMillisExclusive }
+        }
+
+        fun storedObjectKeys(from: Instant) = submissions
+            .filter { it.submissionDate.isAfter(from) }
+            .map(Submission::objectKey)
+            .toSet()
+    }
+
+    /**
+     * FakeS3 keeps every upload and returns the first, the index needs last-write-wins
+     */
+    private class InMemoryIndexS3 : FakeS3() {
+        private val latest = mutableMapOf<Locator, ByteArray>()
+
+        override fun upload(
+            locator: Locator,
+            contentType: ContentType,
+            bytes: ByteArraySource,
+            metaHeaders: List<MetaHeader>
+        ) {
+            latest[locator] = bytes.bytes
+            super.upload(locator, contentType, bytes, metaHeaders)
+        }
+
+        override fun getObject(locator: Locator) = latest[locator]?.let {
+            S3Object().apply {
+                key = locator.key.value
+                bucketName = locator.bucket.value
+                setObjectContent(it.inputStream())
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package uk.nhs.nhsx.diagnosiskeydist.s3
+
+import com.amazonaws.services.s3.model.S3Object
+import org.junit.jupiter.api.Test
+import strikt.api.expectThat
+import strikt.api.expectThrows
+import strikt.assertions.containsExactly
+import strikt.assertions.flatMap
+import strikt.assertions.isEqualTo
+import strikt.assertions.isLessThanOrEqualTo
+import uk.nhs.nhsx.core.SystemClock
+import uk.nhs.nhsx.core.aws.s3.AwsS3
+import uk.nhs.nhsx.core.aws.s3.BucketName
+import uk.nhs.nhsx.core.aws.s3.Locator
+import uk.nhs.nhsx.core.aws.s3.ObjectKey
+import uk.nhs.nhsx.core.events.RecordingEvents
+import uk.nhs.nhsx.diagnosiskeydist.Submission
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.StoredTemporaryExposureKey
+import uk.nhs.nhsx.testhelper.mocks.FakeS3
+import uk.nhs.nhsx.testhelper.mocks.exposureS3Object
+import java.io.ByteArrayInputStream
+import java.time.Duration
+import java.time.Instant.ofEpochMilli
+import java.util.concurrent.TimeUnit.MILLISECONDS
+import java.util.concurrent.atomic.AtomicInteger
+
+class PipelinedSubmissionFromS3RepositoryTest {
+
+    private val clock = SystemClock.CLOCK
+    private val now = clock()
+    private val bucketName = BucketName.of("SUBMISSION_BUCKET")
+    private val events = RecordingEvents()
+
+    @Test
+    fun `loads submissions in last modified order`() {
+        val fakeS3 = FakeS3()
+        fakeS3.add(exposureS3Object("my-prefix-abc", bucketName), now.minusSeconds(5))
+        fakeS3.add(exposureS3Object("my-prefix-def", bucketName), now)
+        fakeS3.add(exposureS3Object("abcdef", bucketName), now.minusSeconds(1))
+
+        val submissions = repository(fakeS3).loadAllSubmissions()
+
+        expectThat(submissions)
+            .flatMap(::keys)
+            .containsExactly("my-prefix-abc", "abcdef", "my-prefix-def")
+    }
+
+    @Test
+    fun `applies filter, submission time and limits`() {
+        val nowEpoch = now.toEpochMilli()
+        val fakeS3 = FakeS3()
+        fakeS3.add(exposureS3Object("A", bucketName), ofEpochMilli(nowEpoch + 4 * 60000))
+        fakeS3.add(exposureS3Object("B", bucketName), ofEpochMilli(nowEpoch + 3 * 60000))
+        fakeS3.add(exposureS3Object("skipped", bucketName), ofEpochMilli(nowEpoch + 2 * 60000))
+        fakeS3.add(exposureS3Object("D", bucketName), ofEpochMilli(nowEpoch + 60000))
+        fakeS3.add(exposureS3Object("old", bucketName), ofEpochMilli(nowEpoch - 60000))
+
+        val submissions = repository(fakeS3) { it.value != "skipped" }.loadAllSubmissions(nowEpoch, 2, 2)
+
+        expectThat(submissions)
+            .flatMap(::keys)
+            .containsExactly("D", "B")
+    }
+
+    @Test
+    fun `skips missing submissions`() {
+        val fakeS3 = object : FakeS3() {
+            override fun getObject(locator: Locator): S3Object? =
+                if (locator.key.value == "missing") null else super.getObject(locator)
+        }
+        fakeS3.add(exposureS3Object("missing", bucketName), now.minusSeconds(1))
+        fakeS3.add(exposureS3Object("present", bucketName), now)
+
+        val submissions = repository(fakeS3).loadAllSubmissions()
+
+        expectThat(submissions).flatMap(::keys).containsExactly("present")
+        expectThat(events.filterIsInstance<SubmissionMissing>().single().objectKey).isEqualTo("missing")
+        expectThat(events.filterIsInstance<SubmissionLoadingCompleted>().single().missing).isEqualTo(1)
+    }
+
+    @Test
+    fun `never has more than max in flight objects`() {
+        val concurrent = AtomicInteger()
+        val peak = AtomicInteger()
+        val fakeS3 = object : FakeS3() {
+            override fun getObject(locator: Locator): S3Object? {
+                peak.accumulateAndGet(concurrent.incrementAndGet()) { a, b -> maxOf(a, b) }
+                MILLISECONDS.sleep(5)
+                concurrent.decrementAndGet()
+                return super.getObject(locator)
+            }
+        }
+        repeat(50) { fakeS3.add(exposureS3Object("key-$it", bucketName), now.plusMillis(it.toLong())) }
+
+        val submissions = repository(fakeS3, maxInFlight = 3).loadAllSubmissions()
+
+        expectThat(submissions).flatMap(::keys).containsExactly((0 until 50).map { "key-$it" })
+        expectThat(peak.get()).isLessThanOrEqualTo(3)
+        expectThat(events.filterIsInstance<SubmissionLoadingCompleted>().single().peakInFlight).isLessThanOrEqualTo(3)
+    }
+
+    @Test
+    fun `fails on unparseable submission`() {
+        val fakeS3 = object : FakeS3() {
+            override fun getObject(locator: Locator): S3Object? = super.getObject(locator)?.apply {
+                if (key == "broken") setObjectContent(ByteArrayInputStream("not json".toByteArray()))
+            }
+        }
+        fakeS3.add(exposureS3Object("ok", bucketName), now.minusSeconds(1))
+        fakeS3.add(exposureS3Object("broken", bucketName), now)
+
+        expectThrows<IllegalStateException> { repository(fakeS3).loadAllSubmissions() }
+    }
+
+    private fun repository(
+        awsS3: AwsS3,
+        maxInFlight: Int = 8,
+        predicate: (ObjectKey) -> Boolean = { true }
+    ) = PipelinedSubmissionFromS3Repository(
+        awsS3 = awsS3,
+        objectKeyFilter = predicate,
+        submissionBucketName = bucketName,
+        loadSubmissionsTimeout = Duration.ofMinutes(1),
+        fetchThreadPoolSize = 4,
+        maxInFlight = maxInFlight,
+        events = events,
+        clock = clock,
+        parseThreadPoolSize = 2
+    )
+
+    private fun keys(submission: Submission) = submission
+        .payload
+        .temporaryExposureKeys
+        .map(StoredTemporaryExposureKey::key)
+}
@@ -0,0 +1,66 @@
+package uk.nhs.nhsx.diagnosiskeydist.s3
+
+import org.junit.jupiter.api.Test
+import strikt.api.expectThat
+import strikt.api.expectThrows
+import strikt.assertions.isEqualTo
+import strikt.assertions.isLessThan
+import uk.nhs.nhsx.core.Json
+import uk.nhs.nhsx.core.aws.s3.ObjectKey
+import uk.nhs.nhsx.diagnosiskeydist.Submission
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.StoredTemporaryExposureKey
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.StoredTemporaryExposureKeyPayload
+import uk.nhs.nhsx.testhelper.data.asInstant
+import java.io.IOException
+
+class SubmissionIndexCodecTest {
+
+    private val index = SubmissionIndex(
+        "2021-01-20T13:00:00Z".asInstant(),
+        listOf(
+            Submission(
+                "2021-01-20T12:00:00Z".asInstant(),
+                ObjectKey.of("mobile/LAB_RESULT/abc"),
+                StoredTemporaryExposureKeyPayload(
+                    listOf(
+                        StoredTemporaryExposureKey("W2zb3BeMWt6Xr2u0ABG32Q==", 12345, 144, 7),
+                        StoredTemporaryExposureKey("kzQt9Lf3xjtAlMtm7jkSqw==", 12499, 144, 7, 4)
+                    )
+                )
+            ),
+            Submission(
+                "2021-01-20T12:30:00Z".asInstant(),
+                ObjectKey.of("nearform/GB-SCO/def"),
+                StoredTemporaryExposureKeyPayload(
+                    listOf(StoredTemporaryExposureKey("not-base64!", 12499, 144, 3, 0))
+                )
+            )
+        )
+    )
+
+    @Test
+    fun `round trips index`() {
+        val encoded = SubmissionIndexCodec.encode(index)
+
+        expectThat(SubmissionIndexCodec.decode(encoded.inputStream())).isEqualTo(index)
+    }
+
+    @Test
+    fun `round trips empty index`() {
+        val encoded = SubmissionIndexCodec.encode(SubmissionIndex.EMPTY)
+
+        expectThat(SubmissionIndexCodec.decode(encoded.inputStream())).isEqualTo(SubmissionIndex.EMPTY)
+    }
+
+    @Test
+    fun `is smaller than the json payloads`() {
+        val json = index.submissions.sumOf { Json.toJson(it.payload).length }
+
+        expectThat(SubmissionIndexCodec.encode(index).size).isLessThan(json)
+    }
+
+    @Test
+    fun `rejects unknown content`() {
+        expectThrows<IOException> { SubmissionIndexCodec.decode("""{"some":"json"}""".byteInputStream()) }
+    }
+}
@@ -0,0 +1,79 @@
+package uk.nhs.nhsx.diagnosiskeydist.s3
+
+import org.junit.jupiter.api.Test
+import strikt.api.expectThat
+import strikt.assertions.containsExactly
+import strikt.assertions.containsExactlyInAnyOrder
+import strikt.assertions.hasSize
+import uk.nhs.nhsx.core.ObjectKeyFilters
+import uk.nhs.nhsx.core.aws.s3.BucketName
+import uk.nhs.nhsx.core.aws.s3.ListingShard
+import uk.nhs.nhsx.core.events.RecordingEvents
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.StoredTemporaryExposureKey
+import uk.nhs.nhsx.testhelper.data.asInstant
+import uk.nhs.nhsx.testhelper.mocks.FakeS3
+import uk.nhs.nhsx.testhelper.mocks.exposureS3Object
+import java.time.Duration
+import java.time.Instant
+
+class SubmissionListingTest {
+
+    private val now = "2021-01-20T05:30:00Z".asInstant()
+    private val bucketName = BucketName.of("SUBMISSION_BUCKET")
+
+    private val listing = TimePartitionedSubmissionListing(
+        shards = ObjectKeyFilters.batched().listingShards(listOf("nearform/IE/")),
+        partitionedPrefixes = listOf("mobile/LAB_RESULT/"),
+        clock = { now }
+    )
+
+    @Test
+    fun `lists recent partitions and legacy keys of partitioned prefixes`() {
+        expectThat(listing.shards("2021-01-20T03:10:00Z".asInstant())).containsExactly(
+            ListingShard.ROOT,
+            ListingShard("mobile/LAB_RESULT/", rootOnly = true),
+            ListingShard("mobile/LAB_RESULT/2021/01/20/"),
+            ListingShard("mobile/RAPID_RESULT/"),
+            ListingShard("mobile/RAPID_SELF_REPORTED/"),
+            ListingShard("nearform/IE/")
+        )
+    }
+
+    @Test
+    fun `partitions older than retention are not listed`() {
+        val shards = listing.shards(Instant.EPOCH)
+
+        // 15 days of partitions, the day of the extra hour before and the current day
+        expectThat(shards.filter { it.prefix.startsWith("mobile/LAB_RESULT/20") }).hasSize(16)
+    }
+
+    @Test
+    fun `loads partitioned and legacy submissions newer than requested time`() {
+        val s3 = FakeS3()
+        s3.add(exposureS3Object("mobile/LAB_RESULT/legacy", bucketName), "2021-01-20T05:00:00Z".asInstant())
+        s3.add(exposureS3Object("mobile/LAB_RESULT/2021/01/20/04/recent", bucketName), "2021-01-20T04:59:00Z".asInstant())
+        s3.add(exposureS3Object("mobile/LAB_RESULT/2021/01/20/03/boundary", bucketName), "2021-01-20T04:00:01Z".asInstant())
+        s3.add(exposureS3Object("mobile/LAB_RESULT/2021/01/19/04/old", bucketName), "2021-01-20T04:00:01Z".asInstant())
+        s3.add(exposureS3Object("mobile/RAPID_RESULT/rapid", bucketName), "2021-01-20T05:01:00Z".asInstant())
+        s3.add(exposureS3Object("mobile/LAB_RESULT/2021/01/20/03/before", bucketName), "2021-01-20T03:30:00Z".asInstant())
+
+        val submissions = SubmissionFromS3Repository(
+            awsS3 = s3,
+            objectKeyFilter = ObjectKeyFilters.batched().withPrefixes(emptyList()),
+            submissionBucketName = bucketName,
+            loadSubmissionsTimeout = Duration.ofMinutes(1),
+            loadSubmissionsThreadPoolSize = 2,
+            submissionListing = listing,
+            events = RecordingEvents()
+        ) { now }.loadAllSubmissions("2021-01-20T04:00:00Z".asInstant().toEpochMilli(), 100, 100)
+
+        // partition 2021/01/19/04 is outside the listed days, it only shows up when listing the whole bucket
+        expectThat(submissions.flatMap { it.payload.temporaryExposureKeys.map(StoredTemporaryExposureKey::key) })
+            .containsExactlyInAnyOrder(
+                "mobile/LAB_RESULT/legacy",
+                "mobile/LAB_RESULT/2021/01/20/04/recent",
+                "mobile/LAB_RESULT/2021/01/20/03/boundary",
+                "mobile/RAPID_RESULT/rapid"
+            )
+    }
+}
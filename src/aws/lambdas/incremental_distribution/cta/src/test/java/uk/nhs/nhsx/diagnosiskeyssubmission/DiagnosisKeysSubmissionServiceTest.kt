@@ -16,13 +16,17 @@ import strikt.api.Assertion
 import strikt.api.expect
 import strikt.api.expectThat
 import strikt.assertions.isEqualTo
+import uk.nhs.nhsx.core.Json
 import uk.nhs.nhsx.core.aws.dynamodb.AwsDynamoClient
 import uk.nhs.nhsx.core.aws.dynamodb.TableName
 import uk.nhs.nhsx.core.aws.s3.BucketName
 import uk.nhs.nhsx.core.aws.s3.ObjectKey
 import uk.nhs.nhsx.core.events.RecordingEvents
+import uk.nhs.nhsx.diagnosiskeydist.SubmissionRepository
 import uk.nhs.nhsx.diagnosiskeyssubmission.model.ClientTemporaryExposureKey
 import uk.nhs.nhsx.diagnosiskeyssubmission.model.ClientTemporaryExposureKeysPayload
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.StoredTemporaryExposureKeyPayload
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.SubmissionObjectFormat
 import uk.nhs.nhsx.domain.TestKit
 import uk.nhs.nhsx.testhelper.assertions.S3ObjectAssertions.asString
 import uk.nhs.nhsx.testhelper.assertions.S3ObjectAssertions.content
@@ -90,6 +94,44 @@ class DiagnosisKeysSubmissionServiceTest {
         }
     }
 
+    @Test
+    fun `stores binary submission objects that read back as the json payload`() {
+        awsDynamoClient.willDeleteAny().willReturnVirologyRecord()
+
+        val binaryService = DiagnosisKeysSubmissionService(
+            awsS3 = awsS3,
+            awsDynamoClient = awsDynamoClient,
+            objectKeyNameProvider = objectKeyNameProvider,
+            tableName = tableName,
+            bucketName = bucketName,
+            clock = clock,
+            events = events,
+            objectFormat = SubmissionObjectFormat.BINARY
+        )
+
+        binaryService.acceptTemporaryExposureKeys(
+            ClientTemporaryExposureKeysPayload(
+                ClientTemporaryExposureKey(
+                    key = "W2zb3BeMWt6Xr2u0ABG32Q==",
+                    rollingStartNumber = rollingStartNumberLastKey,
+                    rollingPeriod = 144
+                ),
+                ClientTemporaryExposureKey(
+                    key = "kzQt9Lf3xjtAlMtm7jkSqw==",
+                    rollingStartNumber = rollingStartNumberFirstKey,
+                    rollingPeriod = 144
+                )
+            )
+        )
+
+        expectThat(awsS3)
+            .getBucket(bucketName)
+            .getObject("mobile/LAB_RESULT/my-object-key.bin")
+            .content
+            .get { SubmissionRepository.getTemporaryExposureKeys(this) }
+            .isEqualTo(Json.readJsonOrThrow<StoredTemporaryExposureKeyPayload>(STORED_KEYS_PAYLOAD_SUBMISSION))
+    }
+
     @ParameterizedTest
     @EnumSource(TestKit::class)
     fun `accepts temporary exposure keys uses stored testkit`(testKit: TestKit) {
@@ -0,0 +1,90 @@
+package uk.nhs.nhsx.diagnosiskeyssubmission.model
+
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.params.ParameterizedTest
+import org.junit.jupiter.params.provider.ValueSource
+import strikt.api.expectCatching
+import strikt.api.expectThat
+import strikt.assertions.isA
+import strikt.assertions.isEqualTo
+import strikt.assertions.isFailure
+import strikt.assertions.isFalse
+import strikt.assertions.isLessThan
+import strikt.assertions.isTrue
+import uk.nhs.nhsx.core.Json.toJson
+import java.io.IOException
+import java.nio.ByteBuffer
+
+class BinarySubmissionCodecTest {
+
+    private val payload = StoredTemporaryExposureKeyPayload(
+        listOf(
+            StoredTemporaryExposureKey("W2zb3BeMWt6Xr2u0ABG32Q==", 2666736, 144, 3, 0),
+            StoredTemporaryExposureKey("kzQt9Lf3xjtAlMtm7jkSqw==", 2664864, 144, 7),
+            // not the canonical Base64 of its bytes, so kept as it is
+            StoredTemporaryExposureKey("B3xb3BeMWt6Xr2u0ABG45F==", 2666874, 144, 6, -3)
+        )
+    )
+
+    @Test
+    fun `round trips stored keys`() {
+        val encoded = BinarySubmissionCodec.encode(payload)
+
+        expectThat(BinarySubmissionCodec.decode(encoded.inputStream())).isEqualTo(payload)
+    }
+
+    @Test
+    fun `is smaller than the json payload`() {
+        expectThat(BinarySubmissionCodec.encode(payload).size).isLessThan(toJson(payload).length / 2)
+    }
+
+    @Test
+    fun `tells binary from json submissions without consuming them`() {
+        val binary = BinarySubmissionCodec.encode(payload).inputStream().buffered()
+        val json = toJson(payload).byteInputStream().buffered()
+
+        expectThat(BinarySubmissionCodec.isBinary(binary)).isTrue()
+        expectThat(BinarySubmissionCodec.decode(binary)).isEqualTo(payload)
+        expectThat(BinarySubmissionCodec.isBinary(json)).isFalse()
+        expectThat(json.readAllBytes().decodeToString()).isEqualTo(toJson(payload))
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = [0, 5, 9, 33, 60])
+    fun `rejects truncated objects`(length: Int) {
+        val encoded = BinarySubmissionCodec.encode(payload)
+
+        expectCatching { BinarySubmissionCodec.decode(encoded.copyOf(length).inputStream()) }
+            .isFailure()
+            .isA<IOException>()
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = [-1, 4, Int.MAX_VALUE])
+    fun `rejects counts the object cannot hold`(count: Int) {
+        val encoded = BinarySubmissionCodec.encode(payload)
+        ByteBuffer.wrap(encoded).putInt(5, count)
+
+        expectCatching { BinarySubmissionCodec.decode(encoded.inputStream()) }
+            .isFailure()
+            .isA<IOException>()
+    }
+
+    @Test
+    fun `rejects bytes after the last key`() {
+        val encoded = BinarySubmissionCodec.encode(payload) + byteArrayOf(0)
+
+        expectCatching { BinarySubmissionCodec.decode(encoded.inputStream()) }
+            .isFailure()
+            .isA<IOException>()
+    }
+
+    @Test
+    fun `rejects unknown versions`() {
+        val encoded = BinarySubmissionCodec.encode(payload).also { it[4] = 99 }
+
+        expectCatching { BinarySubmissionCodec.decode(encoded.inputStream()) }
+            .isFailure()
+            .isA<IOException>()
+    }
+}
@@ -0,0 +1,33 @@
+package uk.nhs.nhsx.diagnosiskeyssubmission.model
+
+import org.junit.jupiter.params.ParameterizedTest
+import org.junit.jupiter.params.provider.EnumSource
+import strikt.api.expectThat
+import strikt.assertions.isEqualTo
+
+class SubmissionObjectFormatTest {
+
+    private val payload = StoredTemporaryExposureKeyPayload(
+        listOf(
+            StoredTemporaryExposureKey("W2zb3BeMWt6Xr2u0ABG32Q==", 2666736, 144, 3, 0),
+            StoredTemporaryExposureKey("kzQt9Lf3xjtAlMtm7jkSqw==", 2664864, 144, 7)
+        )
+    )
+
+    @ParameterizedTest
+    @EnumSource(SubmissionObjectFormat::class)
+    fun `writer encodes the same bytes one key at a time`(format: SubmissionObjectFormat) {
+        val writer = format.writer()
+        payload.temporaryExposureKeys.forEach(writer::write)
+
+        expectThat(writer.count).isEqualTo(2)
+        expectThat(writer.finish().toList()).isEqualTo(format.encode(payload).bytes.toList())
+    }
+
+    @ParameterizedTest
+    @EnumSource(SubmissionObjectFormat::class)
+    fun `writer without keys encodes an empty payload`(format: SubmissionObjectFormat) {
+        expectThat(format.writer().finish().toList())
+            .isEqualTo(format.encode(StoredTemporaryExposureKeyPayload(emptyList())).bytes.toList())
+    }
+}
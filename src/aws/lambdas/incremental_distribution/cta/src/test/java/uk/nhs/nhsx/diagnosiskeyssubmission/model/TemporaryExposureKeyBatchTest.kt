@@ -0,0 +1,65 @@
+package uk.nhs.nhsx.diagnosiskeyssubmission.model
+
+import org.junit.jupiter.api.Test
+import strikt.api.expectThat
+import strikt.assertions.isEqualTo
+import strikt.assertions.isFalse
+import strikt.assertions.isNull
+import strikt.assertions.isTrue
+import java.util.Base64
+
+class TemporaryExposureKeyBatchTest {
+
+    private val keys = (0 until 40).map {
+        StoredTemporaryExposureKey(
+            key = Base64.getEncoder().encodeToString(ByteArray(16) { byte -> (byte * it).toByte() }),
+            rollingStartNumber = 2664864 + it * 144,
+            rollingPeriod = 144,
+            transmissionRisk = it % 8,
+            daysSinceOnsetOfSymptoms = if (it % 3 == 0) null else it
+        )
+    }
+
+    @Test
+    fun `keeps every field of the stored keys while growing`() {
+        val batch = TemporaryExposureKeyBatch(initialCapacity = 1)
+        keys.forEach(batch::add)
+
+        expectThat(batch.size).isEqualTo(keys.size)
+        expectThat((0 until batch.size).map(batch::toStoredKey)).isEqualTo(keys)
+    }
+
+    @Test
+    fun `copies keys between batches without decoding them again`() {
+        val source = TemporaryExposureKeyBatch.of(keys)
+        val copy = TemporaryExposureKeyBatch(0)
+
+        copy.add(source, 7)
+        copy.add(source, 3)
+
+        expectThat(copy.toStoredKey(0)).isEqualTo(keys[7])
+        expectThat(copy.toStoredKey(1)).isEqualTo(keys[3])
+    }
+
+    @Test
+    fun `only key data of fewer than 32 bytes is decoded`() {
+        val batch = TemporaryExposureKeyBatch().apply {
+            add("kzQt9Lf3xjtAlMtm7jkSqw==", 1, 144, 7, null)
+            add("kzQt9Lf3xjtAlMtm7jkSqw", 1, 144, 7, null)
+            add("c29tZS1zaWduYXR1cmU=", 1, 144, 7, null)
+            add("kzQt9Lf3xjtAlMtm7jkSq!==", 1, 144, 7, null)
+            add("YWJjZGVmZ2hpamtsbW5vcHFyc3R1dnd4eXpBQkNERUZHCg==", 1, 144, 7, null)
+        }
+
+        expectThat(batch.hasKeyData(0)).isTrue()
+        expectThat(batch.hasKeyData(1)).isTrue()
+        expectThat(batch.key(1)).isEqualTo("kzQt9Lf3xjtAlMtm7jkSqw==")
+        expectThat(batch.hasKeyData(2)).isTrue()
+        expectThat(batch.keyDataLength(2)).isEqualTo(14)
+        expectThat(batch.key(2)).isEqualTo("c29tZS1zaWduYXR1cmU=")
+        expectThat(batch.hasKeyData(3)).isFalse()
+        expectThat(batch.hasKeyData(4)).isFalse()
+        expectThat(batch.rejectedKey(4)).isEqualTo("YWJjZGVmZ2hpamtsbW5vcHFyc3R1dnd4eXpBQkNERUZHCg==")
+        expectThat(batch.rejectedKey(0)).isNull()
+    }
+}
@@ -8,6 +8,7 @@ import io.mockk.verify
 import org.junit.jupiter.api.Test
 import strikt.api.expect
 import strikt.api.expectThat
+import strikt.api.expectThrows
 import strikt.assertions.elementAt
 import strikt.assertions.first
 import strikt.assertions.hasSize
@@ -20,7 +21,10 @@ import uk.nhs.nhsx.domain.BatchTag
 import uk.nhs.nhsx.domain.ReportType.CONFIRMED_TEST
 import uk.nhs.nhsx.domain.TestType.LAB_RESULT
 import uk.nhs.nhsx.keyfederation.client.InteropClient
+import uk.nhs.nhsx.keyfederation.client.InteropDownloadResponse
+import uk.nhs.nhsx.keyfederation.client.InteropUploadResponse
 import uk.nhs.nhsx.keyfederation.client.DiagnosisKeysDownloadResponse
+import uk.nhs.nhsx.keyfederation.client.ExposureUpload
 import uk.nhs.nhsx.keyfederation.download.DiagnosisKeysDownloadService
 import uk.nhs.nhsx.keyfederation.download.ExposureDownload
 import uk.nhs.nhsx.keyfederation.client.NoContent
@@ -679,6 +683,118 @@ class DiagnosisKeysDownloadServiceTest {
         }
     }
 
+    @Test
+    fun `pipelined download saves and checkpoints batches in order`() {
+        val interopClient = mockk<InteropClient> {
+            every { downloadKeys(sep01) } returns batchOf("tag-1", "ogNW4Ra+Zdds1ShN56yv3w==")
+            every { downloadKeys(sep01, BatchTag.of("tag-1")) } returns batchOf("tag-2", "EwoHez3CQgdslvdxaf+ztw==")
+            every { downloadKeys(sep01, BatchTag.of("tag-2")) } returns batchOf("tag-3", "xnGNbiVKd7xarkv9Gbdi5w==")
+            every { downloadKeys(sep01, BatchTag.of("tag-3")) } returns NoContent
+        }
+
+        val batchTagService = InMemoryBatchTagService()
+        val downloadService = DiagnosisKeysDownloadService(
+            interopClient = interopClient,
+            keyUploader = FederatedKeyUploader(fakeS3, bucketName = bucketName),
+            batchTagService = batchTagService,
+            pipelined = true
+        )
+
+        val batchesProcessed = downloadService.downloadFromFederatedServerAndStoreKeys()
+
+        expect {
+            that(batchesProcessed).isEqualTo(3)
+            that(batchTagService).get(InMemoryBatchTagService::batchTag).isEqualTo(BatchTag.of("tag-3"))
+            that(fakeS3).getBucket(bucketName).hasSize(3)
+        }
+    }
+
+    @Test
+    fun `pipelined download does not prefetch without remaining time`() {
+        val interopClient = mockk<InteropClient> {
+            every { downloadKeys(sep01) } returns batchOf("tag-1", "ogNW4Ra+Zdds1ShN56yv3w==")
+        }
+
+        val batchTagService = InMemoryBatchTagService()
+        val downloadService = DiagnosisKeysDownloadService(
+            interopClient = interopClient,
+            batchTagService = batchTagService,
+            contextRemainingTimeInMillis = -2,
+            pipelined = true
+        )
+
+        expectThat(downloadService.downloadFromFederatedServerAndStoreKeys()).isEqualTo(1)
+        expectThat(batchTagService).get(InMemoryBatchTagService::batchTag).isEqualTo(BatchTag.of("tag-1"))
+        verify(exactly = 1) { interopClient.downloadKeys(any(), any()) }
+    }
+
+    @Test
+    fun `pipelined download keeps the checkpoint of the last saved batch when a later batch fails`() {
+        val interopClient = mockk<InteropClient> {
+            every { downloadKeys(sep01) } returns batchOf("tag-1", "ogNW4Ra+Zdds1ShN56yv3w==")
+            every { downloadKeys(sep01, BatchTag.of("tag-1")) } returns batchOf("tag-2", "EwoHez3CQgdslvdxaf+ztw==")
+            every { downloadKeys(sep01, BatchTag.of("tag-2")) } returns batchOf("tag-3", "xnGNbiVKd7xarkv9Gbdi5w==")
+        }
+        val failingS3 = mockk<AwsS3> {
+            every { upload(any(), any(), any(), any()) } returns Unit andThenThrows RuntimeException("S3 unavailable")
+        }
+
+        val batchTagService = InMemoryBatchTagService()
+        val downloadService = DiagnosisKeysDownloadService(
+            interopClient = interopClient,
+            keyUploader = FederatedKeyUploader(failingS3),
+            batchTagService = batchTagService,
+            pipelined = true
+        )
+
+        expectThrows<RuntimeException> { downloadService.downloadFromFederatedServerAndStoreKeys() }
+        expectThat(batchTagService).get(InMemoryBatchTagService::batchTag).isEqualTo(BatchTag.of("tag-1"))
+    }
+
+    @Test
+    fun `streaming download saves and checkpoints the same batches`() {
+        val batches = mapOf(
+            null to batchOf("tag-1", "ogNW4Ra+Zdds1ShN56yv3w=="),
+            BatchTag.of("tag-1") to batchOf("tag-2", "EwoHez3CQgdslvdxaf+ztw==")
+        )
+        val interopClient = object : InteropClient {
+            override fun downloadKeys(date: LocalDate, batchTag: BatchTag?): InteropDownloadResponse =
+                batches[batchTag] ?: NoContent
+            override fun uploadKeys(keys: List<ExposureUpload>): InteropUploadResponse = error("not expected")
+        }
+
+        val batchTagService = InMemoryBatchTagService()
+        val downloadService = DiagnosisKeysDownloadService(
+            interopClient = interopClient,
+            keyUploader = FederatedKeyUploader(fakeS3, bucketName = bucketName),
+            batchTagService = batchTagService,
+            streaming = true
+        )
+
+        expect {
+            that(downloadService.downloadFromFederatedServerAndStoreKeys()).isEqualTo(2)
+            that(batchTagService).get(InMemoryBatchTagService::batchTag).isEqualTo(BatchTag.of("tag-2"))
+            that(fakeS3).getBucket(bucketName).hasSize(2)
+        }
+    }
+
+    private fun batchOf(batchTag: String, keyData: String) = DiagnosisKeysDownloadResponse(
+        batchTag = BatchTag.of(batchTag),
+        exposures = listOf(
+            ExposureDownload(
+                keyData = keyData,
+                rollingStartNumber = rollingStartNumber,
+                transmissionRiskLevel = 0,
+                rollingPeriod = 144,
+                origin = "GB-EAW",
+                regions = listOf("GB-EAW"),
+                testType = LAB_RESULT,
+                reportType = CONFIRMED_TEST,
+                daysSinceOnset = 0
+            )
+        )
+    )
+
     private fun FederatedKeyUploader(
         awsS3: AwsS3,
         validOrigins: List<String> = listOf("GB-EAW"),
@@ -699,7 +815,9 @@ class DiagnosisKeysDownloadServiceTest {
         downloadRiskLevelDefaultEnabled: Boolean = false,
         downloadRiskLevelDefault: Int = -1,
         maxSubsequentBatchDownloadCount: Int = 5,
-        contextRemainingTimeInMillis: Int = 10000
+        contextRemainingTimeInMillis: Int = 10000,
+        pipelined: Boolean = false,
+        streaming: Boolean = false
     ) = DiagnosisKeysDownloadService(
         clock = clock,
         interopClient = interopClient,
@@ -712,6 +830,8 @@ class DiagnosisKeysDownloadServiceTest {
         context = mockk(relaxed = true) {
             every { remainingTimeInMillis } returns contextRemainingTimeInMillis
         },
-        events = events
+        events = events,
+        pipelined = pipelined,
+        streaming = streaming
     )
 }
@@ -14,7 +14,9 @@ import com.github.tomakehurst.wiremock.matching.MatchResult
 import com.github.tomakehurst.wiremock.matching.MatchResult.exactMatch
 import com.github.tomakehurst.wiremock.matching.MatchResult.noMatch
 import com.github.tomakehurst.wiremock.matching.StringValuePattern
+import io.mockk.Runs
 import io.mockk.every
+import io.mockk.just
 import io.mockk.mockk
 import io.mockk.slot
 import io.mockk.spyk
@@ -23,6 +25,7 @@ import org.junit.jupiter.api.BeforeEach
 import org.junit.jupiter.api.Test
 import org.junit.jupiter.api.extension.ExtendWith
 import strikt.api.expectThat
+import strikt.api.expectThrows
 import strikt.assertions.hasSize
 import strikt.assertions.isEqualTo
 import uk.nhs.nhsx.core.Json.readJsonOrNull
@@ -35,13 +38,17 @@ import uk.nhs.nhsx.core.events.IncomingHttpResponse
 import uk.nhs.nhsx.core.events.InfoEvent
 import uk.nhs.nhsx.core.events.RecordingEvents
 import uk.nhs.nhsx.diagnosiskeydist.SubmissionRepository
+import uk.nhs.nhsx.diagnosiskeydist.agspec.ENIntervalNumber.Companion.enIntervalNumberFromTimestamp
 import uk.nhs.nhsx.diagnosiskeydist.s3.SubmissionFromS3Repository
+import uk.nhs.nhsx.domain.BatchTag
 import uk.nhs.nhsx.domain.ReportType.CONFIRMED_TEST
 import uk.nhs.nhsx.domain.TestType.LAB_RESULT
 import uk.nhs.nhsx.keyfederation.client.DiagnosisKeysUploadRequest
 import uk.nhs.nhsx.keyfederation.client.ExposureUpload
 import uk.nhs.nhsx.keyfederation.client.HttpInteropClient
 import uk.nhs.nhsx.keyfederation.client.InteropClient
+import uk.nhs.nhsx.keyfederation.client.InteropDownloadResponse
+import uk.nhs.nhsx.keyfederation.client.InteropUploadResponse
 import uk.nhs.nhsx.keyfederation.storage.BatchTagService
 import uk.nhs.nhsx.keyfederation.upload.DiagnosisKeysUploadService
 import uk.nhs.nhsx.keyfederation.upload.FederatedExposureUploadFactory
@@ -54,7 +61,10 @@ import uk.nhs.nhsx.testhelper.wiremock.WireMockExtension
 import java.time.Clock
 import java.time.Duration
 import java.time.Instant
+import java.time.LocalDate
 import java.time.ZoneOffset.UTC
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
 
 @ExtendWith(WireMockExtension::class)
 class DiagnosisKeysUploadServiceTest(private val wireMock: WireMockServer) {
@@ -161,6 +171,42 @@ class DiagnosisKeysUploadServiceTest(private val wireMock: WireMockServer) {
         expectThat(payload).withCaptured { hasSize(2) }
     }
 
+    @Test
+    fun `only keys of sixteen bytes are uploaded`() {
+        wireMock.stubFor(
+            post("/diagnosiskeys/upload")
+                .withHeader("Authorization", equalTo("Bearer DUMMY_TOKEN"))
+                .withRequestBody(UploadPayloadPattern())
+                .willReturn(
+                    aResponse()
+                        .withStatus(200)
+                        .withBody("""{ "batchTag": "75b326f7-ae6f-42f6-9354-00c0a6b797b3", "insertedExposures":0 }""")
+                )
+        )
+
+        val payload = slot<List<ExposureUpload>>()
+        val interopClient = spyk(InteropClient(wireMock)) {
+            every { uploadKeys(capture(payload)) } answers { callOriginal() }
+        }
+
+        fakeS3.add(exposureS3Object("mobile/LAB_RESULT/abc", submissionBucketName, "3/TzKOK2u0O/eHeK4R0VSg=="), now)
+        fakeS3.add(exposureS3Object("mobile/LAB_RESULT/def", submissionBucketName, "c29tZS1zaWduYXR1cmU="), now)
+
+        val service = DiagnosisKeysUploadService(
+            interopClient = interopClient,
+            submissionRepository = SubmissionFromS3Repository(fakeS3),
+        )
+
+        service.loadKeysAndUploadToFederatedServer()
+
+        expectThat(payload).withCaptured {
+            hasSize(1)
+            get { first().keyData }.isEqualTo("3/TzKOK2u0O/eHeK4R0VSg==")
+        }
+        expectThat(events.filterIsInstance<InvalidTemporaryExposureKey>())
+            .isEqualTo(listOf(InvalidTemporaryExposureKey("c29tZS1zaWduYXR1cmU=")))
+    }
+
     @Test
     fun `filter prefix for federation diagnosis keys and upload`() {
         wireMock.stubFor(
@@ -342,6 +388,117 @@ class DiagnosisKeysUploadServiceTest(private val wireMock: WireMockServer) {
         wireMock.verify(postRequestedFor(urlEqualTo("/diagnosiskeys/upload")))
     }
 
+    @Test
+    fun `parallel upload acknowledges every batch and advances the upload time to the last one`() {
+        val submissionDates = (4L downTo 0L).map { now.minus(Duration.ofDays(it)) }
+        val uploads = CopyOnWriteArrayList<List<ExposureUpload>>()
+        val uploadTimes = mutableListOf<Instant>()
+
+        val service = DiagnosisKeysUploadService(
+            interopClient = UploadingInteropClient { uploads += it },
+            submissionRepository = FakeSubmissionRepository(submissionDates),
+            batchTagService = UploadStateRecordingBatchTagService(uploadTimes),
+            maxUploadBatchSize = 5,
+            uploadConcurrency = 3
+        )
+
+        expectThat(service.loadKeysAndUploadToFederatedServer()).isEqualTo(5)
+        expectThat(uploads).hasSize(5)
+        expectThat(uploadTimes).isEqualTo(submissionDates)
+    }
+
+    @Test
+    fun `parallel upload only advances the upload time over the batches before a failed one`() {
+        val submissionDates = (4L downTo 0L).map { now.minus(Duration.ofDays(it)) }
+        val failingRollingStartNumber = rollingStartNumberOf(submissionDates[2])
+        val uploadTimes = mutableListOf<Instant>()
+
+        val service = DiagnosisKeysUploadService(
+            interopClient = UploadingInteropClient {
+                if (it.first().rollingStartNumber == failingRollingStartNumber) error("upload failed")
+            },
+            submissionRepository = FakeSubmissionRepository(submissionDates),
+            batchTagService = UploadStateRecordingBatchTagService(uploadTimes),
+            maxUploadBatchSize = 5,
+            uploadConcurrency = 3
+        )
+
+        expectThrows<IllegalStateException> { service.loadKeysAndUploadToFederatedServer() }
+        expectThat(uploadTimes).isEqualTo(submissionDates.take(2))
+    }
+
+    @Test
+    fun `parallel upload keeps the upload time a second earlier when a batch ends within a second`() {
+        val submissionDate = now.minusSeconds(10)
+        val uploads = CopyOnWriteArrayList<List<ExposureUpload>>()
+        val uploadTimes = mutableListOf<Instant>()
+
+        val service = DiagnosisKeysUploadService(
+            interopClient = UploadingInteropClient { uploads += it },
+            submissionRepository = FakeSubmissionRepository(List(7) { submissionDate }),
+            batchTagService = UploadStateRecordingBatchTagService(uploadTimes),
+            maxUploadBatchSize = 5,
+            uploadConcurrency = 3
+        )
+
+        expectThat(service.loadKeysAndUploadToFederatedServer()).isEqualTo(7)
+        expectThat(uploads).hasSize(2)
+        expectThat(uploadTimes).isEqualTo(listOf(submissionDate.minusSeconds(1), submissionDate))
+    }
+
+    @Test
+    fun `parallel upload does not send queued batches once it has stopped`() {
+        val submissionDates = (4L downTo 0L).map { now.minus(Duration.ofDays(it)) }
+        val uploads = CopyOnWriteArrayList<List<ExposureUpload>>()
+        val release = CountDownLatch(1)
+
+        val service = DiagnosisKeysUploadService(
+            interopClient = UploadingInteropClient {
+                uploads += it
+                if (uploads.size == 2) release.awaitUninterruptibly()
+            },
+            submissionRepository = FakeSubmissionRepository(submissionDates),
+            batchTagService = mockk {
+                every { lastUploadState() } returns null
+                every { updateLastUploadState(any()) } throws IllegalStateException("update failed")
+            },
+            maxUploadBatchSize = 5,
+            uploadConcurrency = 1
+        )
+
+        expectThrows<IllegalStateException> { service.loadKeysAndUploadToFederatedServer() }
+        release.countDown()
+
+        expectThat(uploads).hasSize(2)
+    }
+
+    private fun CountDownLatch.awaitUninterruptibly() {
+        while (true) {
+            try {
+                return await()
+            } catch (e: InterruptedException) {
+                // stopping the upload interrupts the pool, keep blocking until the test releases it
+            }
+        }
+    }
+
+    private fun rollingStartNumberOf(submissionDate: Instant) =
+        (enIntervalNumberFromTimestamp(submissionDate).enIntervalNumber / 144 * 144).toInt()
+
+    private fun UploadingInteropClient(upload: (List<ExposureUpload>) -> Unit) = object : InteropClient {
+        override fun downloadKeys(date: LocalDate, batchTag: BatchTag?): InteropDownloadResponse = error("not expected")
+
+        override fun uploadKeys(keys: List<ExposureUpload>): InteropUploadResponse {
+            upload(keys)
+            return InteropUploadResponse(BatchTag.of("75b326f7-ae6f-42f6-9354-00c0a6b797b3"), keys.size)
+        }
+    }
+
+    private fun UploadStateRecordingBatchTagService(uploadTimes: MutableList<Instant>) = mockk<BatchTagService> {
+        every { lastUploadState() } returns null
+        every { updateLastUploadState(capture(uploadTimes)) } just Runs
+    }
+
     private class UploadPayloadPattern(@JsonProperty matchesPayloadPattern: String = """{ batchTag: [a-f0-9\-]+, payload: "DUMMY_SIGNATURE" }""") :
         StringValuePattern(matchesPayloadPattern) {
         override fun match(value: String): MatchResult = readJsonOrNull<DiagnosisKeysUploadRequest>(value)
@@ -362,7 +519,8 @@ class DiagnosisKeysUploadServiceTest(private val wireMock: WireMockServer) {
         uploadRiskLevelDefault: Int = -1,
         maxUploadBatchSize: Int = 0,
         maxSubsequentBatchUploadCount: Int = 100,
-        context: Context = mockk { every { remainingTimeInMillis } returns 1000000 }
+        context: Context = mockk { every { remainingTimeInMillis } returns 1000000 },
+        uploadConcurrency: Int = 1
     ) = DiagnosisKeysUploadService(
         clock = { now },
         interopClient = interopClient,
@@ -375,7 +533,8 @@ class DiagnosisKeysUploadServiceTest(private val wireMock: WireMockServer) {
         maxUploadBatchSize = maxUploadBatchSize,
         maxSubsequentBatchUploadCount = maxSubsequentBatchUploadCount,
         context = context,
-        events = events
+        events = events,
+        uploadConcurrency = uploadConcurrency
     )
 
     private fun InteropClient(wireMock: WireMockServer) = HttpInteropClient(
@@ -10,6 +10,7 @@ import strikt.assertions.isA
 import strikt.assertions.isEqualTo
 import strikt.assertions.withElementAt
 import uk.nhs.nhsx.core.aws.s3.BucketName
+import uk.nhs.nhsx.core.aws.s3.Locator
 import uk.nhs.nhsx.core.aws.s3.ObjectKey
 import uk.nhs.nhsx.core.events.RecordingEvents
 import uk.nhs.nhsx.diagnosiskeydist.agspec.ENIntervalNumber.Companion.enIntervalNumberFromTimestamp
@@ -470,5 +471,54 @@ class FederatedKeyUploaderTest {
 
         expectThat(awsS3).getBucket(bucketName).hasSize(1)
     }
-}
 
+    @Test
+    fun `streaming batch stores the same objects as the whole batch`() {
+        val exposures = listOf(
+            exposure("W2zb3BeMWt6Xr2u0ABG32Q==", rollingStartNumber1, "NI"),
+            exposure("kzQt9Lf3xjtAlMtm7jkSqw==", rollingStartNumber3, "IE"),
+            exposure("B3xb3BeMWt6Xr2u0ABG45F==", rollingStartNumber2, "NI"),
+            exposure("ogNW4Ra+Zdds1ShN56yv3w==", rollingStartNumber2, "XX")
+        )
+        val streamedS3 = FakeS3()
+        val streamedEvents = RecordingEvents()
+        val streaming = FederatedKeyUploader(
+            awsS3 = streamedS3,
+            bucketName = bucketName,
+            federatedKeySourcePrefix = "federatedKeyPrefix",
+            clock = clock,
+            validOrigins = validOrigins,
+            events = streamedEvents
+        )
+
+        uploader.acceptKeysFromFederatedServer(DiagnosisKeysDownloadResponse(BatchTag.of("batchTag"), exposures))
+        streaming.streamingBatch().apply {
+            exposures.forEach(::accept)
+            complete(BatchTag.of("batchTag"))
+        }
+
+        listOf("NI", "IE").forEach { origin ->
+            val locator = Locator.of(bucketName, ObjectKey.of("federatedKeyPrefix/$origin/20200915/batchTag.json"))
+            expectThat(streamedS3.getObject(locator)?.objectContent?.readAllBytes()?.decodeToString())
+                .isEqualTo(awsS3.getObject(locator)?.objectContent?.readAllBytes()?.decodeToString())
+        }
+        expectThat(streamedEvents).containsExactly(
+            DownloadedFederatedDiagnosisKeys::class,
+            DownloadedFederatedDiagnosisKeys::class,
+            DownloadedFederatedDiagnosisKeys::class,
+            InvalidOriginKeys::class
+        )
+    }
+
+    private fun exposure(keyData: String, rollingStartNumber: Long, origin: String) = ExposureDownload(
+        keyData = keyData,
+        rollingStartNumber = rollingStartNumber.toInt(),
+        transmissionRiskLevel = 3,
+        rollingPeriod = 144,
+        origin = origin,
+        regions = listOf(origin),
+        testType = LAB_RESULT,
+        reportType = CONFIRMED_TEST,
+        daysSinceOnset = 0
+    )
+}
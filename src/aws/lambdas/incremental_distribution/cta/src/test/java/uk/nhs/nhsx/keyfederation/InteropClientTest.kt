@@ -29,6 +29,7 @@ import strikt.assertions.message
 import uk.nhs.nhsx.core.RandomUUID
 import uk.nhs.nhsx.core.UniqueId
 import uk.nhs.nhsx.core.events.RecordingEvents
+import uk.nhs.nhsx.core.events.UnprocessableJson
 import uk.nhs.nhsx.domain.BatchTag
 import uk.nhs.nhsx.domain.ReportType.CONFIRMED_TEST
 import uk.nhs.nhsx.domain.TestType.LAB_RESULT
@@ -36,8 +37,10 @@ import uk.nhs.nhsx.keyfederation.client.HttpInteropClient
 import uk.nhs.nhsx.keyfederation.client.DiagnosisKeysDownloadResponse
 import uk.nhs.nhsx.keyfederation.download.ExposureDownload
 import uk.nhs.nhsx.keyfederation.client.NoContent
+import uk.nhs.nhsx.keyfederation.client.StreamedDiagnosisKeys
 import uk.nhs.nhsx.keyfederation.client.ExposureUpload
 import uk.nhs.nhsx.keyfederation.upload.JWS
+import uk.nhs.nhsx.testhelper.assertions.contains
 import uk.nhs.nhsx.testhelper.wiremock.WireMockExtension
 import java.time.LocalDate
 import java.util.*
@@ -273,6 +276,52 @@ class InteropClientTest(private val wireMock: WireMockServer) {
             }
     }
 
+    @Test
+    fun `streaming download hands over the same exposures as the full download`() {
+        wireMock.stubFor(
+            get(urlEqualTo("/diagnosiskeys/download/2020-08-19"))
+                .willReturn(
+                    aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withBody(interopDownloadPayload)
+                )
+        )
+
+        val client = InteropClient(wireMock)
+        val streamed = mutableListOf<ExposureDownload>()
+
+        expectThat(client.downloadKeys(localDate, null) { streamed += it })
+            .isEqualTo(StreamedDiagnosisKeys(BatchTag.of("5a0df0cd-4663-4119-ade4-3a30ab8e164d"), 7))
+
+        expectThat(client.downloadKeys(localDate))
+            .isA<DiagnosisKeysDownloadResponse>()
+            .get(DiagnosisKeysDownloadResponse::exposures)
+            .isEqualTo(streamed)
+    }
+
+    @Test
+    fun `streaming download fails on a truncated payload`() {
+        wireMock.stubFor(
+            get(urlEqualTo("/diagnosiskeys/download/2020-08-19"))
+                .willReturn(
+                    aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withBody(interopDownloadPayload.take(interopDownloadPayload.length / 2))
+                )
+        )
+
+        val client = InteropClient(wireMock)
+
+        expectCatching { client.downloadKeys(localDate, null) { } }
+            .isFailure()
+            .message
+            .isEqualTo("Unable to parse response from key federation server")
+
+        expectThat(events).contains(UnprocessableJson::class)
+    }
+
     @Test
     fun `upload diagnosis keys`() {
         wireMock.stubFor(
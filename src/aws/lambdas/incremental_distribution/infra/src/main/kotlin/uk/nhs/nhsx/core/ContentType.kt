@@ -7,6 +7,7 @@ class ContentType(value: String) : StringValue(value) {
     companion object : NonBlankStringValueFactory<ContentType>(::ContentType) {
         val APPLICATION_JSON = ContentType.of("application/json")
         val APPLICATION_ZIP = ContentType.of("application/zip")
+        val APPLICATION_OCTET_STREAM = ContentType.of("application/octet-stream")
         val TEXT_PLAIN = ContentType.of("text/plain")
         val TEXT_CSV = ContentType.of("text/csv")
     }
@@ -48,6 +48,8 @@ class Environment private constructor(val name: EnvironmentName, val type: Envir
 
             fun long(name: String) = define(name, String::toLong)
 
+            fun double(name: String) = define(name, String::toDouble)
+
             fun strings(name: String) = define(name) { it.split(",").map(String::trim).filter(String::isNotBlank) }
 
             fun localDate(name: String) = define(name, LocalDate::parse)
@@ -105,7 +105,12 @@ inline fun <reified T : Any> Json.readStrictOrNull(
     null
 }
 
-object AppServicesJson : ConfigurableJackson(
+object AppServicesJson : ConfigurableJackson(reflectiveAppServicesMapper().withCodecs())
+
+/**
+ * [AppServicesJson] without the registered [JsonCodecs]
+ */
+fun reflectiveAppServicesMapper(): ObjectMapper =
     KotlinModule(strictNullChecks = true)
         .asConfigurable()
         .domainMappings()
@@ -121,7 +126,6 @@ object AppServicesJson : ConfigurableJackson(
         .configure(FAIL_ON_UNKNOWN_PROPERTIES, false)
         .configure(USE_BIG_DECIMAL_FOR_FLOATS, false)
         .configure(USE_BIG_INTEGER_FOR_INTS, false)
-)
 
 object StrictAppServicesJson : ConfigurableJackson(
     AppServicesJson.mapper.copy().configure(FAIL_ON_UNKNOWN_PROPERTIES, true)
@@ -0,0 +1,123 @@
+package uk.nhs.nhsx.core
+
+import com.fasterxml.jackson.core.JsonParser
+import com.fasterxml.jackson.core.JsonToken.END_ARRAY
+import com.fasterxml.jackson.core.JsonToken.END_OBJECT
+import com.fasterxml.jackson.core.JsonToken.FIELD_NAME
+import com.fasterxml.jackson.core.JsonToken.START_ARRAY
+import com.fasterxml.jackson.core.JsonToken.START_OBJECT
+import com.fasterxml.jackson.core.JsonToken.VALUE_NULL
+import com.fasterxml.jackson.databind.DeserializationContext
+import com.fasterxml.jackson.databind.DeserializationFeature.FAIL_ON_NULL_CREATOR_PROPERTIES
+import com.fasterxml.jackson.databind.JsonDeserializer
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer
+import com.fasterxml.jackson.databind.module.SimpleModule
+import java.util.*
+
+/**
+ * Hand written streaming codecs for the highest volume types, so they are bound without reflection.
+ *
+ * Implementations are found with [ServiceLoader] (`META-INF/services/uk.nhs.nhsx.core.JsonCodecs`), which lets
+ * modules depending on infra register their own types with [AppServicesJson].
+ */
+interface JsonCodecs {
+    fun register(module: SimpleModule)
+}
+
+fun ObjectMapper.withCodecs(): ObjectMapper = registerModule(
+    SimpleModule("JsonCodecs").also { module ->
+        ServiceLoader.load(JsonCodecs::class.java, JsonCodecs::class.java.classLoader).forEach { it.register(module) }
+    }
+)
+
+/**
+ * Reads a Kotlin data class the way the reflective Kotlin module does for [AppServicesJson]:
+ *
+ * - a missing property takes the parameter default, or null when nullable, and fails otherwise
+ * - an explicit null fails while FAIL_ON_NULL_CREATOR_PROPERTIES is enabled, or when not nullable
+ * - unknown properties are skipped unless FAIL_ON_UNKNOWN_PROPERTIES is enabled
+ *
+ * Nested values, enums and UUIDs are read with the deserializers of the calling mapper, see [deserializerFor].
+ */
+abstract class StreamingDeserializer<T : Any>(private val type: Class<T>) : StdDeserializer<T>(type) {
+
+    protected fun <V> deserializerFor(ctxt: DeserializationContext, valueType: Class<V>): JsonDeserializer<V> {
+        @Suppress("UNCHECKED_CAST")
+        return ctxt.findRootValueDeserializer(ctxt.constructType(valueType)) as JsonDeserializer<V>
+    }
+
+    /**
+     * calls [onField] positioned on the value of each property, which it must consume
+     */
+    inline fun JsonParser.forEachField(ctxt: DeserializationContext, onField: (String) -> Unit) {
+        var token = currentToken
+        if (token == START_OBJECT) token = nextToken()
+        if (token != FIELD_NAME && token != END_OBJECT) {
+            ctxt.handleUnexpectedToken(handledType(), this)
+        }
+        while (currentToken == FIELD_NAME) {
+            val name = currentName
+            nextToken()
+            onField(name)
+            nextToken()
+        }
+    }
+
+    inline fun <E> JsonParser.readList(
+        ctxt: DeserializationContext,
+        property: String,
+        nullableElements: Boolean,
+        readElement: () -> E
+    ): List<E?> {
+        if (currentToken != START_ARRAY) ctxt.reportInputMismatch<Any>(this@StreamingDeserializer, "Expected array for '$property'")
+        val elements = ArrayList<E?>()
+        while (nextToken() != END_ARRAY) {
+            elements += when (currentToken) {
+                VALUE_NULL -> nullValue<E>(this, ctxt, "$property[]", nullableElements, creatorProperty = false)
+                else -> readElement()
+            }
+        }
+        return elements
+    }
+
+    fun <V> nullValue(
+        p: JsonParser,
+        ctxt: DeserializationContext,
+        property: String,
+        nullable: Boolean,
+        creatorProperty: Boolean = true
+    ): V? {
+        if ((creatorProperty && ctxt.isEnabled(FAIL_ON_NULL_CREATOR_PROPERTIES)) || !nullable) {
+            ctxt.reportInputMismatch<Any>(this, "Null value for property '%s' of %s", property, type.simpleName)
+        }
+        return null
+    }
+
+    protected fun <V> required(p: JsonParser, ctxt: DeserializationContext, property: String, value: V?): V {
+        if (value == null) {
+            ctxt.reportInputMismatch<Any>(this, "Missing required property '%s' of %s", property, type.simpleName)
+        }
+        return value!!
+    }
+
+    protected fun JsonParser.readInt(ctxt: DeserializationContext, property: String, nullable: Boolean = false): Int? =
+        if (currentToken == VALUE_NULL) nullValue(this, ctxt, property, nullable) else _parseIntPrimitive(this, ctxt)
+
+    protected fun JsonParser.readBoolean(ctxt: DeserializationContext, property: String, nullable: Boolean = false): Boolean? =
+        if (currentToken == VALUE_NULL) nullValue(this, ctxt, property, nullable) else _parseBooleanPrimitive(this, ctxt)
+
+    protected fun JsonParser.readString(ctxt: DeserializationContext, property: String, nullable: Boolean = false): String? =
+        if (currentToken == VALUE_NULL) nullValue(this, ctxt, property, nullable) else _parseString(this, ctxt)
+
+    protected fun <V> JsonParser.readWith(
+        ctxt: DeserializationContext,
+        deserializer: JsonDeserializer<V>,
+        property: String,
+        nullable: Boolean = false
+    ): V? = if (currentToken == VALUE_NULL) nullValue(this, ctxt, property, nullable) else deserializer.deserialize(this, ctxt)
+
+    protected fun JsonParser.skipUnknown(ctxt: DeserializationContext, property: String) {
+        ctxt.handleUnknownProperty(this, this@StreamingDeserializer, type, property)
+    }
+}
@@ -15,6 +15,19 @@ interface AwsS3 {
         metaHeaders: List<MetaHeader> = listOf()
     )
     fun getObjectSummaries(bucketName: BucketName): List<S3ObjectSummary>
+
+    /**
+     * Lists the objects under `prefix` lazily. With a `delimiter`, objects with the delimiter after the prefix are skipped.
+     */
+    fun objectSummaries(
+        bucketName: BucketName,
+        prefix: String = "",
+        delimiter: String? = null
+    ): Sequence<S3ObjectSummary> = getObjectSummaries(bucketName)
+        .asSequence()
+        .filter { it.key.startsWith(prefix) }
+        .filter { delimiter == null || !it.key.substring(prefix.length).contains(delimiter) }
+
     fun getObject(locator: Locator): S3Object?
     fun deleteObject(locator: Locator)
     fun copyObject(from: Locator, to: Locator)
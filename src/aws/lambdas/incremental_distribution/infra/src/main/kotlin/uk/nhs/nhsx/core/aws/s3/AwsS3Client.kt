@@ -11,6 +11,7 @@ import com.amazonaws.services.s3.model.S3ObjectSummary
 import uk.nhs.nhsx.core.ContentType
 import uk.nhs.nhsx.core.Environment
 import uk.nhs.nhsx.core.events.Events
+import uk.nhs.nhsx.core.events.MetricsRegistry
 import java.io.IOException
 import java.net.URL
 import java.util.*
@@ -22,7 +23,8 @@ private val ENABLED_DEFAULT = true
 
 class AwsS3Client @JvmOverloads constructor(
     private val events: Events,
-    private val client: AmazonS3 = AmazonS3ClientBuilder.defaultClient()
+    private val client: AmazonS3 = AmazonS3ClientBuilder.defaultClient(),
+    private val metrics: MetricsRegistry = MetricsRegistry.default
 ) : AwsS3 {
     override val enabled: Boolean = true
 
@@ -42,42 +44,48 @@ class AwsS3Client @JvmOverloads constructor(
 
         try {
             bytes.openStream().use {
-                client.putObject(PutObjectRequest(locator.bucket.value, locator.key.value, it, metadata))
+                timed("PutObject") {
+                    client.putObject(PutObjectRequest(locator.bucket.value, locator.key.value, it, metadata))
+                }
             }
         } catch (e: IOException) {
             throw RuntimeException("Unable to open data source", e)
         }
     }
 
-    override fun getObjectSummaries(bucketName: BucketName): List<S3ObjectSummary> {
+    override fun getObjectSummaries(bucketName: BucketName): List<S3ObjectSummary> =
+        objectSummaries(bucketName).toList()
+
+    override fun objectSummaries(
+        bucketName: BucketName,
+        prefix: String,
+        delimiter: String?
+    ): Sequence<S3ObjectSummary> = sequence {
         val request = ListObjectsV2Request().apply {
             this.bucketName = bucketName.value
+            this.prefix = prefix.ifEmpty { null }
+            this.delimiter = delimiter
         }
 
-        var result = client.listObjectsV2(request)
-
-        val objectSummaries = result.objectSummaries?.toMutableList() ?: mutableListOf()
-
-        while (result.isTruncated) {
+        do {
+            val result = timed("ListObjects") { client.listObjectsV2(request) }
+            result.objectSummaries?.let { yieldAll(it) }
             request.continuationToken = result.nextContinuationToken
-            result = client.listObjectsV2(request)
-            objectSummaries.addAll(result.objectSummaries)
-        }
-
-        return objectSummaries
+        } while (result.isTruncated)
     }
 
     override fun getObject(locator: Locator) = try {
-        client.getObject(locator.bucket.value, locator.key.value)
+        timed("GetObject") { client.getObject(locator.bucket.value, locator.key.value) }
     } catch (e: AmazonS3Exception) {
         if (e.isNot404()) events(S3Error(locator, e.statusCode, e.errorCode))
         null
     }
 
-    override fun deleteObject(locator: Locator) = client.deleteObject(locator.bucket.value, locator.key.value)
+    override fun deleteObject(locator: Locator) =
+        timed("DeleteObject") { client.deleteObject(locator.bucket.value, locator.key.value) }
 
     override fun copyObject(from: Locator, to: Locator) {
-        client.copyObject(from.bucket.value, from.key.value, to.bucket.value, to.key.value)
+        timed("CopyObject") { client.copyObject(from.bucket.value, from.key.value, to.bucket.value, to.key.value) }
     }
 
     override fun getSignedURL(locator: Locator, expiration: Date) = try {
@@ -87,6 +95,12 @@ class AwsS3Client @JvmOverloads constructor(
         null
     }
 
+    /**
+     * time to first byte for reads, the content is streamed by the caller
+     */
+    private fun <T> timed(operation: String, block: () -> T) =
+        metrics.timed("S3Latency", "Operation" to operation, block = block)
+
     private fun AmazonS3Exception.isNot404() = !(statusCode == 404 && errorCode == "NoSuchKey")
 }
 
@@ -0,0 +1,41 @@
+package uk.nhs.nhsx.core.aws.s3
+
+import com.amazonaws.services.s3.model.S3ObjectSummary
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+
+/**
+ * A key prefix listed on its own. `rootOnly` lists the objects directly under the prefix, without any "/" after it.
+ */
+data class ListingShard(val prefix: String, val rootOnly: Boolean = false) {
+    companion object {
+        val ROOT = ListingShard("", rootOnly = true)
+    }
+}
+
+/**
+ * Lists the shards of a bucket concurrently instead of walking the whole bucket one page at a time
+ */
+class ShardedObjectLister(
+    private val awsS3: AwsS3,
+    private val parallelism: Int = 8
+) {
+    fun list(bucketName: BucketName, shards: List<ListingShard>): List<S3ObjectSummary> {
+        val distinctShards = shards.distinct()
+        if (distinctShards.size <= 1) return distinctShards.flatMap { listShard(bucketName, it) }
+
+        val pool = Executors.newFixedThreadPool(minOf(parallelism, distinctShards.size))
+        try {
+            return pool
+                .invokeAll(distinctShards.map { Callable { listShard(bucketName, it) } })
+                .flatMap { it.get() }
+                .distinctBy(S3ObjectSummary::getKey)
+        } finally {
+            pool.shutdownNow()
+        }
+    }
+
+    private fun listShard(bucketName: BucketName, shard: ListingShard) = awsS3
+        .objectSummaries(bucketName, shard.prefix, if (shard.rootOnly) "/" else null)
+        .toList()
+}
@@ -0,0 +1,74 @@
+package uk.nhs.nhsx.core.events
+
+import java.io.PrintStream
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.thread
+import kotlin.concurrent.withLock
+
+/**
+ * Prints event lines from a background thread, so the request path only pays for serialising the event.
+ *
+ * Every line ends in its line break. The writer takes everything queued in one go, but writes every line with a
+ * single call so the runtime still sees one log record per event. Once more than `maxQueuedBytes` are waiting the calling thread writes the queue itself,
+ * which bounds memory without dropping events.
+ *
+ * [flush] returns once everything queued before it has been written. It must be called before an invocation
+ * returns, as the runtime may freeze the process straight afterwards.
+ */
+class BufferedEventSink(
+    private val out: () -> PrintStream,
+    private val maxQueuedBytes: Long = 1024 * 1024
+) {
+    private val queueLock = ReentrantLock()
+    private val pending = queueLock.newCondition()
+    private val writeLock = ReentrantLock()
+
+    private var queue = ArrayList<ByteArray>()
+    private var queuedBytes = 0L
+
+    init {
+        thread(isDaemon = true, name = "event-writer") {
+            try {
+                while (true) {
+                    queueLock.withLock { while (queue.isEmpty()) pending.await() }
+                    writeQueued()
+                }
+            } catch (e: InterruptedException) {
+                // process is shutting down
+            }
+        }
+    }
+
+    fun write(line: ByteArray) {
+        val overflowing = queueLock.withLock {
+            queue.add(line)
+            queuedBytes += line.size
+            pending.signal()
+            queuedBytes > maxQueuedBytes
+        }
+        if (overflowing) writeQueued()
+    }
+
+    fun flush() = writeQueued()
+
+    /**
+     * batches are taken and written under the same lock, so lines keep their order
+     */
+    private fun writeQueued() = writeLock.withLock {
+        val batch = queueLock.withLock {
+            queue.also {
+                queue = ArrayList()
+                queuedBytes = 0
+            }
+        }
+        if (batch.isEmpty()) return@withLock
+
+        val stream = out()
+        batch.forEach { stream.write(it, 0, it.size) }
+        stream.flush()
+    }
+
+    companion object {
+        val standardOut by lazy { BufferedEventSink({ System.out }) }
+    }
+}
@@ -0,0 +1,249 @@
+package uk.nhs.nhsx.core.events
+
+import com.fasterxml.jackson.core.JsonGenerator
+import uk.nhs.nhsx.core.AppServicesJson
+import uk.nhs.nhsx.core.Environment
+import uk.nhs.nhsx.core.Environment.EnvironmentKey
+import java.io.ByteArrayOutputStream
+import java.time.Duration
+import java.time.Instant
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * In-process counters, latency histograms and gauges, drained as CloudWatch Embedded Metric Format (EMF) lines,
+ * each ending in its line break, whenever the events are flushed, i.e. once per invocation.
+ *
+ * Recording is lock-free. Counters and histograms report what was recorded since the previous drain, gauges
+ * report their latest value. Request and error metrics are derived from the events passing through [observe],
+ * everything else is recorded by the clients and executors themselves.
+ */
+class MetricsRegistry(
+    private val namespace: String,
+    private val commonDimensions: Map<String, String> = emptyMap(),
+    private val enabled: Boolean = true
+) {
+    private val metrics = ConcurrentHashMap<MetricId, Metric>()
+
+    fun counter(name: String, vararg dimensions: Pair<String, String>) =
+        metric(name, dimensions) { Counter() } as Counter
+
+    fun histogram(name: String, vararg dimensions: Pair<String, String>) =
+        metric(name, dimensions) { Histogram() } as Histogram
+
+    fun gauge(name: String, vararg dimensions: Pair<String, String>) =
+        metric(name, dimensions) { Gauge() } as Gauge
+
+    fun <T> timed(name: String, vararg dimensions: Pair<String, String>, block: () -> T): T {
+        val start = System.nanoTime()
+        try {
+            return block()
+        } finally {
+            histogram(name, *dimensions).record(Duration.ofNanos(System.nanoTime() - start))
+        }
+    }
+
+    fun observe(event: Event) {
+        if (!enabled) return
+        when (event) {
+            is IncomingHttpRequest -> {
+                // the route template, never the path: paths carry tokens and are chosen by the caller
+                histogram("RequestLatency", "Method" to event.method, "Route" to event.route)
+                    .record(Duration.ofMillis(event.latency))
+                counter("Requests", "Method" to event.method, "Route" to event.route, "Status" to "${event.status / 100}xx")
+                    .increment()
+            }
+        }
+        when (event.category()) {
+            EventCategory.Error -> counter("Errors", "Event" to event.javaClass.simpleName).increment()
+            EventCategory.Warning -> counter("Warnings", "Event" to event.javaClass.simpleName).increment()
+            else -> Unit
+        }
+    }
+
+    /**
+     * one EMF document per set of dimension values, each no larger than CloudWatch accepts
+     */
+    fun drain(timestamp: Instant): List<ByteArray> {
+        if (!enabled || metrics.isEmpty()) return emptyList()
+
+        return metrics.entries
+            .mapNotNull { (id, metric) ->
+                val drained = metric.drain()
+                // idle counters and histograms are dropped, so short lived dimension values do not pile up (a value
+                // recorded on one just as it is dropped is lost)
+                if (drained == null && metric !is Gauge) metrics.remove(id, metric)
+                drained?.let { id to it }
+            }
+            .groupBy({ it.first.dimensions }, { it.first.name to it.second })
+            .flatMap { (dimensions, values) ->
+                values.chunked(MAX_METRICS_PER_DOCUMENT).map { emf(timestamp, commonDimensions + dimensions, it) }
+            }
+    }
+
+    private fun metric(name: String, dimensions: Array<out Pair<String, String>>, create: () -> Metric) =
+        metrics.computeIfAbsent(MetricId(name, dimensions.toMap())) { create() }
+
+    private fun emf(timestamp: Instant, dimensions: Map<String, String>, values: List<Pair<String, Drained>>) =
+        ByteArrayOutputStream().also { bytes ->
+            AppServicesJson.mapper.factory.createGenerator(bytes).use { gen ->
+                gen.writeStartObject()
+                gen.writeObjectFieldStart("_aws")
+                gen.writeNumberField("Timestamp", timestamp.toEpochMilli())
+                gen.writeArrayFieldStart("CloudWatchMetrics")
+                gen.writeStartObject()
+                gen.writeStringField("Namespace", namespace)
+                gen.writeArrayFieldStart("Dimensions")
+                gen.writeStartArray()
+                dimensions.keys.forEach { gen.writeString(it) }
+                gen.writeEndArray()
+                gen.writeEndArray()
+                gen.writeArrayFieldStart("Metrics")
+                values.forEach { (name, drained) ->
+                    gen.writeStartObject()
+                    gen.writeStringField("Name", name)
+                    gen.writeStringField("Unit", drained.unit)
+                    gen.writeEndObject()
+                }
+                gen.writeEndArray()
+                gen.writeEndObject()
+                gen.writeEndArray()
+                gen.writeEndObject()
+                dimensions.forEach { (key, value) -> gen.writeStringField(key, value) }
+                values.forEach { (name, drained) ->
+                    gen.writeFieldName(name)
+                    drained.write(gen)
+                }
+                gen.writeEndObject()
+            }
+            bytes.write(NEW_LINE)
+        }.toByteArray()
+
+    private data class MetricId(val name: String, val dimensions: Map<String, String>)
+
+    internal class Drained(val unit: String, val write: (JsonGenerator) -> Unit)
+
+    sealed class Metric {
+        internal abstract fun drain(): Drained?
+    }
+
+    class Counter : Metric() {
+        private val adder = LongAdder()
+
+        fun increment() = adder.increment()
+
+        fun add(amount: Long) = adder.add(amount)
+
+        override fun drain() = adder.sumThenReset().takeIf { it > 0 }?.let { count ->
+            Drained("Count") { it.writeNumber(count) }
+        }
+    }
+
+    class Gauge : Metric() {
+        private val value = AtomicLong(UNSET)
+
+        fun set(value: Long) = this.value.set(value)
+
+        override fun drain() = value.get().takeIf { it != UNSET }?.let { current ->
+            Drained("None") { it.writeNumber(current) }
+        }
+
+        companion object {
+            private const val UNSET = Long.MIN_VALUE
+        }
+    }
+
+    /**
+     * Log-linear buckets over microseconds in the style of HdrHistogram: every power of two is split into
+     * [SUB_BUCKETS] equal buckets, so recorded values keep about two significant digits.
+     *
+     * EMF accepts at most 100 values per metric, so larger samples are reported as 100 bucket values shared in
+     * proportion to the bucket counts, which keeps the shape CloudWatch computes percentiles from.
+     */
+    class Histogram : Metric() {
+        private val buckets = AtomicLongArray(BUCKETS)
+
+        fun record(duration: Duration) {
+            buckets.incrementAndGet(indexOf(maxOf(0L, duration.toNanos() / 1000)))
+        }
+
+        override fun drain(): Drained? {
+            val counts = LongArray(BUCKETS) { buckets.getAndSet(it, 0) }
+            val total = counts.sum()
+            if (total == 0L) return null
+
+            val repeats = if (total <= MAX_VALUES) counts else slotsFor(counts, total)
+            val values = ArrayList<Double>(minOf(total, MAX_VALUES.toLong()).toInt())
+            repeats.forEachIndexed { index, count ->
+                repeat(count.toInt()) { values += midpointOf(index) / 1000.0 }
+            }
+            return Drained("Milliseconds") { gen ->
+                gen.writeStartArray()
+                values.forEach { gen.writeNumber(it) }
+                gen.writeEndArray()
+            }
+        }
+
+        companion object {
+            private const val SUB_BUCKET_BITS = 3
+            private const val SUB_BUCKETS = 1 shl SUB_BUCKET_BITS
+            private const val BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS
+            private const val MAX_VALUES = 100
+
+            /**
+             * shares the [MAX_VALUES] slots between the buckets by largest remainder, then makes sure the highest
+             * bucket keeps a slot, as the upper percentiles are read from it
+             */
+            internal fun slotsFor(counts: LongArray, total: Long): LongArray {
+                val slots = LongArray(counts.size) { counts[it] * MAX_VALUES / total }
+                val left = MAX_VALUES - slots.sum().toInt()
+                counts.indices
+                    .filter { counts[it] > 0 }
+                    .sortedWith(compareByDescending<Int> { counts[it] * MAX_VALUES % total }.thenByDescending { it })
+                    .take(left)
+                    .forEach { slots[it]++ }
+
+                val highest = counts.indexOfLast { it > 0 }
+                if (slots[highest] == 0L) {
+                    slots[slots.indices.maxByOrNull { slots[it] }!!]--
+                    slots[highest]++
+                }
+                return slots
+            }
+
+            internal fun indexOf(micros: Long): Int {
+                if (micros < SUB_BUCKETS) return micros.toInt()
+                val exponent = 63 - java.lang.Long.numberOfLeadingZeros(micros)
+                val shift = exponent - SUB_BUCKET_BITS
+                val subBucket = (micros shr shift).toInt() and (SUB_BUCKETS - 1)
+                return (shift + 1) * SUB_BUCKETS + subBucket
+            }
+
+            internal fun midpointOf(index: Int): Double {
+                if (index < SUB_BUCKETS) return index.toDouble()
+                val shift = index / SUB_BUCKETS - 1
+                val lower = (SUB_BUCKETS + index % SUB_BUCKETS).toLong() shl shift
+                return lower + ((1L shl shift) - 1) / 2.0
+            }
+        }
+    }
+
+    companion object {
+        private const val MAX_METRICS_PER_DOCUMENT = 100
+        private const val NEW_LINE = '\n'.code
+
+        private val METRICS_ENABLED = EnvironmentKey.bool("EMBEDDED_METRICS_ENABLED")
+        private val METRICS_NAMESPACE = EnvironmentKey.string("EMBEDDED_METRICS_NAMESPACE")
+        private val FUNCTION_NAME = EnvironmentKey.string("AWS_LAMBDA_FUNCTION_NAME")
+
+        fun from(access: Environment.Access) = MetricsRegistry(
+            namespace = access.defaulted(METRICS_NAMESPACE) { "AppServices" },
+            commonDimensions = mapOf("Function" to access.defaulted(FUNCTION_NAME) { "unknown" }),
+            enabled = access.defaulted(METRICS_ENABLED) { true }
+        )
+
+        val default by lazy { from(Environment.Access.SYSTEM) }
+    }
+}
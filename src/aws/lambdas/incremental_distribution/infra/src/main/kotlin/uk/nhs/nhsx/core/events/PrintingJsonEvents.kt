@@ -1,27 +1,112 @@
 package uk.nhs.nhsx.core.events
 
+import com.fasterxml.jackson.core.JsonGenerator
+import uk.nhs.nhsx.core.AppServicesJson
 import uk.nhs.nhsx.core.Clock
-import uk.nhs.nhsx.core.Json
 import uk.nhs.nhsx.core.handler.RequestContext
+import java.io.ByteArrayOutputStream
+import java.nio.charset.StandardCharsets.UTF_8
 
-class PrintingJsonEvents @JvmOverloads constructor(
+/**
+ * Writes each event as one line of JSON: `{"metadata":{...},"event":{...}}`.
+ *
+ * The envelope and its line break are streamed into a per-thread buffer, events implementing [StreamingEvent] write
+ * their own fields. By default lines are handed to the shared [BufferedEventSink] which prints them from a
+ * background thread, the handlers flush it before each invocation returns. Every event is also observed by the [MetricsRegistry], whose
+ * metrics are written out with each flush.
+ */
+class PrintingJsonEvents private constructor(
     private val clock: Clock,
-    private val print: (String) -> Unit = ::println
+    private val write: (ByteArray) -> Unit,
+    private val flushWritten: () -> Unit,
+    private val metrics: MetricsRegistry = MetricsRegistry.default
 ) : Events {
 
-    override fun invoke(event: Event) = print(
-        Json.toJson(
-            EventEnvelope(
-                setOfNotNull<Pair<String, Any>>(
-                    "category" to event.category(),
-                    "name" to event.javaClass.simpleName,
-                    "timestamp" to clock(),
-                    "awsRequestId" to RequestContext.awsRequestId(),
-                    *event.metadata().toTypedArray()
-                ).toMap(), event
-            )
-        )
+    constructor(clock: Clock) : this(
+        clock,
+        { line: ByteArray -> BufferedEventSink.standardOut.write(line) },
+        { BufferedEventSink.standardOut.flush() }
+    )
+
+    /**
+     * hands every line to `print` without its line break, as it is printed straight away there is nothing to flush
+     */
+    constructor(clock: Clock, print: (String) -> Unit) : this(
+        clock,
+        { line: ByteArray -> print(String(line, 0, line.size - 1, UTF_8)) },
+        {}
     )
+
+    override fun invoke(event: Event) {
+        metrics.observe(event)
+        write(buffers.get().render(event, clock(), RequestContext.awsRequestId()))
+    }
+
+    override fun flush() {
+        metrics.drain(clock()).forEach(write)
+        flushWritten()
+    }
+
+    private class Buffer {
+        private val bytes = ByteArrayOutputStream(1024)
+        private val generator: JsonGenerator = AppServicesJson.mapper.createGenerator(bytes)
+            .apply { setRootValueSeparator(null) }
+
+        fun render(event: Event, timestamp: Any, awsRequestId: String): ByteArray {
+            bytes.reset()
+            try {
+                writeEnvelope(generator, event, timestamp, awsRequestId)
+                generator.flush()
+                bytes.write(NEW_LINE)
+                return bytes.toByteArray()
+            } catch (e: Exception) {
+                // the generator may be left mid-document, so fall back to the reflective envelope on a fresh one
+                buffers.remove()
+                return AppServicesJson.mapper.writeValueAsBytes(envelopeOf(event, timestamp, awsRequestId)) +
+                    NEW_LINE.toByte()
+            }
+        }
+    }
+
+    companion object {
+        private const val NEW_LINE = '\n'.code
+        private val buffers = ThreadLocal.withInitial { Buffer() }
+
+        private fun writeEnvelope(gen: JsonGenerator, event: Event, timestamp: Any, awsRequestId: String) {
+            val metadata = event.metadata()
+            val overridden = if (metadata.isEmpty()) emptySet() else metadata.mapTo(HashSet()) { it.first }
+
+            gen.writeStartObject()
+            gen.writeObjectFieldStart("metadata")
+            if ("category" !in overridden) gen.writeObjectField("category", event.category())
+            if ("name" !in overridden) gen.writeStringField("name", event.javaClass.simpleName)
+            if ("timestamp" !in overridden) gen.writeObjectField("timestamp", timestamp)
+            if ("awsRequestId" !in overridden) gen.writeStringField("awsRequestId", awsRequestId)
+            metadata.forEach { (key, value) -> gen.writeObjectField(key, value) }
+            gen.writeEndObject()
+
+            gen.writeFieldName("event")
+            when (event) {
+                is StreamingEvent -> {
+                    gen.writeStartObject()
+                    event.writeFields(gen)
+                    gen.writeEndObject()
+                }
+                else -> gen.writeObject(event)
+            }
+            gen.writeEndObject()
+        }
+
+        private fun envelopeOf(event: Event, timestamp: Any, awsRequestId: String) = EventEnvelope(
+            setOfNotNull<Pair<String, Any>>(
+                "category" to event.category(),
+                "name" to event.javaClass.simpleName,
+                "timestamp" to timestamp,
+                "awsRequestId" to awsRequestId,
+                *event.metadata().toTypedArray()
+            ).toMap(), event
+        )
+    }
 }
 
 data class EventEnvelope(
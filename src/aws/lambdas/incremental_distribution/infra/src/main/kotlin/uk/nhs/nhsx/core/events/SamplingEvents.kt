@@ -0,0 +1,26 @@
+package uk.nhs.nhsx.core.events
+
+import java.util.concurrent.ThreadLocalRandom
+import kotlin.reflect.KClass
+
+/**
+ * Only passes on a sample of the configured event types (e.g. per-item events in batch jobs), so logging
+ * cost does not scale with data volume. All other events are passed on unchanged.
+ */
+class SamplingEvents(
+    private val delegate: Events,
+    private val sampleRates: Map<KClass<out Event>, Double>,
+    private val random: () -> Double = { ThreadLocalRandom.current().nextDouble() }
+) : Events {
+
+    init {
+        require(sampleRates.values.all { it in 0.0..1.0 }) { "Sample rates must be between 0 and 1: $sampleRates" }
+    }
+
+    override fun invoke(event: Event) {
+        val rate = sampleRates[event::class] ?: return delegate(event)
+        if (rate >= 1.0 || rate > 0.0 && random() < rate) delegate(event)
+    }
+
+    override fun flush() = delegate.flush()
+}
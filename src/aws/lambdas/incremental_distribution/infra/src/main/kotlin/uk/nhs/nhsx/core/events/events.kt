@@ -1,5 +1,7 @@
 package uk.nhs.nhsx.core.events
 
+import com.fasterxml.jackson.core.JsonGenerator
+
 /**
  * Event interface for all structured logs
  */
@@ -22,4 +24,16 @@ enum class EventCategory {
     Error, Warning, Info, Metric, Operational, Audit
 }
 
-interface Events : (Event) -> Unit
+interface Events : (Event) -> Unit {
+    /**
+     * writes out anything buffered, called by the handlers before an invocation returns
+     */
+    fun flush() {}
+}
+
+/**
+ * Implemented by high volume events to write their own fields instead of being serialised reflectively
+ */
+interface StreamingEvent {
+    fun writeFields(gen: JsonGenerator)
+}
@@ -1,5 +1,6 @@
 package uk.nhs.nhsx.core.events
 
+import com.fasterxml.jackson.core.JsonGenerator
 import uk.nhs.nhsx.core.events.EventCategory.*
 import uk.nhs.nhsx.core.headers.MobileAppVersion
 import uk.nhs.nhsx.core.headers.MobileOS
@@ -10,6 +11,7 @@ import uk.nhs.nhsx.domain.TokenAgeRange
 
 data class IncomingHttpRequest(
     val uri: String,
+    val route: String,
     val method: String,
     val status: Int,
     val latency: Long,
@@ -17,7 +19,19 @@ data class IncomingHttpRequest(
     val requestId: String,
     val apiKey: String,
     val message: String // deprecated - waiting to migrate to stats from the user agent
-) : Event(Operational)
+) : Event(Operational), StreamingEvent {
+    override fun writeFields(gen: JsonGenerator) {
+        gen.writeStringField("uri", uri)
+        gen.writeStringField("route", route)
+        gen.writeStringField("method", method)
+        gen.writeNumberField("status", status)
+        gen.writeNumberField("latency", latency)
+        gen.writeObjectField("userAgent", userAgent)
+        gen.writeStringField("requestId", requestId)
+        gen.writeStringField("apiKey", apiKey)
+        gen.writeStringField("message", message)
+    }
+}
 
 data class OutgoingHttpRequest(
     val uri: String,
@@ -52,6 +66,8 @@ data class UnprocessableJson(val e: Exception) : Event(Warning)
  * this is a generic info event - it really should not be here but be replaced with
  * more specific events for wanted scenarios
  */
-data class InfoEvent(val message: String) : Event(Info)
+data class InfoEvent(val message: String) : Event(Info), StreamingEvent {
+    override fun writeFields(gen: JsonGenerator) = gen.writeStringField("message", message)
+}
 
 data class RequestRejected(val reason: String) : Event(Info)
@@ -22,16 +22,25 @@ abstract class DirectHandler<T : Any, R>(
         val start = System.currentTimeMillis()
         events(DirectRequestStarted(javaClass.simpleName))
 
-        logAndRethrowException(events, convertExceptionsToLambdaError(handler(), clazz))(request, context)
-            .also {
-                events(
-                    DirectRequestCompleted(javaClass.simpleName, Duration.ofMillis(System.currentTimeMillis() - start))
-                )
-            }
-            .copyTo(output)
+        try {
+            logAndRethrowException(events, convertExceptionsToLambdaError(handler(), clazz))(request, context)
+                .also {
+                    events(
+                        DirectRequestCompleted(javaClass.simpleName, Duration.ofMillis(System.currentTimeMillis() - start))
+                    )
+                }
+                .copyTo(output)
+        } finally {
+            events.flush()
+        }
     }
 
     abstract fun handler(): Handler<T, R>
+
+    /**
+     * Call from the handler's init block, see [Priming]
+     */
+    protected fun prime(vararg warmUps: WarmUp) = Priming.prime(javaClass.simpleName, events, warmUps.toList())
 }
 
 data class DirectRequestStarted(val handler: String) : Event(EventCategory.Metric)
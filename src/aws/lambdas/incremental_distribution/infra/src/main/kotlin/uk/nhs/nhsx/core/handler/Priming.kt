@@ -0,0 +1,54 @@
+package uk.nhs.nhsx.core.handler
+
+import uk.nhs.nhsx.core.Environment
+import uk.nhs.nhsx.core.Environment.EnvironmentKey
+import uk.nhs.nhsx.core.events.Event
+import uk.nhs.nhsx.core.events.EventCategory
+import uk.nhs.nhsx.core.events.Events
+import java.time.Duration
+
+/**
+ * A warm-up action run while the handler is initialised, e.g. building SDK clients or loading configuration
+ */
+class WarmUp(val name: String, val action: () -> Unit)
+
+/**
+ * Runs the warm-up actions of a handler before it serves its first request. With SnapStart this happens
+ * before the snapshot is taken, so every restored container starts primed.
+ *
+ * Priming is enabled by PRIME_ON_INIT, or when the runtime initialises for a snapshot. A failing warm-up
+ * is reported and otherwise ignored, it must never prevent the handler from starting - this includes errors
+ * such as a class that fails to initialise.
+ */
+object Priming {
+    val PRIME_ON_INIT = EnvironmentKey.bool("PRIME_ON_INIT")
+    private val INITIALIZATION_TYPE = EnvironmentKey.string("AWS_LAMBDA_INITIALIZATION_TYPE")
+
+    fun isEnabled(access: Environment.Access) =
+        access.optional(PRIME_ON_INIT).orElse(false) ||
+            access.optional(INITIALIZATION_TYPE).map { it == "snap-start" }.orElse(false)
+
+    @JvmOverloads
+    fun prime(
+        handler: String,
+        events: Events,
+        warmUps: List<WarmUp>,
+        access: Environment.Access = Environment.Access.SYSTEM
+    ) {
+        if (!isEnabled(access)) return
+
+        warmUps.forEach { warmUp ->
+            val start = System.nanoTime()
+            try {
+                warmUp.action()
+                events(HandlerPrimed(handler, warmUp.name, Duration.ofNanos(System.nanoTime() - start)))
+            } catch (e: Throwable) {
+                events(HandlerPrimingFailed(handler, warmUp.name, e.message ?: e.javaClass.simpleName))
+            }
+        }
+    }
+}
+
+data class HandlerPrimed(val handler: String, val warmUp: String, val duration: Duration) : Event(EventCategory.Metric)
+data class HandlerPrimingFailed(val handler: String, val warmUp: String, val message: String) :
+    Event(EventCategory.Warning)
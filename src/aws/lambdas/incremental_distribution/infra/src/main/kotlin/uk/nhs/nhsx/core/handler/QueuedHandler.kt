@@ -17,15 +17,24 @@ abstract class QueuedHandler(protected val events: Events) : RequestHandler<SQSE
         val start = System.currentTimeMillis()
         events(QueuedEventStarted(javaClass.simpleName))
 
-        return logAndRethrowException(events, handler())(request, context).also {
-            events(it)
-            events(
-                QueuedEventCompleted(javaClass.simpleName, Duration.ofMillis(System.currentTimeMillis() - start))
-            )
-        }.toString()
+        try {
+            return logAndRethrowException(events, handler())(request, context).also {
+                events(it)
+                events(
+                    QueuedEventCompleted(javaClass.simpleName, Duration.ofMillis(System.currentTimeMillis() - start))
+                )
+            }.toString()
+        } finally {
+            events.flush()
+        }
     }
 
     abstract fun handler(): Handler<SQSEvent, Event>
+
+    /**
+     * Call from the handler's init block, see [Priming]
+     */
+    protected fun prime(vararg warmUps: WarmUp) = Priming.prime(javaClass.simpleName, events, warmUps.toList())
 }
 
 data class QueuedEventStarted(val handler: String) : Event(EventCategory.Metric)
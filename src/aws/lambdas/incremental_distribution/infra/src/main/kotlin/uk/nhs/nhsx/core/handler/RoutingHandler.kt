@@ -5,9 +5,13 @@ import com.amazonaws.services.lambda.runtime.RequestHandler
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent
 import uk.nhs.nhsx.core.Handler
+import uk.nhs.nhsx.core.SystemClock
+import uk.nhs.nhsx.core.events.BufferedEventSink
+import uk.nhs.nhsx.core.events.Events
+import uk.nhs.nhsx.core.events.MetricsRegistry
+import uk.nhs.nhsx.core.routing.Routing.PathPrefix
 import java.lang.String.CASE_INSENSITIVE_ORDER
 import java.util.*
-import java.util.function.Predicate
 
 abstract class RoutingHandler : RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
 
@@ -20,10 +24,23 @@ abstract class RoutingHandler : RequestHandler<APIGatewayProxyRequestEvent, APIG
         val indifferentHeaders = TreeMap<String, String>(CASE_INSENSITIVE_ORDER)
             .apply { putAll(request.headers.orEmpty()) }
 
-        return handler().invoke(request.apply { headers = indifferentHeaders }, context)
+        try {
+            return handler().invoke(request.apply { headers = indifferentHeaders }, context)
+        } finally {
+            BufferedEventSink.standardOut.apply {
+                MetricsRegistry.default.drain(SystemClock.CLOCK()).forEach(::write)
+                flush()
+            }
+        }
     }
 
     abstract fun handler(): Handler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent>
 
-    fun startsWith(path: String) = Predicate { candidate: String -> candidate.startsWith(path) }
+    /**
+     * Call from the handler's init block, see [Priming]
+     */
+    protected fun prime(events: Events, vararg warmUps: WarmUp) =
+        Priming.prime(javaClass.simpleName, events, warmUps.toList())
+
+    fun startsWith(path: String) = PathPrefix(path)
 }
@@ -18,15 +18,24 @@ abstract class SchedulingHandler(protected val events: Events) : RequestHandler<
         val start = System.currentTimeMillis()
         events(ScheduledEventStarted(javaClass.simpleName))
 
-        return logAndRethrowException(events, handler())(request, context).also {
-            events(it)
-            events(
-                ScheduledEventCompleted(javaClass.simpleName, ofMillis(System.currentTimeMillis() - start))
-            )
-        }.toString()
+        try {
+            return logAndRethrowException(events, handler())(request, context).also {
+                events(it)
+                events(
+                    ScheduledEventCompleted(javaClass.simpleName, ofMillis(System.currentTimeMillis() - start))
+                )
+            }.toString()
+        } finally {
+            events.flush()
+        }
     }
 
     abstract fun handler(): Handler<ScheduledEvent, Event>
+
+    /**
+     * Call from the handler's init block, see [Priming]
+     */
+    protected fun prime(vararg warmUps: WarmUp) = Priming.prime(javaClass.simpleName, events, warmUps.toList())
 }
 
 data class ScheduledEventStarted(val handler: String) : Event(EventCategory.Metric)
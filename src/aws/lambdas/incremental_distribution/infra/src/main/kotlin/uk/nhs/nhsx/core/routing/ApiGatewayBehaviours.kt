@@ -67,6 +67,7 @@ fun loggingIncomingRequests(
 
     val start = clock()
     var statusCode = 500
+    RouteContext.removeRoute()
     try {
         delegate.invoke(r, context).also { statusCode = it.statusCode }
     } finally {
@@ -74,6 +75,7 @@ fun loggingIncomingRequests(
         events(
             IncomingHttpRequest(
                 uri = r.path,
+                route = RouteContext.route(),
                 method = r.httpMethod,
                 status = statusCode,
                 latency = latency.toMillis(),
@@ -83,6 +85,7 @@ fun loggingIncomingRequests(
                 message = "Received http request: method=${r.httpMethod},path=${r.path},requestId=${requestId},apiKeyName=${keyName},userAgent=${userAgent},status=${statusCode},latency=${latency}"
             )
         )
+        RouteContext.removeRoute()
     }
 }
 
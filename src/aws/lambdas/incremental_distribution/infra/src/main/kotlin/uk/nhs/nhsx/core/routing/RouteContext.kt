@@ -0,0 +1,14 @@
+package uk.nhs.nhsx.core.routing
+
+import uk.nhs.nhsx.core.routing.Routing.UNMATCHED_ROUTE
+
+/**
+ * The route template that matched the request being handled on this thread, set by [Routing.PathRoutingHandler]
+ * and reported by [loggingIncomingRequests] instead of the path, which may carry tokens and is chosen by the caller.
+ */
+object RouteContext {
+    private val ROUTE = ThreadLocal<String>()
+    fun assignRoute(route: String) = ROUTE.set(route)
+    fun route(): String = ROUTE.get() ?: UNMATCHED_ROUTE
+    fun removeRoute() = ROUTE.remove()
+}
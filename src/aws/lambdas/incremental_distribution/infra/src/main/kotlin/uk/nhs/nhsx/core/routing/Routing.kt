@@ -50,6 +50,9 @@ object Routing {
         return response
     }
 
+    const val UNMATCHED_ROUTE = "unmatched"
+    private const val MATCHED_ROUTE = "matched"
+
     private val routeNotFoundHandler = ApiGatewayHandler { _, _ -> HttpResponses.notFound() }
     private val routeMethodNotAllowedHandler = ApiGatewayHandler { _, _ -> HttpResponses.methodNotAllowed() }
 
@@ -103,24 +106,43 @@ object Routing {
             .orElse(RouterMatch.UnMatched)
     }
 
+    /**
+     * Matches every path under the prefix, e.g. paths that end in a token
+     */
+    class PathPrefix(val prefix: String) : Predicate<String> {
+        override fun test(candidate: String) = candidate.startsWith(prefix)
+    }
+
+    /**
+     * Assigns the route template that matched to the [RouteContext], so it can be reported instead of the path,
+     * which may carry tokens and is chosen by the caller.
+     */
     class PathRoutingHandler(
         private val pathMatcher: Predicate<String>,
         private val method: Optional<Method>,
-        private val handler: ApiGatewayHandler
+        handler: ApiGatewayHandler,
+        route: String = (pathMatcher as? PathPrefix)?.let { "${it.prefix}/*" } ?: MATCHED_ROUTE
     ) : RoutingHandler {
 
         constructor(path: String, method: Optional<Method>, handler: ApiGatewayHandler) : this(
             pathMatcher = Predicate<String>(path::contentEquals),
             method = method,
-            handler = handler
+            handler = handler,
+            route = path
         )
 
         constructor(path: String, handler: ApiGatewayHandler) : this(
             pathMatcher = Predicate<String>(path::contentEquals),
             method = Optional.empty(),
-            handler = handler
+            handler = handler,
+            route = path
         )
 
+        private val routed = ApiGatewayHandler { request, context ->
+            RouteContext.assignRoute(route)
+            handler(request, context)
+        }
+
         override fun invoke(request: APIGatewayProxyRequestEvent, context: Context) =
             when (val match = match(request)) {
                 is RouterMatch.Matched -> match.handler
@@ -132,11 +154,11 @@ object Routing {
             if (pathMatcher.test(request.path)) {
                 if (method.isPresent) {
                     if (method.get().matches(request.httpMethod)) {
-                        RouterMatch.Matched(handler)
+                        RouterMatch.Matched(routed)
                     } else {
                         RouterMatch.MethodUnMatched
                     }
-                } else RouterMatch.Matched(handler)
+                } else RouterMatch.Matched(routed)
             } else RouterMatch.UnMatched
     }
 }
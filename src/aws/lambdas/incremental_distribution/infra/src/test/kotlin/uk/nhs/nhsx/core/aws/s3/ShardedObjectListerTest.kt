@@ -0,0 +1,77 @@
+package uk.nhs.nhsx.core.aws.s3
+
+import com.amazonaws.services.s3.model.S3ObjectSummary
+import org.junit.jupiter.api.Test
+import strikt.api.expectThat
+import strikt.assertions.containsExactly
+import strikt.assertions.containsExactlyInAnyOrder
+import uk.nhs.nhsx.testhelper.proxy
+import java.util.concurrent.CopyOnWriteArrayList
+
+class ShardedObjectListerTest {
+
+    private val bucketName = BucketName.of("bucket")
+
+    private val s3 = ListingS3(
+        listOf(
+            "abcdef",
+            "123",
+            "abc/def",
+            "mobile/LAB_RESULT/abc",
+            "mobile/RAPID_RESULT/def",
+            "nearform/IE/xyz",
+            "nearform/NI/xyz"
+        )
+    )
+
+    @Test
+    fun `root only shard skips keys with a slash`() {
+        expectThat(s3.objectSummaries(bucketName, "", "/").map { it.key }.toList())
+            .containsExactly("abcdef", "123")
+    }
+
+    @Test
+    fun `lists each shard and removes duplicates`() {
+        val summaries = ShardedObjectLister(s3).list(
+            bucketName,
+            listOf(ListingShard.ROOT, ListingShard("abc"), ListingShard("mobile/LAB_RESULT/"), ListingShard("nearform/IE"))
+        )
+
+        expectThat(summaries.map { it.key }).containsExactlyInAnyOrder(
+            "abcdef",
+            "123",
+            "abc/def",
+            "mobile/LAB_RESULT/abc",
+            "nearform/IE/xyz"
+        )
+        expectThat(s3.listed).containsExactlyInAnyOrder(
+            "" to "/",
+            "abc" to null,
+            "mobile/LAB_RESULT/" to null,
+            "nearform/IE" to null
+        )
+    }
+
+    @Test
+    fun `lists a single shard`() {
+        val summaries = ShardedObjectLister(s3).list(bucketName, listOf(ListingShard("nearform/")))
+
+        expectThat(summaries.map { it.key }).containsExactly("nearform/IE/xyz", "nearform/NI/xyz")
+    }
+
+    private class ListingS3(private val keys: List<String>) : AwsS3 by proxy() {
+        val listed = CopyOnWriteArrayList<Pair<String, String?>>()
+
+        override fun getObjectSummaries(bucketName: BucketName) = keys.map { key ->
+            S3ObjectSummary().also {
+                it.bucketName = bucketName.value
+                it.key = key
+            }
+        }
+
+        override fun objectSummaries(bucketName: BucketName, prefix: String, delimiter: String?): Sequence<S3ObjectSummary> {
+            listed += prefix to delimiter
+            return super.objectSummaries(bucketName, prefix, delimiter)
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package uk.nhs.nhsx.core.events
+
+import org.junit.jupiter.api.Test
+import strikt.api.expectThat
+import strikt.assertions.isEqualTo
+import java.io.ByteArrayOutputStream
+import java.io.PrintStream
+
+class BufferedEventSinkTest {
+
+    private val bytes = ByteArrayOutputStream()
+    private val out = PrintStream(bytes, true)
+
+    @Test
+    fun `writes every queued line in order once flushed`() {
+        val sink = BufferedEventSink({ out })
+
+        (1..100).forEach { sink.write("line $it\n".toByteArray()) }
+        sink.flush()
+
+        expectThat(bytes.toString()).isEqualTo((1..100).joinToString("") { "line $it\n" })
+    }
+
+    @Test
+    fun `flush with nothing queued writes nothing`() {
+        BufferedEventSink({ out }).flush()
+
+        expectThat(bytes.toString()).isEqualTo("")
+    }
+
+    @Test
+    fun `caller writes the queue itself once it is over the limit`() {
+        val sink = BufferedEventSink({ out }, maxQueuedBytes = 4)
+
+        sink.write("12345\n".toByteArray())
+
+        expectThat(bytes.toString()).isEqualTo("12345\n")
+    }
+}
@@ -17,6 +17,7 @@ class IncomingHttpRequestTest {
             Json.toJson(
                 IncomingHttpRequest(
                     uri = "/path",
+                    route = "/path",
                     method = "GET",
                     status = 201,
                     latency = 1234,
@@ -29,6 +30,7 @@ class IncomingHttpRequestTest {
         ).isEqualToJson("""
             {
                 "uri": "/path",
+                "route": "/path",
                 "method": "GET",
                 "status": 201,
                 "latency": 1234,
@@ -0,0 +1,153 @@
+package uk.nhs.nhsx.core.events
+
+import org.junit.jupiter.api.Test
+import strikt.api.expectThat
+import strikt.assertions.hasSize
+import strikt.assertions.isEmpty
+import strikt.assertions.isEqualTo
+import strikt.assertions.isGreaterThan
+import strikt.assertions.isLessThan
+import uk.nhs.nhsx.core.AppServicesJson
+import uk.nhs.nhsx.core.headers.MobileAppVersion
+import uk.nhs.nhsx.core.headers.UserAgent
+import uk.nhs.nhsx.testhelper.assertions.isEqualToJson
+import java.time.Duration
+import java.time.Instant
+import kotlin.math.abs
+
+class MetricsRegistryTest {
+
+    private val registry = MetricsRegistry("Test", mapOf("Function" to "my-function"))
+    private val timestamp = Instant.ofEpochMilli(1234)
+
+    @Test
+    fun `writes counters as embedded metric format`() {
+        registry.counter("Uploads", "Bucket" to "submissions").add(3)
+
+        val documents = registry.drain(timestamp)
+
+        expectThat(documents).hasSize(1)
+        expectThat(String(documents.first())).isEqualToJson(
+            """
+            {
+              "_aws": {
+                "Timestamp": 1234,
+                "CloudWatchMetrics": [
+                  {
+                    "Namespace": "Test",
+                    "Dimensions": [["Function", "Bucket"]],
+                    "Metrics": [{"Name": "Uploads", "Unit": "Count"}]
+                  }
+                ]
+              },
+              "Function": "my-function",
+              "Bucket": "submissions",
+              "Uploads": 3
+            }
+            """
+        )
+    }
+
+    @Test
+    fun `counters and histograms only report what was recorded since the last drain`() {
+        registry.counter("Uploads").increment()
+        registry.histogram("Latency").record(Duration.ofMillis(5))
+        registry.gauge("InFlight").set(7)
+
+        expectThat(registry.drain(timestamp)).hasSize(1)
+        expectThat(registry.drain(timestamp).map { AppServicesJson.mapper.readTree(it) }) {
+            hasSize(1)
+            get { first().has("Uploads") }.isEqualTo(false)
+            get { first().has("Latency") }.isEqualTo(false)
+            get { first()["InFlight"].asLong() }.isEqualTo(7L)
+        }
+    }
+
+    @Test
+    fun `separates documents by dimension values`() {
+        registry.counter("Requests", "Route" to "/a").increment()
+        registry.counter("Requests", "Route" to "/b").increment()
+
+        expectThat(registry.drain(timestamp).map { AppServicesJson.mapper.readTree(it)["Route"].asText() }.sorted())
+            .isEqualTo(listOf("/a", "/b"))
+    }
+
+    @Test
+    fun `histogram buckets keep values within an eighth of their size`() {
+        listOf(0L, 1L, 7L, 8L, 15L, 16L, 17L, 999L, 123_456L, 987_654_321L).forEach { micros ->
+            val midpoint = MetricsRegistry.Histogram.midpointOf(MetricsRegistry.Histogram.indexOf(micros))
+            expectThat(abs(midpoint - micros)).isLessThan(maxOf(1.0, micros / 8.0))
+        }
+    }
+
+    @Test
+    fun `large histograms are reported as at most one hundred values`() {
+        val histogram = registry.histogram("Latency")
+        repeat(990) { histogram.record(Duration.ofMillis(10)) }
+        repeat(10) { histogram.record(Duration.ofSeconds(2)) }
+
+        val values = AppServicesJson.mapper.readTree(registry.drain(timestamp).first())["Latency"].map { it.asDouble() }
+
+        expectThat(values.size).isEqualTo(100)
+        expectThat(values.count { it > 1000.0 }).isEqualTo(1)
+    }
+
+    @Test
+    fun `derives request metrics from events using the route template as dimension`() {
+        registry.observe(request("/submission/diagnosis-keys", "/submission/diagnosis-keys", 200))
+        registry.observe(request("/circuit-breaker/venue/resolution/token-1", "/circuit-breaker/venue/resolution/*", 200))
+        registry.observe(request("/circuit-breaker/venue/resolution/token-2", "/circuit-breaker/venue/resolution/*", 200))
+        registry.observe(request("/random/path", "unmatched", 404))
+        registry.observe(ExceptionThrown(RuntimeException("boom")))
+
+        val documents = registry.drain(timestamp).map { AppServicesJson.mapper.readTree(it) }
+
+        expectThat(documents.filter { it.has("Route") }.map { it["Route"].asText() }.toSet())
+            .isEqualTo(setOf("/submission/diagnosis-keys", "/circuit-breaker/venue/resolution/*", "unmatched"))
+        expectThat(documents.single { it.has("Errors") }["Event"].asText()).isEqualTo("ExceptionThrown")
+    }
+
+    @Test
+    fun `idle counters are dropped`() {
+        registry.counter("Requests", "Route" to "/a").increment()
+        registry.drain(timestamp)
+        registry.drain(timestamp)
+
+        registry.counter("Requests", "Route" to "/b").increment()
+
+        expectThat(registry.drain(timestamp).map { AppServicesJson.mapper.readTree(it)["Route"].asText() })
+            .isEqualTo(listOf("/b"))
+    }
+
+    @Test
+    fun `spread out histograms keep their highest values`() {
+        val histogram = registry.histogram("Latency")
+        (1..150).forEach { histogram.record(Duration.ofMillis(it * 100L)) }
+
+        val values = AppServicesJson.mapper.readTree(registry.drain(timestamp).first())["Latency"].map { it.asDouble() }
+
+        expectThat(values.size).isEqualTo(100)
+        expectThat(values.maxOrNull()!!).isGreaterThan(14_000.0)
+    }
+
+    @Test
+    fun `disabled registry writes nothing`() {
+        val disabled = MetricsRegistry("Test", enabled = false)
+        disabled.counter("Uploads").increment()
+        disabled.observe(request("/a", "/a", 200))
+
+        expectThat(disabled.drain(timestamp)).isEmpty()
+    }
+
+    private fun request(uri: String, route: String, status: Int) = IncomingHttpRequest(
+        uri = uri,
+        route = route,
+        method = "POST",
+        status = status,
+        latency = 12,
+        userAgent = UserAgent(MobileAppVersion.Unknown, null, null),
+        requestId = "none",
+        apiKey = "mobile",
+        message = "message"
+    )
+}
@@ -3,9 +3,19 @@ package uk.nhs.nhsx.core.events
 import org.junit.jupiter.api.AfterEach
 import org.junit.jupiter.api.Test
 import strikt.api.expectThat
+import strikt.assertions.all
+import strikt.assertions.contains
+import strikt.assertions.hasSize
+import strikt.assertions.isEqualTo
 import strikt.assertions.startsWith
+import uk.nhs.nhsx.core.AppServicesJson
+import uk.nhs.nhsx.core.Json
 import uk.nhs.nhsx.core.events.EventCategory.Info
 import uk.nhs.nhsx.core.handler.RequestContext
+import uk.nhs.nhsx.core.headers.MobileAppVersion
+import uk.nhs.nhsx.core.headers.MobileOS
+import uk.nhs.nhsx.core.headers.MobileOSVersion
+import uk.nhs.nhsx.core.headers.UserAgent
 import uk.nhs.nhsx.domain.DiagnosisKeySubmissionToken
 import uk.nhs.nhsx.testhelper.ContextBuilder.TestContext
 import uk.nhs.nhsx.testhelper.assertions.asJsonString
@@ -128,4 +138,57 @@ class PrintingJsonEventsTest {
             """
         )
     }
+
+    @Test
+    fun `streaming events print the same fields as reflective serialisation`() {
+        RequestContext.assignAwsRequestId("12345")
+
+        expectThat(InfoEvent("hello")).isSameAsJson(
+            """
+            {
+              "metadata": {
+                "category": "INFO",
+                "name": "InfoEvent",
+                "timestamp": "1970-01-01T00:00:00Z",
+                "awsRequestId": "12345"
+              },
+              "event": {
+                "message": "hello"
+              }
+            }
+            """
+        )
+    }
+
+    @Test
+    fun `streamed incoming http requests print the same fields as reflective serialisation`() {
+        val event = IncomingHttpRequest(
+            uri = "/path/token",
+            route = "/path/*",
+            method = "GET",
+            status = 201,
+            latency = 1234,
+            userAgent = UserAgent(MobileAppVersion.Version(4, 3), MobileOS.Android, MobileOSVersion.of("29")),
+            requestId = "123-321",
+            apiKey = "mobile",
+            message = "some \"quoted\" message"
+        )
+        val out = StringBuilder()
+
+        PrintingJsonEvents({ Instant.EPOCH }, out::append)(event)
+
+        expectThat(AppServicesJson.mapper.readTree(out.toString())["event"])
+            .isEqualTo(AppServicesJson.mapper.readTree(Json.toJson(event)))
+    }
+
+    @Test
+    fun `hands lines to print without their line break`() {
+        val lines = mutableListOf<String>()
+        val events = PrintingJsonEvents({ Instant.EPOCH }) { lines += it }
+
+        events(InfoEvent("one"))
+        events(MyEventWithMoreMetadata("two"))
+
+        expectThat(lines).hasSize(2).all { not().contains("\n") }
+    }
 }
@@ -0,0 +1,49 @@
+package uk.nhs.nhsx.core.events
+
+import org.junit.jupiter.api.Test
+import strikt.api.expectThat
+import strikt.api.expectThrows
+import strikt.assertions.containsExactly
+import strikt.assertions.isEmpty
+import uk.nhs.nhsx.core.events.EventCategory.Info
+
+class SamplingEventsTest {
+
+    data class Sampled(val id: Int) : Event(Info)
+    data class NotSampled(val id: Int) : Event(Info)
+
+    private val recording = RecordingEvents()
+
+    @Test
+    fun `passes on events without a sample rate`() {
+        val events = SamplingEvents(recording, mapOf(Sampled::class to 0.0))
+
+        events(NotSampled(1))
+
+        expectThat(recording.toList()).containsExactly(NotSampled(1))
+    }
+
+    @Test
+    fun `drops all sampled events at rate zero`() {
+        val events = SamplingEvents(recording, mapOf(Sampled::class to 0.0)) { 0.0 }
+
+        repeat(10) { events(Sampled(it)) }
+
+        expectThat(recording.toList()).isEmpty()
+    }
+
+    @Test
+    fun `passes on sampled events below the rate`() {
+        val draws = mutableListOf(0.05, 0.5, 0.09, 0.99).iterator()
+        val events = SamplingEvents(recording, mapOf(Sampled::class to 0.1)) { draws.next() }
+
+        repeat(4) { events(Sampled(it)) }
+
+        expectThat(recording.toList()).containsExactly(Sampled(0), Sampled(2))
+    }
+
+    @Test
+    fun `rejects invalid sample rates`() {
+        expectThrows<IllegalArgumentException> { SamplingEvents(recording, mapOf(Sampled::class to 1.5)) }
+    }
+}
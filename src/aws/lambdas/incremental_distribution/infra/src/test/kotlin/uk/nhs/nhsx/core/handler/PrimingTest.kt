@@ -0,0 +1,73 @@
+package uk.nhs.nhsx.core.handler
+
+import org.junit.jupiter.api.Test
+import strikt.api.expectThat
+import strikt.assertions.isEmpty
+import strikt.assertions.isEqualTo
+import strikt.assertions.isFalse
+import strikt.assertions.isTrue
+import uk.nhs.nhsx.core.Environment
+import uk.nhs.nhsx.core.TestEnvironments
+import uk.nhs.nhsx.core.events.RecordingEvents
+import uk.nhs.nhsx.testhelper.assertions.containsExactly
+
+class PrimingTest {
+
+    private val events = RecordingEvents()
+    private val enabled = Environment.Access.TEST.apply(mapOf("PRIME_ON_INIT" to "true"))
+    private val ran = mutableListOf<String>()
+
+    @Test
+    fun `runs warm ups in order when enabled`() {
+        Priming.prime(
+            "SomeHandler",
+            events,
+            listOf(WarmUp("first") { ran += "first" }, WarmUp("second") { ran += "second" }),
+            enabled
+        )
+
+        expectThat(ran).isEqualTo(listOf("first", "second"))
+        expectThat(events).containsExactly(HandlerPrimed::class, HandlerPrimed::class)
+    }
+
+    @Test
+    fun `failing warm up does not stop the others`() {
+        Priming.prime(
+            "SomeHandler",
+            events,
+            listOf(WarmUp("failing") { error("no network") }, WarmUp("second") { ran += "second" }),
+            enabled
+        )
+
+        expectThat(ran).isEqualTo(listOf("second"))
+        expectThat(events.first()).isEqualTo(HandlerPrimingFailed("SomeHandler", "failing", "no network"))
+    }
+
+    @Test
+    fun `warm up failing with an error is reported too`() {
+        Priming.prime(
+            "SomeHandler",
+            events,
+            listOf(WarmUp("failing") { throw NoClassDefFoundError("SomeClient") }, WarmUp("second") { ran += "second" }),
+            enabled
+        )
+
+        expectThat(ran).isEqualTo(listOf("second"))
+        expectThat(events.first()).isEqualTo(HandlerPrimingFailed("SomeHandler", "failing", "SomeClient"))
+    }
+
+    @Test
+    fun `does nothing unless enabled`() {
+        Priming.prime("SomeHandler", events, listOf(WarmUp("first") { ran += "first" }), TestEnvironments.NOTHING)
+
+        expectThat(ran).isEmpty()
+        expectThat(events.toList()).isEmpty()
+    }
+
+    @Test
+    fun `is enabled when initialising for a snapshot`() {
+        expectThat(Priming.isEnabled(Environment.Access.TEST.apply(mapOf("AWS_LAMBDA_INITIALIZATION_TYPE" to "snap-start")))).isTrue()
+        expectThat(Priming.isEnabled(Environment.Access.TEST.apply(mapOf("AWS_LAMBDA_INITIALIZATION_TYPE" to "on-demand")))).isFalse()
+        expectThat(Priming.isEnabled(enabled)).isTrue()
+    }
+}
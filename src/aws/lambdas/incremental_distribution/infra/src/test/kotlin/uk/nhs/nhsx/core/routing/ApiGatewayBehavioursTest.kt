@@ -24,6 +24,8 @@ import uk.nhs.nhsx.core.headers.MobileAppVersion
 import uk.nhs.nhsx.core.headers.MobileOS
 import uk.nhs.nhsx.core.headers.MobileOSVersion
 import uk.nhs.nhsx.core.headers.UserAgent
+import uk.nhs.nhsx.core.routing.Routing.PathPrefix
+import uk.nhs.nhsx.core.routing.Routing.PathRoutingHandler
 import uk.nhs.nhsx.core.routing.Routing.RouterMatch.Matched
 import uk.nhs.nhsx.testhelper.ContextBuilder.TestContext
 import uk.nhs.nhsx.testhelper.ProxyRequestBuilder.request
@@ -36,6 +38,7 @@ import uk.nhs.nhsx.testhelper.withCustomOai
 import uk.nhs.nhsx.testhelper.withHeader
 import uk.nhs.nhsx.testhelper.withMethod
 import java.time.Instant
+import java.util.*
 
 class ApiGatewayBehavioursTest {
 
@@ -202,6 +205,7 @@ class ApiGatewayBehavioursTest {
 
         expectThat(events).first().isA<IncomingHttpRequest>().and {
             get(IncomingHttpRequest::uri).isEqualTo("/hello")
+            get(IncomingHttpRequest::route).isEqualTo("unmatched")
             get(IncomingHttpRequest::method).isEqualTo("GET")
             get(IncomingHttpRequest::apiKey).isEqualTo("none")
             get(IncomingHttpRequest::userAgent).isEqualTo(UserAgent(
@@ -215,4 +219,22 @@ class ApiGatewayBehavioursTest {
             get(IncomingHttpRequest::message).isEqualTo("Received http request: method=GET,path=/hello,requestId=none,apiKeyName=none,userAgent=p=Android,o=29,v=4.3.0,b=138,status=200,latency=PT0S")
         }
     }
+
+    @Test
+    fun `logs the route template that handled the request and forgets it afterwards`() {
+        val events = RecordingEvents()
+        val routes = PathRoutingHandler(
+            PathPrefix("/circuit-breaker/venue/resolution"),
+            Optional.empty(),
+            { _, _ -> HttpResponses.ok() }
+        )
+
+        val handler = loggingIncomingRequests(events, routes, { Instant.EPOCH })
+
+        handler(request().withMethod(GET).withPath("/circuit-breaker/venue/resolution/secret-token"), testContext)
+
+        expectThat(events).first().isA<IncomingHttpRequest>()
+            .get(IncomingHttpRequest::route).isEqualTo("/circuit-breaker/venue/resolution/*")
+        expectThat(RouteContext.route()).isEqualTo("unmatched")
+    }
 }
@@ -8,7 +8,9 @@ import org.http4k.core.Status.Companion.NOT_FOUND
 import org.junit.jupiter.api.Test
 import strikt.api.expectThat
 import strikt.assertions.isEqualTo
+import strikt.assertions.isNull
 import uk.nhs.nhsx.core.routing.Routing.Method
+import uk.nhs.nhsx.core.routing.Routing.PathPrefix
 import uk.nhs.nhsx.core.routing.Routing.PathRoutingHandler
 import uk.nhs.nhsx.testhelper.ContextBuilder.TestContext
 import uk.nhs.nhsx.testhelper.ProxyRequestBuilder.request
@@ -119,4 +121,21 @@ class PathRoutingHandlerTest {
             )
         ).status.isSameAs(NOT_FOUND)
     }
+
+    @Test
+    fun `records the matched route template instead of the path`() {
+        var route: String? = null
+        val handler = PathRoutingHandler(
+            PathPrefix("/circuit-breaker/venue/resolution"),
+            Optional.of(Method.GET),
+            { _, _ -> APIGatewayProxyResponseEvent().also { route = RouteContext.route() } }
+        )
+        val request = request().withPath("/circuit-breaker/venue/resolution/secret-token").withMethod(GET)
+
+        handler(request, TestContext())
+        RouteContext.removeRoute()
+
+        expectThat(route).isEqualTo("/circuit-breaker/venue/resolution/*")
+        expectThat(request.resource).isNull()
+    }
 }